@@ -0,0 +1,92 @@
+package com.doutoutdou.urlshortener.benchmark;
+
+import com.doutoutdou.urlshortener.dto.UrlRequestDto;
+import com.doutoutdou.urlshortener.service.UrlService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+/**
+ * Urls created or resolved one by one versus with the batch methods, the score is the number of urls per second
+ * The space used by the rows of the url table is printed once it is filled, at the start of each trial
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "-Xmx4g"})
+@Warmup(iterations = 10, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class BatchBenchmark {
+    private static final int BATCH_SIZE = 1000;
+    private static final Path DATABASE_FILE = Path.of("target", "benchmark", "batch.mv.db").toAbsolutePath();
+
+    @Param({"100000"})
+    private int rows;
+
+    private ConfigurableApplicationContext context;
+    private UrlService urlService;
+    private List<String> shortenedUrls;
+    private AtomicLong newUrlIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Without cache, to measure the database access
+        // In a file database, the only one whose size is known
+        Files.deleteIfExists(DATABASE_FILE);
+        context = BenchmarkContexts.start(WebApplicationType.NONE, "url-shortener.cache.maximum-size=0",
+                STR. "spring.datasource.url=jdbc:h2:file:\{ DATABASE_FILE.toString().replace(".mv.db", "") }" );
+        urlService = context.getBean(UrlService.class);
+        shortenedUrls = BenchmarkContexts.populate(context, rows);
+        BenchmarkContexts.printStorageSize(context);
+        newUrlIndex = new AtomicLong(rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    private List<String> newUrls() {
+        var start = newUrlIndex.getAndAdd(BATCH_SIZE);
+        return LongStream.range(start, start + BATCH_SIZE).mapToObj(BenchmarkContexts::url).toList();
+    }
+
+    private List<String> knownShortenedUrls() {
+        var start = ThreadLocalRandom.current().nextInt(rows - BATCH_SIZE);
+        return shortenedUrls.subList(start, start + BATCH_SIZE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void createOneByOne(Blackhole blackhole) {
+        newUrls().forEach(url -> blackhole.consume(urlService.buildShortenedUrl(new UrlRequestDto(url))));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void createBatch(Blackhole blackhole) {
+        blackhole.consume(urlService.buildShortenedUrls(newUrls()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void resolveOneByOne(Blackhole blackhole) {
+        knownShortenedUrls().forEach(shortenedUrl -> blackhole.consume(urlService.resolve(shortenedUrl.substring(shortenedUrl.length() - 10))));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void resolveBatch(Blackhole blackhole) {
+        blackhole.consume(urlService.resolveAll(knownShortenedUrls()));
+    }
+}
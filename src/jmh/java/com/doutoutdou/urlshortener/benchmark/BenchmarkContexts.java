@@ -0,0 +1,126 @@
+package com.doutoutdou.urlshortener.benchmark;
+
+import com.doutoutdou.urlshortener.UrlShortenerApplication;
+import com.doutoutdou.urlshortener.cache.ResolvedUrlCache;
+import com.doutoutdou.urlshortener.service.UrlService;
+import com.doutoutdou.urlshortener.utils.Base36;
+import lombok.experimental.UtilityClass;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.PropertiesPropertySource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static com.doutoutdou.urlshortener.utils.Constants.SHORTENED_URL_BASE_PATH;
+
+/**
+ * Start the application and fill its database for the benchmarks
+ */
+@UtilityClass
+public class BenchmarkContexts {
+    private static final int POPULATE_CHUNK_SIZE = 10_000;
+
+    /**
+     * Start the application with the test profile (in memory database)
+     *
+     * @param type       SERVLET to start the embedded server on a random port, NONE otherwise
+     * @param properties additional properties, key=value
+     * @return the application context
+     */
+    public static ConfigurableApplicationContext start(WebApplicationType type, String... properties) {
+        return builder(type, properties).run();
+    }
+
+    /**
+     * Build the application with the test profile (in memory database), to customize it before starting it
+     *
+     * @param type       SERVLET to start the embedded server on a random port, NONE otherwise
+     * @param properties additional properties, key=value
+     * @return the application builder
+     */
+    public static SpringApplicationBuilder builder(WebApplicationType type, String... properties) {
+        // Default properties have the lowest precedence, the benchmark ones must override application.yml
+        var benchmarkProperties = new Properties();
+        for (var property : properties) {
+            var separator = property.indexOf('=');
+            benchmarkProperties.setProperty(property.substring(0, separator), property.substring(separator + 1));
+        }
+        return new SpringApplicationBuilder(UrlShortenerApplication.class)
+                .web(type)
+                .profiles("test")
+                .properties("server.port=0", "logging.level.root=warn", "logging.level.com.doutoutdou=off")
+                .initializers(context -> context.getEnvironment().getPropertySources()
+                        .addFirst(new PropertiesPropertySource("benchmark", benchmarkProperties)));
+    }
+
+    /**
+     * Build an url unique for an index, with a realistic length
+     *
+     * @param index the index of the url
+     * @return the url
+     */
+    public static String url(long index) {
+        return STR. "https://www.example.com/campaigns/2023/newsletter-\{ index % 97 }/article?id=\{ index }&utm_source=newsletter&utm_medium=email" ;
+    }
+
+    /**
+     * Create rows in the database, through the batch creation
+     *
+     * @param context the application context
+     * @param rows    the number of rows to create
+     * @return the shortened urls created, the i-th one being the shortened url of url(i)
+     */
+    public static List<String> populate(ConfigurableApplicationContext context, int rows) {
+        var shortenedUrls = new ArrayList<String>(rows);
+        populate(context, rows, shortenedUrls::addAll);
+        return shortenedUrls;
+    }
+
+    /**
+     * Create rows in the database like {@link #populate(ConfigurableApplicationContext, int)}, keeping a long per row
+     * instead of a string, so that tens of millions of rows fit in the heap
+     *
+     * @param context the application context
+     * @param rows    the number of rows to create
+     * @return the shortened hashes created, decoded with {@link Base36}, the i-th one being the shortened hash of url(i)
+     */
+    public static long[] populateShortenedHashes(ConfigurableApplicationContext context, int rows) {
+        var shortenedHashes = new long[rows];
+        var index = new int[1];
+        populate(context, rows, shortenedUrls -> shortenedUrls.forEach(shortenedUrl ->
+                shortenedHashes[index[0]++] = Base36.decode(shortenedUrl.substring(SHORTENED_URL_BASE_PATH.length()))));
+        return shortenedHashes;
+    }
+
+    private static void populate(ConfigurableApplicationContext context, int rows, Consumer<Collection<String>> shortenedUrlsConsumer) {
+        var urlService = context.getBean(UrlService.class);
+        for (int start = 0; start < rows; start += POPULATE_CHUNK_SIZE) {
+            var urls = IntStream.range(start, Math.min(start + POPULATE_CHUNK_SIZE, rows)).mapToObj(BenchmarkContexts::url).toList();
+            shortenedUrlsConsumer.accept(urlService.buildShortenedUrls(urls).values());
+        }
+        // Start the measures with an empty cache
+        context.getBean(ResolvedUrlCache.class).invalidateAll();
+    }
+
+    /**
+     * Print the space used by the rows of the url table, per row
+     * H2 doesn't count the pages of the secondary indexes, nor the pages being rewritten by the compaction of its
+     * background writer: the size is only consistent right after the rows are written, before any compaction
+     *
+     * @param context the application context
+     */
+    public static void printStorageSize(ConfigurableApplicationContext context) {
+        var jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.execute("checkpoint sync");
+        var rows = jdbcTemplate.queryForObject("select count(*) from url", Long.class);
+        var bytes = jdbcTemplate.queryForObject("select disk_space_used('URL')", Long.class);
+        System.out.println(STR. "url table rows: \{ bytes / 1024 } KB for \{ rows } rows, \{ bytes / rows } bytes per row" );
+    }
+}
@@ -0,0 +1,47 @@
+package com.doutoutdou.urlshortener.benchmark;
+
+import com.doutoutdou.urlshortener.configuration.HashProperties;
+import com.doutoutdou.urlshortener.service.HashService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run with {@code -prof gc} to get the allocation per call ({@code gc.alloc.rate.norm})
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HashServiceBenchmark {
+
+    @Param({"SHA256", "MURMUR3_128"})
+    private HashProperties.Algorithm algorithm;
+
+    private final String url = BenchmarkContexts.url(42);
+    private HashService hashService;
+    private String hash;
+
+    @Setup
+    public void setUp() {
+        hashService = new HashService(new HashProperties(algorithm));
+        hash = hashService.createHash(url);
+    }
+
+    @Benchmark
+    public String createHash() {
+        return hashService.createHash(url);
+    }
+
+    @Benchmark
+    public String createShortHash() {
+        return hashService.createShortHash(hash, 0, 10);
+    }
+
+    @Benchmark
+    public String createShortHashFromDigest() {
+        return hashService.createShortHash(hashService.digest(url), 0, 10);
+    }
+}
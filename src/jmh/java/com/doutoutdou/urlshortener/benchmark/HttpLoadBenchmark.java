@@ -0,0 +1,81 @@
+package com.doutoutdou.urlshortener.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end load against the embedded server, with 16 concurrent clients (change it with -t)
+ * The sample time mode reports the latency percentiles
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "-Xmx2g"})
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(16)
+public class HttpLoadBenchmark {
+
+    @Param({"100000"})
+    private int rows;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private String baseUrl;
+    private List<String> shortenedUrls;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContexts.start(WebApplicationType.SERVLET);
+        shortenedUrls = BenchmarkContexts.populate(context, rows);
+        baseUrl = STR. "http://localhost:\{ context.getEnvironment().getProperty("local.server.port") }/api" ;
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        httpClient.close();
+        context.close();
+    }
+
+    private String randomShortenedUrl() {
+        return shortenedUrls.get(ThreadLocalRandom.current().nextInt(rows));
+    }
+
+    private int send(HttpRequest request) throws IOException, InterruptedException {
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    @Benchmark
+    public int redirect() throws IOException, InterruptedException {
+        var shortenedUrl = randomShortenedUrl();
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/" + shortenedUrl.substring(shortenedUrl.length() - 10))).build());
+    }
+
+    @Benchmark
+    public int getFromShortenedUrl() throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/v1/url?shortenedUrl=" + randomShortenedUrl())).build());
+    }
+
+    @Benchmark
+    public int createKnownUrl() throws IOException, InterruptedException {
+        var body = STR. "{\"url\": \"\{ BenchmarkContexts.url(ThreadLocalRandom.current().nextInt(rows)) }\"}" ;
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/v1/url"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build());
+    }
+}
@@ -0,0 +1,97 @@
+package com.doutoutdou.urlshortener.benchmark;
+
+import com.doutoutdou.urlshortener.configuration.OriginUrlProperties;
+import com.doutoutdou.urlshortener.store.OriginUrlCodec;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.util.unit.DataSize;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of the original urls with the {@link OriginUrlCodec}, versus their former url encoded text
+ * The urls are generated with a few frequent hosts and campaign parameters, the average stored size of both formats
+ * being printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class OriginUrlBenchmark {
+    private static final int URLS = 100_000;
+    private static final int HOSTS = 10_000;
+    private static final String[] CAMPAIGN_SOURCES = {"newsletter", "twitter", "facebook", "linkedin", "partner"};
+
+    private OriginUrlCodec codec;
+    private String[] originUrls;
+    private String[] urlEncoded;
+    private byte[][] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var dataSource = new DriverManagerDataSource("jdbc:h2:mem:origin-url-benchmark;DB_CLOSE_DELAY=-1");
+        new JdbcTemplate(dataSource).execute("create table if not exists url_prefix (id int auto_increment primary key, prefix varchar(512) not null unique)");
+        codec = new OriginUrlCodec(new OriginUrlProperties(100_000, 2, DataSize.ofBytes(64)), dataSource);
+        codec.afterSingletonsInstantiated();
+
+        var random = new SplittableRandom(42);
+        originUrls = new String[URLS];
+        urlEncoded = new String[URLS];
+        encoded = new byte[URLS][];
+        for (int i = 0; i < URLS; i++) {
+            originUrls[i] = originUrl(random);
+            urlEncoded[i] = URLEncoder.encode(originUrls[i], StandardCharsets.UTF_8);
+            encoded[i] = codec.encode(originUrls[i]);
+        }
+        var textBytes = Arrays.stream(urlEncoded).mapToLong(String::length).sum();
+        var codecBytes = Arrays.stream(encoded).mapToLong(bytes -> bytes.length).sum();
+        System.out.println(STR. "\nUrl encoded text: \{ textBytes / URLS } bytes per url, codec: \{ codecBytes / URLS } bytes per url, \{ codec.prefixes() } prefixes" );
+    }
+
+    /**
+     * @return an url of a host drawn with a skewed distribution, the first hosts being the most frequent
+     */
+    private static String originUrl(SplittableRandom random) {
+        var host = (int) Math.pow(HOSTS, random.nextDouble());
+        var url = new StringBuilder(STR. "https://www.site\{ host }.com/" );
+        for (int segment = random.nextInt(1, 5); segment > 0; segment--) {
+            url.append("section-").append(random.nextInt(100)).append('/');
+        }
+        url.append("article-").append(random.nextInt(1_000_000)).append(".html");
+        if (random.nextInt(3) == 0) {
+            url.append("?utm_source=").append(CAMPAIGN_SOURCES[random.nextInt(CAMPAIGN_SOURCES.length)])
+                    .append("&utm_medium=email&utm_campaign=campaign-").append(random.nextInt(1000))
+                    .append("&utm_content=").append(Long.toHexString(random.nextLong()));
+        }
+        return url.toString();
+    }
+
+    @Benchmark
+    public String urlDecode() {
+        return URLDecoder.decode(urlEncoded[ThreadLocalRandom.current().nextInt(URLS)], StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String codecDecode() {
+        return codec.decode(encoded[ThreadLocalRandom.current().nextInt(URLS)]);
+    }
+
+    @Benchmark
+    public String urlEncode() {
+        return URLEncoder.encode(originUrls[ThreadLocalRandom.current().nextInt(URLS)], StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] codecEncode() {
+        return codec.encode(originUrls[ThreadLocalRandom.current().nextInt(URLS)]);
+    }
+}
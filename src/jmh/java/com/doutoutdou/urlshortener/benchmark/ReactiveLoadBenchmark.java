@@ -0,0 +1,100 @@
+package com.doutoutdou.urlshortener.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Redirects of the servlet mode (Tomcat, JPA) and of the reactive mode (WebFlux on Netty, R2DBC), side by side.
+ * Every redirect reads the database (no cache), with 400 concurrent connections.
+ * At the end of each trial, the heap used under load above the idle heap and the peak number of threads are
+ * printed, per concurrent connection. The http client runs in the same JVM, its share is the same in both modes.
+ * The reactive mode needs its maven profile: ./mvnw -Pbenchmark,reactive -DskipTests verify -Djmh.args=ReactiveLoadBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "-Xmx2g"})
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(ReactiveLoadBenchmark.CONNECTIONS)
+public class ReactiveLoadBenchmark {
+    static final int CONNECTIONS = 400;
+    private static final int ROWS = 10_000;
+
+    @Param({"SERVLET", "REACTIVE"})
+    private WebApplicationType mode;
+
+    private final AtomicLong maxHeapUsed = new AtomicLong();
+    private long idleHeapUsed;
+    private volatile boolean sampling;
+    private Thread sampler;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private String baseUrl;
+    private List<String> shortenedHashes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContexts.start(mode,
+                "url-shortener.cache.maximum-size=0",
+                "spring.datasource.hikari.maximum-pool-size=50",
+                "spring.r2dbc.url=r2dbc:h2:mem:///test",
+                "spring.r2dbc.pool.max-size=50",
+                "spring.webflux.base-path=/api");
+        shortenedHashes = BenchmarkContexts.populate(context, ROWS).stream()
+                .map(shortenedUrl -> shortenedUrl.substring(shortenedUrl.length() - 10))
+                .toList();
+        baseUrl = STR. "http://localhost:\{ context.getEnvironment().getProperty("local.server.port") }/api" ;
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+
+        System.gc();
+        var memory = ManagementFactory.getMemoryMXBean();
+        idleHeapUsed = memory.getHeapMemoryUsage().getUsed();
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+        sampling = true;
+        sampler = Thread.ofPlatform().daemon().name("heap-sampler").start(() -> {
+            while (sampling) {
+                maxHeapUsed.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        sampling = false;
+        sampler.join();
+        var heapPerConnection = (maxHeapUsed.get() - idleHeapUsed) / CONNECTIONS;
+        var peakThreads = ManagementFactory.getThreadMXBean().getPeakThreadCount();
+        System.out.println(STR. "\n\{ mode }: \{ heapPerConnection / 1024 } KB of heap and \{ (double) peakThreads / CONNECTIONS } threads per concurrent connection (peak \{ peakThreads } threads)" );
+        httpClient.close();
+        context.close();
+    }
+
+    @Benchmark
+    public int redirect() throws IOException, InterruptedException {
+        var shortenedHash = shortenedHashes.get(ThreadLocalRandom.current().nextInt(ROWS));
+        return httpClient.send(HttpRequest.newBuilder(URI.create(baseUrl + "/" + shortenedHash)).build(), HttpResponse.BodyHandlers.discarding())
+                .statusCode();
+    }
+}
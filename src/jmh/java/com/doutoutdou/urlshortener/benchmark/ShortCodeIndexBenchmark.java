@@ -0,0 +1,92 @@
+package com.doutoutdou.urlshortener.benchmark;
+
+import com.doutoutdou.urlshortener.store.OffHeapLongIndex;
+import com.doutoutdou.urlshortener.utils.Base36;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup of a shortened hash in the off-heap short code index, versus a heap map of the shortened hash strings
+ * The memory per entry of both is printed at setup, the heap one being measured from the used heap after a GC.
+ * Run with {@code -prof gc} to check that the index lookup doesn't allocate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ShortCodeIndexBenchmark {
+
+    @Param({"1000000", "10000000"})
+    private int entries;
+
+    /**
+     * false to only measure the off-heap index, for the larger sizes
+     */
+    @Param({"true"})
+    private boolean heapMap;
+
+    private OffHeapLongIndex index;
+    private Map<String, Long> map;
+    private long[] shortCodes;
+    private String[] shortenedHashes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var random = new SplittableRandom(42);
+        shortCodes = new long[entries];
+        index = new OffHeapLongIndex(entries);
+        for (int i = 0; i < entries; i++) {
+            shortCodes[i] = random.nextLong(Base36.MAX_VALUE);
+            index.put(shortCodes[i], i);
+        }
+        System.out.println(STR. "\nOff-heap index: \{ index.memoryBytes() / 1024 / 1024 } MB, \{ index.memoryBytes() / entries } bytes per entry" );
+
+        // A sample of the shortened hashes, to look up the map without decoding, counted in the map memory
+        var before = heapMap ? usedHeap() : 0;
+        shortenedHashes = new String[Math.min(entries, 1_000_000)];
+        for (int i = 0; i < shortenedHashes.length; i++) {
+            shortenedHashes[i] = Base36.encode(shortCodes[i]);
+        }
+        if (heapMap) {
+            map = HashMap.newHashMap(entries);
+            for (int i = 0; i < entries; i++) {
+                map.put(i < shortenedHashes.length ? shortenedHashes[i] : Base36.encode(shortCodes[i]), (long) i);
+            }
+            var bytes = usedHeap() - before;
+            System.out.println(STR. "Heap map: \{ bytes / 1024 / 1024 } MB, \{ bytes / entries } bytes per entry" );
+        }
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        var runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Benchmark
+    public long indexKnown() {
+        return index.get(shortCodes[ThreadLocalRandom.current().nextInt(entries)]);
+    }
+
+    @Benchmark
+    public long indexKnownFromString() {
+        return index.get(Base36.decode(shortenedHashes[ThreadLocalRandom.current().nextInt(shortenedHashes.length)]));
+    }
+
+    @Benchmark
+    public long indexUnknown() {
+        return index.get(ThreadLocalRandom.current().nextLong(Base36.MAX_VALUE));
+    }
+
+    @Benchmark
+    public Long heapMapKnown() {
+        return map == null ? null : map.get(shortenedHashes[ThreadLocalRandom.current().nextInt(shortenedHashes.length)]);
+    }
+}
@@ -0,0 +1,103 @@
+package com.doutoutdou.urlshortener.benchmark;
+
+import com.doutoutdou.urlshortener.dto.ShortenedUrlRequestDto;
+import com.doutoutdou.urlshortener.dto.ShortenedUrlResponseDto;
+import com.doutoutdou.urlshortener.dto.UrlRequestDto;
+import com.doutoutdou.urlshortener.dto.UrlResponseDto;
+import com.doutoutdou.urlshortener.exception.ShortenedUrlNotFoundException;
+import com.doutoutdou.urlshortener.service.UrlService;
+import com.doutoutdou.urlshortener.utils.Base36;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.doutoutdou.urlshortener.utils.Constants.SHORTENED_URL_BASE_PATH;
+
+/**
+ * UrlService against an in memory database, or the mapped store, filled with `rows` urls
+ * The in memory database must fit in the heap: with -Xmx4g it doesn't at 10000000 rows, the mapped store does.
+ * The shortened hashes are kept as longs, so that 50000000 rows fit in the heap too: each resolution of a known
+ * url encodes its shortened hash again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "-Xmx4g"})
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class UrlServiceBenchmark {
+    private static final Path STORE_DIRECTORY = Path.of("target/benchmark/url-store");
+
+    @Param({"10000", "1000000", "10000000", "50000000"})
+    private int rows;
+
+    /**
+     * 0 to measure the resolution without cache
+     */
+    @Param({"100000", "0"})
+    private long cacheMaximumSize;
+
+    /**
+     * true to skip the database lookups of the unknown urls and shortened hashes
+     */
+    @Param({"false", "true"})
+    private boolean existenceFilter;
+
+    /**
+     * jpa or mapped
+     */
+    @Param({"jpa", "mapped"})
+    private String store;
+
+    private ConfigurableApplicationContext context;
+    private UrlService urlService;
+    private long[] shortenedHashes;
+    private AtomicLong newUrlIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        FileSystemUtils.deleteRecursively(STORE_DIRECTORY);
+        context = BenchmarkContexts.start(WebApplicationType.NONE,
+                STR. "url-shortener.cache.maximum-size=\{ cacheMaximumSize }" ,
+                STR. "url-shortener.existence-filter.enabled=\{ existenceFilter }" ,
+                STR. "url-shortener.store.type=\{ store }" ,
+                STR. "url-shortener.store.directory=\{ STORE_DIRECTORY }" );
+        urlService = context.getBean(UrlService.class);
+        shortenedHashes = BenchmarkContexts.populateShortenedHashes(context, rows);
+        newUrlIndex = new AtomicLong(rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ShortenedUrlResponseDto buildShortenedUrlKnown() {
+        return urlService.buildShortenedUrl(new UrlRequestDto(BenchmarkContexts.url(ThreadLocalRandom.current().nextInt(rows))));
+    }
+
+    @Benchmark
+    public ShortenedUrlResponseDto buildShortenedUrlNew() {
+        return urlService.buildShortenedUrl(new UrlRequestDto(BenchmarkContexts.url(newUrlIndex.getAndIncrement())));
+    }
+
+    @Benchmark
+    public UrlResponseDto findFromShortenedUrl() throws ShortenedUrlNotFoundException {
+        var shortenedHash = Base36.encode(shortenedHashes[ThreadLocalRandom.current().nextInt(rows)]);
+        return urlService.findFromShortenedUrl(new ShortenedUrlRequestDto(SHORTENED_URL_BASE_PATH + shortenedHash));
+    }
+
+    @Benchmark
+    public Optional<String> resolveUnknown() {
+        return urlService.resolve(Base36.encode(ThreadLocalRandom.current().nextLong(Base36.MAX_VALUE)));
+    }
+}
@@ -0,0 +1,116 @@
+package com.doutoutdou.urlshortener.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Redirects against a slow database, with platform threads (Tomcat pool of 200 threads) and virtual threads.
+ * Every redirect reads the database (no cache) and holds its connection during the database latency.
+ * The connection pool is bigger than the Tomcat thread pool, so the maximum concurrency, printed at the end
+ * of each trial, is bounded by the request threads only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "-Xmx2g"})
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(400)
+public class VirtualThreadsLoadBenchmark {
+    private static final int ROWS = 10_000;
+
+    @Param({"false", "true"})
+    private boolean virtualThreads;
+
+    @Param({"20"})
+    private long databaseLatencyMillis;
+
+    private final AtomicInteger concurrentCalls = new AtomicInteger();
+    private final AtomicInteger maxConcurrentCalls = new AtomicInteger();
+    private volatile boolean slow;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private String baseUrl;
+    private List<String> shortenedHashes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContexts.builder(WebApplicationType.SERVLET,
+                        STR. "url-shortener.virtual-threads.enabled=\{ virtualThreads }" ,
+                        "url-shortener.cache.maximum-size=0",
+                        "spring.datasource.hikari.maximum-pool-size=500",
+                        "spring.datasource.hikari.minimum-idle=10")
+                .initializers(applicationContext -> applicationContext.getBeanFactory().addBeanPostProcessor(new SlowDataSourcePostProcessor()))
+                .run();
+        shortenedHashes = BenchmarkContexts.populate(context, ROWS).stream()
+                .map(shortenedUrl -> shortenedUrl.substring(shortenedUrl.length() - 10))
+                .toList();
+        baseUrl = STR. "http://localhost:\{ context.getEnvironment().getProperty("local.server.port") }/api" ;
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+        slow = true;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println(STR. "\nMaximum concurrent database calls: \{ maxConcurrentCalls.get() }" );
+        httpClient.close();
+        context.close();
+    }
+
+    @Benchmark
+    public int redirect() throws IOException, InterruptedException {
+        var shortenedHash = shortenedHashes.get(ThreadLocalRandom.current().nextInt(ROWS));
+        return httpClient.send(HttpRequest.newBuilder(URI.create(baseUrl + "/" + shortenedHash)).build(), HttpResponse.BodyHandlers.discarding())
+                .statusCode();
+    }
+
+    /**
+     * Add the database latency once a connection is taken from the pool, as a slow query would
+     */
+    private class SlowDataSourcePostProcessor implements BeanPostProcessor {
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!(bean instanceof DataSource dataSource)) {
+                return bean;
+            }
+            return new DelegatingDataSource(dataSource) {
+                @Override
+                public Connection getConnection() throws SQLException {
+                    var connection = super.getConnection();
+                    if (slow) {
+                        maxConcurrentCalls.accumulateAndGet(concurrentCalls.incrementAndGet(), Math::max);
+                        try {
+                            Thread.sleep(databaseLatencyMillis);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            concurrentCalls.decrementAndGet();
+                        }
+                    }
+                    return connection;
+                }
+            };
+        }
+    }
+}
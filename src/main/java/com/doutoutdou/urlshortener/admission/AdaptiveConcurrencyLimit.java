@@ -0,0 +1,94 @@
+package com.doutoutdou.urlshortener.admission;
+
+import com.doutoutdou.urlshortener.configuration.AdmissionProperties;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Limit of the concurrent requests, following the latency of the database (additive increase, multiplicative decrease)
+ * A request completed under the latency threshold while the limit is used raises it by 1 / limit, so about 1 per
+ * limit requests. A slower or failed request multiplies it by the backoff ratio, at most once per threshold so that
+ * the requests slowed down together count once. The requests above the limit are rejected at once instead of
+ * waiting for a connection to an overloaded database. Lock free: the limit and the requests in flight are atomics.
+ */
+class AdaptiveConcurrencyLimit {
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThreshold;
+    private final double backoffRatio;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Bits of the double limit
+    private final AtomicLong limit;
+    private final AtomicLong lastDecrease = new AtomicLong(Long.MIN_VALUE);
+
+    AdaptiveConcurrencyLimit(AdmissionProperties.Concurrency properties) {
+        this.minLimit = properties.minLimit();
+        this.maxLimit = properties.maxLimit();
+        this.latencyThreshold = properties.latencyThreshold().toNanos();
+        this.backoffRatio = properties.backoffRatio();
+        this.limit = new AtomicLong(Double.doubleToRawLongBits(properties.initialLimit()));
+    }
+
+    /**
+     * @return true if the request is admitted, it must then be released
+     */
+    boolean tryAcquire() {
+        var currentLimit = (int) limit();
+        while (true) {
+            var current = inFlight.get();
+            if (current >= currentLimit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Release an admitted request and adapt the limit to its latency
+     *
+     * @param start  the start of the request, from {@link System#nanoTime()}
+     * @param end    the end of the request
+     * @param failed true if the request failed, like an unavailable database
+     */
+    void release(long start, long end, boolean failed) {
+        var used = inFlight.getAndDecrement();
+        if (failed || end - start > latencyThreshold) {
+            var last = lastDecrease.get();
+            if ((last == Long.MIN_VALUE || end - last >= latencyThreshold) && lastDecrease.compareAndSet(last, end)) {
+                update(current -> Math.max(minLimit, current * backoffRatio));
+            }
+        } else if (2 * used >= limit()) {
+            update(current -> Math.min(maxLimit, current + 1 / current));
+        }
+    }
+
+    /**
+     * Release an admitted request without adapting the limit, like a streamed response whose latency is the one of
+     * its client
+     */
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * @return the current limit
+     */
+    double limit() {
+        return Double.longBitsToDouble(limit.get());
+    }
+
+    /**
+     * @return the requests in flight
+     */
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    private void update(DoubleUnaryOperator function) {
+        limit.updateAndGet(bits -> Double.doubleToRawLongBits(function.applyAsDouble(Double.longBitsToDouble(bits))));
+    }
+}
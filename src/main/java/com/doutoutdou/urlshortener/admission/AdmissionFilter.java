@@ -0,0 +1,194 @@
+package com.doutoutdou.urlshortener.admission;
+
+import com.doutoutdou.urlshortener.configuration.AdmissionProperties;
+import com.doutoutdou.urlshortener.utils.ShortenedHashes;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control of the api and redirect requests, before their body is read, validated or the database called
+ * <p>
+ * Each client, identified by its api key header if it is a known key else by its ip address, has a budget for the creations
+ * and another one for the resolutions: a request over budget is answered with a 429 and the time until the next one
+ * is allowed. The admitted requests are then bounded by an {@link AdaptiveConcurrencyLimit} shared by all the
+ * clients, the requests above it being answered with a 503, so that a slow database sheds load instead of queuing
+ * requests on its connection pool. The other requests (actuator, documentation) are not limited.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(prefix = "url-shortener.admission", name = "enabled", havingValue = "true")
+public class AdmissionFilter extends OncePerRequestFilter {
+    public static final String REJECTED = "url.shortener.admission.rejected";
+    private static final String URL_PATH = "/v1/url";
+    private static final String RESOLVE_PATH = "/v1/url/resolve";
+    private static final String STATS_PATH = "/v1/stats";
+
+    private final String apiKeyHeader;
+    private final Set<String> apiKeys;
+    private final Map<Operation, ClientRateLimiter> rateLimiters = new EnumMap<>(Operation.class);
+    private final Map<Operation, Counter> rateLimited = new EnumMap<>(Operation.class);
+    // null if disabled
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+    private final Counter overloaded;
+
+    public AdmissionFilter(AdmissionProperties properties, MeterRegistry meterRegistry) {
+        this.apiKeyHeader = StringUtils.hasText(properties.apiKeyHeader()) ? properties.apiKeyHeader() : null;
+        this.apiKeys = properties.apiKeys() == null ? Set.of() : Set.copyOf(properties.apiKeys());
+        rateLimiters.put(Operation.CREATE, new ClientRateLimiter(properties.create(), properties.maxClients(), Ticker.systemTicker()));
+        rateLimiters.put(Operation.RESOLVE, new ClientRateLimiter(properties.resolve(), properties.maxClients(), Ticker.systemTicker()));
+        this.concurrencyLimit = properties.concurrency().enabled() ? new AdaptiveConcurrencyLimit(properties.concurrency()) : null;
+
+        for (var operation : Operation.values()) {
+            rateLimited.put(operation, Counter.builder(REJECTED)
+                    .description("Requests rejected by the admission control")
+                    .tags("operation", operation.tag, "reason", "rate_limit")
+                    .register(meterRegistry));
+            Gauge.builder("url.shortener.admission.clients", rateLimiters.get(operation), ClientRateLimiter::clients)
+                    .description("Clients tracked by the rate limiter")
+                    .tags("operation", operation.tag)
+                    .register(meterRegistry);
+        }
+        this.overloaded = Counter.builder(REJECTED)
+                .description("Requests rejected by the admission control")
+                .tags("operation", "all", "reason", "overload")
+                .register(meterRegistry);
+        if (concurrencyLimit != null) {
+            Gauge.builder("url.shortener.admission.limit", concurrencyLimit, AdaptiveConcurrencyLimit::limit)
+                    .description("Adaptive limit of the concurrent requests")
+                    .register(meterRegistry);
+            Gauge.builder("url.shortener.admission.in.flight", concurrencyLimit, AdaptiveConcurrencyLimit::inFlight)
+                    .description("Concurrent requests admitted")
+                    .register(meterRegistry);
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
+        var operation = operation(request);
+        if (operation == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        var wait = rateLimiters.get(operation).tryAcquire(client(request));
+        if (wait > 0) {
+            rateLimited.get(operation).increment();
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, TimeUnit.NANOSECONDS.toSeconds(wait - 1) + 1);
+            return;
+        }
+        if (concurrencyLimit == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        if (!concurrencyLimit.tryAcquire()) {
+            overloaded.increment();
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, 1);
+            return;
+        }
+
+        var start = System.nanoTime();
+        var failed = true;
+        try {
+            filterChain.doFilter(request, response);
+            failed = response.getStatus() >= HttpStatus.INTERNAL_SERVER_ERROR.value();
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleaseOnComplete(concurrencyLimit));
+            } else {
+                concurrencyLimit.release(start, System.nanoTime(), failed);
+            }
+        }
+    }
+
+    /**
+     * @return the budget of a request, null if it isn't limited
+     */
+    private static Operation operation(HttpServletRequest request) {
+        var path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.startsWith(URL_PATH)) {
+            return HttpMethod.POST.matches(request.getMethod()) && !path.startsWith(RESOLVE_PATH) ? Operation.CREATE : Operation.RESOLVE;
+        }
+        if (path.startsWith(STATS_PATH)) {
+            return Operation.RESOLVE;
+        }
+        // Redirect, the invalid shortened hashes being answered without database call anyway
+        return path.length() > 1 && ShortenedHashes.isValid(path.substring(1)) ? Operation.RESOLVE : null;
+    }
+
+    /**
+     * @return the known api key of a request, else its ip address
+     */
+    private String client(HttpServletRequest request) {
+        if (apiKeyHeader != null) {
+            var apiKey = request.getHeader(apiKeyHeader);
+            if (apiKey != null && apiKeys.contains(apiKey)) {
+                return "key:" + apiKey;
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, long retryAfterSeconds) {
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+    }
+
+    private enum Operation {
+        CREATE("create"), RESOLVE("resolve");
+
+        private final String tag;
+
+        Operation(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    /**
+     * Release of an asynchronous request, like a streamed response, once complete
+     */
+    private record ReleaseOnComplete(AdaptiveConcurrencyLimit concurrencyLimit) implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            concurrencyLimit.release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.doutoutdou.urlshortener.admission;
+
+import com.doutoutdou.urlshortener.configuration.AdmissionProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets of the clients for a kind of requests, refilled at a constant rate up to the burst
+ * A bucket is the theoretical arrival time of the next request (generic cell rate algorithm), taken by a compare and
+ * set: a request never locks. A bucket idle long enough to be full again is forgotten. Above the maximum number of
+ * clients the least recently seen ones are forgotten too, getting a full bucket on their next request.
+ */
+class ClientRateLimiter {
+    private final long interval;
+    private final long tolerance;
+    private final Ticker ticker;
+    // client -> theoretical arrival time, in nanoseconds of the ticker
+    private final Cache<String, AtomicLong> buckets;
+
+    ClientRateLimiter(AdmissionProperties.Budget budget, int maxClients, Ticker ticker) {
+        this.interval = (long) (TimeUnit.SECONDS.toNanos(1) / budget.rate());
+        this.tolerance = (budget.burst() - 1) * interval;
+        this.ticker = ticker;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(Duration.ofNanos(tolerance + interval))
+                .ticker(ticker)
+                .build();
+    }
+
+    /**
+     * Take a token of a client
+     *
+     * @param client the client identity
+     * @return 0 if a token was taken, else the nanoseconds until the next one
+     */
+    long tryAcquire(String client) {
+        var now = ticker.read();
+        var bucket = buckets.get(client, _ -> new AtomicLong(now));
+        while (true) {
+            var arrival = bucket.get();
+            var start = Math.max(arrival, now);
+            var wait = start - now - tolerance;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.compareAndSet(arrival, start + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * @return the number of clients tracked, the idle ones being forgotten first
+     */
+    long clients() {
+        buckets.cleanUp();
+        return buckets.estimatedSize();
+    }
+}
@@ -0,0 +1,268 @@
+package com.doutoutdou.urlshortener.analytics;
+
+import com.doutoutdou.urlshortener.configuration.AnalyticsProperties;
+import com.doutoutdou.urlshortener.store.UrlStore;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counting of the resolutions of each shortened url, without a database write per resolution
+ * The resolutions are counted in memory, in a striped counter per shortened url, and the deltas are added to the
+ * url_analytics table in batches every flush interval. The shortened urls not resolved since the previous flush
+ * are then forgotten, a resolution racing that removal may not be counted.
+ * The most resolved shortened urls since startup are tracked by a {@link SpaceSavingSketch}, fed on each flush.
+ * With several instances, the table sums the counts of all of them but the top is the one of this instance.
+ */
+@Component
+@Slf4j
+public class ResolveAnalytics implements DisposableBean {
+    public static final String FLUSH = "url.shortener.analytics.flush";
+    public static final String TRACKED = "url.shortener.analytics.tracked";
+    private static final int CHUNK_SIZE = 1000;
+
+    private final boolean enabled;
+    private final Duration flushInterval;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final UrlStore urlStore;
+    private final SpaceSavingSketch top;
+    private final Timer flushTimer;
+
+    // shortened hash -> resolutions since the previous flush
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile Thread flusher;
+
+    public ResolveAnalytics(AnalyticsProperties properties, JdbcTemplate jdbcTemplate,
+                            PlatformTransactionManager transactionManager, UrlStore urlStore, MeterRegistry meterRegistry) {
+        this.enabled = properties.enabled();
+        this.flushInterval = properties.flushInterval();
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.urlStore = urlStore;
+        this.top = new SpaceSavingSketch(properties.topCapacity());
+
+        Gauge.builder(TRACKED, counters, Map::size)
+                .description("Shortened urls resolved since the previous save of the counts")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder(FLUSH)
+                .description("Save of the resolution counts")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Start the periodic flush once the application is started
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            flusher = Thread.ofVirtual().name("analytics-flush").start(this::flushPeriodically);
+        }
+    }
+
+    /**
+     * Count a resolution of a known shortened url, lock free
+     *
+     * @param shortenedHash the shortened hash resolved
+     */
+    public void resolved(String shortenedHash) {
+        if (!enabled) {
+            return;
+        }
+        var counter = counters.get(shortenedHash);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(shortenedHash, _ -> new Counter());
+        }
+        counter.hits.increment();
+        counter.lastAccess = System.currentTimeMillis();
+    }
+
+    /**
+     * @param shortenedHash the shortened hash
+     * @return its resolutions, including the ones not saved yet, or empty if the shortened url is unknown
+     */
+    public Optional<UrlStats> stats(String shortenedHash) {
+        var saved = jdbcTemplate.query("select hits, last_access_at from url_analytics where shortened_hash = ?",
+                (resultSet, _) -> new UrlStats(resultSet.getLong(1), resultSet.getTimestamp(2).toInstant()), shortenedHash);
+        var stats = saved.isEmpty() ? null : saved.getFirst();
+        var counter = counters.get(shortenedHash);
+        if (counter != null && counter.lastAccess != 0) {
+            var lastAccess = Instant.ofEpochMilli(counter.lastAccess);
+            stats = stats == null
+                    ? new UrlStats(counter.hits.sum(), lastAccess)
+                    : new UrlStats(stats.hits() + counter.hits.sum(), lastAccess.isAfter(stats.lastAccess()) ? lastAccess : stats.lastAccess());
+        }
+        if (stats == null && urlStore.findByShortenedHash(shortenedHash).isPresent()) {
+            stats = new UrlStats(0, null);
+        }
+        return Optional.ofNullable(stats);
+    }
+
+    /**
+     * @param limit the maximum number of shortened hashes returned
+     * @return the most resolved shortened hashes since startup, as of the last flush, by descending count
+     */
+    public List<SpaceSavingSketch.Entry> top(int limit) {
+        return top.top(limit);
+    }
+
+    /**
+     * Add the counts since the previous flush to the table
+     * If the save fails, the counts are kept for the next flush
+     */
+    void flush() {
+        var sample = Timer.start();
+        var deltas = new ArrayList<Delta>();
+        for (var entry : counters.entrySet()) {
+            var counter = entry.getValue();
+            var hits = counter.hits.sumThenReset();
+            if (hits == 0 && counters.remove(entry.getKey(), counter)) {
+                // Not resolved since the previous flush: the resolutions counted meanwhile are still saved
+                hits = counter.hits.sumThenReset();
+            }
+            if (hits > 0) {
+                deltas.add(new Delta(entry.getKey(), hits, counter.lastAccess));
+            }
+        }
+        try {
+            while (!deltas.isEmpty()) {
+                var chunk = deltas.subList(0, Math.min(CHUNK_SIZE, deltas.size()));
+                try {
+                    transactionTemplate.executeWithoutResult(_ -> save(chunk));
+                } catch (DataIntegrityViolationException e) {
+                    // Inserted meanwhile by another instance: updated on the retry
+                    transactionTemplate.executeWithoutResult(_ -> save(chunk));
+                }
+                chunk.forEach(delta -> top.offer(delta.shortenedHash(), delta.hits()));
+                // Saved, not restored on a failure of the next chunks
+                chunk.clear();
+            }
+        } catch (RuntimeException e) {
+            deltas.forEach(this::restore);
+            throw e;
+        } finally {
+            sample.stop(flushTimer);
+        }
+    }
+
+    /**
+     * Forget the counts of deleted shortened urls, saved or not
+     * They are not removed from the top, where they age out as the other urls are resolved.
+     *
+     * @param shortenedHashes the shortened hashes deleted
+     */
+    public void remove(Collection<String> shortenedHashes) {
+        shortenedHashes.forEach(counters::remove);
+        jdbcTemplate.batchUpdate("delete from url_analytics where shortened_hash = ?",
+                shortenedHashes.stream().map(shortenedHash -> new Object[]{shortenedHash}).toList());
+    }
+
+    /**
+     * Forget all the counts, saved or not
+     */
+    public void clear() {
+        counters.clear();
+        top.clear();
+        jdbcTemplate.update("delete from url_analytics");
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        var thread = flusher;
+        if (thread != null) {
+            stopped.countDown();
+            thread.join();
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.error(STR. "Resolution counts of \{ counters.size() } shortened urls lost" , e);
+            }
+        }
+    }
+
+    private void flushPeriodically() {
+        while (true) {
+            try {
+                if (stopped.await(flushInterval.toNanos(), TimeUnit.NANOSECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.error(STR. "Save of the resolution counts failed, retried in \{ flushInterval }" , e);
+            }
+        }
+    }
+
+    /**
+     * Update the rows of the chunk with a batch update, and insert the missing ones with a batch insert
+     */
+    private void save(List<Delta> chunk) {
+        var updated = jdbcTemplate.batchUpdate(
+                "update url_analytics set hits = hits + ?, last_access_at = greatest(last_access_at, ?) where shortened_hash = ?",
+                chunk.stream().map(delta -> new Object[]{delta.hits(), new Timestamp(delta.lastAccess()), delta.shortenedHash()}).toList());
+        var missing = new ArrayList<Object[]>();
+        for (int i = 0; i < chunk.size(); i++) {
+            if (updated[i] == 0) {
+                var delta = chunk.get(i);
+                missing.add(new Object[]{delta.shortenedHash(), delta.hits(), new Timestamp(delta.lastAccess())});
+            } else if (updated[i] == Statement.SUCCESS_NO_INFO) {
+                throw new IllegalStateException("The database must return the update counts of a batch");
+            }
+        }
+        if (!missing.isEmpty()) {
+            jdbcTemplate.batchUpdate("insert into url_analytics (shortened_hash, hits, last_access_at) values (?, ?, ?)", missing);
+        }
+    }
+
+    private void restore(Delta delta) {
+        var counter = counters.computeIfAbsent(delta.shortenedHash(), _ -> new Counter());
+        counter.hits.add(delta.hits());
+        if (counter.lastAccess < delta.lastAccess()) {
+            counter.lastAccess = delta.lastAccess();
+        }
+    }
+
+    /**
+     * @param hits       the number of resolutions
+     * @param lastAccess the last resolution, null if never resolved
+     */
+    public record UrlStats(long hits, Instant lastAccess) {
+    }
+
+    private static final class Counter {
+        private final LongAdder hits = new LongAdder();
+        // Epoch millis, the last writer wins
+        private volatile long lastAccess;
+    }
+
+    private record Delta(String shortenedHash, long hits, long lastAccess) {
+    }
+}
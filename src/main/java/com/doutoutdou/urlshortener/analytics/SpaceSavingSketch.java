@@ -0,0 +1,76 @@
+package com.doutoutdou.urlshortener.analytics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Space-Saving sketch of the most frequent keys of a stream, in a memory bounded by its capacity
+ * When the sketch is full, an unknown key replaces the least counted one and inherits its count, which is kept as
+ * the maximum overestimation of the new key. Every key counted more than total / capacity is in the sketch, and
+ * the estimated count of a key is never below its actual count.
+ */
+public final class SpaceSavingSketch {
+    private static final Comparator<Entry> BY_COUNT = Comparator.comparingLong(Entry::count).thenComparing(Entry::key);
+
+    private final int capacity;
+    private final Map<String, Entry> entries;
+    private final TreeSet<Entry> byCount = new TreeSet<>(BY_COUNT);
+
+    public SpaceSavingSketch(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(STR. "Capacity must be positive: \{ capacity }" );
+        }
+        this.capacity = capacity;
+        this.entries = HashMap.newHashMap(capacity);
+    }
+
+    /**
+     * @param key    the key seen
+     * @param weight the number of times it was seen
+     */
+    public synchronized void offer(String key, long weight) {
+        var entry = entries.get(key);
+        if (entry != null) {
+            byCount.remove(entry);
+            entry = new Entry(key, entry.count() + weight, entry.error());
+        } else if (entries.size() < capacity) {
+            entry = new Entry(key, weight, 0);
+        } else {
+            var min = byCount.pollFirst();
+            entries.remove(min.key());
+            entry = new Entry(key, min.count() + weight, min.count());
+        }
+        entries.put(key, entry);
+        byCount.add(entry);
+    }
+
+    /**
+     * @param limit the maximum number of keys returned
+     * @return the most counted keys, by descending count
+     */
+    public synchronized List<Entry> top(int limit) {
+        var top = new ArrayList<Entry>(Math.min(limit, entries.size()));
+        var iterator = byCount.descendingIterator();
+        while (top.size() < limit && iterator.hasNext()) {
+            top.add(iterator.next());
+        }
+        return top;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        byCount.clear();
+    }
+
+    /**
+     * @param key   the key
+     * @param count its estimated count, an upper bound of its actual count
+     * @param error the maximum overestimation of the count
+     */
+    public record Entry(String key, long count, long error) {
+    }
+}
@@ -0,0 +1,105 @@
+package com.doutoutdou.urlshortener.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe Bloom filter of strings: a value not in the filter has never been added,
+ * a value in the filter has probably been added.
+ * The bit indexes are derived from two 64 bits hashes of the value (double hashing).
+ */
+class BloomFilter {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final AtomicLongArray words;
+    private final long bitSize;
+    private final int hashFunctions;
+    private final AtomicLong bitCount = new AtomicLong();
+
+    /**
+     * @param expectedInsertions       the expected number of values
+     * @param falsePositiveProbability the false positive probability once the expected number of values are added
+     */
+    BloomFilter(long expectedInsertions, double falsePositiveProbability) {
+        var insertions = Math.max(expectedInsertions, 1);
+        var bits = (long) Math.ceil(-insertions * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        this.words = new AtomicLongArray(Math.toIntExact((bits + Long.SIZE - 1) / Long.SIZE));
+        this.bitSize = (long) words.length() * Long.SIZE;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitSize / insertions * Math.log(2)));
+    }
+
+    /**
+     * Add a value
+     *
+     * @param value the value
+     */
+    void put(CharSequence value) {
+        var hash1 = hash(value);
+        var hash2 = mix(hash1 + 0x9e3779b97f4a7c15L) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            var bit = Math.floorMod(hash1 + i * hash2, bitSize);
+            var word = (int) (bit >>> 6);
+            var mask = 1L << bit;
+            var current = words.get(word);
+            while ((current & mask) == 0) {
+                var witness = words.compareAndExchange(word, current, current | mask);
+                if (witness == current) {
+                    bitCount.incrementAndGet();
+                    break;
+                }
+                current = witness;
+            }
+        }
+    }
+
+    /**
+     * @param value the value
+     * @return false if the value has never been added, true if it has probably been added
+     */
+    boolean mightContain(CharSequence value) {
+        var hash1 = hash(value);
+        var hash2 = mix(hash1 + 0x9e3779b97f4a7c15L) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            var bit = Math.floorMod(hash1 + i * hash2, bitSize);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the size of the bit array, in bytes
+     */
+    long memoryBytes() {
+        return bitSize / Byte.SIZE;
+    }
+
+    /**
+     * @return the probability that a value never added is in the filter, from the ratio of bits set
+     */
+    double expectedFalsePositiveProbability() {
+        return Math.pow((double) bitCount.get() / bitSize, hashFunctions);
+    }
+
+    /**
+     * FNV-1a of the characters, followed by a mix of the bits as FNV alone spreads short strings badly
+     */
+    private static long hash(CharSequence value) {
+        var hash = FNV_OFFSET;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Finalizer of splitmix64
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,48 @@
+package com.doutoutdou.urlshortener.cache;
+
+import com.doutoutdou.urlshortener.configuration.SharedCacheProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Embedded stand-in of a shared cache, only shared by the users of this instance
+ * It has the behaviour of the remote implementation (ttl, known shortened hashes only) without a server.
+ */
+@Component
+@ConditionalOnProperty(prefix = "url-shortener.shared-cache", name = "type", havingValue = "in-memory")
+public class InMemorySharedUrlCache implements SharedUrlCache {
+
+    private final Cache<String, String> cache;
+
+    public InMemorySharedUrlCache(SharedCacheProperties properties) {
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(properties.ttl())
+                .build();
+    }
+
+    @Override
+    public Optional<String> get(String shortenedHash) {
+        return Optional.ofNullable(cache.getIfPresent(shortenedHash));
+    }
+
+    @Override
+    public Map<String, String> getAll(Collection<String> shortenedHashes) {
+        return cache.getAllPresent(shortenedHashes);
+    }
+
+    @Override
+    public void put(String shortenedHash, String originUrl) {
+        cache.put(shortenedHash, originUrl);
+    }
+
+    @Override
+    public void putAll(Map<String, String> originUrls) {
+        cache.putAll(originUrls);
+    }
+}
@@ -0,0 +1,36 @@
+package com.doutoutdou.urlshortener.cache;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * No shared cache: always empty
+ */
+@Component
+@ConditionalOnProperty(prefix = "url-shortener.shared-cache", name = "type", havingValue = "none", matchIfMissing = true)
+public class NoSharedUrlCache implements SharedUrlCache {
+
+    @Override
+    public Optional<String> get(String shortenedHash) {
+        return Optional.empty();
+    }
+
+    @Override
+    public Map<String, String> getAll(Collection<String> shortenedHashes) {
+        return Map.of();
+    }
+
+    @Override
+    public void put(String shortenedHash, String originUrl) {
+        // Nothing to share
+    }
+
+    @Override
+    public void putAll(Map<String, String> originUrls) {
+        // Nothing to share
+    }
+}
@@ -0,0 +1,96 @@
+package com.doutoutdou.urlshortener.cache;
+
+import com.doutoutdou.urlshortener.configuration.SharedCacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Shared cache stored in Redis, one string key with a ttl per shortened hash
+ * Redis errors are logged and handled as cache misses, the database stays the source of truth.
+ */
+@Component
+@ConditionalOnProperty(prefix = "url-shortener.shared-cache", name = "type", havingValue = "redis")
+@Slf4j
+public class RedisSharedUrlCache implements SharedUrlCache {
+
+    private final StringRedisTemplate redisTemplate;
+    private final String keyPrefix;
+    private final long ttlSeconds;
+
+    public RedisSharedUrlCache(StringRedisTemplate redisTemplate, SharedCacheProperties properties) {
+        this.redisTemplate = redisTemplate;
+        this.keyPrefix = properties.keyPrefix();
+        this.ttlSeconds = properties.ttl().toSeconds();
+    }
+
+    @Override
+    public Optional<String> get(String shortenedHash) {
+        try {
+            return Optional.ofNullable(redisTemplate.opsForValue().get(keyPrefix + shortenedHash));
+        } catch (DataAccessException e) {
+            log.warn(STR. "Shared cache unavailable: \{ e.getMessage() }" );
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Map<String, String> getAll(Collection<String> shortenedHashes) {
+        if (shortenedHashes.isEmpty()) {
+            return Map.of();
+        }
+        var keys = shortenedHashes.stream().map(shortenedHash -> keyPrefix + shortenedHash).toList();
+        try {
+            var values = redisTemplate.opsForValue().multiGet(keys);
+            if (values == null) {
+                return Map.of();
+            }
+            var originUrls = HashMap.<String, String>newHashMap(values.size());
+            var index = 0;
+            for (var shortenedHash : shortenedHashes) {
+                var value = values.get(index++);
+                if (value != null) {
+                    originUrls.put(shortenedHash, value);
+                }
+            }
+            return originUrls;
+        } catch (DataAccessException e) {
+            log.warn(STR. "Shared cache unavailable: \{ e.getMessage() }" );
+            return Map.of();
+        }
+    }
+
+    @Override
+    public void put(String shortenedHash, String originUrl) {
+        putAll(Map.of(shortenedHash, originUrl));
+    }
+
+    /**
+     * All the urls are written in a single round trip (pipeline)
+     */
+    @Override
+    public void putAll(Map<String, String> originUrls) {
+        if (originUrls.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.executePipelined((RedisCallback<List<Object>>) connection -> {
+                var stringConnection = (StringRedisConnection) connection;
+                originUrls.forEach((shortenedHash, originUrl) -> stringConnection.setEx(keyPrefix + shortenedHash, ttlSeconds, originUrl));
+                return null;
+            });
+        } catch (DataAccessException e) {
+            log.warn(STR. "Shared cache unavailable: \{ e.getMessage() }" );
+        }
+    }
+}
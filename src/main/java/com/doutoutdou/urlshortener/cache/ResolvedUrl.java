@@ -0,0 +1,16 @@
+package com.doutoutdou.urlshortener.cache;
+
+import java.time.Instant;
+
+/**
+ * An original url loaded on a cache miss
+ *
+ * @param originUrl the decoded original url
+ * @param expiresAt the expiration of the shortened url, null if it never expires
+ */
+public record ResolvedUrl(String originUrl, Instant expiresAt) {
+
+    public static ResolvedUrl permanent(String originUrl) {
+        return new ResolvedUrl(originUrl, null);
+    }
+}
@@ -0,0 +1,299 @@
+package com.doutoutdou.urlshortener.cache;
+
+import com.doutoutdou.urlshortener.configuration.UrlCacheProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Policy.VarExpiration;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Two levels cache of the decoded original urls, keyed by shortened hash.
+ * The first level is a bounded in-memory cache, the second one a {@link SharedUrlCache} shared by the instances
+ * of the application, so that a new instance is warmed by the others instead of the database.
+ * Unknown shortened hashes are only cached in memory (as an empty value) with their own, shorter, ttl.
+ * So are the urls which expire: until their expiration at most, and never shared as the shared cache has a single ttl.
+ * The hit, miss and eviction meters of the in-memory cache are registered with the cache name {@value #CACHE_NAME}.
+ */
+@Component
+public class ResolvedUrlCache implements MeterBinder {
+    public static final String CACHE_NAME = "resolved-urls";
+
+    private final Cache<String, Optional<String>> cache;
+    private final SharedUrlCache sharedCache;
+    private final Map<String, CompletableFuture<Optional<String>>> loading = new ConcurrentHashMap<>();
+    private final Duration ttl;
+
+    @Autowired
+    public ResolvedUrlCache(UrlCacheProperties properties, SharedUrlCache sharedCache) {
+        this(properties, sharedCache, Ticker.systemTicker());
+    }
+
+    ResolvedUrlCache(UrlCacheProperties properties, SharedUrlCache sharedCache, Ticker ticker) {
+        this.sharedCache = sharedCache;
+        this.ttl = properties.ttl();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.maximumSize())
+                .expireAfter(new ResolvedUrlExpiry(properties.ttl().toNanos(), properties.negativeTtl().toNanos()))
+                .ticker(ticker)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Get the original url of a shortened hash, from the shared cache or the loader if it is not cached in memory
+     * Concurrent misses on the same shortened hash are coalesced: only the first one reads the shared cache and
+     * calls the loader, the others wait for its result. The loader is called outside of the cache lock (a computing
+     * cache loads under a synchronized block, which pins the carrier of a virtual thread during the database call).
+     * A url put meanwhile is never replaced by the loaded value.
+     *
+     * @param shortenedHash the shortened hash
+     * @param loader        the function used to load the original url on a cache miss
+     * @return the original url, or an empty value if the shortened hash is unknown
+     */
+    public Optional<String> get(String shortenedHash, Function<String, Optional<ResolvedUrl>> loader) {
+        var cached = cache.getIfPresent(shortenedHash);
+        if (cached != null) {
+            return cached;
+        }
+
+        var future = new CompletableFuture<Optional<String>>();
+        var pending = loading.putIfAbsent(shortenedHash, future);
+        if (pending != null) {
+            return join(pending);
+        }
+        try {
+            // Loaded by another request between the cache miss and the registration of this one
+            var value = cache.asMap().get(shortenedHash);
+            if (value == null) {
+                value = putLoaded(shortenedHash, load(shortenedHash, loader));
+            }
+            future.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(shortenedHash, future);
+        }
+    }
+
+    /**
+     * Get the original url of a shortened hash if it is cached in memory, without reading the shared cache
+     *
+     * @param shortenedHash the shortened hash
+     * @return the cached value, an empty value meaning that the shortened hash is known to be unknown, or null if
+     * the shortened hash is not cached
+     */
+    public Optional<String> getIfPresent(String shortenedHash) {
+        return cache.getIfPresent(shortenedHash);
+    }
+
+    /**
+     * Cache in memory a value loaded on a cache miss, unless a value was put meanwhile
+     * An unknown shortened hash is cached with the negative ttl, an expiring url until its expiration at most.
+     *
+     * @param shortenedHash the shortened hash
+     * @param loaded        the url loaded, empty if the shortened hash is unknown
+     * @return the cached value
+     */
+    public Optional<String> putLoaded(String shortenedHash, Optional<ResolvedUrl> loaded) {
+        var previous = loaded.isPresent() && loaded.get().expiresAt() != null
+                ? expiring().putIfAbsent(shortenedHash, Optional.of(loaded.get().originUrl()), timeToLive(loaded.get().expiresAt()))
+                : cache.asMap().putIfAbsent(shortenedHash, loaded.map(ResolvedUrl::originUrl));
+        return previous == null ? loaded.map(ResolvedUrl::originUrl) : previous;
+    }
+
+    /**
+     * Get the cached original urls of several shortened hashes, without loading the missing ones
+     * The shortened hashes missing from memory are read from the shared cache in a single call.
+     *
+     * @param shortenedHashes the shortened hashes
+     * @return the cached values, an empty value meaning that the shortened hash is known to be unknown
+     */
+    public Map<String, Optional<String>> getAllPresent(Collection<String> shortenedHashes) {
+        var present = cache.getAllPresent(shortenedHashes);
+        if (present.size() == shortenedHashes.size()) {
+            return present;
+        }
+
+        var missing = shortenedHashes.stream().filter(shortenedHash -> !present.containsKey(shortenedHash)).toList();
+        var shared = sharedCache.getAll(missing);
+        if (shared.isEmpty()) {
+            return present;
+        }
+        var cached = HashMap.<String, Optional<String>>newHashMap(present.size() + shared.size());
+        cached.putAll(present);
+        shared.forEach((shortenedHash, originUrl) -> {
+            cache.asMap().putIfAbsent(shortenedHash, Optional.of(originUrl));
+            cached.put(shortenedHash, Optional.of(originUrl));
+        });
+        return cached;
+    }
+
+    /**
+     * Cache the original url of a shortened hash, replacing any previous value, and write it to the shared cache
+     *
+     * @param shortenedHash the shortened hash
+     * @param originUrl     the decoded original url
+     */
+    public void put(String shortenedHash, String originUrl) {
+        cache.put(shortenedHash, Optional.of(originUrl));
+        sharedCache.put(shortenedHash, originUrl);
+    }
+
+    /**
+     * Cache the original url of a shortened hash until it expires, replacing any previous value, in memory only
+     *
+     * @param shortenedHash the shortened hash
+     * @param originUrl     the decoded original url
+     * @param expiresAt     the expiration of the shortened url, null if it never expires
+     */
+    public void put(String shortenedHash, String originUrl, Instant expiresAt) {
+        if (expiresAt == null) {
+            put(shortenedHash, originUrl);
+        } else {
+            expiring().put(shortenedHash, Optional.of(originUrl), timeToLive(expiresAt));
+        }
+    }
+
+    /**
+     * Cache the original url of several shortened hashes, replacing any previous value, and write them to the
+     * shared cache in a single call
+     *
+     * @param originUrls the decoded original url of each shortened hash
+     */
+    public void putAll(Map<String, String> originUrls) {
+        originUrls.forEach((shortenedHash, originUrl) -> cache.put(shortenedHash, Optional.of(originUrl)));
+        sharedCache.putAll(originUrls);
+    }
+
+    /**
+     * Cache the original url of a shortened hash for at most the given time, in memory only, unless it is already cached
+     * Used to restore a snapshot, the urls are neither shared again nor cached longer than the cache ttl.
+     *
+     * @param shortenedHash the shortened hash
+     * @param originUrl     the decoded original url
+     * @param timeToLive    the time left before the url expires from memory
+     */
+    public void restore(String shortenedHash, String originUrl, Duration timeToLive) {
+        expiring().putIfAbsent(shortenedHash, Optional.of(originUrl), timeToLive.compareTo(ttl) < 0 ? timeToLive : ttl);
+    }
+
+    /**
+     * @param limit the maximum number of urls returned
+     * @return the known urls cached in memory, the most frequently and recently resolved first
+     */
+    public List<CachedUrl> hottest(int limit) {
+        return cache.policy().eviction().orElseThrow().hottest(entries -> entries
+                .filter(entry -> entry.getValue().isPresent())
+                .limit(limit)
+                .map(entry -> new CachedUrl(entry.getKey(), entry.getValue().get(), entry.expiresAfter()))
+                .toList());
+    }
+
+    /**
+     * Remove all the cached entries
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return the hit, miss and eviction counters of the cache
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new CaffeineCacheMetrics<>(cache, CACHE_NAME, Tags.empty()).bindTo(registry);
+    }
+
+    /**
+     * Read the shared cache, then call the loader on a miss and share the url it found if it never expires
+     */
+    private Optional<ResolvedUrl> load(String shortenedHash, Function<String, Optional<ResolvedUrl>> loader) {
+        var shared = sharedCache.get(shortenedHash);
+        if (shared.isPresent()) {
+            return shared.map(ResolvedUrl::permanent);
+        }
+        var loaded = loader.apply(shortenedHash);
+        loaded.filter(resolvedUrl -> resolvedUrl.expiresAt() == null)
+                .ifPresent(resolvedUrl -> sharedCache.put(shortenedHash, resolvedUrl.originUrl()));
+        return loaded;
+    }
+
+    private VarExpiration<String, Optional<String>> expiring() {
+        return cache.policy().expireVariably().orElseThrow();
+    }
+
+    /**
+     * @return the cache ttl, or the time left before the expiration if shorter (at least a nanosecond)
+     */
+    private Duration timeToLive(Instant expiresAt) {
+        var left = Duration.between(Instant.now(), expiresAt);
+        return left.compareTo(ttl) < 0 ? (left.isNegative() || left.isZero() ? Duration.ofNanos(1) : left) : ttl;
+    }
+
+    private static Optional<String> join(CompletableFuture<Optional<String>> pending) {
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    void cleanUp() {
+        cache.cleanUp();
+    }
+
+    /**
+     * @param shortenedHash the shortened hash
+     * @param originUrl     the decoded original url
+     * @param timeToLive    the time left before the url expires from memory
+     */
+    public record CachedUrl(String shortenedHash, String originUrl, Duration timeToLive) {
+    }
+
+    private record ResolvedUrlExpiry(long ttlNanos, long negativeTtlNanos) implements Expiry<String, Optional<String>> {
+
+        @Override
+        public long expireAfterCreate(String key, Optional<String> value, long currentTime) {
+            return value.isPresent() ? ttlNanos : negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Optional<String> value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Optional<String> value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
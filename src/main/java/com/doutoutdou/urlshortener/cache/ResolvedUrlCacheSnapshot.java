@@ -0,0 +1,241 @@
+package com.doutoutdou.urlshortener.cache;
+
+import com.doutoutdou.urlshortener.configuration.CacheSnapshotProperties;
+import com.doutoutdou.urlshortener.utils.Base36;
+import com.doutoutdou.urlshortener.utils.ShortenedHashes;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Snapshots of the hottest urls of the {@link ResolvedUrlCache}, so that a restarted instance doesn't send all its
+ * first resolutions to the database
+ * The snapshot is saved periodically and on shutdown, then restored by an {@link ApplicationRunner}: after the
+ * startup of the web server but before the readiness state is changed to accepting traffic.
+ * <p>
+ * Snapshot file format (big endian):
+ * <pre>
+ * int   magic
+ * int   number of urls
+ * then for each url, the hottest first:
+ * long  shortened hash, base 36 decoded
+ * long  expiration from memory, epoch millis
+ * short origin url length
+ *       origin url (UTF-8)
+ * int   CRC32 of the url record
+ * </pre>
+ * An url is restored for the time it had left in memory when saved, an url expired meanwhile is skipped, so that a
+ * snapshot never serves an url longer than the cache would have. The restore stops at the maximum load time, or at
+ * the first corrupted url record.
+ */
+@Component
+@Slf4j
+public class ResolvedUrlCacheSnapshot implements ApplicationRunner, DisposableBean {
+    public static final String SAVE = "url.shortener.cache.snapshot.save";
+    public static final String RESTORED = "url.shortener.cache.snapshot.restored";
+    private static final int MAGIC = 0x55524c53;
+    // At most 3 UTF-8 bytes per char, the length being written on 2 bytes
+    private static final int MAX_URL_LENGTH = 0xffff / 3;
+
+    private final boolean enabled;
+    private final Path file;
+    private final Duration interval;
+    private final int maxEntries;
+    private final Duration maxLoadTime;
+    private final ResolvedUrlCache resolvedUrlCache;
+    private final Timer saveTimer;
+    private final Counter restoredCounter;
+
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile Thread saver;
+
+    public ResolvedUrlCacheSnapshot(CacheSnapshotProperties properties, ResolvedUrlCache resolvedUrlCache,
+                                    MeterRegistry meterRegistry) {
+        this.enabled = properties.enabled();
+        this.file = properties.file();
+        this.interval = properties.interval();
+        this.maxEntries = properties.maxEntries();
+        this.maxLoadTime = properties.maxLoadTime();
+        this.resolvedUrlCache = resolvedUrlCache;
+
+        this.saveTimer = Timer.builder(SAVE)
+                .description("Save of a snapshot of the cached urls")
+                .register(meterRegistry);
+        this.restoredCounter = Counter.builder(RESTORED)
+                .description("Cached urls restored from a snapshot")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Restore the snapshot before the application is ready
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        if (enabled) {
+            try {
+                restore();
+            } catch (RuntimeException e) {
+                // The cache is then warmed by the resolutions
+                log.error(STR. "Restore of the cache snapshot \{ file } failed" , e);
+            }
+        }
+    }
+
+    /**
+     * Start the periodic snapshots once the application is started
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            saver = Thread.ofVirtual().name("cache-snapshot").start(this::savePeriodically);
+        }
+    }
+
+    /**
+     * Write the hottest cached urls to a temporary file, then replace the snapshot with it
+     *
+     * @return the number of urls saved
+     */
+    int save() {
+        var sample = Timer.start();
+        var urls = resolvedUrlCache.hottest(maxEntries);
+        var now = System.currentTimeMillis();
+        var saved = 0;
+        try {
+            var directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            var temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try {
+                var checksum = new CRC32();
+                try (var output = new DataOutputStream(new CheckedOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(temporary)), checksum))) {
+                    var valid = urls.stream()
+                            .filter(url -> ShortenedHashes.isValid(url.shortenedHash()) && url.originUrl().length() <= MAX_URL_LENGTH)
+                            .toList();
+                    output.writeInt(MAGIC);
+                    output.writeInt(valid.size());
+                    for (var url : valid) {
+                        var originUrl = url.originUrl().getBytes(StandardCharsets.UTF_8);
+                        checksum.reset();
+                        output.writeLong(Base36.decode(url.shortenedHash()));
+                        output.writeLong(now + url.timeToLive().toMillis());
+                        output.writeShort(originUrl.length);
+                        output.write(originUrl);
+                        output.writeInt((int) checksum.getValue());
+                        saved++;
+                    }
+                }
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            return saved;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            sample.stop(saveTimer);
+        }
+    }
+
+    /**
+     * Cache the urls of the snapshot not expired yet, the hottest first, until the maximum load time
+     *
+     * @return the number of urls restored
+     */
+    int restore() {
+        var start = System.nanoTime();
+        var deadline = start + maxLoadTime.toNanos();
+        var restored = 0;
+        var checksum = new CRC32();
+        try (var input = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file)), checksum))) {
+            if (input.readInt() != MAGIC) {
+                log.error(STR. "\{ file } is not a cache snapshot, ignored" );
+                return 0;
+            }
+            var count = Math.min(input.readInt(), maxEntries);
+            var now = System.currentTimeMillis();
+            for (int i = 0; i < count && System.nanoTime() < deadline; i++) {
+                checksum.reset();
+                var shortenedHash = input.readLong();
+                var expiresAt = input.readLong();
+                var originUrl = new byte[input.readUnsignedShort()];
+                input.readFully(originUrl);
+                var expected = (int) checksum.getValue();
+                if (input.readInt() != expected || shortenedHash < 0 || shortenedHash >= Base36.MAX_VALUE) {
+                    log.error(STR. "Corrupted url record in the cache snapshot \{ file }, the next ones are ignored" );
+                    break;
+                }
+                if (expiresAt > now) {
+                    resolvedUrlCache.restore(Base36.encode(shortenedHash), new String(originUrl, StandardCharsets.UTF_8),
+                            Duration.ofMillis(expiresAt - now));
+                    restored++;
+                }
+            }
+        } catch (NoSuchFileException e) {
+            log.info(STR. "No cache snapshot \{ file } to restore" );
+        } catch (EOFException e) {
+            log.error(STR. "Truncated cache snapshot \{ file }, the last urls are ignored" );
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        restoredCounter.increment(restored);
+        log.info(STR. "\{ restored } cached urls restored in \{ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) } ms" );
+        return restored;
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        var thread = saver;
+        if (thread != null) {
+            stopped.countDown();
+            thread.join();
+            try {
+                save();
+            } catch (RuntimeException e) {
+                log.error(STR. "Save of the cache snapshot \{ file } failed on shutdown" , e);
+            }
+        }
+    }
+
+    private void savePeriodically() {
+        while (true) {
+            try {
+                if (stopped.await(interval.toNanos(), TimeUnit.NANOSECONDS)) {
+                    return;
+                }
+                save();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.error(STR. "Save of the cache snapshot \{ file } failed, retried in \{ interval }" , e);
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.doutoutdou.urlshortener.cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Cache of the decoded original urls shared by the instances of the application, keyed by shortened hash
+ * Only known shortened hashes are stored, an unavailable shared cache must behave as an empty one.
+ */
+public interface SharedUrlCache {
+
+    /**
+     * @param shortenedHash the shortened hash
+     * @return the original url if cached
+     */
+    Optional<String> get(String shortenedHash);
+
+    /**
+     * @param shortenedHashes the shortened hashes
+     * @return the original url of the cached shortened hashes
+     */
+    Map<String, String> getAll(Collection<String> shortenedHashes);
+
+    /**
+     * @param shortenedHash the shortened hash
+     * @param originUrl     the decoded original url
+     */
+    void put(String shortenedHash, String originUrl);
+
+    /**
+     * @param originUrls the decoded original url of each shortened hash
+     */
+    void putAll(Map<String, String> originUrls);
+}
@@ -0,0 +1,168 @@
+package com.doutoutdou.urlshortener.cache;
+
+import com.doutoutdou.urlshortener.configuration.ExistenceFilterProperties;
+import com.doutoutdou.urlshortener.store.UrlStore;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory Bloom filters of the shortened hashes and of the url hashes stored in the database,
+ * used to skip the database lookups of the values which are surely unknown.
+ * The filters are loaded from the url store once the application is started, then updated on each creation.
+ * Until they are loaded, or if they are disabled, every value might be known.
+ * Urls created by another instance of the application are not added: the filters must only be enabled
+ * when a single instance writes to the database.
+ */
+@Component
+@Slf4j
+public class UrlExistenceFilter implements MeterBinder {
+
+    private final UrlStore urlStore;
+    private final Filter shortenedHashes;
+    private final Filter hashes;
+    private volatile boolean ready;
+
+    public UrlExistenceFilter(ExistenceFilterProperties properties, UrlStore urlStore) {
+        this.urlStore = urlStore;
+        if (properties.enabled()) {
+            this.shortenedHashes = new Filter("shortened_hash", new BloomFilter(properties.expectedInsertions(), properties.falsePositiveProbability()));
+            this.hashes = new Filter("hash", new BloomFilter(properties.expectedInsertions(), properties.falsePositiveProbability()));
+        } else {
+            this.shortenedHashes = null;
+            this.hashes = null;
+        }
+    }
+
+    /**
+     * Fill the filters with the content of the url store
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (shortenedHashes == null) {
+            return;
+        }
+        var start = System.nanoTime();
+        var rows = new LongAdder();
+        urlStore.forEachHash((hash, shortenedHash) -> {
+            // The hash of the urls without hash key yet is added by the backfill
+            if (hash != null) {
+                hashes.bloomFilter().put(hash);
+            }
+            shortenedHashes.bloomFilter().put(shortenedHash);
+            rows.increment();
+        });
+        ready = true;
+        log.info(STR. "Existence filters loaded with \{ rows.sum() } urls in \{ (System.nanoTime() - start) / 1_000_000 } ms" );
+    }
+
+    /**
+     * @param shortenedHash the shortened hash
+     * @return false if the shortened hash is surely not in the database
+     */
+    public boolean mightContainShortenedHash(String shortenedHash) {
+        return mightContain(shortenedHashes, shortenedHash);
+    }
+
+    /**
+     * @param hash the url hash
+     * @return false if the url hash is surely not in the database
+     */
+    public boolean mightContainHash(String hash) {
+        return mightContain(hashes, hash);
+    }
+
+    /**
+     * Record shortened hashes which might be in the database according to the filter, but aren't
+     *
+     * @param count the number of false positives
+     */
+    public void shortenedHashFalsePositives(long count) {
+        falsePositives(shortenedHashes, count);
+    }
+
+    /**
+     * Record url hashes which might be in the database according to the filter, but aren't
+     *
+     * @param count the number of false positives
+     */
+    public void hashFalsePositives(long count) {
+        falsePositives(hashes, count);
+    }
+
+    /**
+     * Add a created url
+     *
+     * @param hash          the url hash
+     * @param shortenedHash the shortened hash
+     */
+    public void put(String hash, String shortenedHash) {
+        if (shortenedHashes != null) {
+            hashes.bloomFilter().put(hash);
+            shortenedHashes.bloomFilter().put(shortenedHash);
+        }
+    }
+
+    private boolean mightContain(Filter filter, String value) {
+        if (filter == null || !ready) {
+            return true;
+        }
+        filter.lookups().increment();
+        if (filter.bloomFilter().mightContain(value)) {
+            return true;
+        }
+        filter.negatives().increment();
+        return false;
+    }
+
+    private void falsePositives(Filter filter, long count) {
+        if (filter != null && ready) {
+            filter.falsePositives().add(count);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (shortenedHashes == null) {
+            return;
+        }
+        for (var filter : List.of(shortenedHashes, hashes)) {
+            Gauge.builder("url.shortener.existence.filter.memory", filter.bloomFilter(), BloomFilter::memoryBytes)
+                    .description("Size of the filter")
+                    .baseUnit(BaseUnits.BYTES)
+                    .tag("filter", filter.name())
+                    .register(registry);
+            Gauge.builder("url.shortener.existence.filter.fpp", filter.bloomFilter(), BloomFilter::expectedFalsePositiveProbability)
+                    .description("False positive probability expected from the ratio of bits set")
+                    .tag("filter", filter.name())
+                    .register(registry);
+            FunctionCounter.builder("url.shortener.existence.filter.lookups", filter.lookups(), LongAdder::sum)
+                    .description("Lookups in the filter")
+                    .tag("filter", filter.name())
+                    .register(registry);
+            FunctionCounter.builder("url.shortener.existence.filter.negatives", filter.negatives(), LongAdder::sum)
+                    .description("Lookups answered by the filter, without database query")
+                    .tag("filter", filter.name())
+                    .register(registry);
+            FunctionCounter.builder("url.shortener.existence.filter.false.positives", filter.falsePositives(), LongAdder::sum)
+                    .description("Values which might be known according to the filter but were not found in the database")
+                    .tag("filter", filter.name())
+                    .register(registry);
+        }
+    }
+
+    private record Filter(String name, BloomFilter bloomFilter, LongAdder lookups, LongAdder negatives, LongAdder falsePositives) {
+        private Filter(String name, BloomFilter bloomFilter) {
+            this(name, bloomFilter, new LongAdder(), new LongAdder(), new LongAdder());
+        }
+    }
+}
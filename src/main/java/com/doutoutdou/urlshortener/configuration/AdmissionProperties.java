@@ -0,0 +1,42 @@
+package com.doutoutdou.urlshortener.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Configuration of the admission control of the api and redirect requests
+ *
+ * @param enabled      true to limit the requests of each client, and the concurrent requests
+ * @param apiKeyHeader the header identifying a client, its ip address being used without it
+ * @param apiKeys      the known api keys, a request with another key being identified by its ip address: a client
+ *                     can't get a new budget by changing its key
+ * @param maxClients   the maximum number of clients tracked per budget, the least recently seen being forgotten above it
+ * @param create       the budget of each client for the creations
+ * @param resolve      the budget of each client for the resolutions, the redirects and the statistics
+ * @param concurrency  the limit of the concurrent requests of all the clients
+ */
+@ConfigurationProperties(prefix = "url-shortener.admission")
+public record AdmissionProperties(boolean enabled, String apiKeyHeader, Set<String> apiKeys, int maxClients,
+                                  Budget create, Budget resolve, Concurrency concurrency) {
+
+    /**
+     * @param rate  the requests per second allowed in the long run
+     * @param burst the requests allowed at once after an idle period
+     */
+    public record Budget(double rate, int burst) {
+    }
+
+    /**
+     * @param enabled          true to shed the requests above the adaptive limit
+     * @param initialLimit     the limit on startup
+     * @param minLimit         the lowest limit
+     * @param maxLimit         the highest limit
+     * @param latencyThreshold the latency above which a request is taken as a sign of an overloaded database
+     * @param backoffRatio     the factor applied to the limit on such a request, at most once per threshold
+     */
+    public record Concurrency(boolean enabled, int initialLimit, int minLimit, int maxLimit, Duration latencyThreshold,
+                              double backoffRatio) {
+    }
+}
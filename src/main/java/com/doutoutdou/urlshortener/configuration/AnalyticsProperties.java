@@ -0,0 +1,16 @@
+package com.doutoutdou.urlshortener.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the counting of the resolutions of each shortened url
+ *
+ * @param enabled       true to count the resolutions
+ * @param flushInterval the interval between two saves of the counts in the database
+ * @param topCapacity   the number of shortened urls tracked to find the most resolved ones, the larger the more accurate
+ */
+@ConfigurationProperties(prefix = "url-shortener.analytics")
+public record AnalyticsProperties(boolean enabled, Duration flushInterval, int topCapacity) {
+}
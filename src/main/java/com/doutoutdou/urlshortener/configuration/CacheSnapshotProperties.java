@@ -0,0 +1,19 @@
+package com.doutoutdou.urlshortener.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Configuration of the snapshots of the in-memory cache, restored on startup
+ *
+ * @param enabled     true to save the hottest cached urls periodically and on shutdown, and restore them on startup
+ * @param file        the snapshot file
+ * @param interval    the interval between two snapshots
+ * @param maxEntries  the maximum number of urls saved, and so restored
+ * @param maxLoadTime the maximum time spent restoring a snapshot, the remaining (coldest) urls being skipped
+ */
+@ConfigurationProperties(prefix = "url-shortener.cache-snapshot")
+public record CacheSnapshotProperties(boolean enabled, Path file, Duration interval, int maxEntries, Duration maxLoadTime) {
+}
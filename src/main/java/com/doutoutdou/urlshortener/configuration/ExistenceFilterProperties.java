@@ -0,0 +1,14 @@
+package com.doutoutdou.urlshortener.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration of the in-memory filters telling if a shortened hash or an url hash is surely not in the database
+ *
+ * @param enabled                  true to use the filters, only valid with a single instance of the application
+ * @param expectedInsertions       the expected number of urls, the filters are sized from it
+ * @param falsePositiveProbability the false positive probability targeted at the expected number of urls
+ */
+@ConfigurationProperties(prefix = "url-shortener.existence-filter")
+public record ExistenceFilterProperties(boolean enabled, long expectedInsertions, double falsePositiveProbability) {
+}
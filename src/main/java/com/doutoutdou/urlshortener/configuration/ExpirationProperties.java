@@ -0,0 +1,17 @@
+package com.doutoutdou.urlshortener.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the deletion of the expired urls
+ *
+ * @param sweepEnabled          true to delete the expired urls in the background
+ * @param sweepInterval         the interval between two sweeps
+ * @param batchSize             the number of expired urls deleted at once
+ * @param maxDeletionsPerSecond the maximum deletion rate of a sweep, to spare the database
+ */
+@ConfigurationProperties(prefix = "url-shortener.expiration")
+public record ExpirationProperties(boolean sweepEnabled, Duration sweepInterval, int batchSize, int maxDeletionsPerSecond) {
+}
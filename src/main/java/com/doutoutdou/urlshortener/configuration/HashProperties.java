@@ -0,0 +1,36 @@
+package com.doutoutdou.urlshortener.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration of the url hashing, the hash is used to find an already shortened url
+ *
+ * @param algorithm the algorithm used to hash the urls
+ */
+@ConfigurationProperties(prefix = "url-shortener.hash")
+public record HashProperties(Algorithm algorithm) {
+
+    public enum Algorithm {
+        /**
+         * SHA-256, 64 hexadecimal characters
+         */
+        SHA256(true),
+        /**
+         * 128 bits MurmurHash3, 32 hexadecimal characters, faster but not cryptographic
+         */
+        MURMUR3_128(false);
+
+        private final boolean cryptographic;
+
+        Algorithm(boolean cryptographic) {
+            this.cryptographic = cryptographic;
+        }
+
+        /**
+         * @return true if two urls with the same hash can't be found, even on purpose
+         */
+        public boolean isCryptographic() {
+            return cryptographic;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.doutoutdou.urlshortener.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Configuration of the storage format of the original urls
+ *
+ * @param maxPrefixes          the maximum number of scheme and host prefixes interned, all of them being kept in memory
+ * @param prefixMinCount       the number of urls of a prefix created by the instance before it is interned, so that
+ *                             the hosts of a single url don't fill the prefix table
+ * @param compressionThreshold the length of the rest of the url above which it is deflated
+ */
+@ConfigurationProperties(prefix = "url-shortener.origin-url")
+public record OriginUrlProperties(int maxPrefixes, int prefixMinCount, DataSize compressionThreshold) {
+}
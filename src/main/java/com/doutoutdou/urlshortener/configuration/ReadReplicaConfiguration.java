@@ -0,0 +1,54 @@
+package com.doutoutdou.urlshortener.configuration;
+
+import com.doutoutdou.urlshortener.repository.ReadReplicaDataSource;
+import com.doutoutdou.urlshortener.repository.ReadReplicaRouting;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.util.ArrayList;
+
+/**
+ * Datasources of the primary database and of its read-only replicas
+ * The primary one is configured by the spring.datasource properties, as without replicas. The routing datasource
+ * is the one used by JPA, Liquibase and the jdbc templates, its connections are the primary ones unless a query is
+ * routed to a replica.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "url-shortener.read-replicas", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class ReadReplicaConfiguration {
+
+    @Bean
+    @ConfigurationProperties(prefix = "spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    @Primary
+    public ReadReplicaDataSource dataSource(HikariDataSource primaryDataSource, ReadReplicaProperties properties,
+                                            ReadReplicaRouting routing, MeterRegistry meterRegistry) {
+        var replicas = new ArrayList<HikariDataSource>(properties.datasources().size());
+        for (var replica : properties.datasources()) {
+            var dataSource = new HikariDataSource();
+            dataSource.setPoolName(ReadReplicaRouting.replica(replicas.size()));
+            dataSource.setJdbcUrl(replica.url());
+            dataSource.setUsername(replica.username());
+            dataSource.setPassword(replica.password());
+            if (replica.maximumPoolSize() > 0) {
+                dataSource.setMaximumPoolSize(replica.maximumPoolSize());
+            }
+            dataSource.setReadOnly(true);
+            dataSource.setMetricRegistry(meterRegistry);
+            replicas.add(dataSource);
+        }
+        return new ReadReplicaDataSource(primaryDataSource, replicas, routing);
+    }
+}
@@ -0,0 +1,31 @@
+package com.doutoutdou.urlshortener.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Configuration of the read-only replicas of the database, serving the resolutions
+ *
+ * @param enabled              true to send the lookups of the resolutions and of the creations to the replicas
+ * @param datasources          the replicas, used in turn
+ * @param readYourWritesWindow the time during which the urls created by this instance are read from the primary
+ *                             database, it must exceed the replication lag
+ * @param maxRecentWrites      the maximum number of urls created during the window which are remembered, the oldest
+ *                             ones being read from the replicas earlier under a higher creation rate
+ */
+@ConfigurationProperties(prefix = "url-shortener.read-replicas")
+public record ReadReplicaProperties(boolean enabled, @DefaultValue List<Replica> datasources, Duration readYourWritesWindow,
+                                    int maxRecentWrites) {
+
+    /**
+     * @param url             the jdbc url of the replica
+     * @param username        the user of the replica
+     * @param password        the password of the user
+     * @param maximumPoolSize the maximum number of connections to the replica
+     */
+    public record Replica(String url, String username, String password, int maximumPoolSize) {
+    }
+}
@@ -0,0 +1,26 @@
+package com.doutoutdou.urlshortener.configuration;
+
+import jakarta.validation.constraints.AssertTrue;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.util.Set;
+
+/**
+ * Configuration of the redirect endpoint
+ *
+ * @param status the http status used to redirect (301, 302, 307 or 308)
+ */
+@Validated
+@ConfigurationProperties(prefix = "url-shortener.redirect")
+public record RedirectProperties(int status) {
+    private static final Set<Integer> REDIRECT_STATUSES = Set.of(301, 302, 307, 308);
+
+    /**
+     * @return true if the status is a redirect status, the application does not start otherwise
+     */
+    @AssertTrue(message = "url-shortener.redirect.status must be 301, 302, 307 or 308")
+    public boolean isRedirectStatus() {
+        return REDIRECT_STATUSES.contains(status);
+    }
+}
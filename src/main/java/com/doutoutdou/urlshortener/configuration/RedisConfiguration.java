@@ -0,0 +1,23 @@
+package com.doutoutdou.urlshortener.configuration;
+
+import org.springframework.boot.actuate.data.redis.RedisHealthIndicator;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+/**
+ * Health of the Redis server of the redis shared cache
+ * The auto-configured indicator is disabled by application.yml: the connection factory always exists, the Redis
+ * starter being a dependency, and the health would be down without a Redis server when the shared cache doesn't use it.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "url-shortener.shared-cache", name = "type", havingValue = "redis")
+public class RedisConfiguration {
+
+    @Bean
+    public HealthIndicator redisHealthIndicator(RedisConnectionFactory redisConnectionFactory) {
+        return new RedisHealthIndicator(redisConnectionFactory);
+    }
+}
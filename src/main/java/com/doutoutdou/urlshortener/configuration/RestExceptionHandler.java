@@ -2,8 +2,10 @@ package com.doutoutdou.urlshortener.configuration;
 
 import com.doutoutdou.urlshortener.exception.NoShortenedUrlAvailableException;
 import com.doutoutdou.urlshortener.exception.ShortenedUrlNotFoundException;
+import com.doutoutdou.urlshortener.exception.WriteBehindBufferFullException;
 import jakarta.validation.ConstraintViolationException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
@@ -20,6 +22,7 @@ import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExcep
 import java.util.ArrayList;
 
 @RestControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @Slf4j
 public class RestExceptionHandler
         extends ResponseEntityExceptionHandler {
@@ -40,6 +43,16 @@ public class RestExceptionHandler
                 new HttpHeaders(), HttpStatus.INTERNAL_SERVER_ERROR, request);
     }
 
+    @ExceptionHandler(value = {WriteBehindBufferFullException.class})
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    protected ResponseEntity<Object> handleWriteBehindBufferFullException(
+            WriteBehindBufferFullException ex, WebRequest request) {
+        var headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "1");
+        return handleExceptionInternal(ex, ex.getMessage(),
+                headers, HttpStatus.SERVICE_UNAVAILABLE, request);
+    }
+
     @ExceptionHandler(value = {ConstraintViolationException.class})
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     protected ResponseEntity<Object> handleConstraintViolationException(
@@ -0,0 +1,31 @@
+package com.doutoutdou.urlshortener.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Configuration of the sharded store
+ *
+ * @param buckets            the number of buckets the keys are hashed to, the unit of the shard map: it must never
+ *                           change once urls are stored
+ * @param shards             the shards, the buckets being spread evenly on them when the shard map is created
+ * @param mapRefreshInterval the interval between two reads of the shard map, changed by the moves of any instance
+ * @param moveBatchSize      the number of rows read at once while moving buckets to another shard
+ */
+@ConfigurationProperties(prefix = "url-shortener.sharding")
+public record ShardingProperties(int buckets, @DefaultValue List<Shard> shards, Duration mapRefreshInterval,
+                                 int moveBatchSize) {
+
+    /**
+     * @param name            the name of the shard in the shard map, it must never change
+     * @param url             the jdbc url of the shard
+     * @param username        the user of the shard
+     * @param password        the password of the user
+     * @param maximumPoolSize the maximum number of connections to the shard
+     */
+    public record Shard(String name, String url, String username, String password, int maximumPoolSize) {
+    }
+}
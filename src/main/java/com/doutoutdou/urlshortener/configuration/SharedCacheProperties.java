@@ -0,0 +1,31 @@
+package com.doutoutdou.urlshortener.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the cache shared by the instances of the application, behind the in-memory cache
+ *
+ * @param type      the implementation of the shared cache
+ * @param keyPrefix the prefix of the keys, the shortened hash is appended to it
+ * @param ttl       how long a shortened hash is kept
+ */
+@ConfigurationProperties(prefix = "url-shortener.shared-cache")
+public record SharedCacheProperties(Type type, String keyPrefix, Duration ttl) {
+
+    public enum Type {
+        /**
+         * No shared cache, the in-memory cache misses go to the database
+         */
+        NONE,
+        /**
+         * In-memory stand-in of a shared cache, for tests and single instance deployments
+         */
+        IN_MEMORY,
+        /**
+         * Redis server, configured with the spring.data.redis properties
+         */
+        REDIS
+    }
+}
@@ -0,0 +1,26 @@
+package com.doutoutdou.urlshortener.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration of the short code generation
+ *
+ * @param generator   the strategy used to create short codes
+ * @param scramble    true to scramble the sequence based short codes, so they can't be guessed
+ * @param scrambleKey the secret key used to scramble the sequence based short codes, no default: it must be
+ *                    configured when they are scrambled
+ */
+@ConfigurationProperties(prefix = "url-shortener.short-code")
+public record ShortCodeProperties(Generator generator, boolean scramble, Long scrambleKey) {
+
+    public enum Generator {
+        /**
+         * Sub part of the url hash, with collision resolution
+         */
+        HASH,
+        /**
+         * Base 36 encoding of an id taken from a database sequence
+         */
+        SEQUENCE
+    }
+}
@@ -0,0 +1,16 @@
+package com.doutoutdou.urlshortener.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the in-memory cache used to resolve shortened urls
+ *
+ * @param maximumSize the maximum number of entries kept in memory
+ * @param ttl         how long a known shortened hash is kept
+ * @param negativeTtl how long an unknown shortened hash is kept
+ */
+@ConfigurationProperties(prefix = "url-shortener.cache")
+public record UrlCacheProperties(long maximumSize, Duration ttl, Duration negativeTtl) {
+}
@@ -0,0 +1,41 @@
+package com.doutoutdou.urlshortener.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Configuration of the storage of the shortened urls
+ *
+ * @param type                the storage backend
+ * @param directory           the directory of the log files of the mapped store
+ * @param segmentSize         the size of a log file of the mapped store, mapped in memory
+ * @param syncWrites          true to flush the log files to the disk on each write, else a write survives a crash
+ *                            of the application but not of the system
+ * @param compactionThreshold the share of deleted records above which the log files are compacted
+ * @param compactionInterval  the interval between two checks of the compaction threshold
+ * @param shortCodeIndex      true to keep an off-heap index of all the shortened hashes of the database, to their
+ *                            url id, so that the unknown ones are answered without query and the others are read
+ *                            by primary key
+ */
+@ConfigurationProperties(prefix = "url-shortener.store")
+public record UrlStoreProperties(Type type, Path directory, DataSize segmentSize, boolean syncWrites,
+                                 double compactionThreshold, Duration compactionInterval, boolean shortCodeIndex) {
+
+    public enum Type {
+        /**
+         * Relational database through JPA
+         */
+        JPA,
+        /**
+         * Append-only log in memory mapped files, with off-heap indexes
+         */
+        MAPPED,
+        /**
+         * Relational databases, the urls being spread by shortened hash
+         */
+        SHARDED
+    }
+}
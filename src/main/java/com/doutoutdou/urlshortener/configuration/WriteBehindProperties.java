@@ -0,0 +1,22 @@
+package com.doutoutdou.urlshortener.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Configuration of the asynchronous persistence of the created urls
+ *
+ * @param enabled       true to return the created shortened urls before they are saved in the url store
+ * @param directory     the directory of the write-ahead log of the urls not saved yet
+ * @param maxPending    the maximum number of urls not saved yet, the creations are rejected above it
+ * @param batchSize     the maximum number of urls saved at once
+ * @param flushInterval the maximum time before a created url is saved
+ * @param syncWrites    true to flush the write-ahead log to the disk on each creation, else a creation survives a
+ *                      crash of the application but not of the system
+ */
+@ConfigurationProperties(prefix = "url-shortener.write-behind")
+public record WriteBehindProperties(boolean enabled, Path directory, int maxPending, int batchSize,
+                                    Duration flushInterval, boolean syncWrites) {
+}
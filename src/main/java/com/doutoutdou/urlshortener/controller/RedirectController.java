@@ -0,0 +1,39 @@
+package com.doutoutdou.urlshortener.controller;
+
+import com.doutoutdou.urlshortener.configuration.RedirectProperties;
+import com.doutoutdou.urlshortener.service.UrlService;
+import com.doutoutdou.urlshortener.utils.ShortenedHashes;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Hot path used by browsers following a shortened url
+ * No bean validation nor json serialization, the response only contains a Location header
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class RedirectController implements RedirectOperations {
+
+    private final UrlService urlService;
+    private final HttpStatusCode redirectStatus;
+
+    public RedirectController(UrlService urlService, RedirectProperties redirectProperties) {
+        this.urlService = urlService;
+        this.redirectStatus = HttpStatusCode.valueOf(redirectProperties.status());
+    }
+
+    @Override
+    public ResponseEntity<Void> redirect(String shortenedHash) {
+        if (!ShortenedHashes.isValid(shortenedHash)) {
+            return ResponseEntity.notFound().build();
+        }
+        return urlService.resolve(shortenedHash)
+                .<ResponseEntity<Void>>map(originUrl -> ResponseEntity.status(redirectStatus)
+                        .header(HttpHeaders.LOCATION, originUrl)
+                        .build())
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,23 @@
+package com.doutoutdou.urlshortener.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+
+public interface RedirectOperations {
+
+    @GetMapping("/{shortenedHash}")
+    @Operation(summary = "Redirect to the original url of a shortened hash")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "301", description = "Redirect to the original url (permanent redirect configured)"),
+            @ApiResponse(responseCode = "302", description = "Redirect to the original url"),
+            @ApiResponse(responseCode = "404", description = "Shortened hash invalid or not found")})
+    ResponseEntity<Void> redirect(
+            @PathVariable("shortenedHash")
+            @Parameter(example = "a6f883ddbe")
+            String shortenedHash);
+}
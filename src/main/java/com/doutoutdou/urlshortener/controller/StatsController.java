@@ -0,0 +1,40 @@
+package com.doutoutdou.urlshortener.controller;
+
+import com.doutoutdou.urlshortener.analytics.ResolveAnalytics;
+import com.doutoutdou.urlshortener.dto.ShortenedUrlRequestDto;
+import com.doutoutdou.urlshortener.dto.TopUrlResponseDto;
+import com.doutoutdou.urlshortener.dto.UrlStatsResponseDto;
+import com.doutoutdou.urlshortener.exception.ShortenedUrlNotFoundException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+import static com.doutoutdou.urlshortener.utils.Constants.SHORTENED_URL_BASE_PATH;
+
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@RequiredArgsConstructor
+@Validated
+public class StatsController implements StatsOperations {
+
+    private final ResolveAnalytics analytics;
+
+    @Override
+    public ResponseEntity<UrlStatsResponseDto> getStats(ShortenedUrlRequestDto shortenedUrlRequestDto) throws ShortenedUrlNotFoundException {
+        var shortenedUrl = shortenedUrlRequestDto.getShortenedUrl();
+        var stats = analytics.stats(shortenedUrl.substring(SHORTENED_URL_BASE_PATH.length()))
+                .orElseThrow(() -> new ShortenedUrlNotFoundException("Shortened url not found"));
+        return ResponseEntity.ok(new UrlStatsResponseDto(shortenedUrl, stats.hits(), stats.lastAccess()));
+    }
+
+    @Override
+    public ResponseEntity<List<TopUrlResponseDto>> getTop(int limit) {
+        return ResponseEntity.ok(analytics.top(limit).stream()
+                .map(entry -> new TopUrlResponseDto(SHORTENED_URL_BASE_PATH + entry.key(), entry.count(), entry.error()))
+                .toList());
+    }
+}
@@ -0,0 +1,68 @@
+package com.doutoutdou.urlshortener.controller;
+
+import com.doutoutdou.urlshortener.dto.ShortenedUrlRequestDto;
+import com.doutoutdou.urlshortener.dto.TopUrlResponseDto;
+import com.doutoutdou.urlshortener.dto.UrlStatsResponseDto;
+import com.doutoutdou.urlshortener.exception.ShortenedUrlNotFoundException;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.ExampleObject;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.util.List;
+
+import static com.doutoutdou.urlshortener.utils.Constants.*;
+
+@RequestMapping("/v1/stats")
+public interface StatsOperations {
+
+    @GetMapping(produces = "application/json")
+    @Operation(summary = "Get the number of resolutions of a shortened url",
+            description = "Counted when analytics are enabled, including the resolutions not saved yet")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Resolutions of the shortened url",
+                    content = {@Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = UrlStatsResponseDto.class))
+                    }),
+            @ApiResponse(responseCode = "400", description = "ShortenedUrl parameter is invalid"),
+            @ApiResponse(responseCode = "404", description = "Shortened url not found")})
+    ResponseEntity<UrlStatsResponseDto> getStats(
+            @Valid
+            @NotNull(message = SHORTENED_URL_PARAMETER_MANDATORY)
+            @RequestParam(name = "shortenedUrl", required = false)
+            // Open api documentation
+            @Parameter(required = true, content = @Content(
+                    examples = @ExampleObject(value = "https://urlshortened/a6f883ddbe"),
+                    schema = @Schema(implementation = ShortenedUrlRequestDto.class)))
+            ShortenedUrlRequestDto shortenedUrl) throws ShortenedUrlNotFoundException;
+
+    @GetMapping(path = "/top", produces = "application/json")
+    @Operation(summary = "Get the most resolved shortened urls of this instance since its start",
+            description = "Estimated from a bounded number of tracked shortened urls, updated on each save of the counts")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Most resolved shortened urls, by descending hits",
+                    content = {@Content(
+                            mediaType = "application/json",
+                            array = @ArraySchema(schema = @Schema(implementation = TopUrlResponseDto.class)))
+                    }),
+            @ApiResponse(responseCode = "400", description = "Limit parameter is invalid")})
+    ResponseEntity<List<TopUrlResponseDto>> getTop(
+            @Min(value = 1, message = TOP_LIMIT)
+            @Max(value = TOP_MAX_LIMIT, message = TOP_LIMIT)
+            @RequestParam(name = "limit", defaultValue = "10")
+            @Parameter(example = "10")
+            int limit);
+}
@@ -1,22 +1,45 @@
 package com.doutoutdou.urlshortener.controller;
 
+import com.doutoutdou.urlshortener.dto.BatchShortenedUrlResponseDto;
+import com.doutoutdou.urlshortener.dto.BatchUrlResponseDto;
 import com.doutoutdou.urlshortener.dto.ShortenedUrlRequestDto;
 import com.doutoutdou.urlshortener.dto.ShortenedUrlResponseDto;
 import com.doutoutdou.urlshortener.dto.UrlRequestDto;
 import com.doutoutdou.urlshortener.dto.UrlResponseDto;
 import com.doutoutdou.urlshortener.exception.ShortenedUrlNotFoundException;
 import com.doutoutdou.urlshortener.service.UrlService;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static com.doutoutdou.urlshortener.utils.Constants.APPLICATION_NDJSON;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequiredArgsConstructor
 @Validated
 public class UrlController implements UrlOperations {
+    private static final int STREAM_CHUNK_SIZE = 500;
 
     private final UrlService urlService;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
 
     @Override
     public ResponseEntity<UrlResponseDto> getFromShortenedUrl(ShortenedUrlRequestDto shortenedUrlRequestDto) throws ShortenedUrlNotFoundException {
@@ -27,4 +50,107 @@ public class UrlController implements UrlOperations {
     public ResponseEntity<ShortenedUrlResponseDto> createShortenedUrl(UrlRequestDto dto) {
         return ResponseEntity.ok().body(urlService.buildShortenedUrl(dto));
     }
+
+    @Override
+    public ResponseEntity<List<BatchShortenedUrlResponseDto>> createShortenedUrls(List<UrlRequestDto> dtos) {
+        var shortenedUrls = urlService.buildShortenedUrls(dtos.stream().map(UrlRequestDto::getUrl).toList());
+        return ResponseEntity.ok().body(shortenedUrls.entrySet().stream()
+                .map(entry -> new BatchShortenedUrlResponseDto(entry.getKey(), entry.getValue()))
+                .toList());
+    }
+
+    @Override
+    public ResponseEntity<StreamingResponseBody> createShortenedUrlsStream(InputStream body) {
+        return ndjson(body, UrlRequestDto.class, this::writeShortenedUrls);
+    }
+
+    @Override
+    public ResponseEntity<Map<String, String>> getFromShortenedUrls(List<String> shortenedUrls) {
+        return ResponseEntity.ok(urlService.resolveAll(shortenedUrls));
+    }
+
+    @Override
+    public ResponseEntity<StreamingResponseBody> getFromShortenedUrlsStream(InputStream body) {
+        return ndjson(body, String.class, this::writeOriginUrls);
+    }
+
+    /**
+     * Build a ndjson response, the request lines are read and processed by chunks
+     *
+     * @param body        the request stream
+     * @param type        the type of a request line
+     * @param chunkWriter process a chunk and write its result lines
+     * @return the streaming response
+     */
+    private <T> ResponseEntity<StreamingResponseBody> ndjson(InputStream body, Class<T> type, ChunkWriter<T> chunkWriter) {
+        StreamingResponseBody stream = outputStream -> {
+            try (MappingIterator<T> lines = objectMapper.readerFor(type).readValues(body)) {
+                var chunk = new ArrayList<T>(STREAM_CHUNK_SIZE);
+                while (lines.hasNext()) {
+                    chunk.add(lines.next());
+                    if (chunk.size() == STREAM_CHUNK_SIZE) {
+                        chunkWriter.write(chunk, outputStream);
+                        chunk.clear();
+                    }
+                }
+                chunkWriter.write(chunk, outputStream);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON)).body(stream);
+    }
+
+    /**
+     * Resolve a chunk of shortened urls and write them, one per line
+     *
+     * @param chunk        the chunk of shortened urls
+     * @param outputStream the response stream
+     * @throws IOException if the response can't be written
+     */
+    private void writeOriginUrls(List<String> chunk, OutputStream outputStream) throws IOException {
+        var lines = new ArrayList<BatchUrlResponseDto>(chunk.size());
+        urlService.resolveAll(chunk).forEach((shortenedUrl, url) -> lines.add(new BatchUrlResponseDto(shortenedUrl, url)));
+        writeLines(lines, outputStream);
+    }
+
+    /**
+     * Create the shortened urls of a chunk of urls and write them, one per line
+     * Invalid urls are written with the validation error
+     *
+     * @param chunk        the chunk of urls
+     * @param outputStream the response stream
+     * @throws IOException if the response can't be written
+     */
+    private void writeShortenedUrls(List<UrlRequestDto> chunk, OutputStream outputStream) throws IOException {
+        var lines = new ArrayList<BatchShortenedUrlResponseDto>(chunk.size());
+        var validUrls = new ArrayList<String>(chunk.size());
+        for (var dto : chunk) {
+            var violations = validator.validate(dto);
+            if (violations.isEmpty()) {
+                validUrls.add(dto.getUrl());
+            } else {
+                lines.add(new BatchShortenedUrlResponseDto(dto.getUrl(), null, violations.stream()
+                        .map(ConstraintViolation::getMessage)
+                        .sorted()
+                        .collect(Collectors.joining(", "))));
+            }
+        }
+
+        urlService.buildShortenedUrls(validUrls)
+                .forEach((url, shortenedUrl) -> lines.add(new BatchShortenedUrlResponseDto(url, shortenedUrl)));
+
+        writeLines(lines, outputStream);
+    }
+
+    private void writeLines(List<?> lines, OutputStream outputStream) throws IOException {
+        for (var line : lines) {
+            outputStream.write(objectMapper.writeValueAsBytes(line));
+            outputStream.write('\n');
+        }
+        outputStream.flush();
+    }
+
+    @FunctionalInterface
+    private interface ChunkWriter<T> {
+        void write(List<T> chunk, OutputStream outputStream) throws IOException;
+    }
 }
@@ -1,5 +1,7 @@
 package com.doutoutdou.urlshortener.controller;
 
+import com.doutoutdou.urlshortener.dto.BatchShortenedUrlResponseDto;
+import com.doutoutdou.urlshortener.dto.BatchUrlResponseDto;
 import com.doutoutdou.urlshortener.dto.ShortenedUrlRequestDto;
 import com.doutoutdou.urlshortener.dto.ShortenedUrlResponseDto;
 import com.doutoutdou.urlshortener.dto.UrlRequestDto;
@@ -7,6 +9,7 @@ import com.doutoutdou.urlshortener.dto.UrlResponseDto;
 import com.doutoutdou.urlshortener.exception.ShortenedUrlNotFoundException;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -15,13 +18,19 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import static com.doutoutdou.urlshortener.utils.Constants.SHORTENED_URL_PARAMETER_MANDATORY;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+import static com.doutoutdou.urlshortener.utils.Constants.*;
 
 @RequestMapping("/v1/url")
 public interface UrlOperations {
@@ -66,4 +75,79 @@ public interface UrlOperations {
                             mediaType = "application/json",
                             schema = @Schema(implementation = UrlRequestDto.class)))
             UrlRequestDto dto);
+
+    @PostMapping(path = "/batch", produces = "application/json", consumes = "application/json")
+    @Operation(summary = "Create the shortened urls of several urls")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Shortened urls created, one for each distinct url",
+                    content = {@Content(
+                            mediaType = "application/json",
+                            array = @ArraySchema(schema = @Schema(implementation = BatchShortenedUrlResponseDto.class)))
+                    }),
+            @ApiResponse(responseCode = "400", description = "Invalid original url format supplied or too many urls"),
+            @ApiResponse(responseCode = "500", description = "An internal server error occurred")})
+    ResponseEntity<List<BatchShortenedUrlResponseDto>> createShortenedUrls(
+            @NotNull(message = "Body is required")
+            @Size(min = 1, max = BATCH_MAX_SIZE, message = BATCH_SIZE)
+            @org.springframework.web.bind.annotation.RequestBody(required = false)
+            // Open api documentation
+            @RequestBody(description = "Urls to shorten", required = true,
+                    content = @Content(
+                            mediaType = "application/json",
+                            array = @ArraySchema(schema = @Schema(implementation = UrlRequestDto.class))))
+            List<@Valid UrlRequestDto> dtos);
+
+    @PostMapping(path = "/batch", produces = APPLICATION_NDJSON, consumes = APPLICATION_NDJSON)
+    @Operation(summary = "Create the shortened urls of a stream of urls, one json object per line",
+            description = "Urls are processed by chunks while they are read, invalid urls are returned with an error")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Shortened urls created, one line for each distinct url",
+                    content = {@Content(
+                            mediaType = APPLICATION_NDJSON,
+                            schema = @Schema(implementation = BatchShortenedUrlResponseDto.class))
+                    })})
+    ResponseEntity<StreamingResponseBody> createShortenedUrlsStream(
+            // Open api documentation
+            @RequestBody(description = "Urls to shorten, one per line", required = true,
+                    content = @Content(
+                            mediaType = APPLICATION_NDJSON,
+                            schema = @Schema(implementation = UrlRequestDto.class)))
+            InputStream body);
+
+    @PostMapping(path = "/resolve", produces = "application/json", consumes = "application/json")
+    @Operation(summary = "Get the original urls of several shortened urls")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Original url of each shortened url, null if invalid or unknown",
+                    content = {@Content(
+                            mediaType = "application/json",
+                            schema = @Schema(example = "{\"https://urlshortened/a6f883ddbe\": \"https://www.url1.com/test\", \"https://urlshortened/1234567890\": null}"))
+                    }),
+            @ApiResponse(responseCode = "400", description = "Too many shortened urls")})
+    ResponseEntity<Map<String, String>> getFromShortenedUrls(
+            @NotNull(message = "Body is required")
+            @Size(min = 1, max = BATCH_MAX_SIZE, message = BATCH_SHORTENED_URLS_SIZE)
+            @org.springframework.web.bind.annotation.RequestBody(required = false)
+            // Open api documentation
+            @RequestBody(description = "Shortened urls to resolve", required = true,
+                    content = @Content(
+                            mediaType = "application/json",
+                            array = @ArraySchema(schema = @Schema(example = "https://urlshortened/a6f883ddbe"))))
+            List<String> shortenedUrls);
+
+    @PostMapping(path = "/resolve", produces = APPLICATION_NDJSON, consumes = APPLICATION_NDJSON)
+    @Operation(summary = "Get the original urls of a stream of shortened urls, one json string per line",
+            description = "Shortened urls are processed by chunks while they are read")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "One line for each distinct shortened url, with a null url if invalid or unknown",
+                    content = {@Content(
+                            mediaType = APPLICATION_NDJSON,
+                            schema = @Schema(implementation = BatchUrlResponseDto.class))
+                    })})
+    ResponseEntity<StreamingResponseBody> getFromShortenedUrlsStream(
+            // Open api documentation
+            @RequestBody(description = "Shortened urls to resolve, one per line", required = true,
+                    content = @Content(
+                            mediaType = APPLICATION_NDJSON,
+                            schema = @Schema(example = "\"https://urlshortened/a6f883ddbe\"")))
+            InputStream body);
 }
@@ -0,0 +1,26 @@
+package com.doutoutdou.urlshortener.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchShortenedUrlResponseDto {
+
+    private String url;
+
+    private String shortenedUrl;
+
+    /**
+     * Only set when the url is invalid (streaming mode)
+     */
+    private String error;
+
+    public BatchShortenedUrlResponseDto(String url, String shortenedUrl) {
+        this(url, shortenedUrl, null);
+    }
+}
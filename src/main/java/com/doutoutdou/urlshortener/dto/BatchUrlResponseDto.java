@@ -0,0 +1,18 @@
+package com.doutoutdou.urlshortener.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+public class BatchUrlResponseDto {
+
+    private String shortenedUrl;
+
+    /**
+     * null if the shortened url is invalid or unknown
+     */
+    private String url;
+}
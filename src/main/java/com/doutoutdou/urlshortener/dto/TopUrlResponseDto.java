@@ -0,0 +1,23 @@
+package com.doutoutdou.urlshortener.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+public class TopUrlResponseDto {
+
+    private String shortenedUrl;
+
+    /**
+     * Estimated, never below the actual number of resolutions
+     */
+    private long hits;
+
+    /**
+     * Maximum overestimation of the hits
+     */
+    private long maxOverestimate;
+}
@@ -18,4 +18,15 @@ public class UrlRequestDto {
     @Size(min = 15, max = 2048, message = URL_LENGTH)
     @Pattern(regexp = "^(http|https)://.*$", message = URL_PATTERN)
     private String url;
+
+    /**
+     * Time to live of the shortened url in seconds, null if it never expires
+     */
+    @Positive(message = TTL_POSITIVE)
+    @Max(value = TTL_MAX_SECONDS, message = TTL_POSITIVE)
+    private Long ttl;
+
+    public UrlRequestDto(String url) {
+        this(url, null);
+    }
 }
@@ -0,0 +1,22 @@
+package com.doutoutdou.urlshortener.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+public class UrlStatsResponseDto {
+
+    private String shortenedUrl;
+
+    private long hits;
+
+    /**
+     * null if never resolved
+     */
+    private Instant lastAccessAt;
+}
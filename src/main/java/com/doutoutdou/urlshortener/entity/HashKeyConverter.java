@@ -0,0 +1,25 @@
+package com.doutoutdou.urlshortener.entity;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.util.HexFormat;
+
+/**
+ * Store the hex url hash used by the application as its binary value, half its size in the database and its index
+ * It is applied to the query parameters of the hash too.
+ */
+@Converter
+public class HashKeyConverter implements AttributeConverter<String, byte[]> {
+    private static final HexFormat HEX = HexFormat.of();
+
+    @Override
+    public byte[] convertToDatabaseColumn(String hash) {
+        return hash == null ? null : HEX.parseHex(hash);
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] hashKey) {
+        return hashKey == null ? null : HEX.formatHex(hashKey);
+    }
+}
@@ -0,0 +1,33 @@
+package com.doutoutdou.urlshortener.entity;
+
+import com.doutoutdou.urlshortener.store.OriginUrlCodec;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.springframework.stereotype.Component;
+
+/**
+ * Store the original url in the compact format of {@link OriginUrlCodec}
+ * A Spring bean, Hibernate getting its converters from the application context. The urls created before the
+ * format have no binary original url until they are backfilled, their attribute is null.
+ * Called during the flush, inside the transaction of the url and possibly several times: the prefixes are interned
+ * before by the store, the conversion only uses the ones in memory.
+ */
+@Component
+@Converter
+public class OriginUrlConverter implements AttributeConverter<String, byte[]> {
+    private final OriginUrlCodec codec;
+
+    public OriginUrlConverter(OriginUrlCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public byte[] convertToDatabaseColumn(String originUrl) {
+        return originUrl == null ? null : codec.encodeInterned(originUrl);
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] originUrlData) {
+        return originUrlData == null ? null : codec.decode(originUrlData);
+    }
+}
@@ -4,6 +4,8 @@ package com.doutoutdou.urlshortener.entity;
 import jakarta.persistence.*;
 import lombok.*;
 
+import java.time.Instant;
+
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
@@ -13,18 +15,47 @@ import lombok.*;
 @Table(name = "url")
 public class Url {
 
-    @Column(name = "origin_url", length = 2048, nullable = false, unique = true)
+    /**
+     * Original url, stored in the compact format of {@link OriginUrlConverter}
+     * null if the url was created before that format and is not backfilled yet, the column being not null only once
+     * the backfill is over
+     */
+    @Column(name = "origin_url_data", length = 8192)
+    @Convert(converter = OriginUrlConverter.class)
     private String originUrl;
 
-    @Column(name = "hash", length = 50, nullable = false, unique = true)
+    /**
+     * Hex url hash, stored as binary
+     * null if the url was created before that format and is not backfilled yet, the column being not null only once
+     * the backfill is over
+     */
+    @Column(name = "hash_key", length = 32, unique = true)
+    @Convert(converter = HashKeyConverter.class)
     private String hash;
 
-    @Column(name = "shortened_hash", length = 50, nullable = false, unique = true)
+    @Column(name = "shortened_hash", length = 10, nullable = false, unique = true)
     private String shortenedHash;
 
+    @Column(name = "created_at", nullable = false)
+    @Builder.Default
+    private Instant createdAt = Instant.now();
+
+    /**
+     * null if the url never expires
+     */
+    @Column(name = "expires_at")
+    private Instant expiresAt;
+
     @Id
-    @SequenceGenerator(name = "URL_SEQ", sequenceName = "URL_SEQ", allocationSize = 1)
+    @SequenceGenerator(name = "URL_SEQ", sequenceName = "URL_SEQ", allocationSize = 50)
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "URL_SEQ")
     private Long id;
 
+    /**
+     * @param now the current time
+     * @return true if the url is expired at that time
+     */
+    public boolean isExpiredAt(Instant now) {
+        return expiresAt != null && !expiresAt.isAfter(now);
+    }
 }
@@ -0,0 +1,11 @@
+package com.doutoutdou.urlshortener.exception;
+
+import lombok.Getter;
+
+@Getter
+public class WriteBehindBufferFullException extends RuntimeException {
+    public WriteBehindBufferFullException(String message) {
+        super(message);
+    }
+
+}
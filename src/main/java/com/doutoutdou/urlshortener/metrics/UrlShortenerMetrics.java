@@ -0,0 +1,131 @@
+package com.doutoutdou.urlshortener.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Meters of the shorten and resolve paths, registered once so the hot paths only record values.
+ * The repository queries are timed by Spring Boot ({@code spring.data.repository.invocations})
+ * and the cache exposes its own meters ({@code cache.gets}, {@code cache.evictions}...).
+ */
+@Component
+public class UrlShortenerMetrics {
+    public static final String SHORTEN = "url.shortener.shorten";
+    public static final String RESOLVE = "url.shortener.resolve";
+    public static final String SHORT_HASH = "url.shortener.short.hash";
+    public static final String SHORT_HASH_ATTEMPTS = "url.shortener.short.hash.attempts";
+    public static final String SHORT_HASH_EXHAUSTED = "url.shortener.short.hash.exhausted";
+
+    private final MeterRegistry meterRegistry;
+    private final Timer shortenCreated;
+    private final Timer shortenExisting;
+    private final Timer shortenError;
+    private final Timer resolveFound;
+    private final Timer resolveNotFound;
+    private final Timer resolveError;
+    private final Timer shortHash;
+    private final DistributionSummary shortHashAttempts;
+    private final Counter shortHashExhausted;
+
+    public UrlShortenerMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.shortenCreated = timer(SHORTEN, "Creation of a shortened url", "outcome", "created");
+        this.shortenExisting = timer(SHORTEN, "Creation of a shortened url", "outcome", "existing");
+        this.shortenError = timer(SHORTEN, "Creation of a shortened url", "outcome", "error");
+        this.resolveFound = timer(RESOLVE, "Resolution of a shortened url", "outcome", "found");
+        this.resolveNotFound = timer(RESOLVE, "Resolution of a shortened url", "outcome", "not_found");
+        this.resolveError = timer(RESOLVE, "Resolution of a shortened url", "outcome", "error");
+        this.shortHash = timer(SHORT_HASH, "Search of an unused short hash in the database");
+        this.shortHashAttempts = DistributionSummary.builder(SHORT_HASH_ATTEMPTS)
+                .description("Number of short hashes tried to find an unused one, more than 1 means collisions")
+                .serviceLevelObjectives(1, 2, 3, 5, 10, 20)
+                .register(meterRegistry);
+        this.shortHashExhausted = Counter.builder(SHORT_HASH_EXHAUSTED)
+                .description("Urls for which all the short hashes were already used")
+                .register(meterRegistry);
+    }
+
+    private Timer timer(String name, String description, String... tags) {
+        return Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return a sample to give to {@link #shortened}, {@link #resolved} or their failure counterpart once done
+     */
+    public Timer.Sample start() {
+        return Timer.start(meterRegistry);
+    }
+
+    /**
+     * Record the creation of a shortened url
+     *
+     * @param sample  the sample started at the beginning of the creation
+     * @param created true if a new shortened url was created, false if the url was already known
+     */
+    public void shortened(Timer.Sample sample, boolean created) {
+        sample.stop(created ? shortenCreated : shortenExisting);
+    }
+
+    /**
+     * Record a creation of a shortened url that failed
+     *
+     * @param sample the sample started at the beginning of the creation
+     */
+    public void shortenFailed(Timer.Sample sample) {
+        sample.stop(shortenError);
+    }
+
+    /**
+     * Record the resolution of a shortened url
+     *
+     * @param sample the sample started at the beginning of the resolution
+     * @param found  true if the shortened url is known
+     */
+    public void resolved(Timer.Sample sample, boolean found) {
+        sample.stop(found ? resolveFound : resolveNotFound);
+    }
+
+    /**
+     * Record a resolution of a shortened url that failed
+     *
+     * @param sample the sample started at the beginning of the resolution
+     */
+    public void resolveFailed(Timer.Sample sample) {
+        sample.stop(resolveError);
+    }
+
+    /**
+     * Time the search of an unused short hash
+     *
+     * @param search the search
+     * @return the short hash found
+     */
+    public String timeShortHash(Supplier<String> search) {
+        return shortHash.record(search);
+    }
+
+    /**
+     * Record the collision depth of a short hash
+     *
+     * @param attempts the number of short hashes tried, 1 if the first one was unused
+     */
+    public void shortHashAttempts(int attempts) {
+        shortHashAttempts.record(attempts);
+    }
+
+    /**
+     * Record an url for which no short hash is available anymore
+     */
+    public void shortHashExhausted() {
+        shortHashExhausted.increment();
+    }
+}
@@ -0,0 +1,155 @@
+package com.doutoutdou.urlshortener.repository;
+
+import com.doutoutdou.urlshortener.entity.Url;
+import com.doutoutdou.urlshortener.store.OriginUrlCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Backfill of the binary original url of the urls created before it existed, from their url encoded text
+ * It runs in the background once the application is started, by chunks of {@value #CHUNK_SIZE} urls so that the
+ * table is never locked for long. Until it is over, the original url of the urls read without one is read from
+ * their text. The text column is dropped by the database migration of the next start.
+ */
+@Component
+@Slf4j
+public class OriginUrlBackfill implements SmartInitializingSingleton {
+    static final int CHUNK_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final OriginUrlCodec codec;
+    private volatile boolean pending;
+
+    public OriginUrlBackfill(JdbcTemplate jdbcTemplate, OriginUrlCodec codec) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.codec = codec;
+    }
+
+    /**
+     * Check if some urls have no binary original url, once the database is migrated and before the requests are served
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        pending = Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "select count(*) > 0 from url where origin_url_data is null", Boolean.class));
+    }
+
+    /**
+     * Start the backfill in the background, if needed
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (pending) {
+            Thread.ofVirtual().name("origin-url-backfill").start(this::backfill);
+        }
+    }
+
+    /**
+     * Set the binary original url of all the urls without one, chunk by chunk
+     * The text is cleared at once, freeing its space before the column is dropped.
+     */
+    void backfill() {
+        var start = System.nanoTime();
+        var rows = 0L;
+        var textBytes = 0L;
+        var dataBytes = 0L;
+        var lastId = Long.MIN_VALUE;
+        try {
+            List<LegacyUrl> chunk;
+            do {
+                chunk = jdbcTemplate.query(
+                        "select id, origin_url from url where origin_url_data is null and id > ? order by id fetch first ? rows only",
+                        (resultSet, _) -> new LegacyUrl(resultSet.getLong(1), resultSet.getString(2)),
+                        lastId, CHUNK_SIZE);
+                if (chunk.isEmpty()) {
+                    break;
+                }
+                var updates = chunk.stream()
+                        .map(url -> new Object[]{codec.encode(URLDecoder.decode(url.originUrl(), StandardCharsets.UTF_8)), url.id()})
+                        .toList();
+                jdbcTemplate.batchUpdate("update url set origin_url_data = ?, origin_url = null where id = ?", updates);
+                rows += chunk.size();
+                textBytes += chunk.stream().mapToLong(url -> url.originUrl().length()).sum();
+                dataBytes += updates.stream().mapToLong(update -> ((byte[]) update[0]).length).sum();
+                lastId = chunk.getLast().id();
+            } while (chunk.size() == CHUNK_SIZE);
+            pending = false;
+            log.info(STR. "Original urls of \{ rows } urls backfilled in \{ (System.nanoTime() - start) / 1_000_000 } ms, from \{ textBytes } to \{ dataBytes } bytes" );
+        } catch (RuntimeException e) {
+            log.error(STR. "Original urls backfill stopped after \{ rows } urls, it will be resumed on the next start", e);
+        }
+    }
+
+    /**
+     * @return true while some urls may have no binary original url
+     */
+    public boolean isPending() {
+        return pending;
+    }
+
+    /**
+     * Set the original url of an url read without one, while the backfill is pending
+     *
+     * @param url an url read from the database
+     * @return the url
+     */
+    public Url complete(Url url) {
+        if (url.getOriginUrl() == null && pending) {
+            url.setOriginUrl(findOriginUrls(List.of(url.getId())).get(url.getId()));
+        }
+        return url;
+    }
+
+    /**
+     * Set the original url of the urls read without one, while the backfill is pending
+     *
+     * @param urls urls read from the database
+     * @return the urls
+     */
+    public List<Url> complete(List<Url> urls) {
+        if (!pending) {
+            return urls;
+        }
+        var ids = urls.stream().filter(url -> url.getOriginUrl() == null).map(Url::getId).toList();
+        if (!ids.isEmpty()) {
+            var originUrls = findOriginUrls(ids);
+            urls.stream().filter(url -> url.getOriginUrl() == null).forEach(url -> url.setOriginUrl(originUrls.get(url.getId())));
+        }
+        return urls;
+    }
+
+    /**
+     * Read the original url of urls from their text, or from their binary original url if backfilled meanwhile
+     *
+     * @param ids the url ids
+     * @return the original url of each url found
+     */
+    public Map<Long, String> findOriginUrls(List<Long> ids) {
+        var originUrls = HashMap.<Long, String>newHashMap(ids.size());
+        namedParameterJdbcTemplate.query("select id, origin_url, origin_url_data from url where id in (:ids)",
+                Map.of("ids", ids), (RowCallbackHandler) resultSet -> {
+                    var originUrlData = resultSet.getBytes(3);
+                    originUrls.put(resultSet.getLong(1), originUrlData == null
+                            ? URLDecoder.decode(resultSet.getString(2), StandardCharsets.UTF_8)
+                            : codec.decode(originUrlData));
+                });
+        return originUrls;
+    }
+
+    private record LegacyUrl(long id, String originUrl) {
+    }
+}
@@ -0,0 +1,49 @@
+package com.doutoutdou.urlshortener.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Datasource taking its connections from the primary database or from one of its replicas, as routed by
+ * {@link ReadReplicaRouting}. The connections taken outside a routed query, like the ones of Liquibase or of the
+ * JPA initialization, are the primary ones.
+ */
+public class ReadReplicaDataSource extends AbstractRoutingDataSource implements Closeable {
+    private final ReadReplicaRouting routing;
+    private final List<HikariDataSource> replicas;
+
+    /**
+     * @param primary  the primary datasource, closed by its owner
+     * @param replicas the replica datasources in the order of their index, closed with this datasource
+     * @param routing  the routing
+     */
+    public ReadReplicaDataSource(DataSource primary, List<HikariDataSource> replicas, ReadReplicaRouting routing) {
+        this.routing = routing;
+        this.replicas = replicas;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(ReadReplicaRouting.PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put(ReadReplicaRouting.replica(i), replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return routing.currentRoute();
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(HikariDataSource::close);
+    }
+}
@@ -0,0 +1,126 @@
+package com.doutoutdou.urlshortener.repository;
+
+import com.doutoutdou.urlshortener.configuration.ReadReplicaProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Routing of the url queries between the primary database and its read-only replicas
+ * The queries run in {@link #read} go to the replicas in turn, unless their key (hash or shortened hash) was
+ * written by this instance during the read-your-writes window: a replica may not have it yet, it is then read
+ * from the primary. The route is kept in a thread local read by {@link ReadReplicaDataSource} when a connection
+ * is taken, so each query must run in its own transaction. Everything else goes to the primary.
+ * The urls written by other instances are read from the replicas as soon as they are created: one created less
+ * than the replication lag ago may be resolved as unknown.
+ * <p>
+ * The latency of the queries is measured per datasource, replicas disabled included.
+ */
+@Component
+public class ReadReplicaRouting {
+    public static final String QUERY = "url.shortener.datasource.query";
+    public static final String PRIMARY = "primary";
+
+    private final boolean enabled;
+    private final List<String> replicas;
+    private final Map<String, Timer> timers = new LinkedHashMap<>();
+    // hash or shortened hash -> written recently by this instance
+    private final Cache<String, Boolean> recentWrites;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ThreadLocal<String> route = new ThreadLocal<>();
+
+    public ReadReplicaRouting(ReadReplicaProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.enabled() && !properties.datasources().isEmpty();
+        this.replicas = enabled ? IntStream.range(0, properties.datasources().size()).mapToObj(ReadReplicaRouting::replica).toList() : List.of();
+        this.recentWrites = Caffeine.newBuilder()
+                .expireAfterWrite(properties.readYourWritesWindow())
+                .maximumSize(enabled ? properties.maxRecentWrites() : 0)
+                .build();
+
+        timers.put(PRIMARY, timer(PRIMARY, meterRegistry));
+        replicas.forEach(replica -> timers.put(replica, timer(replica, meterRegistry)));
+    }
+
+    private static Timer timer(String datasource, MeterRegistry meterRegistry) {
+        return Timer.builder(QUERY)
+                .description("Url queries, by datasource")
+                .tag("datasource", datasource)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param index the index of a replica in the configuration
+     * @return the name of the replica, its routing key
+     */
+    public static String replica(int index) {
+        return STR. "replica-\{ index }" ;
+    }
+
+    /**
+     * Run a lookup on a replica, or on the primary if its key was written recently
+     *
+     * @param key   the hash or the shortened hash looked up
+     * @param query the query
+     * @return the result of the query
+     */
+    public <T> T read(String key, Supplier<T> query) {
+        if (!enabled || recentWrites.getIfPresent(key) != null) {
+            return primary(query);
+        }
+        return execute(replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size())), query);
+    }
+
+    /**
+     * Run a query on the primary
+     *
+     * @param query the query
+     * @return the result of the query
+     */
+    public <T> T primary(Supplier<T> query) {
+        return execute(PRIMARY, query);
+    }
+
+    /**
+     * Read the given keys from the primary during the read-your-writes window
+     * Called after a write, failed or not: a failed write reveals an url the replicas may not have yet.
+     *
+     * @param keys the hashes and the shortened hashes written
+     */
+    public void written(String... keys) {
+        if (enabled) {
+            for (var key : keys) {
+                recentWrites.put(key, Boolean.TRUE);
+            }
+        }
+    }
+
+    /**
+     * @return the datasource of the current query, null outside a query run by this routing
+     */
+    String currentRoute() {
+        return route.get();
+    }
+
+    private <T> T execute(String datasource, Supplier<T> query) {
+        var previous = route.get();
+        route.set(datasource);
+        try {
+            return timers.get(datasource).record(query);
+        } finally {
+            if (previous == null) {
+                route.remove();
+            } else {
+                route.set(previous);
+            }
+        }
+    }
+}
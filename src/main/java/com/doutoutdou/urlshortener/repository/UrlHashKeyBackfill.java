@@ -0,0 +1,159 @@
+package com.doutoutdou.urlshortener.repository;
+
+import com.doutoutdou.urlshortener.cache.UrlExistenceFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Backfill of the binary hash key of the urls created before it existed, from their hex hash
+ * It runs in the background once the application is started, by chunks of {@value #CHUNK_SIZE} urls so that the
+ * table is never locked for long. Until it is over, the urls not found by hash key are searched by hex hash too.
+ * The hex hash column is dropped by the database migration of the next start.
+ */
+@Component
+@Slf4j
+public class UrlHashKeyBackfill implements SmartInitializingSingleton {
+    static final int CHUNK_SIZE = 1000;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final UrlExistenceFilter existenceFilter;
+    private volatile boolean pending;
+
+    public UrlHashKeyBackfill(JdbcTemplate jdbcTemplate, UrlExistenceFilter existenceFilter) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.existenceFilter = existenceFilter;
+    }
+
+    /**
+     * Check if some urls have no hash key, once the database is migrated and before the requests are served
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        pending = Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "select count(*) > 0 from url where hash_key is null", Boolean.class));
+    }
+
+    /**
+     * Start the backfill in the background, if needed
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (pending) {
+            Thread.ofVirtual().name("hash-key-backfill").start(this::backfill);
+        }
+    }
+
+    /**
+     * Set the hash key of all the urls without one, chunk by chunk
+     */
+    void backfill() {
+        var start = System.nanoTime();
+        var rows = 0L;
+        var lastId = Long.MIN_VALUE;
+        try {
+            List<LegacyUrl> chunk;
+            do {
+                chunk = jdbcTemplate.query(
+                        "select id, hash, shortened_hash from url where hash_key is null and id > ? order by id fetch first ? rows only",
+                        (resultSet, _) -> new LegacyUrl(resultSet.getLong(1), resultSet.getString(2), resultSet.getString(3)),
+                        lastId, CHUNK_SIZE);
+                if (chunk.isEmpty()) {
+                    break;
+                }
+                update(chunk).forEach(url -> existenceFilter.put(url.hash(), url.shortenedHash()));
+                rows += chunk.size();
+                lastId = chunk.getLast().id();
+            } while (chunk.size() == CHUNK_SIZE);
+            pending = false;
+            log.info(STR. "Hash keys of \{ rows } urls backfilled in \{ (System.nanoTime() - start) / 1_000_000 } ms" );
+        } catch (RuntimeException e) {
+            log.error(STR. "Hash keys backfill stopped after \{ rows } urls, it will be resumed on the next start", e);
+        }
+    }
+
+    /**
+     * Set the hash key of a chunk of urls with a batch update, or one by one if an url was created again
+     * with a hash key meanwhile (by an instance started before the migration): the same hash being the same url,
+     * that legacy duplicate is deleted so that the migration can finish
+     *
+     * @return the urls of the chunk kept
+     */
+    private List<LegacyUrl> update(List<LegacyUrl> chunk) {
+        try {
+            jdbcTemplate.batchUpdate("update url set hash_key = ? where id = ?",
+                    chunk.stream().map(url -> new Object[]{HEX.parseHex(url.hash()), url.id()}).toList());
+            return chunk;
+        } catch (DataIntegrityViolationException e) {
+            var kept = new ArrayList<LegacyUrl>(chunk.size());
+            for (var url : chunk) {
+                try {
+                    jdbcTemplate.update("update url set hash_key = ? where id = ?", HEX.parseHex(url.hash()), url.id());
+                    kept.add(url);
+                } catch (DataIntegrityViolationException _) {
+                    log.warn(STR. "Url \{ url.id() } with the shortened hash \{ url.shortenedHash() } is a duplicate of an url created with a hash key, it is deleted" );
+                    jdbcTemplate.update("delete from url where id = ?", url.id());
+                }
+            }
+            return kept;
+        }
+    }
+
+    /**
+     * @return true while some urls may have no hash key
+     */
+    public boolean isPending() {
+        return pending;
+    }
+
+    /**
+     * Search the shortened hash of an url by its hex hash, while the backfill is pending
+     *
+     * @param hash the url hash
+     * @return the shortened hash if the url was created before the hash key
+     */
+    public Optional<String> findShortenedHash(String hash) {
+        if (!pending) {
+            return Optional.empty();
+        }
+        return jdbcTemplate.query("select shortened_hash from url where hash = ?",
+                (resultSet, _) -> resultSet.getString(1), hash).stream().findFirst();
+    }
+
+    /**
+     * Search the shortened hash of several urls by their hex hash, while the backfill is pending
+     *
+     * @param hashes the url hashes
+     * @return the shortened hash of each url created before the hash key
+     */
+    public Map<String, String> findShortenedHashes(Collection<String> hashes) {
+        if (!pending || hashes.isEmpty()) {
+            return Map.of();
+        }
+        var shortenedHashes = HashMap.<String, String>newHashMap(hashes.size());
+        namedParameterJdbcTemplate.query("select hash, shortened_hash from url where hash in (:hashes)",
+                Map.of("hashes", hashes),
+                (RowCallbackHandler) resultSet -> shortenedHashes.put(resultSet.getString(1), resultSet.getString(2)));
+        return shortenedHashes;
+    }
+
+    private record LegacyUrl(long id, String hash, String shortenedHash) {
+    }
+}
@@ -1,12 +1,52 @@
 package com.doutoutdou.urlshortener.repository;
 
 import com.doutoutdou.urlshortener.entity.Url;
+import com.doutoutdou.urlshortener.store.UrlStore;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface UrlRepository extends CrudRepository<Url, Long> {
     Optional<Url> findByHash(String hash);
     Optional<Url> findByShortenedHash(String shortenedHash);
+    List<Url> findByHashIn(Collection<String> hashes);
+    List<Url> findByShortenedHashIn(Collection<String> shortenedHashes);
+
+    @Query("select u.shortenedHash from Url u where u.shortenedHash in :shortenedHashes")
+    List<String> findShortenedHashesIn(@Param("shortenedHashes") Collection<String> shortenedHashes);
+
+    /**
+     * First page of the expired urls, by expiration then shortened hash, read from the expiration index
+     */
+    @Query("select new com.doutoutdou.urlshortener.store.UrlStore$ExpiredUrl(u.expiresAt, u.shortenedHash) from Url u"
+            + " where u.expiresAt <= :now order by u.expiresAt, u.shortenedHash")
+    List<UrlStore.ExpiredUrl> findExpired(@Param("now") Instant now, Pageable pageable);
+
+    /**
+     * Next page of the expired urls, after the last url of the previous one (keyset pagination)
+     */
+    @Query("select new com.doutoutdou.urlshortener.store.UrlStore$ExpiredUrl(u.expiresAt, u.shortenedHash) from Url u"
+            + " where u.expiresAt <= :now and (u.expiresAt > :afterExpiresAt or (u.expiresAt = :afterExpiresAt and u.shortenedHash > :afterShortenedHash))"
+            + " order by u.expiresAt, u.shortenedHash")
+    List<UrlStore.ExpiredUrl> findExpiredAfter(@Param("now") Instant now, @Param("afterExpiresAt") Instant afterExpiresAt,
+                                               @Param("afterShortenedHash") String afterShortenedHash, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("delete from Url u where u.shortenedHash in :shortenedHashes")
+    int deleteByShortenedHashIn(@Param("shortenedHashes") Collection<String> shortenedHashes);
+
+    @Modifying
+    @Transactional
+    @Query("delete from Url u where u.shortenedHash in :shortenedHashes and u.expiresAt <= :now")
+    int deleteExpired(@Param("shortenedHashes") Collection<String> shortenedHashes, @Param("now") Instant now);
 
 }
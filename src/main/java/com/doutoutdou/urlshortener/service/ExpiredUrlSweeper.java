@@ -0,0 +1,135 @@
+package com.doutoutdou.urlshortener.service;
+
+import com.doutoutdou.urlshortener.analytics.ResolveAnalytics;
+import com.doutoutdou.urlshortener.configuration.ExpirationProperties;
+import com.doutoutdou.urlshortener.store.UrlStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletion of the expired urls in the background, the resolutions already ignoring them
+ * Each sweep reads the urls expired at its start by batches, in expiration order from the expiration index, each
+ * batch starting after the last url of the previous one (keyset pagination) instead of at an offset. The batches
+ * are paced to stay under the maximum deletion rate, a large backlog of expired urls being deleted over several
+ * seconds instead of in a burst. With several instances, the sweeps may overlap: a deletion is idempotent.
+ */
+@Component
+@Slf4j
+public class ExpiredUrlSweeper implements DisposableBean {
+    public static final String DELETED = "url.shortener.expired.deleted";
+    public static final String SWEEP = "url.shortener.expired.sweep";
+
+    private final boolean enabled;
+    private final Duration sweepInterval;
+    private final int batchSize;
+    private final int maxDeletionsPerSecond;
+    private final UrlStore urlStore;
+    private final ResolveAnalytics analytics;
+    private final Counter deletedCounter;
+    private final Timer sweepTimer;
+
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile Thread sweeper;
+
+    public ExpiredUrlSweeper(ExpirationProperties properties, UrlStore urlStore, ResolveAnalytics analytics,
+                             MeterRegistry meterRegistry) {
+        this.enabled = properties.sweepEnabled();
+        this.sweepInterval = properties.sweepInterval();
+        this.batchSize = properties.batchSize();
+        this.maxDeletionsPerSecond = properties.maxDeletionsPerSecond();
+        this.urlStore = urlStore;
+        this.analytics = analytics;
+
+        this.deletedCounter = Counter.builder(DELETED)
+                .description("Expired urls deleted")
+                .register(meterRegistry);
+        this.sweepTimer = Timer.builder(SWEEP)
+                .description("Deletion of the expired urls")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Start the periodic sweep once the application is started
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            sweeper = Thread.ofVirtual().name("expired-url-sweeper").start(this::sweepPeriodically);
+        }
+    }
+
+    /**
+     * Delete the urls expired at the given time
+     *
+     * @param now the current time
+     * @return the number of urls deleted, stopping early if the sweeper is stopped
+     */
+    int sweep(Instant now) throws InterruptedException {
+        var sample = Timer.start();
+        var deleted = 0;
+        try {
+            UrlStore.ExpiredUrl after = null;
+            while (true) {
+                var start = System.nanoTime();
+                var expired = urlStore.findExpired(now, after, batchSize);
+                if (expired.isEmpty()) {
+                    return deleted;
+                }
+                var shortenedHashes = expired.stream().map(UrlStore.ExpiredUrl::shortenedHash).toList();
+                var batchDeleted = urlStore.deleteExpired(shortenedHashes, now);
+                analytics.remove(shortenedHashes);
+                deletedCounter.increment(batchDeleted);
+                deleted += batchDeleted;
+                if (expired.size() < batchSize) {
+                    return deleted;
+                }
+                after = expired.getLast();
+
+                var pauseNanos = TimeUnit.SECONDS.toNanos(expired.size()) / maxDeletionsPerSecond - (System.nanoTime() - start);
+                if (pauseNanos > 0 && stopped.await(pauseNanos, TimeUnit.NANOSECONDS)) {
+                    return deleted;
+                }
+            }
+        } finally {
+            sample.stop(sweepTimer);
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        var thread = sweeper;
+        if (thread != null) {
+            stopped.countDown();
+            thread.join();
+        }
+    }
+
+    private void sweepPeriodically() {
+        while (true) {
+            try {
+                if (stopped.await(sweepInterval.toNanos(), TimeUnit.NANOSECONDS)) {
+                    return;
+                }
+                var deleted = sweep(Instant.now());
+                if (deleted > 0) {
+                    log.info(STR. "\{ deleted } expired urls deleted" );
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.error(STR. "Deletion of the expired urls failed, retried in \{ sweepInterval }" , e);
+            }
+        }
+    }
+}
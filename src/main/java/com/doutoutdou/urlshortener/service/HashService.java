@@ -1,18 +1,69 @@
 package com.doutoutdou.urlshortener.service;
 
-import org.apache.commons.codec.digest.DigestUtils;
+import com.doutoutdou.urlshortener.configuration.HashProperties;
+import com.doutoutdou.urlshortener.configuration.HashProperties.Algorithm;
+import org.apache.commons.codec.digest.MurmurHash3;
 import org.springframework.stereotype.Service;
 
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Hash the urls without allocating anything but the returned strings:
+ * the digest, the UTF-8 bytes of the input and the hexadecimal characters are kept in pooled buffers.
+ * The pool is not a ThreadLocal, as a virtual thread per request would create new buffers for each request.
+ */
 @Service
 public class HashService {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int SHA256_LENGTH = 32;
+    private static final int MURMUR3_128_LENGTH = 16;
+    private static final int POOL_SIZE = 4 * Runtime.getRuntime().availableProcessors();
+
+    private final Algorithm algorithm;
+    private final AtomicReferenceArray<Buffers> pool = new AtomicReferenceArray<>(POOL_SIZE);
+
+    public HashService(HashProperties properties) {
+        this.algorithm = properties.algorithm();
+    }
 
     /**
-     * Create a hash using sha256 algorithm
+     * Create a hash using the configured algorithm, sha256 by default
      * @param input the input to hash
-     * @return the SHA256 hash
+     * @return the hexadecimal hash
      */
     public String createHash(String input) {
-        return DigestUtils.sha256Hex(input);
+        var buffers = acquire();
+        try {
+            var digest = buffers.digest(algorithm, input);
+            return buffers.hex(digest, 0, digest.length * 2);
+        } finally {
+            release(buffers);
+        }
+    }
+
+    /**
+     * @return true if urls with the same hash are the same url, else two urls may share a hash
+     */
+    public boolean isCryptographic() {
+        return algorithm.isCryptographic();
+    }
+
+    /**
+     * Hash the UTF-8 bytes of an input
+     * @param input the input to hash
+     * @return the raw hash
+     */
+    public byte[] digest(String input) {
+        var buffers = acquire();
+        try {
+            return buffers.digest(algorithm, input).clone();
+        } finally {
+            release(buffers);
+        }
     }
 
     /**
@@ -25,4 +76,130 @@ public class HashService {
     public String createShortHash(String hash, int startIndex, int endIndex) {
         return hash.substring(startIndex, endIndex);
     }
+
+    /**
+     * Create a short hash by encoding only the needed hexadecimal characters of a raw hash
+     * @param digest the raw hash
+     * @param startIndex the index of the first hexadecimal character
+     * @param endIndex the index after the last hexadecimal character
+     * @return the short hash
+     */
+    public String createShortHash(byte[] digest, int startIndex, int endIndex) {
+        var buffers = acquire();
+        try {
+            return buffers.hex(digest, startIndex, endIndex);
+        } finally {
+            release(buffers);
+        }
+    }
+
+    /**
+     * Take the buffers of a random slot of the pool, or new ones if the slot is empty
+     */
+    private Buffers acquire() {
+        var slot = ThreadLocalRandom.current().nextInt(POOL_SIZE);
+        var buffers = pool.getAndSet(slot, null);
+        return buffers == null ? new Buffers(slot) : buffers;
+    }
+
+    /**
+     * Give the buffers back to their slot, they are dropped if the slot has been filled meanwhile
+     */
+    private void release(Buffers buffers) {
+        pool.compareAndSet(buffers.slot, null, buffers);
+    }
+
+    private static final class Buffers {
+        private final int slot;
+        private final MessageDigest sha256;
+        private final byte[] digest = new byte[SHA256_LENGTH];
+        private final byte[] murmur3Digest = new byte[MURMUR3_128_LENGTH];
+        private byte[] input = new byte[1024];
+        private char[] hex = new char[SHA256_LENGTH * 2];
+
+        private Buffers(int slot) {
+            this.slot = slot;
+            try {
+                sha256 = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Encode an input in UTF-8 in the input buffer, unpaired surrogates are replaced by '?' like String.getBytes
+         * @return the number of bytes written
+         */
+        private int encode(String value) {
+            var maxLength = value.length() * 3;
+            if (input.length < maxLength) {
+                input = new byte[maxLength];
+            }
+            int length = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    input[length++] = (byte) c;
+                } else if (c < 0x800) {
+                    input[length++] = (byte) (0xc0 | c >> 6);
+                    input[length++] = (byte) (0x80 | c & 0x3f);
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    input[length++] = (byte) (0xf0 | codePoint >> 18);
+                    input[length++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                    input[length++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                    input[length++] = (byte) (0x80 | codePoint & 0x3f);
+                } else if (Character.isSurrogate(c)) {
+                    input[length++] = '?';
+                } else {
+                    input[length++] = (byte) (0xe0 | c >> 12);
+                    input[length++] = (byte) (0x80 | c >> 6 & 0x3f);
+                    input[length++] = (byte) (0x80 | c & 0x3f);
+                }
+            }
+            return length;
+        }
+
+        private byte[] digest(Algorithm algorithm, String value) {
+            var length = encode(value);
+            return switch (algorithm) {
+                case SHA256 -> sha256(length);
+                case MURMUR3_128 -> murmur3(length);
+            };
+        }
+
+        private byte[] sha256(int length) {
+            sha256.update(input, 0, length);
+            try {
+                sha256.digest(digest, 0, SHA256_LENGTH);
+            } catch (DigestException e) {
+                throw new IllegalStateException(e);
+            }
+            return digest;
+        }
+
+        private byte[] murmur3(int length) {
+            var hash = MurmurHash3.hash128x64(input, 0, length, 0);
+            for (int i = 0; i < 8; i++) {
+                murmur3Digest[i] = (byte) (hash[0] >>> (56 - 8 * i));
+                murmur3Digest[i + 8] = (byte) (hash[1] >>> (56 - 8 * i));
+            }
+            return murmur3Digest;
+        }
+
+        /**
+         * Encode the hexadecimal characters of a raw hash from startIndex to endIndex
+         */
+        private String hex(byte[] digest, int startIndex, int endIndex) {
+            var length = endIndex - startIndex;
+            if (hex.length < length) {
+                hex = new char[length];
+            }
+            for (int i = startIndex; i < endIndex; i++) {
+                var value = digest[i >> 1];
+                hex[i - startIndex] = HEX_DIGITS[(i & 1) == 0 ? (value >> 4) & 0xf : value & 0xf];
+            }
+            return new String(hex, 0, length);
+        }
+    }
 }
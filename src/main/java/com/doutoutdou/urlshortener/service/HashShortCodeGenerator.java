@@ -0,0 +1,147 @@
+package com.doutoutdou.urlshortener.service;
+
+import com.doutoutdou.urlshortener.cache.UrlExistenceFilter;
+import com.doutoutdou.urlshortener.exception.NoShortenedUrlAvailableException;
+import com.doutoutdou.urlshortener.metrics.UrlShortenerMetrics;
+import com.doutoutdou.urlshortener.store.UrlStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static com.doutoutdou.urlshortener.utils.ShortenedHashes.SHORTENED_HASH_SIZE;
+
+/**
+ * Short codes built from a sub part of the url hash
+ */
+@Service
+@ConditionalOnProperty(prefix = "url-shortener.short-code", name = "generator", havingValue = "hash", matchIfMissing = true)
+@RequiredArgsConstructor
+@Slf4j
+public class HashShortCodeGenerator implements ShortCodeGenerator {
+
+    private final UrlStore urlStore;
+    private final HashService hashService;
+    private final UrlShortenerMetrics metrics;
+    private final UrlExistenceFilter existenceFilter;
+
+    @Override
+    public String generate(String hash) {
+        return computeShortenedHash(hash, 0, SHORTENED_HASH_SIZE);
+    }
+
+    /**
+     * The first sub hash of all the hashes is checked with a single query,
+     * only the hashes with a collision (in database or in the batch) need an additional query
+     */
+    @Override
+    public List<String> generateAll(List<String> hashes) {
+        var firstCandidates = hashes.stream()
+                .map(hash -> hashService.createShortHash(hash, 0, SHORTENED_HASH_SIZE))
+                .toList();
+        var alreadyUsed = findUsed(firstCandidates);
+
+        var reserved = HashSet.<String>newHashSet(hashes.size());
+        var shortenedHashes = new ArrayList<String>(hashes.size());
+        for (int i = 0; i < hashes.size(); i++) {
+            var candidate = firstCandidates.get(i);
+            if (alreadyUsed.contains(candidate) || !reserved.add(candidate)) {
+                candidate = computeShortenedHash(hashes.get(i), 0, SHORTENED_HASH_SIZE, reserved);
+                reserved.add(candidate);
+            } else {
+                metrics.shortHashAttempts(1);
+            }
+            shortenedHashes.add(candidate);
+        }
+        return shortenedHashes;
+    }
+
+    /**
+     * Create a short hash (10 characters) from original hash
+     * All the sub hashes which can be built from the original hash are checked with a single query,
+     * the first one not already used is returned
+     *
+     * @param hash       the original hash
+     * @param startIndex the startIndex used to create the first sub hash
+     * @param endIndex   the endIndex used to create the first sub hash
+     * @return a short hash
+     */
+    protected String computeShortenedHash(String hash, int startIndex, int endIndex) {
+        return computeShortenedHash(hash, startIndex, endIndex, Set.of());
+    }
+
+    private String computeShortenedHash(String hash, int startIndex, int endIndex, Set<String> reserved) {
+        return metrics.timeShortHash(() -> searchShortenedHash(hash, startIndex, endIndex, reserved));
+    }
+
+    /**
+     * Search the short hashes already used, only the ones the existence filter doesn't know to be unused are queried
+     *
+     * @param candidates the short hashes
+     * @return the short hashes already used
+     */
+    private Set<String> findUsed(List<String> candidates) {
+        var maybeUsed = candidates.stream().filter(existenceFilter::mightContainShortenedHash).toList();
+        if (maybeUsed.isEmpty()) {
+            return Set.of();
+        }
+        var used = new HashSet<>(urlStore.findShortenedHashesIn(maybeUsed));
+        existenceFilter.shortenedHashFalsePositives(new HashSet<>(maybeUsed).size() - used.size());
+        return used;
+    }
+
+    private String searchShortenedHash(String hash, int startIndex, int endIndex, Set<String> reserved) {
+        var candidates = candidates(hash, startIndex, endIndex);
+        var alreadyUsed = findUsed(candidates);
+        return select(hash, candidates, candidate -> alreadyUsed.contains(candidate) || reserved.contains(candidate));
+    }
+
+    /**
+     * Build all the short hashes of an url hash, in the order they are tried
+     * Shared with the callers searching the used ones themselves, like the reactive mode.
+     *
+     * @param hash the url hash
+     * @return the short hashes
+     */
+    public List<String> candidates(String hash) {
+        return candidates(hash, 0, SHORTENED_HASH_SIZE);
+    }
+
+    /**
+     * Select the first short hash not used
+     *
+     * @param hash       the url hash
+     * @param candidates its short hashes, in the order they are tried
+     * @param used       true for a short hash already used
+     * @return the first short hash not used
+     * @throws NoShortenedUrlAvailableException if all the short hashes are used
+     */
+    public String select(String hash, List<String> candidates, Predicate<String> used) {
+        for (int i = 0; i < candidates.size(); i++) {
+            var candidate = candidates.get(i);
+            if (!used.test(candidate)) {
+                metrics.shortHashAttempts(i + 1);
+                return candidate;
+            }
+        }
+
+        // We tried all possibilities, it's time to throw an error
+        metrics.shortHashExhausted();
+        log.error(STR. "No short hash available for the hash \{ hash }" );
+        throw new NoShortenedUrlAvailableException("No shortened url can be generated for this url");
+    }
+
+    private List<String> candidates(String hash, int startIndex, int endIndex) {
+        var candidates = new ArrayList<String>(hash.length() - endIndex + 1);
+        for (int shift = 0; endIndex + shift <= hash.length(); shift++) {
+            candidates.add(hashService.createShortHash(hash, startIndex + shift, endIndex + shift));
+        }
+        return candidates;
+    }
+}
@@ -0,0 +1,136 @@
+package com.doutoutdou.urlshortener.service;
+
+import com.doutoutdou.urlshortener.configuration.ShortCodeProperties;
+import com.doutoutdou.urlshortener.utils.Base36;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Short codes built from ids taken from the short_code_seq sequence
+ * Ids are reserved by blocks, so the sequence is only queried once every BLOCK_SIZE urls,
+ * then handed out without lock from memory. As ids are unique, no collision check is needed.
+ * Ids can be scrambled with a keyed permutation before being encoded, so short codes are not guessable.
+ * The key has no default, a public one would make them guessable again: the start fails without it.
+ */
+@Service
+@ConditionalOnProperty(prefix = "url-shortener.short-code", name = "generator", havingValue = "sequence")
+@Slf4j
+public class SequenceShortCodeGenerator implements ShortCodeGenerator {
+
+    /**
+     * Must be equal to the increment of the short_code_seq sequence
+     */
+    static final int BLOCK_SIZE = 1000;
+
+    private static final int HALF_BITS = 25;
+    private static final long HALF_MASK = (1L << HALF_BITS) - 1;
+    private static final int ROUNDS = 4;
+    /**
+     * Ids are scrambled on 50 bits, which can always be encoded on 10 base 36 characters
+     */
+    static final long MAX_ID = 1L << (2 * HALF_BITS);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long[] roundKeys;
+    private final ReentrantLock refillLock = new ReentrantLock();
+    private volatile Block block = new Block(0, 0);
+
+    public SequenceShortCodeGenerator(JdbcTemplate jdbcTemplate, ShortCodeProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        if (properties.scramble() && properties.scrambleKey() == null) {
+            throw new IllegalStateException("The scrambled short codes need a secret key in url-shortener.short-code.scramble-key");
+        }
+        this.roundKeys = properties.scramble() ? roundKeys(properties.scrambleKey()) : null;
+    }
+
+    @Override
+    public String generate(String hash) {
+        var id = nextId();
+        return Base36.encode(roundKeys == null ? id : scramble(id));
+    }
+
+    /**
+     * Take the next id of the current block, reserving a new block when it is exhausted
+     *
+     * @return a unique id
+     */
+    long nextId() {
+        while (true) {
+            var current = block;
+            var id = current.next.getAndIncrement();
+            if (id < current.end) {
+                return id;
+            }
+            // Only one thread reserves the next block, the others will retry with it
+            refillLock.lock();
+            try {
+                if (block == current) {
+                    block = reserveBlock();
+                }
+            } finally {
+                refillLock.unlock();
+            }
+        }
+    }
+
+    private Block reserveBlock() {
+        var start = jdbcTemplate.queryForObject("select next value for short_code_seq", Long.class);
+        if (start == null || start + BLOCK_SIZE > MAX_ID) {
+            log.error(STR. "No more ids available in short_code_seq, last value \{ start }" );
+            throw new IllegalStateException("Short code sequence exhausted");
+        }
+        log.debug(STR. "Block of ids reserved from \{ start }" );
+        return new Block(start, start + BLOCK_SIZE);
+    }
+
+    /**
+     * Keyed permutation of [0, MAX_ID) using a balanced feistel network
+     *
+     * @param id the id to scramble
+     * @return the scrambled id, unique for each id
+     */
+    long scramble(long id) {
+        long left = id >>> HALF_BITS;
+        long right = id & HALF_MASK;
+        for (long roundKey : roundKeys) {
+            var next = left ^ round(right, roundKey);
+            left = right;
+            right = next;
+        }
+        return (left << HALF_BITS) | right;
+    }
+
+    private static long round(long value, long roundKey) {
+        var mixed = (value ^ roundKey) * 0x9E3779B97F4A7C15L;
+        return (mixed ^ (mixed >>> 29)) & HALF_MASK;
+    }
+
+    private static long[] roundKeys(long scrambleKey) {
+        // splitmix64, to derive independent keys from the configured one
+        var keys = new long[ROUNDS];
+        var state = scrambleKey;
+        for (int i = 0; i < ROUNDS; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            var z = state;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            keys[i] = z ^ (z >>> 31);
+        }
+        return keys;
+    }
+
+    private static final class Block {
+        private final AtomicLong next;
+        private final long end;
+
+        private Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
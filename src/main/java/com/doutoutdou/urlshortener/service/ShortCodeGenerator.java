@@ -0,0 +1,28 @@
+package com.doutoutdou.urlshortener.service;
+
+import java.util.List;
+
+/**
+ * Strategy used to create the short code (shortened hash) of a new url
+ * The implementation is selected with the url-shortener.short-code.generator property
+ */
+public interface ShortCodeGenerator {
+
+    /**
+     * Generate a short code not already used
+     *
+     * @param hash the hash of the original url
+     * @return a short code of 10 characters in [a-z0-9]
+     */
+    String generate(String hash);
+
+    /**
+     * Generate short codes not already used, and all different, for several new urls
+     *
+     * @param hashes the hashes of the original urls
+     * @return a short code for each hash, in the same order
+     */
+    default List<String> generateAll(List<String> hashes) {
+        return hashes.stream().map(this::generate).toList();
+    }
+}
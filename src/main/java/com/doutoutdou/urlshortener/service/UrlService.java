@@ -1,5 +1,9 @@
 package com.doutoutdou.urlshortener.service;
 
+import com.doutoutdou.urlshortener.analytics.ResolveAnalytics;
+import com.doutoutdou.urlshortener.cache.ResolvedUrl;
+import com.doutoutdou.urlshortener.cache.ResolvedUrlCache;
+import com.doutoutdou.urlshortener.cache.UrlExistenceFilter;
 import com.doutoutdou.urlshortener.dto.ShortenedUrlRequestDto;
 import com.doutoutdou.urlshortener.dto.ShortenedUrlResponseDto;
 import com.doutoutdou.urlshortener.dto.UrlRequestDto;
@@ -7,14 +11,20 @@ import com.doutoutdou.urlshortener.dto.UrlResponseDto;
 import com.doutoutdou.urlshortener.entity.Url;
 import com.doutoutdou.urlshortener.exception.NoShortenedUrlAvailableException;
 import com.doutoutdou.urlshortener.exception.ShortenedUrlNotFoundException;
-import com.doutoutdou.urlshortener.repository.UrlRepository;
+import com.doutoutdou.urlshortener.metrics.UrlShortenerMetrics;
+import com.doutoutdou.urlshortener.repository.UrlHashKeyBackfill;
+import com.doutoutdou.urlshortener.store.UrlStore;
+import com.doutoutdou.urlshortener.utils.ShortenedHashes;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
-import java.net.URLDecoder;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.doutoutdou.urlshortener.utils.Constants.SHORTENED_URL_BASE_PATH;
 
@@ -22,10 +32,18 @@ import static com.doutoutdou.urlshortener.utils.Constants.SHORTENED_URL_BASE_PAT
 @RequiredArgsConstructor
 @Slf4j
 public class UrlService {
-    private static final int SHORT_HASH_SIZE = 10;
+    private static final int BATCH_CHUNK_SIZE = 500;
 
-    private final UrlRepository urlRepository;
+    private final UrlStore urlStore;
     private final HashService hashService;
+    private final ShortCodeGenerator shortCodeGenerator;
+    private final ResolvedUrlCache resolvedUrlCache;
+    private final UrlExistenceFilter existenceFilter;
+    private final UrlHashKeyBackfill hashKeyBackfill;
+    private final UrlShortenerMetrics metrics;
+    private final ResolveAnalytics analytics;
+    // url hash -> shortened hash being created by a request of this instance
+    private final Map<String, CompletableFuture<String>> creations = new ConcurrentHashMap<>();
 
     /**
      * Search an url from its shortened version
@@ -38,29 +56,266 @@ public class UrlService {
         // We need to delete the url base path
         var shortenedHash = shortenedUrlRequestDto.getShortenedUrl().substring(SHORTENED_URL_BASE_PATH.length());
 
-        return urlRepository.findByShortenedHash(shortenedHash)
-                .map(url -> new UrlResponseDto(URLDecoder.decode(url.getOriginUrl(), StandardCharsets.UTF_8)))
-                .orElseThrow(() -> {
-                    log.error(STR. "No Url found for the shortenedHash \{ shortenedHash }" );
-                    return new ShortenedUrlNotFoundException(STR."Shortened url not found");
-                });
+        return resolve(shortenedHash)
+                .map(UrlResponseDto::new)
+                .orElseThrow(() -> new ShortenedUrlNotFoundException(STR."Shortened url not found"));
     }
 
     /**
-     * Create a shortened url
+     * Resolve the original url of a shortened hash, counted in the analytics if found
+     *
+     * @param shortenedHash the shortened hash, without the url base path
+     * @return the original url if found
+     */
+    public Optional<String> resolve(String shortenedHash) {
+        var sample = metrics.start();
+        Optional<String> originUrl = null;
+        try {
+            originUrl = resolvedUrlCache.get(shortenedHash, this::loadOriginUrl);
+        } finally {
+            // Null if the cache or the store failed
+            if (originUrl == null) {
+                metrics.resolveFailed(sample);
+            } else {
+                metrics.resolved(sample, originUrl.isPresent());
+            }
+        }
+        if (originUrl.isPresent()) {
+            analytics.resolved(shortenedHash);
+        }
+        return originUrl;
+    }
+
+    /**
+     * Load the original url of a shortened hash from the database
+     * Only called on a cache miss, unknown and expired shortened hashes are then cached too
+     * The database is not queried if the existence filter knows the shortened hash is unknown
+     *
+     * @param shortenedHash the shortened hash
+     * @return the original url and its expiration if found and not expired
+     */
+    private Optional<ResolvedUrl> loadOriginUrl(String shortenedHash) {
+        if (!existenceFilter.mightContainShortenedHash(shortenedHash)) {
+            return Optional.empty();
+        }
+        var url = urlStore.findByShortenedHash(shortenedHash);
+        if (url.isEmpty()) {
+            existenceFilter.shortenedHashFalsePositives(1);
+            log.error(STR. "No Url found for the shortenedHash \{ shortenedHash }" );
+        }
+        return url.filter(found -> !found.isExpiredAt(Instant.now()))
+                .map(found -> new ResolvedUrl(found.getOriginUrl(), found.getExpiresAt()));
+    }
+
+    /**
+     * Resolve several shortened urls
+     * Cached values are used, the others are searched by chunks with one query per chunk.
+     * Values loaded here are not cached: a bulk resolve would otherwise evict the hot shortened urls.
+     * Expired shortened urls are resolved as unknown ones.
+     *
+     * @param shortenedUrls the shortened urls
+     * @return the original url of each distinct shortened url, null if it is invalid or unknown
+     */
+    public Map<String, String> resolveAll(Collection<String> shortenedUrls) {
+        var distinctUrls = new LinkedHashSet<>(shortenedUrls);
+        var originUrls = LinkedHashMap.<String, String>newLinkedHashMap(distinctUrls.size());
+
+        // shortened hash -> shortened url, only for the valid ones
+        var shortenedHashes = HashMap.<String, String>newHashMap(distinctUrls.size());
+        for (var shortenedUrl : distinctUrls) {
+            if (shortenedUrl == null) {
+                continue;
+            }
+            originUrls.put(shortenedUrl, null);
+            if (shortenedUrl.startsWith(SHORTENED_URL_BASE_PATH)) {
+                var shortenedHash = shortenedUrl.substring(SHORTENED_URL_BASE_PATH.length());
+                if (ShortenedHashes.isValid(shortenedHash)) {
+                    shortenedHashes.put(shortenedHash, shortenedUrl);
+                }
+            }
+        }
+
+        var toLoad = new ArrayList<String>();
+        var cached = resolvedUrlCache.getAllPresent(shortenedHashes.keySet());
+        shortenedHashes.forEach((shortenedHash, shortenedUrl) -> {
+            var cachedValue = cached.get(shortenedHash);
+            if (cachedValue == null) {
+                if (existenceFilter.mightContainShortenedHash(shortenedHash)) {
+                    toLoad.add(shortenedHash);
+                }
+            } else {
+                originUrls.put(shortenedUrl, cachedValue.orElse(null));
+            }
+        });
+
+        for (int start = 0; start < toLoad.size(); start += BATCH_CHUNK_SIZE) {
+            var chunk = toLoad.subList(start, Math.min(start + BATCH_CHUNK_SIZE, toLoad.size()));
+            var urls = urlStore.findByShortenedHashIn(chunk);
+            var now = Instant.now();
+            urls.stream().filter(url -> !url.isExpiredAt(now)).forEach(url -> originUrls.put(
+                    shortenedHashes.get(url.getShortenedHash()), url.getOriginUrl()));
+            existenceFilter.shortenedHashFalsePositives(chunk.size() - urls.size());
+        }
+        return originUrls;
+    }
+
+    /**
+     * Create a shortened url, expiring after the ttl of the request if any
+     * An url already shortened keeps its shortened url and expiration, an expired one is shortened again.
      *
      * @param urlRequestDto the original url object
      * @return a shortened url
      */
     public ShortenedUrlResponseDto buildShortenedUrl(UrlRequestDto urlRequestDto) {
-        var hash = hashService.createHash(urlRequestDto.getUrl());
+        var sample = metrics.start();
+        ShortenedUrl shortenedUrl = null;
+        try {
+            var hash = hashService.createHash(urlRequestDto.getUrl());
+            var expiresAt = urlRequestDto.getTtl() == null ? null : Instant.now().plusSeconds(urlRequestDto.getTtl());
+
+            // Search if the shortened url is already present
+            // If not create a new one
+            var existingShortenedHash = findShortenedHash(hash, urlRequestDto.getUrl());
+            shortenedUrl = existingShortenedHash
+                    .map(shortenedHash -> new ShortenedUrl(shortenedHash, false))
+                    .orElseGet(() -> createOnce(hash, urlRequestDto.getUrl(), expiresAt));
+        } finally {
+            // Null if the creation failed, on an exhausted short hash or a database error
+            if (shortenedUrl == null) {
+                metrics.shortenFailed(sample);
+            } else {
+                metrics.shortened(sample, shortenedUrl.created());
+            }
+        }
+
+        return new ShortenedUrlResponseDto(SHORTENED_URL_BASE_PATH + shortenedUrl.shortenedHash());
+    }
+
+    /**
+     * Create the shortened url of an unknown url, once for all the concurrent requests of this instance
+     * The first request creates it, the others wait for its shortened hash instead of failing on the unique
+     * constraint of the hash. A url created meanwhile by another instance is read after the constraint violation.
+     *
+     * @param hash      the originUrl hash
+     * @param originUrl the originUrl
+     * @param expiresAt the expiration of the shortened url, null if it never expires
+     * @return the shortened hash, and whether this request created it
+     */
+    private ShortenedUrl createOnce(String hash, String originUrl, Instant expiresAt) {
+        var creation = new CompletableFuture<String>();
+        var pending = creations.putIfAbsent(hash, creation);
+        if (pending != null) {
+            return new ShortenedUrl(join(pending), false);
+        }
+        try {
+            var shortenedUrl = createOrFind(hash, originUrl, expiresAt);
+            creation.complete(shortenedUrl.shortenedHash());
+            return shortenedUrl;
+        } catch (RuntimeException e) {
+            creation.completeExceptionally(e);
+            throw e;
+        } finally {
+            creations.remove(hash, creation);
+        }
+    }
+
+    /**
+     * Create the shortened url, or read it if it was created concurrently (by another instance, or by a request
+     * of this one that completed between the lookup and the creation)
+     * If the url is not found, the violated constraint is the one of the shortened hash: another url took the same
+     * short code meanwhile, and the short code is generated again once.
+     *
+     * @param hash      the originUrl hash
+     * @param originUrl the originUrl
+     * @param expiresAt the expiration of the shortened url, null if it never expires
+     * @return the shortened hash, and whether it was created
+     */
+    private ShortenedUrl createOrFind(String hash, String originUrl, Instant expiresAt) {
+        try {
+            return new ShortenedUrl(createAndSaveUrl(hash, originUrl, expiresAt), true);
+        } catch (DataIntegrityViolationException e) {
+            var existing = urlStore.findByHash(hash);
+            if (existing.isEmpty()) {
+                log.info(STR. "Short code of the url hash \{ hash } taken concurrently by another url, generating another one" );
+                return new ShortenedUrl(createAndSaveUrl(hash, originUrl, expiresAt), true);
+            }
+            var shortenedHash = shortenedHashOf(existing.get(), originUrl);
+            log.info(STR. "Url hash \{ hash } created concurrently, using its shortened hash" );
+            existenceFilter.put(hash, shortenedHash);
+            return new ShortenedUrl(shortenedHash, false);
+        }
+    }
+
+    private static String join(CompletableFuture<String> pending) {
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Search the shortened hash of an url hash, without querying the database if the existence filter knows it is unknown
+     * While the hash keys are backfilled, the filter doesn't know all the hashes and the url is searched by hex hash too.
+     * An expired url not swept yet is deleted, so that it can be shortened again.
+     *
+     * @param hash      the url hash
+     * @param originUrl the url
+     * @return the shortened hash if the url is already shortened and not expired
+     * @throws NoShortenedUrlAvailableException if another url has the same hash
+     */
+    private Optional<String> findShortenedHash(String hash, String originUrl) {
+        if (hashKeyBackfill.isPending()) {
+            // The urls without hash key were hashed with sha256, the only algorithm before the hash keys
+            return withoutExpired(urlStore.findByHash(hash).stream().toList()).stream().findFirst().map(url -> shortenedHashOf(url, originUrl))
+                    .or(() -> hashKeyBackfill.findShortenedHash(hash));
+        }
+        if (!existenceFilter.mightContainHash(hash)) {
+            return Optional.empty();
+        }
+        var url = urlStore.findByHash(hash);
+        if (url.isEmpty()) {
+            existenceFilter.hashFalsePositives(1);
+        }
+        return withoutExpired(url.stream().toList()).stream().findFirst().map(found -> shortenedHashOf(found, originUrl));
+    }
 
-        // Search if the shortened url is already present
-        // If not create a new one
-        var shortenedHash = urlRepository.findByHash(hash).map(Url::getShortenedHash)
-                .orElseGet(() -> createAndSaveUrl(hash, urlRequestDto.getUrl()));
+    /**
+     * Shortened hash of an url found by the hash of the url being shortened
+     * A non cryptographic hash can be shared by two urls, even on purpose: the url found is then compared to the
+     * shortened one, and another url is a collision instead of a duplicate.
+     *
+     * @param url       the url found by hash
+     * @param originUrl the url being shortened
+     * @return the shortened hash of the url found
+     * @throws NoShortenedUrlAvailableException if the url found is another url, the hash can't be used twice
+     */
+    private String shortenedHashOf(Url url, String originUrl) {
+        if (!hashService.isCryptographic() && !url.getOriginUrl().equals(originUrl)) {
+            log.error(STR. "Hash shared by the shortened hash \{ url.getShortenedHash() } and another url" );
+            throw new NoShortenedUrlAvailableException("Another url has the same hash, no shortened url can be generated for this url");
+        }
+        return url.getShortenedHash();
+    }
 
-        return new ShortenedUrlResponseDto(SHORTENED_URL_BASE_PATH + shortenedHash);
+    /**
+     * Delete the expired urls among urls found by hash, before they are shortened again
+     *
+     * @param urls the urls found
+     * @return the urls not expired
+     */
+    private List<Url> withoutExpired(List<Url> urls) {
+        var now = Instant.now();
+        var expired = urls.stream().filter(url -> url.isExpiredAt(now)).map(Url::getShortenedHash).toList();
+        if (expired.isEmpty()) {
+            return urls;
+        }
+        urlStore.deleteExpired(expired, now);
+        analytics.remove(expired);
+        return urls.stream().filter(url -> !url.isExpiredAt(now)).toList();
     }
 
     /**
@@ -68,38 +323,145 @@ public class UrlService {
      *
      * @param hash      the originUrl hash
      * @param originUrl the originUrl
+     * @param expiresAt the expiration of the shortened url, null if it never expires
      * @return the short hash generated
      */
-    private String createAndSaveUrl(String hash, String originUrl) {
+    private String createAndSaveUrl(String hash, String originUrl, Instant expiresAt) {
         var url = Url.builder()
                 .hash(hash)
-                .originUrl(URLEncoder.encode(originUrl, StandardCharsets.UTF_8))
-                .shortenedHash(computeShortenedHash(hash, 0, SHORT_HASH_SIZE))
+                .originUrl(originUrl)
+                .shortenedHash(shortCodeGenerator.generate(hash))
+                .expiresAt(expiresAt)
                 .build();
 
-        return urlRepository.save(url).getShortenedHash();
+        var shortenedHash = urlStore.save(url).getShortenedHash();
+        existenceFilter.put(hash, shortenedHash);
+        // Replace a possible negative entry cached before the creation, and share the url with the other instances
+        if (expiresAt == null) {
+            resolvedUrlCache.put(shortenedHash, originUrl);
+        } else {
+            resolvedUrlCache.put(shortenedHash, originUrl, expiresAt);
+        }
+        return shortenedHash;
     }
 
     /**
-     * Create a short hash (10 characters) from original hash
-     * if the short hash is already existing, try to create a new one
+     * Create the shortened urls of several urls
+     * Duplicated urls are only processed once, then urls are processed by chunks:
+     * one query to find the already known urls of the chunk, and one batch insert for the new ones
+     * The urls created by a batch never expire, the expired ones are shortened again.
      *
-     * @param hash       the original hash
-     * @param startIndex the startIndex used to create the sub hash
-     * @param endIndex   the endIndex used to create the sub hash
-     * @return a short hash
+     * @param originUrls the original urls
+     * @return the shortened url of each distinct original url, in the order of the original urls
      */
-    protected String computeShortenedHash(String hash, int startIndex, int endIndex) {
-        var shortenedHash = hashService.createShortHash(hash, startIndex, endIndex);
-        return urlRepository.findByShortenedHash(shortenedHash).map(_ -> {
-            // If we tried all possibilities then it's time to throw an error
-            if (endIndex == hash.length()) {
-                log.error(STR. "No short hash available for the hash \{ hash }" );
-                throw new NoShortenedUrlAvailableException("No shortened url can be generated for this url");
+    public Map<String, String> buildShortenedUrls(Collection<String> originUrls) {
+        var distinctUrls = List.copyOf(new LinkedHashSet<>(originUrls));
+        var shortenedUrls = LinkedHashMap.<String, String>newLinkedHashMap(distinctUrls.size());
+
+        for (int start = 0; start < distinctUrls.size(); start += BATCH_CHUNK_SIZE) {
+            var chunk = distinctUrls.subList(start, Math.min(start + BATCH_CHUNK_SIZE, distinctUrls.size()));
+            var hashes = chunk.stream().map(hashService::createHash).toList();
+
+            Map<String, String> shortenedHashes;
+            try {
+                shortenedHashes = findOrCreate(chunk, hashes, true);
+            } catch (DataIntegrityViolationException e) {
+                // Some urls of the chunk were created concurrently and the whole insert was rolled back:
+                // search them again, in the database only as the existence filter may not know them yet
+                log.info(STR. "Urls of the chunk created concurrently, retrying it: \{ e.getMessage() }" );
+                shortenedHashes = findOrCreate(chunk, hashes, false);
             }
-            // If the short hash is already in the bdd then try to generate a new one
-            return computeShortenedHash(hash, startIndex + 1, endIndex + 1);
-        }).orElse(shortenedHash);
+
+            for (int i = 0; i < chunk.size(); i++) {
+                shortenedUrls.put(chunk.get(i), SHORTENED_URL_BASE_PATH + shortenedHashes.get(hashes.get(i)));
+            }
+        }
+        return shortenedUrls;
+    }
+
+    /**
+     * Search the already known urls of a chunk and create the others
+     *
+     * @param originUrls the original urls of the chunk
+     * @param hashes     the hashes of the original urls, in the same order
+     * @param useFilter  whether the hashes unknown by the existence filter are created without being searched
+     * @return the shortened hash of each hash
+     * @throws NoShortenedUrlAvailableException if another url has the same hash as an url of the chunk
+     */
+    private Map<String, String> findOrCreate(List<String> originUrls, List<String> hashes, boolean useFilter) {
+        var shortenedHashes = HashMap.<String, String>newHashMap(originUrls.size());
+        // hash -> url, to tell the urls found from the collisions
+        var originUrlsByHash = HashMap.<String, String>newHashMap(originUrls.size());
+        for (int i = 0; i < hashes.size(); i++) {
+            originUrlsByHash.put(hashes.get(i), originUrls.get(i));
+        }
+        if (hashKeyBackfill.isPending()) {
+            withoutExpired(urlStore.findByHashIn(hashes)).forEach(url -> shortenedHashes.put(url.getHash(), shortenedHashOf(url, originUrlsByHash.get(url.getHash()))));
+            shortenedHashes.putAll(hashKeyBackfill.findShortenedHashes(
+                    hashes.stream().filter(hash -> !shortenedHashes.containsKey(hash)).toList()));
+        } else {
+            var maybeKnownHashes = useFilter ? hashes.stream().filter(existenceFilter::mightContainHash).toList() : hashes;
+            if (!maybeKnownHashes.isEmpty()) {
+                var urls = urlStore.findByHashIn(maybeKnownHashes);
+                withoutExpired(urls).forEach(url -> shortenedHashes.put(url.getHash(), shortenedHashOf(url, originUrlsByHash.get(url.getHash()))));
+                if (useFilter) {
+                    existenceFilter.hashFalsePositives(maybeKnownHashes.size() - urls.size());
+                } else {
+                    shortenedHashes.forEach(existenceFilter::put);
+                }
+            }
+        }
+        shortenedHashes.putAll(createAndSaveUrls(originUrls, hashes, shortenedHashes));
+        return shortenedHashes;
     }
 
+    /**
+     * Create the url entities not already known and save them with a batch insert
+     *
+     * @param originUrls      the original urls of the chunk
+     * @param hashes          the hashes of the original urls, in the same order
+     * @param shortenedHashes the shortened hash of the already known hashes
+     * @return the shortened hash of each hash created
+     */
+    private Map<String, String> createAndSaveUrls(List<String> originUrls, List<String> hashes, Map<String, String> shortenedHashes) {
+        var newUrls = new ArrayList<String>();
+        var newHashes = new ArrayList<String>();
+        for (int i = 0; i < hashes.size(); i++) {
+            if (!shortenedHashes.containsKey(hashes.get(i))) {
+                newUrls.add(originUrls.get(i));
+                newHashes.add(hashes.get(i));
+            }
+        }
+        if (newHashes.isEmpty()) {
+            return Map.of();
+        }
+
+        var newShortenedHashes = shortCodeGenerator.generateAll(newHashes);
+        var urls = new ArrayList<Url>(newHashes.size());
+        for (int i = 0; i < newHashes.size(); i++) {
+            urls.add(Url.builder()
+                    .hash(newHashes.get(i))
+                    .originUrl(newUrls.get(i))
+                    .shortenedHash(newShortenedHashes.get(i))
+                    .build());
+        }
+        urlStore.saveAll(urls);
+
+        var created = HashMap.<String, String>newHashMap(newHashes.size());
+        var resolved = HashMap.<String, String>newHashMap(newHashes.size());
+        for (int i = 0; i < newHashes.size(); i++) {
+            created.put(newHashes.get(i), newShortenedHashes.get(i));
+            resolved.put(newShortenedHashes.get(i), newUrls.get(i));
+            existenceFilter.put(newHashes.get(i), newShortenedHashes.get(i));
+        }
+        resolvedUrlCache.putAll(resolved);
+        return created;
+    }
+
+    /**
+     * @param shortenedHash the shortened hash of an url
+     * @param created       whether the url was created by the request
+     */
+    private record ShortenedUrl(String shortenedHash, boolean created) {
+    }
 }
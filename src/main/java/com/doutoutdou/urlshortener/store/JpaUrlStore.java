@@ -0,0 +1,267 @@
+package com.doutoutdou.urlshortener.store;
+
+import com.doutoutdou.urlshortener.configuration.UrlStoreProperties;
+import com.doutoutdou.urlshortener.entity.OriginUrlConverter;
+import com.doutoutdou.urlshortener.entity.Url;
+import com.doutoutdou.urlshortener.repository.OriginUrlBackfill;
+import com.doutoutdou.urlshortener.repository.ReadReplicaRouting;
+import com.doutoutdou.urlshortener.repository.UrlRepository;
+import com.doutoutdou.urlshortener.utils.Base36;
+import com.doutoutdou.urlshortener.utils.ShortenedHashes;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.util.Streamable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+
+/**
+ * Urls stored in the relational database, through the JPA repository
+ * With the short code index, all the shortened hashes of the database are kept in an off-heap table, base 36
+ * decoded, to the id of their url: an unknown shortened hash is answered without query, a known one is read by
+ * primary key. The index is loaded before the application serves requests, then updated on each write.
+ * Until it is loaded, the shortened hashes are searched in the database. Urls written by another instance of the
+ * application are not indexed: the index must only be enabled when a single instance writes to the database.
+ * <p>
+ * The lookups by hash and by shortened hash are routed to the read replicas if any, the other queries (batches,
+ * collision checks, writes) go to the primary database.
+ * <p>
+ * The urls read without original url, created before its compact format, get it from their text until the
+ * {@link OriginUrlBackfill} is over. The prefixes of the urls written are interned before their transaction, the
+ * {@link OriginUrlConverter} of the entity only encoding with the interned ones.
+ */
+@Component
+@Qualifier(UrlStore.BACKEND)
+@ConditionalOnProperty(prefix = "url-shortener.store", name = "type", havingValue = "jpa", matchIfMissing = true)
+@Slf4j
+public class JpaUrlStore implements UrlStore, SmartInitializingSingleton, MeterBinder {
+    private static final int FOR_EACH_FETCH_SIZE = 10_000;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final UrlRepository urlRepository;
+    private final ReadReplicaRouting routing;
+    private final OriginUrlBackfill originUrlBackfill;
+    private final OriginUrlCodec originUrlCodec;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean shortCodeIndexEnabled;
+    // Replaced by deleteAll, null until its loading starts: the urls saved meanwhile are added to it
+    private volatile OffHeapLongIndex shortCodeIndex;
+    // Read by the lookups once the whole table is in the index
+    private volatile boolean shortCodeIndexLoaded;
+
+    public JpaUrlStore(UrlRepository urlRepository, ReadReplicaRouting routing, OriginUrlBackfill originUrlBackfill,
+                       OriginUrlCodec originUrlCodec, DataSource dataSource, UrlStoreProperties properties) {
+        this.urlRepository = urlRepository;
+        this.routing = routing;
+        this.originUrlBackfill = originUrlBackfill;
+        this.originUrlCodec = originUrlCodec;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FOR_EACH_FETCH_SIZE);
+        this.shortCodeIndexEnabled = properties.shortCodeIndex();
+    }
+
+    /**
+     * Load the short code index, the web server is not started yet but urls can be saved meanwhile (replayed by the
+     * write-behind store): the index is published to the writes before the scan, and to the lookups after it
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!shortCodeIndexEnabled) {
+            return;
+        }
+        var start = System.nanoTime();
+        var index = new OffHeapLongIndex(urlRepository.count());
+        shortCodeIndex = index;
+        jdbcTemplate.query("select id, shortened_hash from url",
+                (RowCallbackHandler) resultSet -> index(index, resultSet.getString(2), resultSet.getLong(1)));
+        shortCodeIndexLoaded = true;
+        log.info(STR. "Short code index loaded with \{ index.size() } urls in \{ (System.nanoTime() - start) / 1_000_000 } ms, \{ index.memoryBytes() / 1024 } KB" );
+    }
+
+    @Override
+    public Optional<Url> findByHash(String hash) {
+        return routing.read(hash, () -> urlRepository.findByHash(hash)).map(originUrlBackfill::complete);
+    }
+
+    @Override
+    public Optional<Url> findByShortenedHash(String shortenedHash) {
+        var index = loadedIndex();
+        if (index == null) {
+            return routing.read(shortenedHash, () -> urlRepository.findByShortenedHash(shortenedHash)).map(originUrlBackfill::complete);
+        }
+        var id = id(index, shortenedHash);
+        return id == OffHeapLongIndex.NO_VALUE
+                ? Optional.empty()
+                : routing.read(shortenedHash, () -> urlRepository.findById(id)).map(originUrlBackfill::complete);
+    }
+
+    @Override
+    public List<Url> findByHashIn(Collection<String> hashes) {
+        return originUrlBackfill.complete(routing.primary(() -> urlRepository.findByHashIn(hashes)));
+    }
+
+    @Override
+    public List<Url> findByShortenedHashIn(Collection<String> shortenedHashes) {
+        var index = loadedIndex();
+        if (index == null) {
+            return originUrlBackfill.complete(routing.primary(() -> urlRepository.findByShortenedHashIn(shortenedHashes)));
+        }
+        var ids = shortenedHashes.stream().distinct()
+                .map(shortenedHash -> id(index, shortenedHash))
+                .filter(id -> id != OffHeapLongIndex.NO_VALUE)
+                .toList();
+        return ids.isEmpty() ? List.of() : originUrlBackfill.complete(routing.primary(() -> Streamable.of(urlRepository.findAllById(ids)).toList()));
+    }
+
+    @Override
+    public List<String> findShortenedHashesIn(Collection<String> shortenedHashes) {
+        var index = loadedIndex();
+        if (index == null) {
+            return routing.primary(() -> urlRepository.findShortenedHashesIn(shortenedHashes));
+        }
+        return shortenedHashes.stream().distinct()
+                .filter(shortenedHash -> id(index, shortenedHash) != OffHeapLongIndex.NO_VALUE)
+                .toList();
+    }
+
+    @Override
+    public Url save(Url url) {
+        try {
+            originUrlCodec.internPrefix(url.getOriginUrl());
+            var saved = routing.primary(() -> urlRepository.save(url));
+            index(saved);
+            return saved;
+        } finally {
+            routing.written(url.getHash(), url.getShortenedHash());
+        }
+    }
+
+    @Override
+    public void saveAll(List<Url> urls) {
+        try {
+            urls.forEach(url -> originUrlCodec.internPrefix(url.getOriginUrl()));
+            routing.primary(() -> urlRepository.saveAll(urls)).forEach(this::index);
+        } finally {
+            urls.forEach(url -> routing.written(url.getHash(), url.getShortenedHash()));
+        }
+    }
+
+    @Override
+    public List<ExpiredUrl> findExpired(Instant now, ExpiredUrl after, int limit) {
+        return after == null
+                ? urlRepository.findExpired(now, PageRequest.of(0, limit))
+                : urlRepository.findExpiredAfter(now, after.expiresAt(), after.shortenedHash(), PageRequest.of(0, limit));
+    }
+
+    @Override
+    public int deleteByShortenedHashIn(Collection<String> shortenedHashes) {
+        var deleted = urlRepository.deleteByShortenedHashIn(shortenedHashes);
+        unindex(shortenedHashes);
+        return deleted;
+    }
+
+    @Override
+    public int deleteExpired(Collection<String> shortenedHashes, Instant now) {
+        var deleted = urlRepository.deleteExpired(shortenedHashes, now);
+        if (deleted > 0 && shortCodeIndex != null) {
+            var kept = new HashSet<>(urlRepository.findShortenedHashesIn(shortenedHashes));
+            unindex(shortenedHashes.stream().filter(shortenedHash -> !kept.contains(shortenedHash)).toList());
+        }
+        return deleted;
+    }
+
+    private void unindex(Collection<String> shortenedHashes) {
+        var index = shortCodeIndex;
+        if (index != null) {
+            for (var shortenedHash : shortenedHashes) {
+                var id = id(index, shortenedHash);
+                if (id != OffHeapLongIndex.NO_VALUE) {
+                    index.remove(Base36.decode(shortenedHash), id);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void deleteAll() {
+        jdbcTemplate.update("delete from url");
+        if (shortCodeIndex != null) {
+            shortCodeIndex = new OffHeapLongIndex(0);
+        }
+    }
+
+    @Override
+    public long count() {
+        return urlRepository.count();
+    }
+
+    /**
+     * Streamed with a plain JDBC query, the hash of the urls whose hash key is not backfilled yet is null
+     */
+    @Override
+    public void forEachHash(BiConsumer<String, String> consumer) {
+        jdbcTemplate.query("select hash_key, shortened_hash from url", (RowCallbackHandler) resultSet -> {
+            var hashKey = resultSet.getBytes(1);
+            consumer.accept(hashKey == null ? null : HEX.formatHex(hashKey), resultSet.getString(2));
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (!shortCodeIndexEnabled) {
+            return;
+        }
+        Gauge.builder("url.shortener.store.urls", this, store -> store.shortCodeIndex == null ? 0 : store.shortCodeIndex.size())
+                .description("Number of urls in the short code index")
+                .register(registry);
+        Gauge.builder("url.shortener.store.index.memory", this, store -> store.shortCodeIndex == null ? 0 : store.shortCodeIndex.memoryBytes())
+                .description("Off-heap memory of the short code index")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+    }
+
+    /**
+     * @return the short code index once loaded, else null
+     */
+    private OffHeapLongIndex loadedIndex() {
+        return shortCodeIndexLoaded ? shortCodeIndex : null;
+    }
+
+    private void index(Url url) {
+        var index = shortCodeIndex;
+        if (index != null) {
+            index(index, url.getShortenedHash(), url.getId());
+        }
+    }
+
+    private static void index(OffHeapLongIndex index, String shortenedHash, long id) {
+        // The controllers reject the invalid shortened hashes, they can't be searched
+        // An url saved during the loading can be read by its scan too
+        if (ShortenedHashes.isValid(shortenedHash)) {
+            index.putIfAbsent(Base36.decode(shortenedHash), id);
+        }
+    }
+
+    /**
+     * @return the url id of the shortened hash, or {@link OffHeapLongIndex#NO_VALUE}
+     */
+    private static long id(OffHeapLongIndex index, String shortenedHash) {
+        return ShortenedHashes.isValid(shortenedHash) ? index.get(Base36.decode(shortenedHash)) : OffHeapLongIndex.NO_VALUE;
+    }
+}
@@ -0,0 +1,834 @@
+package com.doutoutdou.urlshortener.store;
+
+import com.doutoutdou.urlshortener.configuration.UrlStoreProperties;
+import com.doutoutdou.urlshortener.entity.Url;
+import com.doutoutdou.urlshortener.utils.Base36;
+import com.doutoutdou.urlshortener.utils.ShortenedHashes;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.net.URLDecoder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Urls stored in an append-only log of memory mapped files, indexed by off-heap hash tables
+ * <p>
+ * The log is made of segments of a fixed size, each record (url or deletion) being written in a single segment:
+ * <pre>
+ * 0  int   record size, padded to 8 bytes
+ * 4  int   CRC32 of the bytes 8 to the end of the origin url
+ * 8  byte  type: 1 url, 2 deletion
+ * 9  byte  hash length
+ * 10 byte  flags: 1 if the times follow the header, 2 if the origin url is in the {@link OriginUrlCodec} format
+ * 12 int   origin url length
+ * 16 long  shortened hash, base 36 decoded
+ * 24 long  creation, epoch millis, if flagged
+ * 32 long  expiration, epoch millis, 0 if the url never expires, if flagged
+ *          hash, then origin url (url encoded UTF-8 text if not flagged)
+ * </pre>
+ * The shortened hash index maps the decoded shortened hash to the position of its record, the hash index the first
+ * 8 bytes of the hash (the rest being checked on the record). Both are rebuilt by replaying the log on startup,
+ * a torn record at the end of a segment (crash during a write) being erased.
+ * <p>
+ * The expiring urls are also kept in a heap set ordered by expiration, rebuilt on startup too.
+ * <p>
+ * Writes are serialized, reads are lock free. When the deleted records exceed the compaction threshold, the live
+ * records are copied to the segments of a new generation, which replaces the previous one once complete.
+ * <p>
+ * On its first start, the urls of the {@code url} table of the database are imported into the log, so that the urls
+ * shortened with the {@code jpa} store are still resolved. The import is done once, a marker file being written.
+ */
+@Component
+@Qualifier(UrlStore.BACKEND)
+@ConditionalOnProperty(prefix = "url-shortener.store", name = "type", havingValue = "mapped")
+@Slf4j
+public class MappedUrlStore implements UrlStore, SmartInitializingSingleton, MeterBinder, DisposableBean {
+    private static final int HEADER_SIZE = 24;
+    private static final byte URL_RECORD = 1;
+    private static final byte DELETE_RECORD = 2;
+    private static final byte TIMES_FLAG = 1;
+    private static final byte ORIGIN_URL_CODEC_FLAG = 2;
+    private static final int TIMES_SIZE = 2 * Long.BYTES;
+    private static final int MAX_HASH_LENGTH = 32;
+    private static final String GENERATION_FILE = "generation";
+    private static final String LOCK_FILE = "lock";
+    private static final String IMPORTED_FILE = "imported";
+    private static final int IMPORT_CHUNK_SIZE = 1000;
+    private static final long MIN_COMPACTION_BYTES = 1 << 20;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Path directory;
+    private final long segmentSize;
+    private final boolean syncWrites;
+    private final double compactionThreshold;
+    private final OriginUrlCodec originUrlCodec;
+    private final JdbcTemplate jdbcTemplate;
+    // True if the log was never written before this start, and the database not imported yet
+    private final boolean importPending;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Thread compactor;
+    private final FileChannel lockChannel;
+    private volatile State state;
+    // Expiring urls by expiration, then shortened hash: not tied to a generation as the positions aren't kept
+    private final NavigableSet<Expiring> expiring = new ConcurrentSkipListSet<>();
+    // Written under the write lock
+    private volatile long position;
+    private volatile long liveBytes;
+    private volatile long deadBytes;
+
+    public MappedUrlStore(UrlStoreProperties properties, OriginUrlCodec originUrlCodec, DataSource dataSource) {
+        this.originUrlCodec = originUrlCodec;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.directory = properties.directory();
+        this.segmentSize = properties.segmentSize().toBytes();
+        this.syncWrites = properties.syncWrites();
+        this.compactionThreshold = properties.compactionThreshold();
+        try {
+            Files.createDirectories(directory);
+            lockChannel = lock(directory.resolve(LOCK_FILE));
+            var generation = readGeneration();
+            deleteOtherSegments(generation);
+            var segments = new CopyOnWriteArrayList<Segment>();
+            for (var index = 0; Files.exists(segmentPath(generation, index)); index++) {
+                segments.add(map(segmentPath(generation, index)));
+            }
+            if (segments.isEmpty()) {
+                segments.add(map(segmentPath(generation, 0)));
+            }
+            state = new State(generation, segments, new OffHeapLongIndex(0), new OffHeapLongIndex(0));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        var start = System.nanoTime();
+        replay();
+        log.info(STR. "Url store \{ directory } loaded with \{ count() } urls in \{ (System.nanoTime() - start) / 1_000_000 } ms" );
+        importPending = !Files.exists(directory.resolve(IMPORTED_FILE)) && position == 0;
+
+        var interval = properties.compactionInterval();
+        compactor = Thread.ofVirtual().name("url-store-compaction").start(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Thread.sleep(interval);
+                    compactIfNeeded();
+                }
+            } catch (InterruptedException _) {
+                // Store closed
+            }
+        });
+    }
+
+    /**
+     * Import the urls of the database on the first start of the log, once the database is migrated and before the
+     * requests are served
+     * The urls whose hash key or original url are not backfilled yet are read from their former columns. An url
+     * already written meanwhile (replayed by the write-behind store) is skipped.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!importPending) {
+            return;
+        }
+        var start = System.nanoTime();
+        var imported = 0L;
+        var lastId = Long.MIN_VALUE;
+        List<DatabaseUrl> chunk;
+        do {
+            chunk = jdbcTemplate.query(
+                    "select id, hash_key, shortened_hash, origin_url_data, created_at, expires_at from url where id > ? order by id fetch first ? rows only",
+                    (resultSet, _) -> new DatabaseUrl(resultSet.getLong(1), resultSet.getBytes(2), resultSet.getString(3),
+                            resultSet.getBytes(4), resultSet.getTimestamp(5).toInstant(),
+                            resultSet.getTimestamp(6) == null ? null : resultSet.getTimestamp(6).toInstant()),
+                    lastId, IMPORT_CHUNK_SIZE);
+            var urls = chunk.stream().map(this::toUrl)
+                    .filter(url -> state.shortenedHashes.get(Base36.decode(url.getShortenedHash())) == OffHeapLongIndex.NO_VALUE
+                            && findHash(state, HEX.parseHex(url.getHash())) == OffHeapLongIndex.NO_VALUE)
+                    .toList();
+            imported += importAll(urls);
+            lastId = chunk.isEmpty() ? lastId : chunk.getLast().id();
+        } while (chunk.size() == IMPORT_CHUNK_SIZE);
+        try {
+            Files.createFile(directory.resolve(IMPORTED_FILE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.info(STR. "\{ imported } urls of the database imported into the url store in \{ (System.nanoTime() - start) / 1_000_000 } ms" );
+    }
+
+    /**
+     * @return the url of a row, read from the former columns if not backfilled yet
+     */
+    private Url toUrl(DatabaseUrl row) {
+        var hash = row.hashKey() == null
+                ? jdbcTemplate.queryForObject("select hash from url where id = ?", String.class, row.id())
+                : HEX.formatHex(row.hashKey());
+        var originUrl = row.originUrlData() == null
+                ? URLDecoder.decode(jdbcTemplate.queryForObject("select origin_url from url where id = ?", String.class, row.id()), StandardCharsets.UTF_8)
+                : originUrlCodec.decode(row.originUrlData());
+        return Url.builder()
+                .hash(hash)
+                .shortenedHash(row.shortenedHash())
+                .originUrl(originUrl)
+                .createdAt(row.createdAt())
+                .expiresAt(row.expiresAt())
+                .build();
+    }
+
+    /**
+     * Save imported urls, one by one if one of them was written concurrently
+     *
+     * @return the number of urls saved
+     */
+    private int importAll(List<Url> urls) {
+        try {
+            saveAll(urls);
+            return urls.size();
+        } catch (DataIntegrityViolationException e) {
+            var saved = 0;
+            for (var url : urls) {
+                try {
+                    save(url);
+                    saved++;
+                } catch (DataIntegrityViolationException _) {
+                    // Written meanwhile
+                }
+            }
+            return saved;
+        }
+    }
+
+    @Override
+    public Optional<Url> findByHash(String hash) {
+        var current = state;
+        var position = findHash(current, HEX.parseHex(hash));
+        return position == OffHeapLongIndex.NO_VALUE ? Optional.empty() : Optional.of(read(current, position));
+    }
+
+    @Override
+    public Optional<Url> findByShortenedHash(String shortenedHash) {
+        if (!ShortenedHashes.isValid(shortenedHash)) {
+            return Optional.empty();
+        }
+        var current = state;
+        var position = current.shortenedHashes.get(Base36.decode(shortenedHash));
+        return position == OffHeapLongIndex.NO_VALUE ? Optional.empty() : Optional.of(read(current, position));
+    }
+
+    @Override
+    public List<Url> findByHashIn(Collection<String> hashes) {
+        return hashes.stream().distinct().map(this::findByHash).flatMap(Optional::stream).toList();
+    }
+
+    @Override
+    public List<Url> findByShortenedHashIn(Collection<String> shortenedHashes) {
+        return shortenedHashes.stream().distinct().map(this::findByShortenedHash).flatMap(Optional::stream).toList();
+    }
+
+    @Override
+    public List<String> findShortenedHashesIn(Collection<String> shortenedHashes) {
+        var current = state;
+        return shortenedHashes.stream().distinct()
+                .filter(shortenedHash -> ShortenedHashes.isValid(shortenedHash)
+                        && current.shortenedHashes.get(Base36.decode(shortenedHash)) != OffHeapLongIndex.NO_VALUE)
+                .toList();
+    }
+
+    @Override
+    public Url save(Url url) {
+        saveAll(List.of(url));
+        return url;
+    }
+
+    /**
+     * The urls are all checked before the first one is written, so a duplicate saves none of them
+     * The records of a batch interrupted by a crash are valid one by one: the first ones are kept.
+     */
+    @Override
+    public void saveAll(List<Url> urls) {
+        // Encoded before locking, a new prefix being interned in the database
+        var originUrls = urls.stream().map(url -> originUrlCodec.encode(url.getOriginUrl())).toList();
+        writeLock.lock();
+        try {
+            var current = state;
+            var batchHashes = new HashSet<String>();
+            var batchShortenedHashes = new HashSet<String>();
+            for (var url : urls) {
+                if (!ShortenedHashes.isValid(url.getShortenedHash())) {
+                    throw new IllegalArgumentException(STR. "Invalid shortened hash \{ url.getShortenedHash() }" );
+                }
+                if (!batchShortenedHashes.add(url.getShortenedHash())
+                        || current.shortenedHashes.get(Base36.decode(url.getShortenedHash())) != OffHeapLongIndex.NO_VALUE) {
+                    throw new DataIntegrityViolationException(STR. "Shortened hash \{ url.getShortenedHash() } already stored (uc_url_shortened_hash)" );
+                }
+                if (!batchHashes.add(url.getHash()) || findHash(current, HEX.parseHex(url.getHash())) != OffHeapLongIndex.NO_VALUE) {
+                    throw new DataIntegrityViolationException(STR. "Hash \{ url.getHash() } already stored (uc_url_hash_key)" );
+                }
+            }
+
+            var firstSegment = segmentIndex(position);
+            for (int i = 0; i < urls.size(); i++) {
+                var url = urls.get(i);
+                var hash = HEX.parseHex(url.getHash());
+                var shortenedHash = Base36.decode(url.getShortenedHash());
+                var recordPosition = append(current, URL_RECORD, shortenedHash, hash, originUrls.get(i),
+                        url.getCreatedAt().toEpochMilli(), url.getExpiresAt() == null ? 0 : url.getExpiresAt().toEpochMilli());
+                // Published once written: a reader finding the position sees the record
+                current.shortenedHashes.put(shortenedHash, recordPosition);
+                current.hashes.put(hashKey(hash), recordPosition);
+                if (url.getExpiresAt() != null) {
+                    expiring.add(new Expiring(url.getExpiresAt().toEpochMilli(), shortenedHash));
+                }
+                liveBytes += recordSize(current, recordPosition);
+                url.setId(recordPosition);
+            }
+            sync(firstSegment);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public List<ExpiredUrl> findExpired(Instant now, ExpiredUrl after, int limit) {
+        var urls = after == null
+                ? expiring
+                : expiring.tailSet(new Expiring(after.expiresAt().toEpochMilli(), Base36.decode(after.shortenedHash())), false);
+        var expired = new ArrayList<ExpiredUrl>();
+        for (var url : urls) {
+            if (expired.size() == limit || url.expiresAt() > now.toEpochMilli()) {
+                break;
+            }
+            expired.add(new ExpiredUrl(Instant.ofEpochMilli(url.expiresAt()), Base36.encode(url.shortenedHash())));
+        }
+        return expired;
+    }
+
+    @Override
+    public int deleteByShortenedHashIn(Collection<String> shortenedHashes) {
+        return delete(shortenedHashes, null);
+    }
+
+    @Override
+    public int deleteExpired(Collection<String> shortenedHashes, Instant now) {
+        return delete(shortenedHashes, now);
+    }
+
+    /**
+     * Append a deletion record for each url found, only if expired at the given time if any
+     */
+    private int delete(Collection<String> shortenedHashes, Instant expiredAt) {
+        writeLock.lock();
+        try {
+            var current = state;
+            var firstSegment = segmentIndex(position);
+            var deleted = 0;
+            for (var shortenedHash : new HashSet<>(shortenedHashes)) {
+                if (!ShortenedHashes.isValid(shortenedHash)) {
+                    continue;
+                }
+                var key = Base36.decode(shortenedHash);
+                var urlPosition = current.shortenedHashes.get(key);
+                if (urlPosition == OffHeapLongIndex.NO_VALUE) {
+                    continue;
+                }
+                var expiresAt = expiresAt(current, urlPosition);
+                if (expiredAt != null && (expiresAt == 0 || expiresAt > expiredAt.toEpochMilli())) {
+                    continue;
+                }
+                var hash = hash(current, urlPosition);
+                var recordPosition = append(current, DELETE_RECORD, key, hash, new byte[0], 0, 0);
+                current.shortenedHashes.remove(key, urlPosition);
+                current.hashes.remove(hashKey(hash), urlPosition);
+                if (expiresAt != 0) {
+                    expiring.remove(new Expiring(expiresAt, key));
+                }
+                var urlSize = recordSize(current, urlPosition);
+                liveBytes -= urlSize;
+                deadBytes += urlSize + recordSize(current, recordPosition);
+                deleted++;
+            }
+            sync(firstSegment);
+            return deleted;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * The log is replaced by an empty generation
+     */
+    @Override
+    public void deleteAll() {
+        writeLock.lock();
+        try {
+            var previous = state;
+            var generation = previous.generation + 1;
+            var segments = new CopyOnWriteArrayList<>(List.of(map(segmentPath(generation, 0))));
+            writeGeneration(generation);
+            state = new State(generation, segments, new OffHeapLongIndex(0), new OffHeapLongIndex(0));
+            expiring.clear();
+            position = 0;
+            liveBytes = 0;
+            deadBytes = 0;
+            deleteOtherSegments(generation);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public long count() {
+        return state.shortenedHashes.size();
+    }
+
+    @Override
+    public void forEachHash(BiConsumer<String, String> consumer) {
+        var current = state;
+        forEachRecord(current, position, (recordPosition, segment, offset) -> {
+            var shortenedHash = segment.memory.get(ValueLayout.JAVA_LONG, offset + 16);
+            if (segment.memory.get(ValueLayout.JAVA_BYTE, offset + 8) == URL_RECORD
+                    && current.shortenedHashes.get(shortenedHash) == recordPosition) {
+                consumer.accept(HEX.formatHex(hash(current, recordPosition)), Base36.encode(shortenedHash));
+            }
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("url.shortener.store.urls", this, MappedUrlStore::count)
+                .description("Number of urls in the mapped store")
+                .register(registry);
+        Gauge.builder("url.shortener.store.log.size", this, store -> store.liveBytes + store.deadBytes)
+                .description("Size of the records of the log, deleted ones included")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        Gauge.builder("url.shortener.store.index.memory", this, store -> store.state.shortenedHashes.memoryBytes() + store.state.hashes.memoryBytes())
+                .description("Off-heap memory of the indexes of the mapped store")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        compactor.interrupt();
+        compactor.join();
+        writeLock.lock();
+        try {
+            state.segments.forEach(segment -> segment.memory.force());
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            lockChannel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Compact the log if the deleted records exceed the threshold
+     *
+     * @return true if the log was compacted
+     */
+    boolean compactIfNeeded() {
+        var total = liveBytes + deadBytes;
+        if (total < MIN_COMPACTION_BYTES || deadBytes <= compactionThreshold * total) {
+            return false;
+        }
+        compact();
+        return true;
+    }
+
+    /**
+     * Copy the live records to a new generation, the writes wait for the end of the copy
+     */
+    void compact() {
+        writeLock.lock();
+        try {
+            var start = System.nanoTime();
+            var previous = state;
+            var generation = previous.generation + 1;
+            var compacted = new State(generation, new CopyOnWriteArrayList<>(List.of(map(segmentPath(generation, 0)))),
+                    new OffHeapLongIndex(previous.shortenedHashes.size()), new OffHeapLongIndex(previous.hashes.size()));
+            var end = position;
+            // Position in the new generation, and bytes copied
+            var copied = new long[2];
+            forEachRecord(previous, end, (recordPosition, segment, offset) -> {
+                var shortenedHash = segment.memory.get(ValueLayout.JAVA_LONG, offset + 16);
+                if (segment.memory.get(ValueLayout.JAVA_BYTE, offset + 8) != URL_RECORD
+                        || previous.shortenedHashes.get(shortenedHash) != recordPosition) {
+                    return;
+                }
+                var size = segment.memory.get(ValueLayout.JAVA_INT, offset);
+                // The records keep their checksum, it doesn't depend on their position
+                var target = reserve(compacted, copied[0], size);
+                var targetSegment = compacted.segments.get(segmentIndex(target));
+                MemorySegment.copy(segment.memory, offset, targetSegment.memory, target % segmentSize, size);
+                compacted.shortenedHashes.put(shortenedHash, target);
+                compacted.hashes.put(hashKey(hash(previous, recordPosition)), target);
+                copied[0] = target + size;
+                copied[1] += size;
+            });
+            compacted.segments.forEach(segment -> segment.memory.force());
+            writeGeneration(generation);
+            // The readers still using the previous state read its segments, mapped until they are done
+            state = compacted;
+            position = copied[0];
+            liveBytes = copied[1];
+            deadBytes = 0;
+            deleteOtherSegments(generation);
+            log.info(STR. "Url store compacted from \{ end } to \{ position } bytes in \{ (System.nanoTime() - start) / 1_000_000 } ms" );
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Rebuild the indexes from the log, and erase the torn records
+     */
+    private void replay() {
+        var current = state;
+        for (int index = 0; index < current.segments.size(); index++) {
+            var segment = current.segments.get(index);
+            long offset = 0;
+            while (offset + HEADER_SIZE <= segmentSize) {
+                var size = segment.memory.get(ValueLayout.JAVA_INT, offset);
+                if (size == 0) {
+                    break;
+                }
+                if (!isValid(segment, offset, size)) {
+                    log.warn(STR. "Torn record in \{ segment.path } at \{ offset }, erasing the end of the segment" );
+                    segment.memory.asSlice(offset).fill((byte) 0);
+                    break;
+                }
+                replay(current, index * segmentSize + offset, segment, offset, size);
+                offset += size;
+            }
+            position = index * segmentSize + offset;
+        }
+    }
+
+    private void replay(State current, long recordPosition, Segment segment, long offset, int size) {
+        var shortenedHash = segment.memory.get(ValueLayout.JAVA_LONG, offset + 16);
+        if (segment.memory.get(ValueLayout.JAVA_BYTE, offset + 8) == URL_RECORD) {
+            current.shortenedHashes.put(shortenedHash, recordPosition);
+            current.hashes.put(hashKey(hash(current, recordPosition)), recordPosition);
+            var expiresAt = expiresAt(current, recordPosition);
+            if (expiresAt != 0) {
+                expiring.add(new Expiring(expiresAt, shortenedHash));
+            }
+            liveBytes += size;
+            return;
+        }
+        var urlPosition = current.shortenedHashes.get(shortenedHash);
+        if (urlPosition != OffHeapLongIndex.NO_VALUE) {
+            var expiresAt = expiresAt(current, urlPosition);
+            if (expiresAt != 0) {
+                expiring.remove(new Expiring(expiresAt, shortenedHash));
+            }
+            current.shortenedHashes.remove(shortenedHash, urlPosition);
+            current.hashes.remove(hashKey(hash(current, urlPosition)), urlPosition);
+            var urlSize = recordSize(current, urlPosition);
+            liveBytes -= urlSize;
+            deadBytes += urlSize;
+        }
+        deadBytes += size;
+    }
+
+    private boolean isValid(Segment segment, long offset, int size) {
+        if (size < HEADER_SIZE || size % Long.BYTES != 0 || offset + size > segmentSize) {
+            return false;
+        }
+        var hashLength = Byte.toUnsignedInt(segment.memory.get(ValueLayout.JAVA_BYTE, offset + 9));
+        var originLength = segment.memory.get(ValueLayout.JAVA_INT, offset + 12);
+        var payloadOffset = payloadOffset(segment, offset);
+        if (hashLength > MAX_HASH_LENGTH || originLength < 0 || payloadOffset + hashLength + originLength > size) {
+            return false;
+        }
+        return segment.memory.get(ValueLayout.JAVA_INT, offset + 4) == crc(segment, offset, payloadOffset - HEADER_SIZE + hashLength + originLength);
+    }
+
+    /**
+     * Write a record at the end of the log, with its times if it is an url
+     *
+     * @return the position of the record
+     */
+    private long append(State current, byte type, long shortenedHash, byte[] hash, byte[] originUrl, long createdAt, long expiresAt) {
+        var timesSize = type == URL_RECORD ? TIMES_SIZE : 0;
+        var size = align(HEADER_SIZE + timesSize + hash.length + originUrl.length);
+        var recordPosition = reserve(current, position, size);
+        position = recordPosition + size;
+        var segment = current.segments.get(segmentIndex(recordPosition));
+        var offset = recordPosition % segmentSize;
+        segment.memory.set(ValueLayout.JAVA_BYTE, offset + 8, type);
+        segment.memory.set(ValueLayout.JAVA_BYTE, offset + 9, (byte) hash.length);
+        segment.memory.set(ValueLayout.JAVA_BYTE, offset + 10, (byte) (type == URL_RECORD ? TIMES_FLAG | ORIGIN_URL_CODEC_FLAG : 0));
+        segment.memory.set(ValueLayout.JAVA_INT, offset + 12, originUrl.length);
+        segment.memory.set(ValueLayout.JAVA_LONG, offset + 16, shortenedHash);
+        if (type == URL_RECORD) {
+            segment.memory.set(ValueLayout.JAVA_LONG, offset + HEADER_SIZE, createdAt);
+            segment.memory.set(ValueLayout.JAVA_LONG, offset + HEADER_SIZE + Long.BYTES, expiresAt);
+        }
+        var payloadOffset = offset + HEADER_SIZE + timesSize;
+        MemorySegment.copy(hash, 0, segment.memory, ValueLayout.JAVA_BYTE, payloadOffset, hash.length);
+        MemorySegment.copy(originUrl, 0, segment.memory, ValueLayout.JAVA_BYTE, payloadOffset + hash.length, originUrl.length);
+        segment.memory.set(ValueLayout.JAVA_INT, offset + 4, crc(segment, offset, timesSize + hash.length + originUrl.length));
+        segment.memory.set(ValueLayout.JAVA_INT, offset, size);
+        return recordPosition;
+    }
+
+    /**
+     * Find the space of a record at the end of the log, in the next segment if it doesn't fit in the current one
+     *
+     * @param current the state of the log
+     * @param end     the end of the log
+     * @param size    the size of the record
+     * @return the position of the record
+     */
+    private long reserve(State current, long end, int size) {
+        if (size > segmentSize) {
+            throw new IllegalArgumentException(STR. "Record of \{ size } bytes larger than a segment" );
+        }
+        var recordPosition = end;
+        if (recordPosition % segmentSize + size > segmentSize) {
+            recordPosition = (segmentIndex(recordPosition) + 1) * segmentSize;
+        }
+        var index = segmentIndex(recordPosition);
+        if (index == current.segments.size()) {
+            current.segments.add(map(segmentPath(current.generation, index)));
+        }
+        return recordPosition;
+    }
+
+    private void sync(int firstSegment) {
+        if (syncWrites) {
+            var segments = state.segments;
+            for (int index = firstSegment; index <= segmentIndex(position) && index < segments.size(); index++) {
+                segments.get(index).memory.force();
+            }
+        }
+    }
+
+    /**
+     * Visit the records of a state up to a position
+     */
+    private void forEachRecord(State current, long end, RecordVisitor visitor) {
+        for (int index = 0; index < current.segments.size() && (long) index * segmentSize < end; index++) {
+            var segment = current.segments.get(index);
+            long offset = 0;
+            while (offset + HEADER_SIZE <= segmentSize && index * segmentSize + offset < end) {
+                var size = segment.memory.get(ValueLayout.JAVA_INT, offset);
+                if (size == 0) {
+                    break;
+                }
+                visitor.visit(index * segmentSize + offset, segment, offset);
+                offset += size;
+            }
+        }
+    }
+
+    private long findHash(State current, byte[] hash) {
+        return current.hashes.find(hashKey(hash), recordPosition -> {
+            var segment = current.segments.get(segmentIndex(recordPosition));
+            var offset = recordPosition % segmentSize + payloadOffset(segment, recordPosition % segmentSize);
+            return Byte.toUnsignedInt(segment.memory.get(ValueLayout.JAVA_BYTE, recordPosition % segmentSize + 9)) == hash.length
+                    && MemorySegment.mismatch(segment.memory, offset, offset + hash.length, MemorySegment.ofArray(hash), 0, hash.length) == -1;
+        });
+    }
+
+    private Url read(State current, long recordPosition) {
+        var segment = current.segments.get(segmentIndex(recordPosition));
+        var offset = recordPosition % segmentSize;
+        var hashLength = Byte.toUnsignedInt(segment.memory.get(ValueLayout.JAVA_BYTE, offset + 9));
+        var originLength = segment.memory.get(ValueLayout.JAVA_INT, offset + 12);
+        var payloadOffset = payloadOffset(segment, offset);
+        var originUrl = segment.memory.asSlice(offset + payloadOffset + hashLength, originLength).toArray(ValueLayout.JAVA_BYTE);
+        var url = Url.builder()
+                .id(recordPosition)
+                .hash(HEX.formatHex(hash(current, recordPosition)))
+                .shortenedHash(Base36.encode(segment.memory.get(ValueLayout.JAVA_LONG, offset + 16)))
+                .originUrl((segment.memory.get(ValueLayout.JAVA_BYTE, offset + 10) & ORIGIN_URL_CODEC_FLAG) != 0
+                        ? originUrlCodec.decode(originUrl)
+                        : URLDecoder.decode(new String(originUrl, StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+        if (payloadOffset != HEADER_SIZE) {
+            var expiresAt = segment.memory.get(ValueLayout.JAVA_LONG, offset + HEADER_SIZE + Long.BYTES);
+            url.createdAt(Instant.ofEpochMilli(segment.memory.get(ValueLayout.JAVA_LONG, offset + HEADER_SIZE)))
+                    .expiresAt(expiresAt == 0 ? null : Instant.ofEpochMilli(expiresAt));
+        }
+        return url.build();
+    }
+
+    /**
+     * @return the expiration of an url record, 0 if it never expires
+     */
+    private long expiresAt(State current, long recordPosition) {
+        var segment = current.segments.get(segmentIndex(recordPosition));
+        var offset = recordPosition % segmentSize;
+        return payloadOffset(segment, offset) == HEADER_SIZE ? 0 : segment.memory.get(ValueLayout.JAVA_LONG, offset + HEADER_SIZE + Long.BYTES);
+    }
+
+    /**
+     * @return the offset of the hash in a record, after its times if any
+     */
+    private static int payloadOffset(Segment segment, long offset) {
+        return (segment.memory.get(ValueLayout.JAVA_BYTE, offset + 10) & TIMES_FLAG) != 0 ? HEADER_SIZE + TIMES_SIZE : HEADER_SIZE;
+    }
+
+    private byte[] hash(State current, long recordPosition) {
+        var segment = current.segments.get(segmentIndex(recordPosition));
+        var offset = recordPosition % segmentSize;
+        var hashLength = Byte.toUnsignedInt(segment.memory.get(ValueLayout.JAVA_BYTE, offset + 9));
+        return segment.memory.asSlice(offset + payloadOffset(segment, offset), hashLength).toArray(ValueLayout.JAVA_BYTE);
+    }
+
+    private int recordSize(State current, long recordPosition) {
+        return current.segments.get(segmentIndex(recordPosition)).memory.get(ValueLayout.JAVA_INT, recordPosition % segmentSize);
+    }
+
+    private int segmentIndex(long recordPosition) {
+        return Math.toIntExact(recordPosition / segmentSize);
+    }
+
+    private static int crc(Segment segment, long offset, int payloadLength) {
+        var crc = new CRC32();
+        crc.update(segment.memory.asSlice(offset + 8, HEADER_SIZE - 8 + payloadLength).asByteBuffer());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * @return the first 8 bytes of the hash
+     */
+    private static long hashKey(byte[] hash) {
+        long key = 0;
+        for (int i = 0; i < Math.min(hash.length, Long.BYTES); i++) {
+            key = key << 8 | Byte.toUnsignedLong(hash[i]);
+        }
+        return key;
+    }
+
+    private static int align(int size) {
+        return (size + Long.BYTES - 1) & -Long.BYTES;
+    }
+
+    /**
+     * Lock the directory, the indexes being only consistent with the log if a single store writes it
+     */
+    private static FileChannel lock(Path path) throws IOException {
+        var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            if (channel.tryLock() != null) {
+                return channel;
+            }
+        } catch (OverlappingFileLockException _) {
+            // Locked by this process
+        }
+        channel.close();
+        throw new IllegalStateException(STR. "Url store \{ path.getParent() } already used" );
+    }
+
+    private Segment map(Path path) {
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Unmapped by the garbage collector, once no reader uses it anymore
+            return new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize, Arena.ofAuto()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path segmentPath(long generation, int index) {
+        return directory.resolve("%08d-%06d.log".formatted(generation, index));
+    }
+
+    private long readGeneration() throws IOException {
+        var file = directory.resolve(GENERATION_FILE);
+        return Files.exists(file) ? Long.parseLong(Files.readString(file).trim()) : 1;
+    }
+
+    /**
+     * Switch to a generation, atomically
+     */
+    private void writeGeneration(long generation) throws IOException {
+        var temporary = directory.resolve(GENERATION_FILE + ".tmp");
+        Files.writeString(temporary, Long.toString(generation), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.SYNC);
+        Files.move(temporary, directory.resolve(GENERATION_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Delete the segments of the other generations: the previous ones, or a new one interrupted by a crash
+     */
+    private void deleteOtherSegments(long generation) throws IOException {
+        var prefix = "%08d-".formatted(generation);
+        try (var files = Files.list(directory)) {
+            for (var file : files.filter(file -> file.getFileName().toString().endsWith(".log")).toList()) {
+                if (!file.getFileName().toString().startsWith(prefix)) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(long recordPosition, Segment segment, long offset);
+    }
+
+    private record Segment(Path path, MemorySegment memory) {
+    }
+
+    private record DatabaseUrl(long id, byte[] hashKey, String shortenedHash, byte[] originUrlData, Instant createdAt,
+                               Instant expiresAt) {
+    }
+
+    private record Expiring(long expiresAt, long shortenedHash) implements Comparable<Expiring> {
+        @Override
+        public int compareTo(Expiring other) {
+            var byExpiration = Long.compare(expiresAt, other.expiresAt);
+            return byExpiration != 0 ? byExpiration : Long.compare(shortenedHash, other.shortenedHash);
+        }
+    }
+
+    /**
+     * The segments and the indexes of a generation of the log, replaced all at once
+     * The segments are only added at the end, the readers don't see the segments added after their lookup.
+     */
+    private record State(long generation, List<Segment> segments, OffHeapLongIndex shortenedHashes,
+                         OffHeapLongIndex hashes) {
+    }
+}
@@ -0,0 +1,195 @@
+package com.doutoutdou.urlshortener.store;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongPredicate;
+
+/**
+ * Open addressing (linear probing) hash table of long keys to positive long values, stored off-heap
+ * A slot is 16 bytes (key, value + 1), with no object per entry: its size doesn't weigh on the garbage collector.
+ * A key can be mapped to several values, the caller checks which one matches when keys may collide.
+ * Reads are lock free, writes are serialized. The table doubles when it is 3/4 full, the previous table is
+ * released by the garbage collector once the readers still using it are done.
+ */
+public final class OffHeapLongIndex {
+    public static final long NO_VALUE = -1;
+
+    private static final int MIN_CAPACITY = 1 << 10;
+    private static final double MAX_LOAD = 0.75;
+    private static final long EMPTY = 0;
+    private static final long REMOVED = -1;
+    // (segment, long index) -> long, index * 8 bytes
+    private static final VarHandle SLOT = ValueLayout.JAVA_LONG.arrayElementVarHandle();
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile Table table;
+    private volatile long size;
+    private long removed;
+
+    /**
+     * @param expectedSize the expected number of entries, to avoid the resizes
+     */
+    public OffHeapLongIndex(long expectedSize) {
+        this.table = new Table(capacityFor(expectedSize));
+    }
+
+    /**
+     * @param key the key
+     * @return the first value of the key, or {@link #NO_VALUE}
+     */
+    public long get(long key) {
+        return find(key, _ -> true);
+    }
+
+    /**
+     * @param key    the key
+     * @param accept checks if a value of the key is the one searched
+     * @return the first value of the key accepted, or {@link #NO_VALUE}
+     */
+    public long find(long key, LongPredicate accept) {
+        var current = table;
+        var mask = current.capacity - 1;
+        for (var slot = spread(key) & mask; ; slot = (slot + 1) & mask) {
+            var stored = (long) SLOT.getAcquire(current.slots, 2 * slot + 1);
+            if (stored == EMPTY) {
+                return NO_VALUE;
+            }
+            if (stored != REMOVED && (long) SLOT.get(current.slots, 2 * slot) == key && accept.test(stored - 1)) {
+                return stored - 1;
+            }
+        }
+    }
+
+    /**
+     * Add a value to a key, the previous values of the key are kept
+     *
+     * @param key   the key
+     * @param value the value, positive
+     */
+    public void put(long key, long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException(STR. "Negative value \{ value }" );
+        }
+        writeLock.lock();
+        try {
+            if (size + removed + 1 > (long) (table.capacity * MAX_LOAD)) {
+                resize();
+            }
+            insert(table, key, value);
+            size++;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Add a value to a key, unless the key is already mapped to it
+     *
+     * @param key   the key
+     * @param value the value, positive
+     * @return false if the key was already mapped to this value
+     */
+    public boolean putIfAbsent(long key, long value) {
+        writeLock.lock();
+        try {
+            if (find(key, stored -> stored == value) != NO_VALUE) {
+                return false;
+            }
+            put(key, value);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Remove a value of a key
+     *
+     * @param key   the key
+     * @param value the value
+     * @return false if the key was not mapped to this value
+     */
+    public boolean remove(long key, long value) {
+        writeLock.lock();
+        try {
+            var current = table;
+            var mask = current.capacity - 1;
+            for (var slot = spread(key) & mask; ; slot = (slot + 1) & mask) {
+                var stored = (long) SLOT.get(current.slots, 2 * slot + 1);
+                if (stored == EMPTY) {
+                    return false;
+                }
+                if (stored == value + 1 && (long) SLOT.get(current.slots, 2 * slot) == key) {
+                    // The slot stays used until the next resize, so that the probing of the other keys goes on
+                    SLOT.setRelease(current.slots, 2 * slot + 1, REMOVED);
+                    size--;
+                    removed++;
+                    return true;
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return the off-heap memory used by the table
+     */
+    public long memoryBytes() {
+        return table.slots.byteSize();
+    }
+
+    private void resize() {
+        var previous = table;
+        var resized = new Table(Math.max(capacityFor(size + 1), previous.capacity));
+        for (long slot = 0; slot < previous.capacity; slot++) {
+            var stored = (long) SLOT.get(previous.slots, 2 * slot + 1);
+            if (stored != EMPTY && stored != REMOVED) {
+                insert(resized, (long) SLOT.get(previous.slots, 2 * slot), stored - 1);
+            }
+        }
+        removed = 0;
+        table = resized;
+    }
+
+    private static void insert(Table table, long key, long value) {
+        var mask = table.capacity - 1;
+        var slot = spread(key) & mask;
+        while ((long) SLOT.get(table.slots, 2 * slot + 1) != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        // The key is visible to the readers which see the value
+        SLOT.set(table.slots, 2 * slot, key);
+        SLOT.setRelease(table.slots, 2 * slot + 1, value + 1);
+    }
+
+    private static long capacityFor(long entries) {
+        var needed = Math.max((long) Math.ceil(entries / MAX_LOAD) + 1, MIN_CAPACITY);
+        return Long.highestOneBit(needed - 1) << 1;
+    }
+
+    /**
+     * Finalizer of splitmix64, so that sequential keys are not probed in sequential slots
+     */
+    private static long spread(long key) {
+        key = (key ^ (key >>> 30)) * 0xbf58476d1ce4e5b9L;
+        key = (key ^ (key >>> 27)) * 0x94d049bb133111ebL;
+        return key ^ (key >>> 31);
+    }
+
+    private record Table(MemorySegment slots, long capacity) {
+        Table(long capacity) {
+            this(Arena.ofAuto().allocate(capacity * 2 * Long.BYTES, Long.BYTES), capacity);
+        }
+    }
+}
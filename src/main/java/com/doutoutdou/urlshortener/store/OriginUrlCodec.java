@@ -0,0 +1,336 @@
+package com.doutoutdou.urlshortener.store;
+
+import com.doutoutdou.urlshortener.configuration.OriginUrlProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Storage format of the original urls, shared by all the stores
+ * <pre>
+ * byte    flags: 1 if the url starts with an interned prefix, 2 if the rest of the url is deflated
+ * varint  id of the prefix, if flagged
+ *         rest of the url, UTF-8, deflated with {@link #DICTIONARY} if flagged
+ * </pre>
+ * The prefix of an url is its scheme and host, up to the first slash of its path. The prefixes are interned in the
+ * url_prefix table of the main database once the instance created {@code prefixMinCount} urls with them, up to
+ * {@code maxPrefixes}. They never change once interned, so all of them are kept in memory, loaded on startup: the
+ * prefixes interned by the other instances are read once, on their first decoding.
+ * <p>
+ * A prefix is interned in its own transaction, on another connection: {@link #encode} must not be called inside a
+ * transaction, which would hold two connections at once. Inside one, like a JPA flush, {@link #encodeInterned} only
+ * uses the prefixes already interned, {@link #internPrefix} having been called before the transaction.
+ * <p>
+ * The format can't change once urls are stored: a new version needs a new flag, the dictionary included.
+ */
+@Component
+@Slf4j
+public class OriginUrlCodec implements SmartInitializingSingleton, MeterBinder {
+    private static final int PREFIX_FLAG = 1;
+    private static final int DEFLATED_FLAG = 2;
+    private static final int MAX_PREFIX_LENGTH = 512;
+    private static final int MAX_DECODED_LENGTH = 1 << 16;
+    /**
+     * Preset dictionary of the deflated urls, its most frequent strings last
+     */
+    private static final byte[] DICTIONARY = ("/index.html.php.aspx.jpg.png.pdf?lang=en&page=&sort=&q=&query=&search="
+            + "&ref=&source=&session=&token=&redirect=&id=&v=&fbclid=&gclid=&utm_content=&utm_term=&utm_campaign="
+            + "&utm_medium=email&utm_medium=social&utm_source=newsletter&utm_source=").getBytes(StandardCharsets.US_ASCII);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate newTransaction;
+    private final int maxPrefixes;
+    private final int prefixMinCount;
+    private final long compressionThreshold;
+    private final Map<String, Integer> prefixIds = new ConcurrentHashMap<>();
+    private final Map<Integer, String> prefixes = new ConcurrentHashMap<>();
+    // prefix -> urls created with it, until interned
+    private final Cache<String, AtomicInteger> candidates;
+
+    public OriginUrlCodec(OriginUrlProperties properties, DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        // Interned apart from the transaction of the url: a prefix is never rolled back once in memory
+        this.newTransaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.maxPrefixes = properties.maxPrefixes();
+        this.prefixMinCount = properties.prefixMinCount();
+        this.compressionThreshold = properties.compressionThreshold().toBytes();
+        this.candidates = Caffeine.newBuilder().maximumSize(Math.max(properties.maxPrefixes(), 1)).build();
+    }
+
+    /**
+     * Load the interned prefixes, once the database is migrated
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        jdbcTemplate.query("select id, prefix from url_prefix",
+                (RowCallbackHandler) resultSet -> cache(resultSet.getInt(1), resultSet.getString(2)));
+        log.info(STR. "\{ prefixes.size() } url prefixes loaded" );
+    }
+
+    /**
+     * Encode an url, interning its prefix if it is frequent enough
+     *
+     * @param originUrl the original url
+     * @return its stored form
+     */
+    public byte[] encode(String originUrl) {
+        var prefixLength = prefixLength(originUrl);
+        return encode(originUrl, prefixLength, prefixLength == 0 ? null : prefixId(originUrl.substring(0, prefixLength)));
+    }
+
+    /**
+     * Encode an url with the prefixes already interned, without database access: the same url can be encoded
+     * several times
+     *
+     * @param originUrl the original url
+     * @return its stored form
+     */
+    public byte[] encodeInterned(String originUrl) {
+        var prefixLength = prefixLength(originUrl);
+        return encode(originUrl, prefixLength, prefixLength == 0 ? null : prefixIds.get(originUrl.substring(0, prefixLength)));
+    }
+
+    /**
+     * Count the prefix of an url about to be stored, interning it if it is frequent enough
+     *
+     * @param originUrl the original url
+     */
+    public void internPrefix(String originUrl) {
+        var prefixLength = prefixLength(originUrl);
+        if (prefixLength > 0) {
+            prefixId(originUrl.substring(0, prefixLength));
+        }
+    }
+
+    private byte[] encode(String originUrl, int prefixLength, Integer prefixId) {
+        var flags = 0;
+        var rest = (prefixId == null ? originUrl : originUrl.substring(prefixLength)).getBytes(StandardCharsets.UTF_8);
+        if (prefixId != null) {
+            flags |= PREFIX_FLAG;
+        }
+        if (rest.length >= compressionThreshold) {
+            var deflated = deflate(rest);
+            if (deflated.length < rest.length) {
+                rest = deflated;
+                flags |= DEFLATED_FLAG;
+            }
+        }
+
+        var idLength = prefixId == null ? 0 : varintLength(prefixId);
+        var encoded = new byte[1 + idLength + rest.length];
+        encoded[0] = (byte) flags;
+        if (prefixId != null) {
+            writeVarint(encoded, 1, prefixId);
+        }
+        System.arraycopy(rest, 0, encoded, 1 + idLength, rest.length);
+        return encoded;
+    }
+
+    /**
+     * @param encoded the stored form of an original url
+     * @return the original url
+     * @throws IllegalStateException if it is corrupted or uses an unknown prefix
+     */
+    public String decode(byte[] encoded) {
+        var flags = encoded[0];
+        if ((flags & ~(PREFIX_FLAG | DEFLATED_FLAG)) != 0) {
+            throw new IllegalStateException(STR. "Unknown original url format \{ flags }" );
+        }
+        var position = 1;
+        var prefix = "";
+        if ((flags & PREFIX_FLAG) != 0) {
+            var prefixId = 0;
+            for (var shift = 0; ; shift += 7) {
+                var value = encoded[position++];
+                prefixId |= (value & 0x7f) << shift;
+                if (value >= 0) {
+                    break;
+                }
+            }
+            prefix = prefix(prefixId);
+        }
+        var rest = (flags & DEFLATED_FLAG) != 0
+                ? inflate(encoded, position)
+                : new String(encoded, position, encoded.length - position, StandardCharsets.UTF_8);
+        return prefix.concat(rest);
+    }
+
+    /**
+     * @return the number of prefixes known by the instance
+     */
+    public int prefixes() {
+        return prefixes.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("url.shortener.origin.url.prefixes", this, OriginUrlCodec::prefixes)
+                .description("Number of interned original url prefixes known by the instance")
+                .register(registry);
+    }
+
+    /**
+     * @return the length of the scheme and host of an url, with the slash following them, 0 if it has none
+     */
+    static int prefixLength(String originUrl) {
+        var schemeEnd = originUrl.indexOf("://");
+        if (schemeEnd < 0) {
+            return 0;
+        }
+        for (int i = schemeEnd + 3; i < originUrl.length(); i++) {
+            var c = originUrl.charAt(i);
+            if (c == '/') {
+                return i + 1;
+            }
+            if (c == '?' || c == '#') {
+                return i;
+            }
+        }
+        return originUrl.length();
+    }
+
+    /**
+     * @return the id of a prefix, interned if it is frequent enough, null if it is not interned
+     */
+    private Integer prefixId(String prefix) {
+        var id = prefixIds.get(prefix);
+        if (id != null || prefix.length() > MAX_PREFIX_LENGTH || prefixIds.size() >= maxPrefixes) {
+            return id;
+        }
+        if (candidates.get(prefix, _ -> new AtomicInteger()).incrementAndGet() < prefixMinCount) {
+            return null;
+        }
+        try {
+            try {
+                id = newTransaction.execute(_ -> intern(prefix));
+            } catch (DuplicateKeyException _) {
+                // Interned meanwhile by another instance
+                id = newTransaction.execute(_ -> intern(prefix));
+            }
+            candidates.invalidate(prefix);
+            return id;
+        } catch (DataAccessException | TransactionException e) {
+            // The url is stored without prefix, the next one retries
+            log.warn(STR. "Interning of the url prefix \{ prefix } failed" , e);
+            return null;
+        }
+    }
+
+    private int intern(String prefix) {
+        var existing = jdbcTemplate.queryForList("select id from url_prefix where prefix = ?", Integer.class, prefix);
+        if (!existing.isEmpty()) {
+            return cache(existing.getFirst(), prefix);
+        }
+        var keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            var statement = connection.prepareStatement("insert into url_prefix (prefix) values (?)", new String[]{"id"});
+            statement.setString(1, prefix);
+            return statement;
+        }, keyHolder);
+        return cache(keyHolder.getKeyAs(Number.class).intValue(), prefix);
+    }
+
+    private String prefix(int id) {
+        var prefix = prefixes.get(id);
+        if (prefix == null) {
+            // Interned by another instance
+            var found = jdbcTemplate.queryForList("select prefix from url_prefix where id = ?", String.class, id);
+            if (found.isEmpty()) {
+                throw new IllegalStateException(STR. "Unknown url prefix \{ id }" );
+            }
+            prefix = found.getFirst();
+            cache(id, prefix);
+        }
+        return prefix;
+    }
+
+    private int cache(int id, String prefix) {
+        prefixes.put(id, prefix);
+        prefixIds.put(prefix, id);
+        return id;
+    }
+
+    private static byte[] deflate(byte[] rest) {
+        var deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(rest);
+            deflater.finish();
+            // Deflate adds 5 bytes per 16 KB block to incompressible data, such an output is not kept
+            var output = new byte[rest.length + 16];
+            var length = deflater.deflate(output);
+            return deflater.finished() ? Arrays.copyOf(output, length) : rest;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static String inflate(byte[] encoded, int position) {
+        var inflater = new Inflater(true);
+        try {
+            inflater.setDictionary(DICTIONARY);
+            inflater.setInput(encoded, position, encoded.length - position);
+            var output = new byte[Math.min(4 * (encoded.length - position) + 64, MAX_DECODED_LENGTH)];
+            var length = 0;
+            while (!inflater.finished()) {
+                if (length == output.length) {
+                    if (output.length == MAX_DECODED_LENGTH) {
+                        throw new IllegalStateException("Deflated original url too long");
+                    }
+                    output = Arrays.copyOf(output, Math.min(2 * output.length, MAX_DECODED_LENGTH));
+                }
+                var inflated = inflater.inflate(output, length, output.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated deflated original url");
+                }
+                length += inflated;
+            }
+            return new String(output, 0, length, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted deflated original url", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int varintLength(int value) {
+        var length = 1;
+        while ((value >>>= 7) != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    private static void writeVarint(byte[] output, int position, int value) {
+        while ((value & ~0x7f) != 0) {
+            output[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        output[position] = (byte) value;
+    }
+}
@@ -0,0 +1,123 @@
+package com.doutoutdou.urlshortener.store;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Assignment of the buckets to the shards of the {@link ShardedUrlStore}
+ * A key (shortened hash or hash) is hashed to a bucket, the ranges of buckets covering all of them in order.
+ *
+ * @param buckets the number of buckets
+ * @param ranges  the ranges of buckets, in order
+ */
+public record ShardMap(int buckets, List<Range> ranges) {
+
+    public ShardMap {
+        ranges = List.copyOf(ranges);
+        var next = 0;
+        for (var range : ranges) {
+            if (range.firstBucket() != next || range.lastBucket() < range.firstBucket()) {
+                throw new IllegalStateException(STR. "The shard ranges must cover the buckets in order, found \{ range } at bucket \{ next }" );
+            }
+            next = range.lastBucket() + 1;
+        }
+        if (next != buckets) {
+            throw new IllegalStateException(STR. "The shard ranges cover \{ next } buckets instead of \{ buckets }" );
+        }
+    }
+
+    /**
+     * Spread the buckets evenly on shards
+     *
+     * @param buckets the number of buckets
+     * @param shards  the names of the shards
+     * @return the shard map
+     */
+    public static ShardMap even(int buckets, List<String> shards) {
+        var ranges = new ArrayList<Range>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            ranges.add(new Range(buckets * i / shards.size(), buckets * (i + 1) / shards.size() - 1, shards.get(i), null));
+        }
+        return new ShardMap(buckets, ranges);
+    }
+
+    /**
+     * @param key     a shortened hash or a hash
+     * @param buckets the number of buckets
+     * @return the bucket of the key
+     */
+    public static int bucket(String key, int buckets) {
+        var crc = new CRC32();
+        crc.update(key.getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() % buckets);
+    }
+
+    /**
+     * @param key a shortened hash or a hash
+     * @return the range of the bucket of the key
+     */
+    public Range route(String key) {
+        return range(bucket(key, buckets));
+    }
+
+    /**
+     * @param bucket a bucket
+     * @return the range of the bucket
+     */
+    public Range range(int bucket) {
+        int low = 0;
+        int high = ranges.size() - 1;
+        while (low < high) {
+            var middle = (low + high + 1) >>> 1;
+            if (ranges.get(middle).firstBucket() <= bucket) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return ranges.get(low);
+    }
+
+    /**
+     * @param firstBucket the first bucket of the range
+     * @param lastBucket  the last bucket of the range, included
+     * @param shard       the shard of the buckets
+     * @param target      the shard the buckets are moved to, null if they aren't moved
+     */
+    public record Range(int firstBucket, int lastBucket, String shard, String target) {
+
+        /**
+         * @return true if the buckets are being moved to the target shard
+         */
+        public boolean moving() {
+            return target != null;
+        }
+
+        /**
+         * A row being moved is written to the target before being deleted from the source: reading the source
+         * first, then the target, never misses it
+         *
+         * @return the shards to read, in order
+         */
+        public List<String> reads() {
+            return moving() ? List.of(shard, target) : List.of(shard);
+        }
+
+        /**
+         * @return the shard the new rows are written to
+         */
+        public String write() {
+            return moving() ? target : shard;
+        }
+
+        /**
+         * @param bucket a bucket
+         * @return true if the bucket is in the range
+         */
+        public boolean contains(int bucket) {
+            return firstBucket <= bucket && bucket <= lastBucket;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.doutoutdou.urlshortener.store;
+
+import com.doutoutdou.urlshortener.configuration.ShardingProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Online move of ranges of buckets to another shard, exposed as the shards actuator endpoint
+ * <p>
+ * The range is marked as moved to its target in the shard map first, so that once every instance read the new map
+ * the new rows are written to the target, and the rows are read from the source then from the target. Its url rows
+ * and hash keys are then copied to the target and deleted from the source in batches, before the range is assigned
+ * to the target. A move interrupted by a failure or a restart is resumed by moving the same range again.
+ */
+@Component
+@Endpoint(id = "shards")
+@ConditionalOnProperty(prefix = "url-shortener.store", name = "type", havingValue = "sharded")
+@Slf4j
+public class ShardRebalancer {
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final ShardedUrlStore store;
+    private final int batchSize;
+    private final AtomicBoolean moving = new AtomicBoolean();
+
+    public ShardRebalancer(ShardedUrlStore store, ShardingProperties properties) {
+        this.store = store;
+        this.batchSize = properties.moveBatchSize();
+    }
+
+    /**
+     * @return the current shard map
+     */
+    @ReadOperation
+    public ShardMap shards() {
+        return store.shardMap();
+    }
+
+    /**
+     * Start moving a range of buckets to a shard, in the background
+     *
+     * @param firstBucket the first bucket of the range
+     * @param lastBucket  the last bucket of the range, included
+     * @param shard       the shard the buckets are moved to
+     * @return the shard map, the range being marked as moved once every instance read it
+     */
+    @WriteOperation
+    public ShardMap move(int firstBucket, int lastBucket, String shard) {
+        store.shard(shard);
+        if (!moving.compareAndSet(false, true)) {
+            throw new IllegalStateException("A move is already running");
+        }
+        Thread.ofVirtual().name("shard-move").start(() -> {
+            try {
+                moveNow(firstBucket, lastBucket, shard);
+            } catch (InterruptedException e) {
+                log.warn(STR. "Move of the buckets \{ firstBucket }-\{ lastBucket } to \{ shard } interrupted" );
+            } catch (RuntimeException e) {
+                log.error(STR. "Move of the buckets \{ firstBucket }-\{ lastBucket } to \{ shard } failed, move them again to resume" , e);
+            } finally {
+                moving.set(false);
+            }
+        });
+        return store.shardMap();
+    }
+
+    /**
+     * Move a range of buckets to a shard
+     *
+     * @param firstBucket the first bucket of the range
+     * @param lastBucket  the last bucket of the range, included
+     * @param target      the shard the buckets are moved to
+     * @throws InterruptedException if interrupted while waiting for the instances to read the shard map
+     */
+    void moveNow(int firstBucket, int lastBucket, String target) throws InterruptedException {
+        var map = store.readShardMap().orElseThrow();
+        if (firstBucket < 0 || lastBucket >= map.buckets() || lastBucket < firstBucket) {
+            throw new IllegalArgumentException(STR. "Invalid range of buckets \{ firstBucket }-\{ lastBucket }" );
+        }
+        log.info(STR. "Moving the buckets \{ firstBucket }-\{ lastBucket } to \{ target }" );
+        var marked = mark(map, firstBucket, lastBucket, target);
+        store.writeShardMap(marked);
+        store.refreshShardMap();
+        Thread.sleep(store.mapPropagationDelay());
+
+        for (var range : marked.ranges()) {
+            if (range.moving() && range.firstBucket() >= firstBucket && range.lastBucket() <= lastBucket) {
+                var urls = moveUrls(range, marked.buckets());
+                var hashKeys = moveHashKeys(range, marked.buckets());
+                log.info(STR. "Buckets \{ range.firstBucket() }-\{ range.lastBucket() } moved from \{ range.shard() } to \{ target }: \{ urls } urls, \{ hashKeys } hash keys" );
+            }
+        }
+
+        store.writeShardMap(assign(store.readShardMap().orElseThrow(), firstBucket, lastBucket));
+        store.refreshShardMap();
+        log.info(STR. "Buckets \{ firstBucket }-\{ lastBucket } assigned to \{ target }" );
+    }
+
+    /**
+     * Split the ranges at the bounds of the moved buckets, and mark the moved ones
+     *
+     * @throws IllegalStateException if some buckets are already moved to another shard
+     */
+    static ShardMap mark(ShardMap map, int firstBucket, int lastBucket, String target) {
+        var ranges = new ArrayList<ShardMap.Range>();
+        for (var range : map.ranges()) {
+            if (range.lastBucket() < firstBucket || range.firstBucket() > lastBucket) {
+                ranges.add(range);
+                continue;
+            }
+            if (range.moving() && !range.target().equals(target)) {
+                throw new IllegalStateException(STR. "The buckets \{ range.firstBucket() }-\{ range.lastBucket() } are already moved to \{ range.target() }" );
+            }
+            var first = Math.max(range.firstBucket(), firstBucket);
+            var last = Math.min(range.lastBucket(), lastBucket);
+            if (range.firstBucket() < first) {
+                ranges.add(new ShardMap.Range(range.firstBucket(), first - 1, range.shard(), range.target()));
+            }
+            ranges.add(new ShardMap.Range(first, last, range.shard(), range.shard().equals(target) ? null : target));
+            if (last < range.lastBucket()) {
+                ranges.add(new ShardMap.Range(last + 1, range.lastBucket(), range.shard(), range.target()));
+            }
+        }
+        return new ShardMap(map.buckets(), ranges);
+    }
+
+    /**
+     * Assign the moved buckets to their target, merging the adjacent ranges of a same shard
+     */
+    static ShardMap assign(ShardMap map, int firstBucket, int lastBucket) {
+        var ranges = new ArrayList<ShardMap.Range>();
+        for (var range : map.ranges()) {
+            var assigned = range.moving() && range.firstBucket() >= firstBucket && range.lastBucket() <= lastBucket
+                    ? new ShardMap.Range(range.firstBucket(), range.lastBucket(), range.target(), null)
+                    : range;
+            var previous = ranges.isEmpty() ? null : ranges.getLast();
+            if (previous != null && !previous.moving() && !assigned.moving() && previous.shard().equals(assigned.shard())) {
+                ranges.set(ranges.size() - 1, new ShardMap.Range(previous.firstBucket(), assigned.lastBucket(), previous.shard(), null));
+            } else {
+                ranges.add(assigned);
+            }
+        }
+        return new ShardMap(map.buckets(), ranges);
+    }
+
+    /**
+     * Copy the url rows of a range to its target, then delete them from its source, by batches in the order of
+     * their id. A row deleted from the source meanwhile is deleted from the target too.
+     *
+     * @return the number of urls moved
+     */
+    private long moveUrls(ShardMap.Range range, int buckets) {
+        var source = store.shard(range.shard());
+        var target = store.shard(range.target());
+        var moved = 0L;
+        var lastId = -1L;
+        while (true) {
+            var rows = source.jdbcTemplate().query(
+                    "select id, origin_url_data, hash_key, shortened_hash, created_at, expires_at from url where id > ? order by id fetch first ? rows only",
+                    (resultSet, _) -> new UrlRow(resultSet.getLong("id"), new Object[]{resultSet.getBytes("origin_url_data"),
+                            resultSet.getBytes("hash_key"), resultSet.getString("shortened_hash"),
+                            resultSet.getTimestamp("created_at"), resultSet.getTimestamp("expires_at")}),
+                    lastId, batchSize);
+            if (rows.isEmpty()) {
+                return moved;
+            }
+            lastId = rows.getLast().id();
+            var inRange = rows.stream().filter(row -> range.contains(ShardMap.bucket(row.shortenedHash(), buckets))).toList();
+            if (inRange.isEmpty()) {
+                continue;
+            }
+            var existing = target.namedJdbcTemplate().queryForList("select shortened_hash from url where shortened_hash in (:shortenedHashes)",
+                    Map.of("shortenedHashes", inRange.stream().map(UrlRow::shortenedHash).toList()), String.class);
+            var copied = inRange.stream().filter(row -> !existing.contains(row.shortenedHash())).toList();
+            target.transactionTemplate().executeWithoutResult(_ -> target.jdbcTemplate().batchUpdate(
+                    "insert into url (id, origin_url_data, hash_key, shortened_hash, created_at, expires_at) values (next value for url_seq, ?, ?, ?, ?, ?)",
+                    copied.stream().map(UrlRow::columns).toList()));
+            var deleted = source.jdbcTemplate().batchUpdate("delete from url where id = ?",
+                    inRange.stream().map(row -> new Object[]{row.id()}).toList());
+            var vanished = new ArrayList<Object[]>();
+            for (int i = 0; i < deleted.length; i++) {
+                if (deleted[i] == 0 && copied.contains(inRange.get(i))) {
+                    vanished.add(new Object[]{inRange.get(i).shortenedHash(), inRange.get(i).columns()[3]});
+                }
+            }
+            target.jdbcTemplate().batchUpdate("delete from url where shortened_hash = ? and created_at = ?", vanished);
+            moved += inRange.size() - vanished.size();
+        }
+    }
+
+    /**
+     * Copy the hash keys of a range to its target, then delete them from its source, by batches in the order of
+     * the hashes. A hash key already on the target, written after its url was deleted from the source, is kept.
+     *
+     * @return the number of hash keys moved
+     */
+    private long moveHashKeys(ShardMap.Range range, int buckets) {
+        var source = store.shard(range.shard());
+        var target = store.shard(range.target());
+        var moved = 0L;
+        byte[] lastHashKey = null;
+        while (true) {
+            var hashKeys = lastHashKey == null
+                    ? source.jdbcTemplate().query("select hash_key, shortened_hash, created_at from url_hash_key order by hash_key fetch first ? rows only",
+                    ShardedUrlStore::hashKey, batchSize)
+                    : source.jdbcTemplate().query("select hash_key, shortened_hash, created_at from url_hash_key where hash_key > ? order by hash_key fetch first ? rows only",
+                    ShardedUrlStore::hashKey, lastHashKey, batchSize);
+            if (hashKeys.isEmpty()) {
+                return moved;
+            }
+            lastHashKey = HEX.parseHex(hashKeys.getLast().hash());
+            for (var hashKey : hashKeys) {
+                if (!range.contains(ShardMap.bucket(hashKey.hash(), buckets))) {
+                    continue;
+                }
+                var parameters = new Object[]{HEX.parseHex(hashKey.hash()), hashKey.shortenedHash(), Timestamp.from(hashKey.createdAt())};
+                var copied = true;
+                try {
+                    target.jdbcTemplate().update("insert into url_hash_key (hash_key, shortened_hash, created_at) values (?, ?, ?)", parameters);
+                } catch (DuplicateKeyException e) {
+                    log.warn(STR. "Hash key \{ hashKey.hash() } already on \{ range.target() }, the one of \{ range.shard() } is dropped" );
+                    copied = false;
+                }
+                var deleted = source.jdbcTemplate().update("delete from url_hash_key where hash_key = ? and shortened_hash = ? and created_at = ?", parameters);
+                if (deleted == 0 && copied) {
+                    target.jdbcTemplate().update("delete from url_hash_key where hash_key = ? and shortened_hash = ? and created_at = ?", parameters);
+                } else if (copied) {
+                    moved++;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param id      the id of the url on the source shard
+     * @param columns the columns of the url but its id
+     */
+    private record UrlRow(long id, Object[] columns) {
+
+        String shortenedHash() {
+            return (String) columns[2];
+        }
+    }
+}
@@ -0,0 +1,702 @@
+package com.doutoutdou.urlshortener.store;
+
+import com.doutoutdou.urlshortener.configuration.ShardingProperties;
+import com.doutoutdou.urlshortener.entity.Url;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import liquibase.exception.LiquibaseException;
+import liquibase.integration.spring.SpringLiquibase;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.liquibase.LiquibaseProperties;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Urls spread on several relational databases, the shards
+ * <p>
+ * The url rows are stored on the shard of their shortened hash. A lookup by hash reads the url_hash_key table of
+ * the shard of the hash first, giving the shortened hash. Keys are hashed to a fixed number of buckets, assigned to
+ * the shards by ranges in the {@link ShardMap}, stored in the main database and read again every refresh interval.
+ * The shards are migrated by Liquibase on startup, with the changelog of the main database. Their original urls
+ * are encoded by the {@link OriginUrlCodec}, its prefixes being interned in the main database.
+ * <p>
+ * An url is written in two steps without a distributed transaction: its hash key first, claiming the hash, then
+ * its url row, the hash key being deleted if the url row can't be written. A crash between the two leaves a hash
+ * key without url: it is ignored by the lookups, and replaced by the next creation of the url once older than a
+ * minute. Lookups and writes of several keys are grouped by shard, the shards being queried in parallel.
+ * <p>
+ * While a range of buckets is moved by the {@link ShardRebalancer}, its new rows are written to the target shard,
+ * and its rows are read from the source shard then from the target one.
+ */
+@Component
+@Qualifier(UrlStore.BACKEND)
+@ConditionalOnProperty(prefix = "url-shortener.store", name = "type", havingValue = "sharded")
+@Slf4j
+public class ShardedUrlStore implements UrlStore, SmartInitializingSingleton, DisposableBean {
+    private static final HexFormat HEX = HexFormat.of();
+    private static final Duration ORPHAN_HASH_KEY_AGE = Duration.ofMinutes(1);
+    private static final int CONVERSION_CHUNK_SIZE = 1000;
+    private static final String URL_COLUMNS = "origin_url_data, hash_key, shortened_hash, created_at, expires_at";
+
+    private final int buckets;
+    private final Duration mapRefreshInterval;
+    private final String changeLog;
+    private final OriginUrlCodec originUrlCodec;
+    private final RowMapper<Url> urlMapper;
+    private final JdbcTemplate catalog;
+    private final TransactionTemplate catalogTransaction;
+    private final Map<String, Shard> shards = new LinkedHashMap<>();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile ShardMap shardMap;
+    private volatile Thread refresher;
+
+    public ShardedUrlStore(ShardingProperties properties, DataSource dataSource, LiquibaseProperties liquibaseProperties,
+                           OriginUrlCodec originUrlCodec, MeterRegistry meterRegistry) {
+        if (properties.shards().isEmpty()) {
+            throw new IllegalStateException("The sharded store needs at least one shard in url-shortener.sharding.shards");
+        }
+        this.buckets = properties.buckets();
+        this.mapRefreshInterval = properties.mapRefreshInterval();
+        this.changeLog = liquibaseProperties.getChangeLog();
+        this.originUrlCodec = originUrlCodec;
+        this.urlMapper = (resultSet, _) -> Url.builder()
+                .originUrl(originUrlCodec.decode(resultSet.getBytes("origin_url_data")))
+                .hash(HEX.formatHex(resultSet.getBytes("hash_key")))
+                .shortenedHash(resultSet.getString("shortened_hash"))
+                .createdAt(instant(resultSet, "created_at"))
+                .expiresAt(instant(resultSet, "expires_at"))
+                .build();
+        this.catalog = new JdbcTemplate(dataSource);
+        this.catalogTransaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        for (var shard : properties.shards()) {
+            var shardDataSource = new HikariDataSource();
+            shardDataSource.setPoolName(STR. "shard-\{ shard.name() }" );
+            shardDataSource.setJdbcUrl(shard.url());
+            shardDataSource.setUsername(shard.username());
+            shardDataSource.setPassword(shard.password());
+            if (shard.maximumPoolSize() > 0) {
+                shardDataSource.setMaximumPoolSize(shard.maximumPoolSize());
+            }
+            shardDataSource.setMetricRegistry(meterRegistry);
+            shards.put(shard.name(), new Shard(shard.name(), shardDataSource));
+        }
+    }
+
+    /**
+     * Migrate the shards and load the shard map, once the main database is migrated and before the requests are
+     * served. The shard map is created with the buckets spread evenly on the configured shards if it doesn't exist.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        for (var shard : shards.values()) {
+            var liquibase = new SpringLiquibase();
+            liquibase.setDataSource(shard.dataSource());
+            liquibase.setChangeLog(changeLog);
+            liquibase.setResourceLoader(new DefaultResourceLoader());
+            try {
+                liquibase.afterPropertiesSet();
+            } catch (LiquibaseException e) {
+                throw new IllegalStateException(STR. "Migration of the shard \{ shard.name() } failed" , e);
+            }
+            convertOriginUrls(shard);
+        }
+        shardMap = readShardMap().orElseGet(this::createShardMap);
+        log.info(STR. "Shard map loaded: \{ shardMap.ranges() }" );
+        refresher = Thread.ofVirtual().name("shard-map-refresh").start(this::refreshPeriodically);
+    }
+
+    /**
+     * Convert the url encoded original urls of a shard to their binary format, chunk by chunk
+     * The text column is dropped by the migration of the next start.
+     */
+    private void convertOriginUrls(Shard shard) {
+        if (shard.jdbcTemplate().queryForObject("select count(*) from url where origin_url_data is null", Long.class) == 0) {
+            return;
+        }
+        var converted = 0L;
+        var lastId = Long.MIN_VALUE;
+        List<Object[]> chunk;
+        do {
+            chunk = shard.jdbcTemplate().query(
+                    "select id, origin_url from url where origin_url_data is null and id > ? order by id fetch first ? rows only",
+                    (resultSet, _) -> new Object[]{resultSet.getLong(1), resultSet.getString(2)}, lastId, CONVERSION_CHUNK_SIZE);
+            shard.jdbcTemplate().batchUpdate("update url set origin_url_data = ?, origin_url = null where id = ?", chunk.stream()
+                    .map(row -> new Object[]{originUrlCodec.encode(URLDecoder.decode((String) row[1], StandardCharsets.UTF_8)), row[0]})
+                    .toList());
+            converted += chunk.size();
+            lastId = chunk.isEmpty() ? lastId : (long) chunk.getLast()[0];
+        } while (chunk.size() == CONVERSION_CHUNK_SIZE);
+        log.info(STR. "Original urls of \{ converted } urls of the shard \{ shard.name() } converted" );
+    }
+
+    private ShardMap createShardMap() {
+        var created = ShardMap.even(buckets, List.copyOf(shards.keySet()));
+        try {
+            writeShardMap(created);
+            return created;
+        } catch (DuplicateKeyException e) {
+            // Created meanwhile by another instance
+            return readShardMap().orElseThrow(() -> e);
+        }
+    }
+
+    /**
+     * @return the current shard map
+     */
+    public ShardMap shardMap() {
+        return shardMap;
+    }
+
+    /**
+     * Read the shard map again, changed by a move
+     */
+    public void refreshShardMap() {
+        readShardMap().ifPresent(map -> shardMap = map);
+    }
+
+    /**
+     * @return the shard map of the main database, empty if not created yet
+     */
+    Optional<ShardMap> readShardMap() {
+        var ranges = catalog.query("select first_bucket, last_bucket, shard, target_shard from url_shard_range order by first_bucket",
+                (resultSet, _) -> new ShardMap.Range(resultSet.getInt(1), resultSet.getInt(2), resultSet.getString(3), resultSet.getString(4)));
+        if (ranges.isEmpty()) {
+            return Optional.empty();
+        }
+        var map = new ShardMap(buckets, ranges);
+        for (var range : ranges) {
+            range.reads().forEach(this::shard);
+        }
+        return Optional.of(map);
+    }
+
+    /**
+     * Replace the shard map of the main database, atomically
+     *
+     * @param map the new shard map
+     */
+    void writeShardMap(ShardMap map) {
+        catalogTransaction.executeWithoutResult(_ -> {
+            catalog.update("delete from url_shard_range");
+            catalog.batchUpdate("insert into url_shard_range (first_bucket, last_bucket, shard, target_shard) values (?, ?, ?, ?)",
+                    map.ranges().stream().map(range -> new Object[]{range.firstBucket(), range.lastBucket(), range.shard(), range.target()}).toList());
+        });
+    }
+
+    /**
+     * @param name the name of a shard
+     * @return the shard
+     */
+    Shard shard(String name) {
+        var shard = shards.get(name);
+        if (shard == null) {
+            throw new IllegalStateException(STR. "The shard \{ name } of the shard map is not configured" );
+        }
+        return shard;
+    }
+
+    /**
+     * @return the duration after which all the instances use a new shard map
+     */
+    Duration mapPropagationDelay() {
+        return mapRefreshInterval.multipliedBy(2);
+    }
+
+    @Override
+    public Optional<Url> findByHash(String hash) {
+        return findHashKey(hash)
+                .flatMap(hashKey -> findByShortenedHash(hashKey.shortenedHash()))
+                .filter(url -> url.getHash().equals(hash));
+    }
+
+    @Override
+    public Optional<Url> findByShortenedHash(String shortenedHash) {
+        for (var name : shardMap.route(shortenedHash).reads()) {
+            var urls = shard(name).jdbcTemplate().query(STR. "select \{ URL_COLUMNS } from url where shortened_hash = ?" ,
+                    urlMapper, shortenedHash);
+            if (!urls.isEmpty()) {
+                return Optional.of(urls.getFirst());
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public List<Url> findByHashIn(Collection<String> hashes) {
+        var hashKeys = lookup(hashes, (shard, keys) -> shard.namedJdbcTemplate().query(
+                "select hash_key, shortened_hash, created_at from url_hash_key where hash_key in (:hashKeys)",
+                Map.of("hashKeys", keys.stream().map(HEX::parseHex).toList()), ShardedUrlStore::hashKey), HashKey::hash);
+        var hashesByShortenedHash = new HashMap<String, String>();
+        hashKeys.forEach(hashKey -> hashesByShortenedHash.put(hashKey.shortenedHash(), hashKey.hash()));
+        return findByShortenedHashIn(hashesByShortenedHash.keySet()).stream()
+                .filter(url -> url.getHash().equals(hashesByShortenedHash.get(url.getShortenedHash())))
+                .toList();
+    }
+
+    @Override
+    public List<Url> findByShortenedHashIn(Collection<String> shortenedHashes) {
+        return lookup(shortenedHashes, (shard, keys) -> shard.namedJdbcTemplate().query(
+                STR. "select \{ URL_COLUMNS } from url where shortened_hash in (:shortenedHashes)" ,
+                Map.of("shortenedHashes", keys), urlMapper), Url::getShortenedHash);
+    }
+
+    @Override
+    public List<String> findShortenedHashesIn(Collection<String> shortenedHashes) {
+        return lookup(shortenedHashes, (shard, keys) -> shard.namedJdbcTemplate().queryForList(
+                "select shortened_hash from url where shortened_hash in (:shortenedHashes)",
+                Map.of("shortenedHashes", keys), String.class), Function.identity());
+    }
+
+    /**
+     * Claim the hash, then write the url row
+     */
+    @Override
+    public Url save(Url url) {
+        url.setCreatedAt(url.getCreatedAt().truncatedTo(ChronoUnit.MILLIS));
+        var map = shardMap;
+        var hashShard = shard(map.route(url.getHash()).write());
+        var urlShard = shard(map.route(url.getShortenedHash()).write());
+        checkNotMoved(map, List.of(url));
+        var originUrl = originUrlCodec.encode(url.getOriginUrl());
+
+        claimHashKey(hashShard, url);
+        try {
+            urlShard.jdbcTemplate().update(STR. "insert into url (id, \{ URL_COLUMNS }) values (next value for url_seq, ?, ?, ?, ?, ?)" ,
+                    urlParameters(url, originUrl));
+        } catch (RuntimeException e) {
+            releaseHashKeys(hashShard, List.of(url));
+            throw e;
+        }
+        return url;
+    }
+
+    /**
+     * Write the hash key of an url, replacing a hash key left without url
+     *
+     * @param shard the shard of the hash
+     * @param url   the url
+     * @throws DuplicateKeyException if the hash is already used
+     */
+    private void claimHashKey(Shard shard, Url url) {
+        try {
+            shard.jdbcTemplate().update("insert into url_hash_key (hash_key, shortened_hash, created_at) values (?, ?, ?)",
+                    HEX.parseHex(url.getHash()), url.getShortenedHash(), Timestamp.from(url.getCreatedAt()));
+        } catch (DuplicateKeyException e) {
+            var existing = shard.jdbcTemplate().query("select hash_key, shortened_hash, created_at from url_hash_key where hash_key = ?",
+                    ShardedUrlStore::hashKey, (Object) HEX.parseHex(url.getHash()));
+            if (existing.isEmpty() || !isOrphan(existing.getFirst())) {
+                throw e;
+            }
+            var orphan = existing.getFirst();
+            var replaced = shard.jdbcTemplate().update(
+                    "update url_hash_key set shortened_hash = ?, created_at = ? where hash_key = ? and shortened_hash = ? and created_at = ?",
+                    url.getShortenedHash(), Timestamp.from(url.getCreatedAt()), HEX.parseHex(url.getHash()),
+                    orphan.shortenedHash(), Timestamp.from(orphan.createdAt()));
+            if (replaced == 0) {
+                throw e;
+            }
+            log.warn(STR. "Hash key \{ url.getHash() } without url replaced" );
+        }
+    }
+
+    private boolean isOrphan(HashKey hashKey) {
+        return hashKey.createdAt().isBefore(Instant.now().minus(ORPHAN_HASH_KEY_AGE))
+                && findByShortenedHash(hashKey.shortenedHash()).filter(url -> url.getHash().equals(hashKey.hash())).isEmpty();
+    }
+
+    /**
+     * Claim the hashes shard by shard, then write the url rows shard by shard, the shards in parallel
+     * The rows written are deleted if a shard fails, so that nothing of the batch is saved.
+     */
+    @Override
+    public void saveAll(List<Url> urls) {
+        if (urls.isEmpty()) {
+            return;
+        }
+        urls.forEach(url -> url.setCreatedAt(url.getCreatedAt().truncatedTo(ChronoUnit.MILLIS)));
+        var map = shardMap;
+        checkNotMoved(map, urls);
+        var originUrls = new IdentityHashMap<Url, byte[]>();
+        urls.forEach(url -> originUrls.put(url, originUrlCodec.encode(url.getOriginUrl())));
+
+        var byHashShard = group(urls, url -> map.route(url.getHash()).write());
+        var claimed = fanOutEach(byHashShard, (shard, shardUrls) -> shard.transactionTemplate().executeWithoutResult(_ ->
+                shard.jdbcTemplate().batchUpdate("insert into url_hash_key (hash_key, shortened_hash, created_at) values (?, ?, ?)",
+                        shardUrls.stream().map(url -> new Object[]{HEX.parseHex(url.getHash()), url.getShortenedHash(), Timestamp.from(url.getCreatedAt())}).toList())));
+        if (claimed.failure() != null) {
+            claimed.succeeded().forEach(this::releaseHashKeys);
+            throw claimed.failure();
+        }
+
+        var byUrlShard = group(urls, url -> map.route(url.getShortenedHash()).write());
+        var written = fanOutEach(byUrlShard, (shard, shardUrls) -> shard.transactionTemplate().executeWithoutResult(_ ->
+                shard.jdbcTemplate().batchUpdate(STR. "insert into url (id, \{ URL_COLUMNS }) values (next value for url_seq, ?, ?, ?, ?, ?)" ,
+                        shardUrls.stream().map(url -> urlParameters(url, originUrls.get(url))).toList())));
+        if (written.failure() != null) {
+            written.succeeded().forEach((shard, shardUrls) -> shard.namedJdbcTemplate().update(
+                    "delete from url where shortened_hash in (:shortenedHashes)",
+                    Map.of("shortenedHashes", shardUrls.stream().map(Url::getShortenedHash).toList())));
+            claimed.succeeded().forEach(this::releaseHashKeys);
+            throw written.failure();
+        }
+    }
+
+    /**
+     * While a range is moved, the rows of the source shard aren't checked by the unique constraints of the target
+     *
+     * @throws DataIntegrityViolationException if an url or a hash key of a moved range is found on the source shard
+     */
+    private void checkNotMoved(ShardMap map, List<Url> urls) {
+        var movedHashes = urls.stream().map(Url::getHash).filter(hash -> map.route(hash).moving()).toList();
+        if (!movedHashes.isEmpty() && !findByHashIn(movedHashes).isEmpty()) {
+            throw new DataIntegrityViolationException("Hash already stored on the source shard of a moved range");
+        }
+        var movedShortenedHashes = urls.stream().map(Url::getShortenedHash).filter(shortenedHash -> map.route(shortenedHash).moving()).toList();
+        if (!movedShortenedHashes.isEmpty() && !findShortenedHashesIn(movedShortenedHashes).isEmpty()) {
+            throw new DataIntegrityViolationException("Shortened hash already stored on the source shard of a moved range");
+        }
+    }
+
+    private void releaseHashKeys(Shard shard, List<Url> urls) {
+        shard.jdbcTemplate().batchUpdate("delete from url_hash_key where hash_key = ? and shortened_hash = ? and created_at = ?",
+                urls.stream().map(url -> new Object[]{HEX.parseHex(url.getHash()), url.getShortenedHash(), Timestamp.from(url.getCreatedAt())}).toList());
+    }
+
+    @Override
+    public List<ExpiredUrl> findExpired(Instant now, ExpiredUrl after, int limit) {
+        var expired = fanOutAll(shard -> after == null
+                ? shard.jdbcTemplate().query("select expires_at, shortened_hash from url where expires_at <= ? order by expires_at, shortened_hash fetch first ? rows only",
+                ShardedUrlStore::expiredUrl, Timestamp.from(now), limit)
+                : shard.jdbcTemplate().query("select expires_at, shortened_hash from url where expires_at <= ?"
+                        + " and (expires_at > ? or (expires_at = ? and shortened_hash > ?)) order by expires_at, shortened_hash fetch first ? rows only",
+                ShardedUrlStore::expiredUrl, Timestamp.from(now), Timestamp.from(after.expiresAt()), Timestamp.from(after.expiresAt()),
+                after.shortenedHash(), limit));
+        // An url being moved may be on two shards
+        return expired.stream()
+                .distinct()
+                .sorted(Comparator.comparing(ExpiredUrl::expiresAt).thenComparing(ExpiredUrl::shortenedHash))
+                .limit(limit)
+                .toList();
+    }
+
+    @Override
+    public int deleteByShortenedHashIn(Collection<String> shortenedHashes) {
+        return delete(shortenedHashes, null);
+    }
+
+    @Override
+    public int deleteExpired(Collection<String> shortenedHashes, Instant now) {
+        return delete(shortenedHashes, now);
+    }
+
+    /**
+     * Delete url rows from all the shards they may be on, then the hash keys of the ones deleted
+     * A hash key replaced meanwhile by a new url is kept, its creation time differing.
+     *
+     * @param shortenedHashes the shortened hashes of the urls
+     * @param expiredAt       the time the urls must be expired at to be deleted, null to delete them anyway
+     * @return the number of urls deleted
+     */
+    private int delete(Collection<String> shortenedHashes, Instant expiredAt) {
+        var map = shardMap;
+        var byShard = new LinkedHashMap<String, List<String>>();
+        for (var shortenedHash : new LinkedHashSet<>(shortenedHashes)) {
+            map.route(shortenedHash).reads().forEach(name -> byShard.computeIfAbsent(name, _ -> new ArrayList<>()).add(shortenedHash));
+        }
+        var deleted = fanOut(byShard, (shard, keys) -> {
+            var condition = expiredAt == null ? "" : " and expires_at <= :expiredAt";
+            var parameters = new HashMap<String, Object>();
+            parameters.put("shortenedHashes", keys);
+            parameters.put("expiredAt", expiredAt == null ? null : Timestamp.from(expiredAt));
+            var hashKeys = shard.namedJdbcTemplate().query(
+                    STR. "select hash_key, shortened_hash, created_at from url where shortened_hash in (:shortenedHashes)\{ condition }" ,
+                    parameters, ShardedUrlStore::hashKey);
+            var counts = shard.jdbcTemplate().batchUpdate(STR. "delete from url where shortened_hash = ? and created_at = ?\{ expiredAt == null ? "" : " and expires_at <= ?" }" ,
+                    hashKeys.stream().map(hashKey -> expiredAt == null
+                            ? new Object[]{hashKey.shortenedHash(), Timestamp.from(hashKey.createdAt())}
+                            : new Object[]{hashKey.shortenedHash(), Timestamp.from(hashKey.createdAt()), Timestamp.from(expiredAt)}).toList());
+            var deletedKeys = new ArrayList<HashKey>();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    deletedKeys.add(hashKeys.get(i));
+                }
+            }
+            return deletedKeys;
+        });
+
+        var byHashShard = new LinkedHashMap<String, List<HashKey>>();
+        for (var hashKey : deleted) {
+            map.route(hashKey.hash()).reads().forEach(name -> byHashShard.computeIfAbsent(name, _ -> new ArrayList<>()).add(hashKey));
+        }
+        fanOut(byHashShard, (shard, hashKeys) -> {
+            shard.jdbcTemplate().batchUpdate("delete from url_hash_key where hash_key = ? and shortened_hash = ? and created_at = ?",
+                    hashKeys.stream().map(hashKey -> new Object[]{HEX.parseHex(hashKey.hash()), hashKey.shortenedHash(), Timestamp.from(hashKey.createdAt())}).toList());
+            return List.of();
+        });
+        return deleted.size();
+    }
+
+    @Override
+    public void deleteAll() {
+        fanOutAll(shard -> {
+            shard.jdbcTemplate().update("delete from url");
+            shard.jdbcTemplate().update("delete from url_hash_key");
+            return List.of();
+        });
+    }
+
+    /**
+     * The urls being moved are counted twice while they are on both shards
+     */
+    @Override
+    public long count() {
+        return fanOutAll(shard -> List.of(shard.jdbcTemplate().queryForObject("select count(*) from url", Long.class)))
+                .stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * The shards are streamed one after the other, an url being moved may be streamed twice
+     */
+    @Override
+    public void forEachHash(BiConsumer<String, String> consumer) {
+        for (var shard : shards.values()) {
+            shard.jdbcTemplate().query("select hash_key, shortened_hash from url",
+                    (RowCallbackHandler) resultSet -> consumer.accept(HEX.formatHex(resultSet.getBytes(1)), resultSet.getString(2)));
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        stopped.countDown();
+        var thread = refresher;
+        if (thread != null) {
+            thread.join();
+        }
+        shards.values().forEach(shard -> shard.dataSource().close());
+    }
+
+    private void refreshPeriodically() {
+        while (true) {
+            try {
+                if (stopped.await(mapRefreshInterval.toNanos(), TimeUnit.NANOSECONDS)) {
+                    return;
+                }
+                refreshShardMap();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.error(STR. "Refresh of the shard map failed, retried in \{ mapRefreshInterval }" , e);
+            }
+        }
+    }
+
+    /**
+     * Look keys up on the shards of their range: the shard of each key, then the target shard of the keys of the
+     * moved ranges not found yet, each step querying the shards in parallel
+     *
+     * @param keys  the keys
+     * @param query the query of a shard, for some keys
+     * @param keyOf the key of a result
+     * @return the results
+     */
+    private <T> List<T> lookup(Collection<String> keys, BiFunction<Shard, List<String>, List<T>> query, Function<T, String> keyOf) {
+        var map = shardMap;
+        var remaining = new LinkedHashSet<>(keys);
+        var found = new ArrayList<T>();
+        for (int step = 0; step < 2 && !remaining.isEmpty(); step++) {
+            var byShard = new LinkedHashMap<String, List<String>>();
+            for (var key : remaining) {
+                var reads = map.route(key).reads();
+                if (step < reads.size()) {
+                    byShard.computeIfAbsent(reads.get(step), _ -> new ArrayList<>()).add(key);
+                }
+            }
+            for (var result : fanOut(byShard, query)) {
+                if (remaining.remove(keyOf.apply(result))) {
+                    found.add(result);
+                }
+            }
+        }
+        return found;
+    }
+
+    private static <T> Map<String, List<T>> group(Collection<T> values, Function<T, String> shardOf) {
+        var byShard = new LinkedHashMap<String, List<T>>();
+        values.forEach(value -> byShard.computeIfAbsent(shardOf.apply(value), _ -> new ArrayList<>()).add(value));
+        return byShard;
+    }
+
+    /**
+     * Run a query on all the shards, in parallel
+     */
+    <T> List<T> fanOutAll(Function<Shard, List<T>> query) {
+        var all = new LinkedHashMap<String, List<Void>>();
+        shards.keySet().forEach(name -> all.put(name, List.of()));
+        return fanOut(all, (shard, _) -> query.apply(shard));
+    }
+
+    /**
+     * Run a query on several shards, in parallel on virtual threads
+     *
+     * @param keysByShard the keys of each shard
+     * @param query       the query of a shard, for its keys
+     * @return the results of all the shards
+     * @throws RuntimeException the failure of the first shard failed
+     */
+    private <K, T> List<T> fanOut(Map<String, List<K>> keysByShard, BiFunction<Shard, List<K>, List<T>> query) {
+        if (keysByShard.size() == 1) {
+            var entry = keysByShard.entrySet().iterator().next();
+            return query.apply(shard(entry.getKey()), entry.getValue());
+        }
+        var results = new ArrayList<T>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var futures = keysByShard.entrySet().stream()
+                    .map(entry -> executor.submit(() -> query.apply(shard(entry.getKey()), entry.getValue())))
+                    .toList();
+            for (var future : futures) {
+                results.addAll(join(future));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Run a write on several shards, in parallel on virtual threads, without stopping at the first failure
+     *
+     * @param valuesByShard the values of each shard
+     * @param write         the write of a shard, for its values
+     * @return the shards written, and the failure of the first shard failed if any
+     */
+    private <T> FanOut<T> fanOutEach(Map<String, List<T>> valuesByShard, BiConsumer<Shard, List<T>> write) {
+        var succeeded = new LinkedHashMap<Shard, List<T>>();
+        RuntimeException failure = null;
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var futures = new LinkedHashMap<Shard, Future<List<Void>>>();
+            valuesByShard.forEach((name, values) -> {
+                var shard = shard(name);
+                futures.put(shard, executor.submit(() -> {
+                    write.accept(shard, values);
+                    return List.of();
+                }));
+            });
+            for (var entry : futures.entrySet()) {
+                try {
+                    join(entry.getValue());
+                    succeeded.put(entry.getKey(), valuesByShard.get(entry.getKey().name()));
+                } catch (RuntimeException e) {
+                    failure = failure == null ? e : failure;
+                }
+            }
+        }
+        return new FanOut<>(succeeded, failure);
+    }
+
+    private static <T> T join(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Object[] urlParameters(Url url, byte[] originUrl) {
+        return new Object[]{originUrl, HEX.parseHex(url.getHash()), url.getShortenedHash(),
+                Timestamp.from(url.getCreatedAt()), url.getExpiresAt() == null ? null : Timestamp.from(url.getExpiresAt())};
+    }
+
+    static HashKey hashKey(ResultSet resultSet, int rowNum) throws SQLException {
+        return new HashKey(HEX.formatHex(resultSet.getBytes("hash_key")), resultSet.getString("shortened_hash"), instant(resultSet, "created_at"));
+    }
+
+    private static ExpiredUrl expiredUrl(ResultSet resultSet, int rowNum) throws SQLException {
+        return new ExpiredUrl(instant(resultSet, "expires_at"), resultSet.getString("shortened_hash"));
+    }
+
+    private static Instant instant(ResultSet resultSet, String column) throws SQLException {
+        var timestamp = resultSet.getTimestamp(column);
+        return timestamp == null ? null : timestamp.toInstant();
+    }
+
+    private Optional<HashKey> findHashKey(String hash) {
+        for (var name : shardMap.route(hash).reads()) {
+            var hashKeys = shard(name).jdbcTemplate().query("select hash_key, shortened_hash, created_at from url_hash_key where hash_key = ?",
+                    ShardedUrlStore::hashKey, (Object) HEX.parseHex(hash));
+            if (!hashKeys.isEmpty()) {
+                return Optional.of(hashKeys.getFirst());
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * A shard and its pool of connections
+     */
+    record Shard(String name, HikariDataSource dataSource, JdbcTemplate jdbcTemplate,
+                 NamedParameterJdbcTemplate namedJdbcTemplate, TransactionTemplate transactionTemplate) {
+
+        Shard(String name, HikariDataSource dataSource) {
+            this(name, dataSource, new JdbcTemplate(dataSource), new NamedParameterJdbcTemplate(dataSource),
+                    new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+        }
+    }
+
+    /**
+     * The shortened hash of a hash, and the creation of the url
+     */
+    record HashKey(String hash, String shortenedHash, Instant createdAt) {
+    }
+
+    /**
+     * @param succeeded the values of each shard written
+     * @param failure   the failure of the first shard failed, null if none
+     */
+    private record FanOut<T>(Map<Shard, List<T>> succeeded, RuntimeException failure) {
+    }
+}
@@ -0,0 +1,112 @@
+package com.doutoutdou.urlshortener.store;
+
+import com.doutoutdou.urlshortener.entity.Url;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+
+/**
+ * Storage of the shortened urls, the backend is selected with url-shortener.store.type
+ * Hashes and shortened hashes are unique: saving an url with a stored hash or shortened hash fails with a
+ * {@link org.springframework.dao.DataIntegrityViolationException}, and nothing of the batch is saved.
+ */
+public interface UrlStore {
+
+    /**
+     * Qualifier of the backend store, when a decorating store is the primary one
+     */
+    String BACKEND = "urlStoreBackend";
+
+    /**
+     * @param hash the url hash
+     * @return the url if stored
+     */
+    Optional<Url> findByHash(String hash);
+
+    /**
+     * @param shortenedHash the shortened hash
+     * @return the url if stored
+     */
+    Optional<Url> findByShortenedHash(String shortenedHash);
+
+    /**
+     * @param hashes the url hashes
+     * @return the stored urls, in no particular order
+     */
+    List<Url> findByHashIn(Collection<String> hashes);
+
+    /**
+     * @param shortenedHashes the shortened hashes
+     * @return the stored urls, in no particular order
+     */
+    List<Url> findByShortenedHashIn(Collection<String> shortenedHashes);
+
+    /**
+     * @param shortenedHashes the shortened hashes
+     * @return the stored shortened hashes among them
+     */
+    List<String> findShortenedHashesIn(Collection<String> shortenedHashes);
+
+    /**
+     * @param url the url to save
+     * @return the saved url
+     */
+    Url save(Url url);
+
+    /**
+     * @param urls the urls to save, at once
+     */
+    void saveAll(List<Url> urls);
+
+    /**
+     * Page through the expired urls by expiration, then shortened hash
+     *
+     * @param now   the current time
+     * @param after the last url of the previous page, null for the first page
+     * @param limit the maximum number of urls returned
+     * @return the urls expired at the given time after the given one, in order
+     */
+    List<ExpiredUrl> findExpired(Instant now, ExpiredUrl after, int limit);
+
+    /**
+     * @param shortenedHashes the shortened hashes of the urls to delete
+     * @return the number of urls deleted
+     */
+    int deleteByShortenedHashIn(Collection<String> shortenedHashes);
+
+    /**
+     * Delete urls if they are still expired, an url shortened again meanwhile being kept
+     *
+     * @param shortenedHashes the shortened hashes of the urls to delete
+     * @param now             the current time
+     * @return the number of urls deleted
+     */
+    int deleteExpired(Collection<String> shortenedHashes, Instant now);
+
+    /**
+     * Delete all the urls
+     */
+    void deleteAll();
+
+    /**
+     * @return the number of stored urls
+     */
+    long count();
+
+    /**
+     * Stream the hash and the shortened hash of all the stored urls, without loading the urls
+     *
+     * @param consumer called with the hash, null if it is not known yet, and the shortened hash of each url
+     */
+    void forEachHash(BiConsumer<String, String> consumer);
+
+    /**
+     * @param expiresAt     the expiration of the url
+     * @param shortenedHash its shortened hash
+     */
+    record ExpiredUrl(Instant expiresAt, String shortenedHash) {
+    }
+}
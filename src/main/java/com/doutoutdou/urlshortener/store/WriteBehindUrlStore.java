@@ -0,0 +1,550 @@
+package com.doutoutdou.urlshortener.store;
+
+import com.doutoutdou.urlshortener.configuration.WriteBehindProperties;
+import com.doutoutdou.urlshortener.entity.Url;
+import com.doutoutdou.urlshortener.exception.WriteBehindBufferFullException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Url store saving the created urls asynchronously, in front of the configured store
+ * <p>
+ * A created url is appended to a local write-ahead log and kept in a pending buffer, then the creation returns.
+ * A background writer saves the pending urls in batches, every flush interval or as soon as a batch is full,
+ * and deletes the log files once their urls are saved. The pending urls are found by the lookups until then.
+ * The log files left by a crash are replayed on startup. When the buffer is full, the creations are rejected
+ * with a {@link WriteBehindBufferFullException} until the writer catches up.
+ * <p>
+ * The uniqueness of the pending urls is checked against the other pending urls only: an url saved meanwhile by
+ * another instance of the application makes the save of the pending one fail, it is then dropped and logged.
+ * <p>
+ * A deleted pending url is removed from the buffer and a deletion line is appended to the log, so that neither
+ * the writer nor a replay saves it: the deletions don't wait for the pending urls to be saved.
+ */
+@Component
+@Primary
+@ConditionalOnProperty(prefix = "url-shortener.write-behind", name = "enabled", havingValue = "true")
+@Slf4j
+public class WriteBehindUrlStore implements UrlStore, DisposableBean {
+    public static final String PENDING = "url.shortener.write.behind.pending";
+    public static final String FLUSH = "url.shortener.write.behind.flush";
+    public static final String REJECTED = "url.shortener.write.behind.rejected";
+    public static final String FAILURES = "url.shortener.write.behind.flush.failures";
+    public static final String DROPPED = "url.shortener.write.behind.dropped";
+
+    private static final String LOG_SUFFIX = ".wal";
+    // First field of a deletion line, never a shortened hash
+    private static final String DELETED = "-";
+
+    private final UrlStore backend;
+    private final Path directory;
+    private final int maxPending;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final boolean syncWrites;
+
+    // Urls not saved yet, removed once saved
+    private final Map<String, Url> pendingByShortenedHash = new ConcurrentHashMap<>();
+    private final Map<String, Url> pendingByHash = new ConcurrentHashMap<>();
+
+    // Urls not taken by the writer yet, in the order of the current log file
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private List<Url> queue = new ArrayList<>();
+    private long logIndex;
+    private Path logPath;
+    private FileChannel logFile;
+
+    // Urls taken by the writer, kept until saved, and their log files
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final List<Url> flushing = new ArrayList<>();
+    private final List<Path> flushingLogs = new ArrayList<>();
+
+    private final Semaphore wakeUp = new Semaphore(0);
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final Timer flushTimer;
+    private final Counter rejected;
+    private final Counter failures;
+    private final Counter dropped;
+
+    public WriteBehindUrlStore(@Qualifier(UrlStore.BACKEND) UrlStore backend, WriteBehindProperties properties,
+                               MeterRegistry meterRegistry) {
+        this.backend = backend;
+        this.directory = properties.directory();
+        this.maxPending = properties.maxPending();
+        this.batchSize = properties.batchSize();
+        this.flushInterval = properties.flushInterval();
+        this.syncWrites = properties.syncWrites();
+
+        Gauge.builder(PENDING, pendingByShortenedHash, Map::size)
+                .description("Number of created urls not saved yet")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder(FLUSH)
+                .description("Save of a batch of pending urls")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejected = Counter.builder(REJECTED)
+                .description("Creations rejected because the pending buffer was full")
+                .register(meterRegistry);
+        this.failures = Counter.builder(FAILURES)
+                .description("Failed saves of pending urls, retried on the next flush")
+                .register(meterRegistry);
+        this.dropped = Counter.builder(DROPPED)
+                .description("Pending urls dropped because their hash or shortened hash was saved by another instance")
+                .register(meterRegistry);
+
+        try {
+            Files.createDirectories(directory);
+            replay();
+            openLog();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        writer = Thread.ofVirtual().name("url-write-behind").start(this::write);
+    }
+
+    @Override
+    public Optional<Url> findByHash(String hash) {
+        var pending = pendingByHash.get(hash);
+        return pending != null ? Optional.of(pending) : backend.findByHash(hash);
+    }
+
+    @Override
+    public Optional<Url> findByShortenedHash(String shortenedHash) {
+        var pending = pendingByShortenedHash.get(shortenedHash);
+        return pending != null ? Optional.of(pending) : backend.findByShortenedHash(shortenedHash);
+    }
+
+    @Override
+    public List<Url> findByHashIn(Collection<String> hashes) {
+        return findIn(hashes, pendingByHash, backend::findByHashIn);
+    }
+
+    @Override
+    public List<Url> findByShortenedHashIn(Collection<String> shortenedHashes) {
+        return findIn(shortenedHashes, pendingByShortenedHash, backend::findByShortenedHashIn);
+    }
+
+    @Override
+    public List<String> findShortenedHashesIn(Collection<String> shortenedHashes) {
+        var found = new ArrayList<String>();
+        var missing = new ArrayList<String>();
+        for (var shortenedHash : new HashSet<>(shortenedHashes)) {
+            (pendingByShortenedHash.containsKey(shortenedHash) ? found : missing).add(shortenedHash);
+        }
+        if (!missing.isEmpty()) {
+            found.addAll(backend.findShortenedHashesIn(missing));
+        }
+        return found;
+    }
+
+    /**
+     * Add the url to the pending buffer, it is saved later
+     *
+     * @throws WriteBehindBufferFullException if the pending buffer is full
+     */
+    @Override
+    public Url save(Url url) {
+        saveAll(List.of(url));
+        return url;
+    }
+
+    /**
+     * Add the urls to the pending buffer, they are saved later
+     *
+     * @throws WriteBehindBufferFullException if the pending buffer can't take all the urls
+     */
+    @Override
+    public void saveAll(List<Url> urls) {
+        var queued = 0;
+        queueLock.lock();
+        try {
+            if (pendingByShortenedHash.size() + urls.size() > maxPending) {
+                rejected.increment(urls.size());
+                throw new WriteBehindBufferFullException(STR. "\{ pendingByShortenedHash.size() } urls waiting to be saved, retry later" );
+            }
+            var batchHashes = new HashSet<String>();
+            var batchShortenedHashes = new HashSet<String>();
+            var lines = new StringBuilder();
+            for (var url : urls) {
+                if (!batchShortenedHashes.add(url.getShortenedHash()) || pendingByShortenedHash.containsKey(url.getShortenedHash())) {
+                    throw new DataIntegrityViolationException(STR. "Shortened hash \{ url.getShortenedHash() } already pending" );
+                }
+                if (!batchHashes.add(url.getHash()) || pendingByHash.containsKey(url.getHash())) {
+                    throw new DataIntegrityViolationException(STR. "Hash \{ url.getHash() } already pending" );
+                }
+                // The origin url is url encoded, without tab nor line break, the times as epoch millis
+                lines.append(url.getShortenedHash()).append('\t').append(url.getHash())
+                        .append('\t').append(URLEncoder.encode(url.getOriginUrl(), StandardCharsets.UTF_8))
+                        .append('\t').append(url.getCreatedAt().toEpochMilli())
+                        .append('\t').append(url.getExpiresAt() == null ? "" : url.getExpiresAt().toEpochMilli())
+                        .append('\n');
+            }
+            append(lines.toString().getBytes(StandardCharsets.UTF_8));
+            for (var url : urls) {
+                pendingByShortenedHash.put(url.getShortenedHash(), url);
+                pendingByHash.put(url.getHash(), url);
+            }
+            queue.addAll(urls);
+            queued = queue.size();
+        } finally {
+            queueLock.unlock();
+        }
+        if (queued >= batchSize) {
+            wakeUp.release();
+        }
+    }
+
+    /**
+     * The pending urls are found once saved
+     */
+    @Override
+    public List<ExpiredUrl> findExpired(Instant now, ExpiredUrl after, int limit) {
+        return backend.findExpired(now, after, limit);
+    }
+
+    /**
+     * The pending urls are deleted from the buffer, the others from the backend
+     */
+    @Override
+    public int deleteByShortenedHashIn(Collection<String> shortenedHashes) {
+        return deletePending(shortenedHashes, _ -> true) + backend.deleteByShortenedHashIn(shortenedHashes);
+    }
+
+    /**
+     * The pending urls are deleted from the buffer, the others from the backend
+     */
+    @Override
+    public int deleteExpired(Collection<String> shortenedHashes, Instant now) {
+        return deletePending(shortenedHashes, url -> url.isExpiredAt(now)) + backend.deleteExpired(shortenedHashes, now);
+    }
+
+    @Override
+    public void deleteAll() {
+        flushLock.lock();
+        queueLock.lock();
+        try {
+            queue = new ArrayList<>();
+            flushing.clear();
+            pendingByShortenedHash.clear();
+            pendingByHash.clear();
+            logFile.close();
+            flushingLogs.add(logPath);
+            for (var path : flushingLogs) {
+                Files.deleteIfExists(path);
+            }
+            flushingLogs.clear();
+            openLog();
+            backend.deleteAll();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            queueLock.unlock();
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * The pending urls are counted with the saved ones, the urls of a batch being saved may be counted twice
+     */
+    @Override
+    public long count() {
+        return backend.count() + pendingByShortenedHash.size();
+    }
+
+    @Override
+    public void forEachHash(BiConsumer<String, String> consumer) {
+        backend.forEachHash(consumer);
+        pendingByHash.values().forEach(url -> consumer.accept(url.getHash(), url.getShortenedHash()));
+    }
+
+    @Override
+    public void destroy() throws InterruptedException, IOException {
+        running = false;
+        wakeUp.release();
+        writer.join();
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error(STR. "\{ pendingByShortenedHash.size() } urls not saved, they will be on the next start" , e);
+        }
+        logFile.close();
+    }
+
+    /**
+     * Save the pending urls now: the ones whose save failed, then the ones queued until now
+     * Called by the background writer, and on shutdown.
+     *
+     * @throws RuntimeException if a save failed, the urls not saved are kept for the next flush
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            if (!flushing.isEmpty()) {
+                saveFlushing();
+            }
+            if (take()) {
+                saveFlushing();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Delete pending urls, without saving them: they are removed from the buffer and their deletion is logged
+     * Only a batch being saved is waited for, its urls being in the backend or still pending once saved.
+     *
+     * @param shortenedHashes the shortened hashes of the urls to delete
+     * @param filter          the pending urls to delete among them
+     * @return the number of pending urls deleted
+     */
+    private int deletePending(Collection<String> shortenedHashes, Predicate<Url> filter) {
+        if (shortenedHashes.stream().noneMatch(pendingByShortenedHash::containsKey)) {
+            return 0;
+        }
+        flushLock.lock();
+        queueLock.lock();
+        try {
+            var deleted = new HashSet<String>();
+            var lines = new StringBuilder();
+            for (var shortenedHash : shortenedHashes) {
+                var url = pendingByShortenedHash.get(shortenedHash);
+                if (url != null && filter.test(url) && deleted.add(shortenedHash)) {
+                    lines.append(DELETED).append('\t').append(shortenedHash).append('\n');
+                }
+            }
+            if (deleted.isEmpty()) {
+                return 0;
+            }
+            append(lines.toString().getBytes(StandardCharsets.UTF_8));
+            queue.removeIf(url -> deleted.contains(url.getShortenedHash()));
+            flushing.removeIf(url -> deleted.contains(url.getShortenedHash()));
+            for (var shortenedHash : deleted) {
+                var url = pendingByShortenedHash.remove(shortenedHash);
+                pendingByHash.remove(url.getHash(), url);
+            }
+            return deleted.size();
+        } finally {
+            queueLock.unlock();
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Background writer, flushing every flush interval or as soon as a batch is full
+     */
+    private void write() {
+        while (running) {
+            try {
+                wakeUp.tryAcquire(flushInterval.toNanos(), TimeUnit.NANOSECONDS);
+                wakeUp.drainPermits();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.error(STR. "Save of \{ flushing.size() } pending urls failed, retried in \{ flushInterval }" , e);
+            }
+        }
+    }
+
+    /**
+     * Take the queued urls and switch to a new log file
+     *
+     * @return false if no url was queued
+     */
+    private boolean take() {
+        queueLock.lock();
+        try {
+            if (queue.isEmpty()) {
+                return false;
+            }
+            flushing.addAll(queue);
+            queue = new ArrayList<>();
+            logFile.close();
+            flushingLogs.add(logPath);
+            openLog();
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Save the urls taken by the writer in batches, each saved batch being removed from the pending buffer
+     */
+    private void saveFlushing() {
+        var sample = Timer.start();
+        try {
+            while (!flushing.isEmpty()) {
+                var batch = flushing.subList(0, Math.min(batchSize, flushing.size()));
+                save(batch);
+                for (var url : batch) {
+                    pendingByShortenedHash.remove(url.getShortenedHash(), url);
+                    pendingByHash.remove(url.getHash(), url);
+                }
+                batch.clear();
+            }
+            for (var path : flushingLogs) {
+                Files.deleteIfExists(path);
+            }
+            flushingLogs.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            failures.increment();
+            throw e;
+        } finally {
+            sample.stop(flushTimer);
+        }
+    }
+
+    private void save(List<Url> batch) {
+        try {
+            // New entities: the ones of a failed save may have been given an id
+            backend.saveAll(batch.stream().map(WriteBehindUrlStore::copy).toList());
+        } catch (DataIntegrityViolationException e) {
+            // Saved by another instance, or before a crash: find which ones
+            for (var url : batch) {
+                try {
+                    backend.save(copy(url));
+                } catch (DataIntegrityViolationException alreadySaved) {
+                    var stored = backend.findByHash(url.getHash());
+                    if (stored.isEmpty() || !stored.get().getShortenedHash().equals(url.getShortenedHash())) {
+                        dropped.increment();
+                        log.warn(STR. "Url \{ url.getHash() } dropped, its hash or shortened hash \{ url.getShortenedHash() } is already saved" );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Append to the current log file, before the creation returns
+     */
+    private void append(byte[] lines) {
+        try {
+            var buffer = ByteBuffer.wrap(lines);
+            while (buffer.hasRemaining()) {
+                logFile.write(buffer);
+            }
+            if (syncWrites) {
+                logFile.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void openLog() throws IOException {
+        logPath = directory.resolve("%016d%s".formatted(logIndex++, LOG_SUFFIX));
+        logFile = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Take the urls of the log files left by the previous run, a line torn by a crash being ignored
+     * A deletion line removes the url of a previous line.
+     */
+    private void replay() throws IOException {
+        List<Path> paths;
+        try (var files = Files.list(directory)) {
+            paths = files.filter(file -> file.getFileName().toString().endsWith(LOG_SUFFIX)).sorted().toList();
+        }
+        for (var path : paths) {
+            var content = Files.readString(path, StandardCharsets.UTF_8);
+            var end = content.lastIndexOf('\n');
+            for (var line : content.substring(0, end + 1).lines().toList()) {
+                var fields = line.split("\t", -1);
+                if (fields[0].equals(DELETED)) {
+                    var deleted = pendingByShortenedHash.remove(fields[1]);
+                    if (deleted != null) {
+                        pendingByHash.remove(deleted.getHash(), deleted);
+                        flushing.remove(deleted);
+                    }
+                    continue;
+                }
+                var url = Url.builder().shortenedHash(fields[0]).hash(fields[1])
+                        .originUrl(URLDecoder.decode(fields[2], StandardCharsets.UTF_8)).build();
+                // The lines written before the expiration have no times
+                if (fields.length > 3) {
+                    url.setCreatedAt(Instant.ofEpochMilli(Long.parseLong(fields[3])));
+                    url.setExpiresAt(fields[4].isEmpty() ? null : Instant.ofEpochMilli(Long.parseLong(fields[4])));
+                }
+                if (pendingByShortenedHash.putIfAbsent(url.getShortenedHash(), url) == null) {
+                    pendingByHash.put(url.getHash(), url);
+                    flushing.add(url);
+                }
+            }
+            flushingLogs.add(path);
+            var name = path.getFileName().toString();
+            logIndex = Math.max(logIndex, Long.parseLong(name.substring(0, name.length() - LOG_SUFFIX.length())) + 1);
+        }
+        if (!flushing.isEmpty()) {
+            log.info(STR. "\{ flushing.size() } urls not saved by the previous run, they will be saved by the writer" );
+            wakeUp.release();
+        }
+    }
+
+    private static List<Url> findIn(Collection<String> keys, Map<String, Url> pending,
+                                    Function<List<String>, List<Url>> backendLookup) {
+        var found = new ArrayList<Url>();
+        var missing = new ArrayList<String>();
+        for (var key : new HashSet<>(keys)) {
+            var url = pending.get(key);
+            if (url != null) {
+                found.add(url);
+            } else {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            found.addAll(backendLookup.apply(missing));
+        }
+        return found;
+    }
+
+    private static Url copy(Url url) {
+        return Url.builder().hash(url.getHash()).shortenedHash(url.getShortenedHash()).originUrl(url.getOriginUrl())
+                .createdAt(url.getCreatedAt()).expiresAt(url.getExpiresAt()).build();
+    }
+}
@@ -0,0 +1,51 @@
+package com.doutoutdou.urlshortener.utils;
+
+import lombok.experimental.UtilityClass;
+
+import static com.doutoutdou.urlshortener.utils.ShortenedHashes.SHORTENED_HASH_SIZE;
+
+/**
+ * Fixed width base 36 ([0-9a-z]) encoding, the alphabet accepted for shortened hashes
+ */
+@UtilityClass
+public class Base36 {
+    private static final char[] ALPHABET = "0123456789abcdefghijklmnopqrstuvwxyz".toCharArray();
+
+    /**
+     * 36^10, the number of values which can be encoded on a shortened hash
+     */
+    public static final long MAX_VALUE = 3_656_158_440_062_976L;
+
+    /**
+     * Encode a value on 10 characters, left padded with zeros
+     *
+     * @param value the value to encode, between 0 and MAX_VALUE (excluded)
+     * @return the encoded value
+     */
+    public static String encode(long value) {
+        if (value < 0 || value >= MAX_VALUE) {
+            throw new IllegalArgumentException(STR. "\{ value } can't be encoded on \{ SHORTENED_HASH_SIZE } characters" );
+        }
+        var chars = new char[SHORTENED_HASH_SIZE];
+        for (int i = SHORTENED_HASH_SIZE - 1; i >= 0; i--) {
+            chars[i] = ALPHABET[(int) (value % 36)];
+            value /= 36;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Decode a value encoded with {@link #encode(long)}
+     *
+     * @param encoded the encoded value
+     * @return the value
+     */
+    public static long decode(CharSequence encoded) {
+        long value = 0;
+        for (int i = 0; i < encoded.length(); i++) {
+            var c = encoded.charAt(i);
+            value = value * 36 + (c <= '9' ? c - '0' : c - 'a' + 10);
+        }
+        return value;
+    }
+}
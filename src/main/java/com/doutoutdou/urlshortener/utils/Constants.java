@@ -11,6 +11,14 @@ public class Constants {
     public static final String URL_IS_REQUIRED = "url is required";
     public static final String URL_LENGTH = "The url length must between 15 and 2048 characters";
     public static final String URL_PATTERN = "The url must start with http:// or https://";
+    public static final long TTL_MAX_SECONDS = 100L * 365 * 24 * 3600;
+    public static final String TTL_POSITIVE = "The ttl must be between 1 and " + TTL_MAX_SECONDS + " seconds";
+    public static final int BATCH_MAX_SIZE = 10000;
+    public static final String BATCH_SIZE = "The batch must contain between 1 and " + BATCH_MAX_SIZE + " urls";
+    public static final String BATCH_SHORTENED_URLS_SIZE = "The batch must contain between 1 and " + BATCH_MAX_SIZE + " shortened urls";
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+    public static final int TOP_MAX_LIMIT = 100;
+    public static final String TOP_LIMIT = "The limit must be between 1 and " + TOP_MAX_LIMIT;
 
 
 }
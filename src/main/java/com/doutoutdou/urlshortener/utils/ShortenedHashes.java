@@ -0,0 +1,28 @@
+package com.doutoutdou.urlshortener.utils;
+
+import lombok.experimental.UtilityClass;
+
+@UtilityClass
+public class ShortenedHashes {
+    public static final int SHORTENED_HASH_SIZE = 10;
+
+    /**
+     * Check that a value is a shortened hash (10 characters in [a-z0-9])
+     * Hand-written equivalent of the end of SHORTENED_URL_PATTERN, cheaper than a regex on the redirect path
+     *
+     * @param value the value to check
+     * @return true if the value can be a shortened hash
+     */
+    public static boolean isValid(String value) {
+        if (value == null || value.length() != SHORTENED_HASH_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < SHORTENED_HASH_SIZE; i++) {
+            var c = value.charAt(i);
+            if ((c < 'a' || c > 'z') && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,51 @@
+package com.doutoutdou.urlshortener.configuration;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Beans of the reactive mode, only built with the reactive maven profile
+ * The JDBC datasource auto-configuration backs off when R2DBC is configured: the datasource is declared here, so
+ * that Liquibase and the blocking components (url store, analytics, expiration sweeper) keep using it.
+ * R2DBC adds a reactive transaction manager too: the JPA one is declared here as the primary one.
+ */
+@Configuration(proxyBeanMethods = false)
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class ReactiveConfiguration {
+
+    /**
+     * Declared by {@link ReadReplicaConfiguration} with read replicas
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "url-shortener.read-replicas", name = "enabled", havingValue = "false", matchIfMissing = true)
+    @ConfigurationProperties(prefix = "spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    @Primary
+    public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+        return new JpaTransactionManager(entityManagerFactory);
+    }
+
+    /**
+     * Serve WebFlux with Netty rather than Tomcat, which is still on the classpath for the servlet mode
+     */
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+}
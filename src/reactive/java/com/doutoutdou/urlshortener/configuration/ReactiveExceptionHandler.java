@@ -0,0 +1,63 @@
+package com.doutoutdou.urlshortener.configuration;
+
+import com.doutoutdou.urlshortener.exception.NoShortenedUrlAvailableException;
+import com.doutoutdou.urlshortener.exception.ShortenedUrlNotFoundException;
+import jakarta.validation.ConstraintViolationException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.NonNull;
+import org.springframework.validation.FieldError;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.reactive.result.method.annotation.ResponseEntityExceptionHandler;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+
+/**
+ * Reactive version of {@link RestExceptionHandler}, with the same statuses and bodies
+ */
+@RestControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Slf4j
+public class ReactiveExceptionHandler
+        extends ResponseEntityExceptionHandler {
+
+    @ExceptionHandler(value = {ShortenedUrlNotFoundException.class})
+    protected Mono<ResponseEntity<Object>> handleShortenedUrlNotFoundException(
+            ShortenedUrlNotFoundException ex, ServerWebExchange exchange) {
+        return handleExceptionInternal(ex, ex.getMessage(),
+                new HttpHeaders(), HttpStatus.NOT_FOUND, exchange);
+    }
+
+    @ExceptionHandler(value = {NoShortenedUrlAvailableException.class})
+    protected Mono<ResponseEntity<Object>> handleNoShortenedUrlAvailableException(
+            NoShortenedUrlAvailableException ex, ServerWebExchange exchange) {
+        return handleExceptionInternal(ex, ex.getMessage(),
+                new HttpHeaders(), HttpStatus.INTERNAL_SERVER_ERROR, exchange);
+    }
+
+    @ExceptionHandler(value = {ConstraintViolationException.class})
+    protected Mono<ResponseEntity<Object>> handleConstraintViolationException(
+            ConstraintViolationException ex, ServerWebExchange exchange) {
+        return handleExceptionInternal(ex, ex.getMessage().substring(ex.getMessage().indexOf(":") + 1),
+                new HttpHeaders(), HttpStatus.BAD_REQUEST, exchange);
+    }
+
+    @Override
+    protected Mono<ResponseEntity<Object>> handleWebExchangeBindException(WebExchangeBindException ex, @NonNull HttpHeaders headers, @NonNull HttpStatusCode status, @NonNull ServerWebExchange exchange) {
+        var errors = new ArrayList<>();
+        for (FieldError error : ex.getBindingResult().getFieldErrors()) {
+            errors.add(error.getField() + ": " + error.getDefaultMessage());
+        }
+
+        return handleExceptionInternal(
+                ex, errors, headers, HttpStatus.BAD_REQUEST, exchange);
+    }
+}
@@ -0,0 +1,39 @@
+package com.doutoutdou.urlshortener.controller;
+
+import com.doutoutdou.urlshortener.configuration.RedirectProperties;
+import com.doutoutdou.urlshortener.service.ReactiveUrlService;
+import com.doutoutdou.urlshortener.utils.ShortenedHashes;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+/**
+ * Hot path used by browsers following a shortened url, in the reactive mode
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveRedirectController implements ReactiveRedirectOperations {
+
+    private final ReactiveUrlService urlService;
+    private final HttpStatusCode redirectStatus;
+
+    public ReactiveRedirectController(ReactiveUrlService urlService, RedirectProperties redirectProperties) {
+        this.urlService = urlService;
+        this.redirectStatus = HttpStatusCode.valueOf(redirectProperties.status());
+    }
+
+    @Override
+    public Mono<ResponseEntity<Void>> redirect(String shortenedHash) {
+        if (!ShortenedHashes.isValid(shortenedHash)) {
+            return Mono.just(ResponseEntity.notFound().build());
+        }
+        return urlService.resolve(shortenedHash)
+                .<ResponseEntity<Void>>map(originUrl -> ResponseEntity.status(redirectStatus)
+                        .header(HttpHeaders.LOCATION, originUrl)
+                        .build())
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,15 @@
+package com.doutoutdou.urlshortener.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive version of {@link RedirectOperations}
+ */
+public interface ReactiveRedirectOperations {
+
+    @GetMapping("/{shortenedHash}")
+    Mono<ResponseEntity<Void>> redirect(@PathVariable("shortenedHash") String shortenedHash);
+}
@@ -0,0 +1,32 @@
+package com.doutoutdou.urlshortener.controller;
+
+import com.doutoutdou.urlshortener.dto.ShortenedUrlRequestDto;
+import com.doutoutdou.urlshortener.dto.ShortenedUrlResponseDto;
+import com.doutoutdou.urlshortener.dto.UrlRequestDto;
+import com.doutoutdou.urlshortener.dto.UrlResponseDto;
+import com.doutoutdou.urlshortener.service.ReactiveUrlService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequiredArgsConstructor
+@Validated
+public class ReactiveUrlController implements ReactiveUrlOperations {
+
+    private final ReactiveUrlService urlService;
+
+    @Override
+    public Mono<ResponseEntity<UrlResponseDto>> getFromShortenedUrl(ShortenedUrlRequestDto shortenedUrlRequestDto) {
+        return urlService.findFromShortenedUrl(shortenedUrlRequestDto).map(ResponseEntity::ok);
+    }
+
+    @Override
+    public Mono<ResponseEntity<ShortenedUrlResponseDto>> createShortenedUrl(UrlRequestDto dto) {
+        return urlService.buildShortenedUrl(dto).map(ResponseEntity::ok);
+    }
+}
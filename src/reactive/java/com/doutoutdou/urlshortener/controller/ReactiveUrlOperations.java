@@ -0,0 +1,38 @@
+package com.doutoutdou.urlshortener.controller;
+
+import com.doutoutdou.urlshortener.dto.ShortenedUrlRequestDto;
+import com.doutoutdou.urlshortener.dto.ShortenedUrlResponseDto;
+import com.doutoutdou.urlshortener.dto.UrlRequestDto;
+import com.doutoutdou.urlshortener.dto.UrlResponseDto;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import reactor.core.publisher.Mono;
+
+import static com.doutoutdou.urlshortener.utils.Constants.SHORTENED_URL_PARAMETER_MANDATORY;
+
+/**
+ * Reactive version of the single url endpoints of {@link UrlOperations}, with the same requests and responses
+ */
+@RequestMapping("/v1/url")
+public interface ReactiveUrlOperations {
+
+    @GetMapping(produces = "application/json")
+    Mono<ResponseEntity<UrlResponseDto>> getFromShortenedUrl(
+            @Valid
+            @NotNull(message = SHORTENED_URL_PARAMETER_MANDATORY)
+            @RequestParam(name = "shortenedUrl", required = false)
+            ShortenedUrlRequestDto shortenedUrl);
+
+    @PostMapping(produces = "application/json", consumes = "application/json")
+    Mono<ResponseEntity<ShortenedUrlResponseDto>> createShortenedUrl(
+            @Valid
+            @NotNull(message = "Body is required")
+            @RequestBody(required = false)
+            UrlRequestDto dto);
+}
@@ -0,0 +1,29 @@
+package com.doutoutdou.urlshortener.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.Instant;
+
+/**
+ * Row of the url table read by R2DBC, the columns being those of {@link Url}
+ *
+ * @param id            the url id
+ * @param originUrlData the original url in the format of {@link OriginUrlConverter}, null until backfilled
+ * @param hashKey       the binary url hash
+ * @param shortenedHash the shortened hash
+ * @param createdAt     the creation time
+ * @param expiresAt     the expiration, null if the url never expires
+ */
+@Table("url")
+public record UrlRow(@Id Long id, byte[] originUrlData, byte[] hashKey, String shortenedHash, Instant createdAt,
+                     Instant expiresAt) {
+
+    /**
+     * @param now the current time
+     * @return true if the url is expired at that time
+     */
+    public boolean isExpiredAt(Instant now) {
+        return expiresAt != null && !expiresAt.isAfter(now);
+    }
+}
@@ -0,0 +1,37 @@
+package com.doutoutdou.urlshortener.repository;
+
+import com.doutoutdou.urlshortener.entity.UrlRow;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Collection;
+
+/**
+ * Non-blocking access to the url table, used by the reactive mode instead of {@link UrlRepository}
+ */
+public interface ReactiveUrlRepository extends R2dbcRepository<UrlRow, Long> {
+
+    Mono<UrlRow> findByShortenedHash(String shortenedHash);
+
+    Mono<UrlRow> findByHashKey(byte[] hashKey);
+
+    @Query("select shortened_hash from url where shortened_hash in (:shortenedHashes)")
+    Flux<String> findShortenedHashesIn(Collection<String> shortenedHashes);
+
+    /**
+     * Insert an url, its id being taken from the sequence of the JPA ids
+     * A value of the sequence reserves a block of ids for JPA, so an id taken here is never used by JPA too.
+     */
+    @Modifying
+    @Query("insert into url (id, origin_url_data, hash_key, shortened_hash, created_at, expires_at)"
+            + " values (next value for url_seq, :originUrlData, :hashKey, :shortenedHash, :createdAt, :expiresAt)")
+    Mono<Integer> insert(byte[] originUrlData, byte[] hashKey, String shortenedHash, Instant createdAt, Instant expiresAt);
+
+    @Modifying
+    @Query("delete from url where shortened_hash = :shortenedHash and expires_at <= :now")
+    Mono<Integer> deleteExpired(String shortenedHash, Instant now);
+}
@@ -0,0 +1,336 @@
+package com.doutoutdou.urlshortener.service;
+
+import com.doutoutdou.urlshortener.analytics.ResolveAnalytics;
+import com.doutoutdou.urlshortener.cache.ResolvedUrl;
+import com.doutoutdou.urlshortener.cache.ResolvedUrlCache;
+import com.doutoutdou.urlshortener.cache.UrlExistenceFilter;
+import com.doutoutdou.urlshortener.configuration.SharedCacheProperties;
+import com.doutoutdou.urlshortener.configuration.UrlStoreProperties;
+import com.doutoutdou.urlshortener.configuration.WriteBehindProperties;
+import com.doutoutdou.urlshortener.dto.ShortenedUrlRequestDto;
+import com.doutoutdou.urlshortener.dto.ShortenedUrlResponseDto;
+import com.doutoutdou.urlshortener.dto.UrlRequestDto;
+import com.doutoutdou.urlshortener.dto.UrlResponseDto;
+import com.doutoutdou.urlshortener.entity.UrlRow;
+import com.doutoutdou.urlshortener.exception.NoShortenedUrlAvailableException;
+import com.doutoutdou.urlshortener.exception.ShortenedUrlNotFoundException;
+import com.doutoutdou.urlshortener.metrics.UrlShortenerMetrics;
+import com.doutoutdou.urlshortener.repository.OriginUrlBackfill;
+import com.doutoutdou.urlshortener.repository.ReactiveUrlRepository;
+import com.doutoutdou.urlshortener.repository.UrlHashKeyBackfill;
+import com.doutoutdou.urlshortener.store.OriginUrlCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.doutoutdou.urlshortener.utils.Constants.SHORTENED_URL_BASE_PATH;
+
+/**
+ * Creation and resolution of the shortened urls in the reactive mode, the database being read with R2DBC
+ * The hashing, the short hash collision resolution, the caches, the existence filter, the metrics and the analytics
+ * are the ones of the servlet mode ({@link UrlService}), only the database calls differ. The rare blocking calls
+ * (sequence generator, backfills, interning of the url prefixes, analytics cleanup) run on the bounded elastic scheduler.
+ * <p>
+ * The urls are read and written in the url table directly: the reactive mode requires the jpa store without
+ * short code index, and no write-behind. A Redis shared cache would block the event loop, it isn't supported either.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Slf4j
+public class ReactiveUrlService {
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final ReactiveUrlRepository urlRepository;
+    private final HashService hashService;
+    private final ShortCodeGenerator shortCodeGenerator;
+    private final ResolvedUrlCache resolvedUrlCache;
+    private final UrlExistenceFilter existenceFilter;
+    private final UrlHashKeyBackfill hashKeyBackfill;
+    private final OriginUrlCodec originUrlCodec;
+    private final OriginUrlBackfill originUrlBackfill;
+    private final UrlShortenerMetrics metrics;
+    private final ResolveAnalytics analytics;
+    // shortened hash -> load of the original url, shared by the concurrent cache misses
+    private final Map<String, Mono<Optional<String>>> loading = new ConcurrentHashMap<>();
+
+    public ReactiveUrlService(ReactiveUrlRepository urlRepository, HashService hashService,
+                              ShortCodeGenerator shortCodeGenerator, ResolvedUrlCache resolvedUrlCache,
+                              UrlExistenceFilter existenceFilter, UrlHashKeyBackfill hashKeyBackfill,
+                              OriginUrlCodec originUrlCodec, OriginUrlBackfill originUrlBackfill,
+                              UrlShortenerMetrics metrics, ResolveAnalytics analytics, UrlStoreProperties storeProperties,
+                              WriteBehindProperties writeBehindProperties, SharedCacheProperties sharedCacheProperties) {
+        if (storeProperties.type() != UrlStoreProperties.Type.JPA || storeProperties.shortCodeIndex()
+                || writeBehindProperties.enabled() || sharedCacheProperties.type() == SharedCacheProperties.Type.REDIS) {
+            throw new IllegalStateException("The reactive mode requires the jpa store without short code index, "
+                    + "no write-behind and no Redis shared cache");
+        }
+        this.urlRepository = urlRepository;
+        this.hashService = hashService;
+        this.shortCodeGenerator = shortCodeGenerator;
+        this.resolvedUrlCache = resolvedUrlCache;
+        this.existenceFilter = existenceFilter;
+        this.hashKeyBackfill = hashKeyBackfill;
+        this.originUrlCodec = originUrlCodec;
+        this.originUrlBackfill = originUrlBackfill;
+        this.metrics = metrics;
+        this.analytics = analytics;
+    }
+
+    /**
+     * Search an url from its shortened version
+     *
+     * @param shortenedUrlRequestDto the shortened url object
+     * @return the original url, or a ShortenedUrlNotFoundException error if the shortened url has not been found
+     */
+    public Mono<UrlResponseDto> findFromShortenedUrl(ShortenedUrlRequestDto shortenedUrlRequestDto) {
+        var shortenedHash = shortenedUrlRequestDto.getShortenedUrl().substring(SHORTENED_URL_BASE_PATH.length());
+
+        return resolve(shortenedHash)
+                .map(UrlResponseDto::new)
+                .switchIfEmpty(Mono.error(() -> new ShortenedUrlNotFoundException("Shortened url not found")));
+    }
+
+    /**
+     * Resolve the original url of a shortened hash, counted in the analytics if found
+     * Only the in-memory cache is read, the concurrent misses on the same shortened hash share a single query.
+     *
+     * @param shortenedHash the shortened hash, without the url base path
+     * @return the decoded original url, empty if not found
+     */
+    public Mono<String> resolve(String shortenedHash) {
+        return Mono.defer(() -> {
+            var sample = metrics.start();
+            var cached = resolvedUrlCache.getIfPresent(shortenedHash);
+            var originUrl = cached != null
+                    ? Mono.just(cached)
+                    : loading.computeIfAbsent(shortenedHash, _ -> loadOriginUrl(shortenedHash)
+                    .map(loaded -> resolvedUrlCache.putLoaded(shortenedHash, loaded))
+                    .doFinally(_ -> loading.remove(shortenedHash))
+                    .cache());
+            return originUrl.doOnNext(found -> {
+                metrics.resolved(sample, found.isPresent());
+                if (found.isPresent()) {
+                    analytics.resolved(shortenedHash);
+                }
+            }).doOnError(_ -> metrics.resolveFailed(sample)).flatMap(Mono::justOrEmpty);
+        });
+    }
+
+    /**
+     * Load the decoded original url of a shortened hash from the database
+     * The database is not queried if the existence filter knows the shortened hash is unknown
+     *
+     * @param shortenedHash the shortened hash
+     * @return the decoded original url and its expiration, empty if not found or expired
+     */
+    private Mono<Optional<ResolvedUrl>> loadOriginUrl(String shortenedHash) {
+        if (!existenceFilter.mightContainShortenedHash(shortenedHash)) {
+            return Mono.just(Optional.empty());
+        }
+        return urlRepository.findByShortenedHash(shortenedHash)
+                .flatMap(url -> url.isExpiredAt(Instant.now())
+                        ? Mono.just(Optional.<ResolvedUrl>empty())
+                        : originUrl(url).map(originUrl -> Optional.of(new ResolvedUrl(originUrl, url.expiresAt()))))
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    existenceFilter.shortenedHashFalsePositives(1);
+                    log.error(STR. "No Url found for the shortenedHash \{ shortenedHash }" );
+                    return Optional.empty();
+                }));
+    }
+
+    /**
+     * @param url an url row
+     * @return its original url, read from its text if it is not backfilled yet
+     */
+    private Mono<String> originUrl(UrlRow url) {
+        if (url.originUrlData() != null) {
+            return Mono.just(originUrlCodec.decode(url.originUrlData()));
+        }
+        return Mono.fromCallable(() -> originUrlBackfill.findOriginUrls(List.of(url.id())).get(url.id()))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Create a shortened url, expiring after the ttl of the request if any
+     * An url already shortened keeps its shortened url and expiration, an expired one is shortened again.
+     *
+     * @param urlRequestDto the original url object
+     * @return a shortened url
+     */
+    public Mono<ShortenedUrlResponseDto> buildShortenedUrl(UrlRequestDto urlRequestDto) {
+        return Mono.defer(() -> {
+            var sample = metrics.start();
+            var hash = hashService.createHash(urlRequestDto.getUrl());
+            var expiresAt = urlRequestDto.getTtl() == null ? null : Instant.now().plusSeconds(urlRequestDto.getTtl());
+
+            return findShortenedHash(hash, urlRequestDto.getUrl())
+                    .map(shortenedHash -> new ShortenedUrl(shortenedHash, false))
+                    .switchIfEmpty(Mono.defer(() -> createOrFind(hash, urlRequestDto.getUrl(), expiresAt)))
+                    .map(shortenedUrl -> {
+                        metrics.shortened(sample, shortenedUrl.created());
+                        return new ShortenedUrlResponseDto(SHORTENED_URL_BASE_PATH + shortenedUrl.shortenedHash());
+                    })
+                    .doOnError(_ -> metrics.shortenFailed(sample));
+        });
+    }
+
+    /**
+     * Search the shortened hash of an url hash, without querying the database if the existence filter knows it is unknown
+     * An expired url not swept yet is deleted, so that it can be shortened again.
+     *
+     * @param hash      the url hash
+     * @param originUrl the url
+     * @return the shortened hash if the url is already shortened and not expired
+     */
+    private Mono<String> findShortenedHash(String hash, String originUrl) {
+        if (hashKeyBackfill.isPending()) {
+            return findNotExpired(hash, originUrl)
+                    .switchIfEmpty(Mono.fromCallable(() -> hashKeyBackfill.findShortenedHash(hash))
+                            .subscribeOn(Schedulers.boundedElastic())
+                            .flatMap(Mono::justOrEmpty));
+        }
+        if (!existenceFilter.mightContainHash(hash)) {
+            return Mono.empty();
+        }
+        return findNotExpired(hash, originUrl)
+                .switchIfEmpty(Mono.fromRunnable(() -> existenceFilter.hashFalsePositives(1)));
+    }
+
+    /**
+     * Search the shortened hash of an url hash in the database, deleting the url if it is expired
+     *
+     * @param hash      the url hash
+     * @param originUrl the url
+     * @return the shortened hash if the url is already shortened and not expired
+     */
+    private Mono<String> findNotExpired(String hash, String originUrl) {
+        return urlRepository.findByHashKey(HEX.parseHex(hash))
+                .flatMap(url -> {
+                    var now = Instant.now();
+                    if (!url.isExpiredAt(now)) {
+                        return shortenedHashOf(url, originUrl);
+                    }
+                    return urlRepository.deleteExpired(url.shortenedHash(), now)
+                            .then(Mono.fromRunnable(() -> analytics.remove(List.of(url.shortenedHash())))
+                                    .subscribeOn(Schedulers.boundedElastic()))
+                            .then(Mono.<String>empty());
+                });
+    }
+
+    /**
+     * Create and save a new shortened url, or find the one saved meanwhile by a concurrent request
+     * Unlike the servlet mode the concurrent creations of this instance are not coalesced, the unique constraint of
+     * the hash resolves them. If the url is not found, another url took the same short code meanwhile, and the short
+     * code is generated again once.
+     *
+     * @param hash      the originUrl hash
+     * @param originUrl the originUrl
+     * @param expiresAt the expiration of the shortened url, null if it never expires
+     * @return the shortened hash, and whether it was created
+     */
+    private Mono<ShortenedUrl> createOrFind(String hash, String originUrl, Instant expiresAt) {
+        return create(hash, originUrl, expiresAt)
+                .onErrorResume(DataIntegrityViolationException.class, _ -> urlRepository.findByHashKey(HEX.parseHex(hash))
+                        .flatMap(url -> shortenedHashOf(url, originUrl))
+                        .map(shortenedHash -> {
+                            log.info(STR. "Url hash \{ hash } created concurrently, using its shortened hash" );
+                            existenceFilter.put(hash, shortenedHash);
+                            return new ShortenedUrl(shortenedHash, false);
+                        })
+                        .switchIfEmpty(Mono.defer(() -> {
+                            log.info(STR. "Short code of the url hash \{ hash } taken concurrently by another url, generating another one" );
+                            return create(hash, originUrl, expiresAt);
+                        })));
+    }
+
+    /**
+     * Create and save a new shortened url
+     *
+     * @param hash      the originUrl hash
+     * @param originUrl the originUrl
+     * @param expiresAt the expiration of the shortened url, null if it never expires
+     * @return the shortened hash created
+     */
+    private Mono<ShortenedUrl> create(String hash, String originUrl, Instant expiresAt) {
+        return generate(hash)
+                .flatMap(shortenedHash -> Mono.fromCallable(() -> originUrlCodec.encode(originUrl))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .flatMap(originUrlData -> urlRepository.insert(originUrlData, HEX.parseHex(hash), shortenedHash,
+                                Instant.now(), expiresAt))
+                        .thenReturn(shortenedHash))
+                .map(shortenedHash -> {
+                    existenceFilter.put(hash, shortenedHash);
+                    // Replace a possible negative entry cached before the creation
+                    if (expiresAt == null) {
+                        resolvedUrlCache.put(shortenedHash, originUrl);
+                    } else {
+                        resolvedUrlCache.put(shortenedHash, originUrl, expiresAt);
+                    }
+                    return new ShortenedUrl(shortenedHash, true);
+                });
+    }
+
+    /**
+     * Shortened hash of an url found by the hash of the url being shortened, see {@link UrlService}
+     * With a non cryptographic hash the url found is compared to the shortened one, another url is a collision.
+     *
+     * @param url       the url found by hash
+     * @param originUrl the url being shortened
+     * @return the shortened hash of the url found, or a {@link NoShortenedUrlAvailableException} on a collision
+     */
+    private Mono<String> shortenedHashOf(UrlRow url, String originUrl) {
+        if (hashService.isCryptographic()) {
+            return Mono.just(url.shortenedHash());
+        }
+        return originUrl(url).flatMap(foundUrl -> {
+            if (foundUrl.equals(originUrl)) {
+                return Mono.just(url.shortenedHash());
+            }
+            log.error(STR. "Hash shared by the shortened hash \{ url.shortenedHash() } and another url" );
+            return Mono.error(new NoShortenedUrlAvailableException("Another url has the same hash, no shortened url can be generated for this url"));
+        });
+    }
+
+    /**
+     * Generate the short code of a new url
+     * The short hashes of the hash generator are checked with a single non-blocking query, the other generators
+     * (sequence, reserving blocks of ids) run on the bounded elastic scheduler.
+     *
+     * @param hash the url hash
+     * @return a short code not already used
+     */
+    private Mono<String> generate(String hash) {
+        if (!(shortCodeGenerator instanceof HashShortCodeGenerator hashShortCodeGenerator)) {
+            return Mono.fromCallable(() -> shortCodeGenerator.generate(hash)).subscribeOn(Schedulers.boundedElastic());
+        }
+        var candidates = hashShortCodeGenerator.candidates(hash);
+        var maybeUsed = candidates.stream().filter(existenceFilter::mightContainShortenedHash).toList();
+        if (maybeUsed.isEmpty()) {
+            return Mono.fromCallable(() -> hashShortCodeGenerator.select(hash, candidates, _ -> false));
+        }
+        return urlRepository.findShortenedHashesIn(maybeUsed)
+                .collect(HashSet<String>::new, HashSet::add)
+                .map(used -> {
+                    existenceFilter.shortenedHashFalsePositives(new HashSet<>(maybeUsed).size() - used.size());
+                    return hashShortCodeGenerator.select(hash, candidates, used::contains);
+                });
+    }
+
+    /**
+     * @param shortenedHash the shortened hash
+     * @param created       true if it was created by the request, false if the url was already shortened
+     */
+    private record ShortenedUrl(String shortenedHash, boolean created) {
+    }
+}
@@ -0,0 +1,146 @@
+package com.doutoutdou.urlshortener;
+
+import com.doutoutdou.urlshortener.dto.ShortenedUrlResponseDto;
+import com.doutoutdou.urlshortener.dto.UrlRequestDto;
+import com.doutoutdou.urlshortener.dto.UrlResponseDto;
+import com.doutoutdou.urlshortener.entity.Url;
+import com.doutoutdou.urlshortener.store.UrlStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.Optional;
+
+import static com.doutoutdou.urlshortener.utils.Constants.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The endpoints of the reactive mode, run with the reactive maven profile: ./mvnw -Preactive test -Dtest=ReactiveUrlShortenerIT
+ */
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        classes = UrlShortenerApplication.class,
+        properties = {
+                "spring.main.web-application-type=reactive",
+                "spring.webflux.base-path=/api",
+                "spring.r2dbc.url=r2dbc:h2:mem:///test",
+                "spring.r2dbc.username=url",
+                "spring.r2dbc.password=pass"})
+@ActiveProfiles(value = "test")
+public class ReactiveUrlShortenerIT {
+
+    @Autowired
+    private UrlStore urlStore;
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @BeforeEach
+    void clearStore() {
+        urlStore.deleteAll();
+    }
+
+    private String create(String originalUrl) {
+        var response = webTestClient.post().uri("/v1/url")
+                .bodyValue(new UrlRequestDto(originalUrl))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(ShortenedUrlResponseDto.class)
+                .returnResult().getResponseBody();
+        assertThat(response).isNotNull();
+        assertThat(response.getShortenedUrl()).matches(SHORTENED_URL_PATTERN);
+        return response.getShortenedUrl();
+    }
+
+    @DisplayName("Create should save in database with R2DBC and then return a shortened url, the same for the same url")
+    @Test
+    public void create() {
+        var originalUrl = "http://localhost:8080/api/swagger-ui/index.html?param=é";
+
+        var shortenedUrl = create(originalUrl);
+
+        var shortHash = shortenedUrl.substring(SHORTENED_URL_BASE_PATH.length());
+        assertThat(urlStore.findByShortenedHash(shortHash)).map(Url::getOriginUrl)
+                .isEqualTo(Optional.of(originalUrl));
+        assertThat(create(originalUrl)).isEqualTo(shortenedUrl);
+    }
+
+    @DisplayName("Create with a ttl should save the expiration")
+    @Test
+    public void createWithTtl() {
+        var response = webTestClient.post().uri("/v1/url")
+                .bodyValue(new UrlRequestDto("https://www.url.com/ttl", 3600L))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(ShortenedUrlResponseDto.class)
+                .returnResult().getResponseBody();
+
+        assertThat(response).isNotNull();
+        var shortHash = response.getShortenedUrl().substring(SHORTENED_URL_BASE_PATH.length());
+        assertThat(urlStore.findByShortenedHash(shortHash)).map(Url::getExpiresAt).isPresent();
+    }
+
+    @DisplayName("Create with invalid original url should return 400")
+    @Test
+    public void createWithWrongOriginalUrl() {
+        webTestClient.post().uri("/v1/url")
+                .bodyValue(new UrlRequestDto("ftp://www.url.com/test"))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).value(body -> assertThat(body).contains(URL_PATTERN));
+    }
+
+    @DisplayName("Get with a known shortenedUrl should return the original url")
+    @Test
+    public void getWithKnownShortenedUrl() {
+        var originalUrl = "http://localhost:8080/api/swagger-ui/index.html?param=sdfasfa!@#$%^&*()_+ :'.,/{[}]|\\";
+        var shortenedUrl = create(originalUrl);
+
+        webTestClient.get().uri(builder -> builder.path("/v1/url").queryParam("shortenedUrl", shortenedUrl).build())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(UrlResponseDto.class)
+                .value(response -> assertThat(response.getUrl()).isEqualTo(originalUrl));
+    }
+
+    @DisplayName("Get with unknown shortenedUrl should return 404")
+    @Test
+    public void getWithUnknownShortenedUrl() {
+        webTestClient.get().uri("/v1/url?shortenedUrl=https://urlshortened/1234567890")
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class).value(body -> assertThat(body).contains("Shortened url not found"));
+    }
+
+    @DisplayName("Get with invalid shortenedUrl should return 400")
+    @Test
+    public void getWithWrongShortenedUrlParameter() {
+        webTestClient.get().uri("/v1/url?shortenedUrl=https://urlshortened/123456789*")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).value(body -> assertThat(body).contains(SHORTENED_URL_PARAMETER_FORMAT));
+    }
+
+    @DisplayName("Redirect with a known shortened hash should redirect to the original url")
+    @Test
+    public void redirectWithKnownShortenedHash() {
+        var originalUrl = "https://www.url.com/redirect";
+        var shortHash = create(originalUrl).substring(SHORTENED_URL_BASE_PATH.length());
+
+        webTestClient.get().uri("/" + shortHash)
+                .exchange()
+                .expectStatus().isFound()
+                .expectHeader().valueEquals(HttpHeaders.LOCATION, originalUrl);
+    }
+
+    @DisplayName("Redirect with unknown or invalid shortened hash should return 404")
+    @Test
+    public void redirectWithUnknownShortenedHash() {
+        webTestClient.get().uri("/1234567890").exchange().expectStatus().isNotFound();
+        webTestClient.get().uri("/123456789A").exchange().expectStatus().isNotFound();
+    }
+}
@@ -0,0 +1,73 @@
+package com.doutoutdou.urlshortener;
+
+import com.doutoutdou.urlshortener.dto.ShortenedUrlResponseDto;
+import com.doutoutdou.urlshortener.dto.UrlRequestDto;
+import liquibase.integration.spring.SpringLiquibase;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Start on a database created by the first changelog and already holding urls, as one deployed before the urls ids
+ * were reserved by blocks
+ */
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        classes = UrlShortenerApplication.class)
+@ActiveProfiles(value = "test")
+public class UrlSequenceMigrationIT {
+    private static final String DATABASE_URL = "jdbc:h2:mem:sequence-migration;DB_CLOSE_DELAY=-1";
+    // More than a block, so that a block reserved below the existing ids would overlap them
+    private static final int LEGACY_ROWS = 120;
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private TestRestTemplate restTemplate;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void legacyDatabase(DynamicPropertyRegistry registry) throws Exception {
+        var dataSource = new DriverManagerDataSource(DATABASE_URL, "url", "pass");
+        var liquibase = new SpringLiquibase();
+        liquibase.setDataSource(dataSource);
+        liquibase.setChangeLog("classpath:db/changelog/2023/10/19-01-changelog.xml");
+        liquibase.setResourceLoader(new DefaultResourceLoader());
+        liquibase.afterPropertiesSet();
+        new JdbcTemplate(dataSource).batchUpdate("insert into url (id, origin_url, hash, shortened_hash) values (next value for url_seq, ?, ?, ?)",
+                IntStream.range(0, LEGACY_ROWS).mapToObj(i -> new Object[]{"https://www.url.com/" + i, "%064x".formatted(i), "%010d".formatted(i)}).toList());
+
+        registry.add("spring.datasource.url", () -> DATABASE_URL);
+        registry.add("url-shortener.store.directory", () -> "target/url-shortener-store/sequence-migration");
+    }
+
+    @DisplayName("Urls created after the migration should get ids above the existing ones")
+    @Test
+    public void createdUrlsShouldNotReuseExistingIds() {
+        var baseUrl = STR. "http://localhost:\{ port }/api" ;
+
+        var responses = IntStream.range(0, 3)
+                .mapToObj(i -> restTemplate.postForEntity(baseUrl + "/v1/url", new UrlRequestDto("https://www.url1.com/migrated/" + i), ShortenedUrlResponseDto.class))
+                .toList();
+
+        assertThat(responses).allSatisfy(response -> assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK));
+        assertThat(jdbcTemplate.queryForObject("select count(*) from url", Long.class)).isEqualTo(LEGACY_ROWS + 3);
+        assertThat(jdbcTemplate.queryForObject("select min(id) from url where shortened_hash not like '0%'", Long.class))
+                .isGreaterThan(LEGACY_ROWS);
+    }
+}
@@ -1,59 +1,127 @@
 package com.doutoutdou.urlshortener;
 
+import com.doutoutdou.urlshortener.analytics.ResolveAnalytics;
+import com.doutoutdou.urlshortener.cache.ResolvedUrlCache;
+import com.doutoutdou.urlshortener.dto.BatchShortenedUrlResponseDto;
 import com.doutoutdou.urlshortener.dto.ShortenedUrlResponseDto;
 import com.doutoutdou.urlshortener.dto.UrlRequestDto;
 import com.doutoutdou.urlshortener.dto.UrlResponseDto;
 import com.doutoutdou.urlshortener.entity.Url;
-import com.doutoutdou.urlshortener.repository.UrlRepository;
-import org.apache.commons.collections4.IteratorUtils;
+import com.doutoutdou.urlshortener.store.OriginUrlCodec;
+import com.doutoutdou.urlshortener.store.UrlStore;
+import com.doutoutdou.urlshortener.store.WriteBehindUrlStore;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
-import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
 
-import java.net.URLDecoder;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static com.doutoutdou.urlshortener.utils.Constants.*;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 import static org.assertj.core.api.Assertions.fail;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest(
         webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
         classes = UrlShortenerApplication.class)
 @AutoConfigureMockMvc
+@AutoConfigureObservability(tracing = false)
 @ActiveProfiles(value = "test")
 public class UrlShortenerIT {
 
     @Autowired
-    UrlRepository urlRepository;
+    UrlStore urlStore;
     @LocalServerPort
     private int port;
     @Autowired
     private TestRestTemplate restTemplate;
+    @Autowired
+    private MockMvc mockMvc;
 
     private String buildUrl() {
         return "http://localhost:" + port + "/api/v1/url";
     }
 
     @BeforeEach
-    void clearDatabase(@Autowired JdbcTemplate jdbcTemplate) {
-        JdbcTestUtils.deleteFromTables(jdbcTemplate, "url");
+    void clearStore(@Autowired UrlStore contextUrlStore) {
+        contextUrlStore.deleteAll();
+    }
+
+    /**
+     * Server of a nested class whose properties differ from the outer ones, so started with its own context
+     * The store directory of each context must differ too, the mapped store locking it.
+     */
+    abstract static class NestedServer {
+        @LocalServerPort
+        private int nestedPort;
+        @Autowired
+        protected TestRestTemplate nestedRestTemplate;
+
+        /**
+         * @param path the path, relative to the context path
+         * @return the url of the path on the server of this context
+         */
+        protected String url(String path) {
+            return STR. "http://localhost:\{ nestedPort }/api\{ path }" ;
+        }
+
+        /**
+         * @param originUrl the url to shorten
+         * @return its shortened url
+         */
+        protected String shorten(String originUrl) {
+            return nestedRestTemplate.postForEntity(url("/v1/url"), new UrlRequestDto(originUrl), ShortenedUrlResponseDto.class)
+                    .getBody().getShortenedUrl();
+        }
+
+        /**
+         * @param shortenedUrl a shortened url
+         * @return the path of its redirect
+         */
+        protected static String redirectPath(String shortenedUrl) {
+            return "/" + shortenedUrl.substring(SHORTENED_URL_BASE_PATH.length());
+        }
     }
 
     @TestInstance(TestInstance.Lifecycle.PER_CLASS)
@@ -91,18 +159,38 @@ public class UrlShortenerIT {
             var shortHash = shortenedUrl.substring(SHORTENED_URL_BASE_PATH.length());
 
             // verify that data are saved in database
-            Optional<Url> url = urlRepository.findByShortenedHash(shortHash);
+            Optional<Url> url = urlStore.findByShortenedHash(shortHash);
             url.ifPresentOrElse(value ->
             {
-                // should be encoded in database due to encoding
-                assertThat(value.getOriginUrl()).startsWith("http%3A%2F%2F");
-                assertThat(value.getOriginUrl()).isEqualTo(URLEncoder.encode(originalUrl, StandardCharsets.UTF_8));
-                // when decoded, values must be equal
-                assertThat(URLDecoder.decode(value.getOriginUrl(), StandardCharsets.UTF_8)).isEqualTo(originalUrl);
+                assertThat(value.getOriginUrl()).isEqualTo(originalUrl);
                 assertThat(value.getHash()).contains(shortHash);
             }, () -> fail("Url not found in database"));
         }
 
+        @DisplayName("Concurrent creations of the same url should all return the shortened url of a single insert")
+        @Test
+        public void concurrentCreateShouldInsertOnce() throws Exception {
+            var originalUrl = "https://www.url1.com/viral";
+            var start = new CountDownLatch(1);
+            try (var clients = Executors.newFixedThreadPool(16)) {
+                var responses = new ArrayList<Future<ShortenedUrlResponseDto>>();
+                for (int i = 0; i < 16; i++) {
+                    responses.add(clients.submit(() -> {
+                        start.await();
+                        return createAndReturnResponse(originalUrl);
+                    }));
+                }
+                start.countDown();
+
+                var shortenedUrls = new HashSet<String>();
+                for (var response : responses) {
+                    shortenedUrls.add(response.get(30, TimeUnit.SECONDS).getShortenedUrl());
+                }
+                assertThat(shortenedUrls).hasSize(1);
+            }
+            assertThat(urlStore.count()).isEqualTo(1);
+        }
+
         @DisplayName("Create with same url twice should return the same shortened url")
         @Test
         public void createTwice() {
@@ -115,7 +203,7 @@ public class UrlShortenerIT {
             assertThat(secondShortenedUrl).isEqualTo(firstShortenedUrl);
 
             // verify that data are saved only once in database
-            assertThat(IteratorUtils.size(urlRepository.findAll().iterator())).isEqualTo(1);
+            assertThat(urlStore.count()).isEqualTo(1);
         }
 
         @DisplayName("Create for different urls should return different shortenedUrl")
@@ -130,7 +218,7 @@ public class UrlShortenerIT {
             assertThat(secondShortenedUrl).isNotEqualTo(thirdShortenedUrl);
 
             // verify that data are all saved in database
-            assertThat(IteratorUtils.size(urlRepository.findAll().iterator())).isEqualTo(3);
+            assertThat(urlStore.count()).isEqualTo(3);
         }
 
 
@@ -236,5 +324,517 @@ public class UrlShortenerIT {
         }
     }
 
-}
+    @TestInstance(TestInstance.Lifecycle.PER_CLASS)
+    @Nested
+    @DisplayName("Redirect method")
+    class Redirect {
+        @DisplayName("Redirect with a known shortened hash should redirect to the original url")
+        @Test
+        public void redirectWithKnownShortenedHash() throws Exception {
+            var originalUrl = "http://localhost:8080/api/swagger-ui/index.html?param=sdfasfa!@#$%^&*()_+ :'.,/{[}]|\\";
+
+            ResponseEntity<ShortenedUrlResponseDto> response = restTemplate.postForEntity(buildUrl(), new UrlRequestDto(originalUrl), ShortenedUrlResponseDto.class);
+            assertThat(response.getBody()).isNotNull();
+            var shortHash = response.getBody().getShortenedUrl().substring(SHORTENED_URL_BASE_PATH.length());
+
+            mockMvc.perform(get("/" + shortHash))
+                    .andExpect(status().isFound())
+                    .andExpect(header().string("Location", originalUrl));
+        }
+
+        @DisplayName("Redirect with unknown shortened hash should return 404")
+        @Test
+        public void redirectWithUnknownShortenedHash() throws Exception {
+            mockMvc.perform(get("/1234567890"))
+                    .andExpect(status().isNotFound());
+        }
+
+        @DisplayName("Redirect with invalid shortened hash should return 404")
+        @ParameterizedTest(name = "Redirect with shortened hash equals to {0} should return not found")
+        @MethodSource("wrongShortenedHash")
+        public void redirectWithWrongShortenedHash(String shortenedHash) throws Exception {
+            mockMvc.perform(get("/" + shortenedHash))
+                    .andExpect(status().isNotFound());
+        }
+
+        public Stream<Arguments> wrongShortenedHash() {
+            return Stream.of(
+                    Arguments.of("12345678901"),
+                    Arguments.of("123456789*"),
+                    Arguments.of("1234567"),
+                    Arguments.of("123456789A")
+            );
+        }
+    }
+
+    @TestInstance(TestInstance.Lifecycle.PER_CLASS)
+    @Nested
+    @DisplayName("Batch create method")
+    class BatchCreate {
+        @DisplayName("Batch create should return a shortened url for each distinct url")
+        @Test
+        public void batchCreate() {
+            var knownShortenedUrl = restTemplate.postForEntity(buildUrl(), new UrlRequestDto("http://localhost:8080/api/v1/url"), ShortenedUrlResponseDto.class)
+                    .getBody().getShortenedUrl();
+            var urls = List.of(
+                    new UrlRequestDto("http://localhost:8080/api/v1/url"),
+                    new UrlRequestDto("http://localhost:8080/api/v2/url"),
+                    new UrlRequestDto("http://localhost:8080/api/v3/url"),
+                    new UrlRequestDto("http://localhost:8080/api/v2/url"));
+
+            ResponseEntity<List<BatchShortenedUrlResponseDto>> response = restTemplate.exchange(buildUrl() + "/batch", HttpMethod.POST,
+                    new HttpEntity<>(urls), new ParameterizedTypeReference<>() {
+                    });
+
+            assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(response.getBody()).extracting(BatchShortenedUrlResponseDto::getUrl)
+                    .containsExactly("http://localhost:8080/api/v1/url", "http://localhost:8080/api/v2/url", "http://localhost:8080/api/v3/url");
+            assertThat(response.getBody()).extracting(BatchShortenedUrlResponseDto::getShortenedUrl)
+                    .allMatch(shortenedUrl -> shortenedUrl.matches(SHORTENED_URL_PATTERN))
+                    .doesNotHaveDuplicates()
+                    .startsWith(knownShortenedUrl);
+
+            // verify that data are saved only once in database
+            assertThat(urlStore.count()).isEqualTo(3);
+
+            // the shortened urls created must be found
+            var getResponse = restTemplate.getForEntity(buildUrl() + STR. "?shortenedUrl=\{ response.getBody().get(2).getShortenedUrl() }" , UrlResponseDto.class);
+            assertThat(getResponse.getBody().getUrl()).isEqualTo("http://localhost:8080/api/v3/url");
+        }
+
+        @DisplayName("Batch create with an invalid url should return 400")
+        @Test
+        public void batchCreateWithInvalidUrl() {
+            var urls = List.of(new UrlRequestDto("http://localhost:8080/api/v1/url"), new UrlRequestDto("wrong"));
+
+            ResponseEntity<String> response = restTemplate.postForEntity(buildUrl() + "/batch", urls, String.class);
+
+            assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+            assertThat(response.getBody()).contains(URL_PATTERN);
+            assertThat(urlStore.count()).isEqualTo(0);
+        }
+
+        @DisplayName("Batch create with an empty list should return 400")
+        @Test
+        public void batchCreateWithEmptyList() {
+            ResponseEntity<String> response = restTemplate.postForEntity(buildUrl() + "/batch", List.of(), String.class);
+
+            assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+            assertThat(response.getBody()).contains(BATCH_SIZE);
+        }
+
+        @DisplayName("Batch create with ndjson should return one line for each url")
+        @Test
+        public void batchCreateWithNdjson() {
+            var headers = new HttpHeaders();
+            headers.setContentType(MediaType.parseMediaType(APPLICATION_NDJSON));
+            headers.setAccept(List.of(MediaType.parseMediaType(APPLICATION_NDJSON)));
+            var body = """
+                    {"url": "http://localhost:8080/api/v1/url"}
+                    {"url": "wrong"}
+                    {"url": "http://localhost:8080/api/v2/url"}
+                    """;
+
+            ResponseEntity<String> response = restTemplate.postForEntity(buildUrl() + "/batch", new HttpEntity<>(body, headers), String.class);
+
+            assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+            var lines = response.getBody().lines().toList();
+            assertThat(lines).hasSize(3);
+            assertThat(lines.get(0)).contains("wrong").contains(URL_PATTERN);
+            assertThat(lines.get(1)).contains("http://localhost:8080/api/v1/url").contains(SHORTENED_URL_BASE_PATH);
+            assertThat(lines.get(2)).contains("http://localhost:8080/api/v2/url").contains(SHORTENED_URL_BASE_PATH);
+            assertThat(urlStore.count()).isEqualTo(2);
+        }
+    }
+
+    @TestInstance(TestInstance.Lifecycle.PER_CLASS)
+    @Nested
+    @DisplayName("Batch get method")
+    class BatchGet {
+        @DisplayName("Batch get should return the original url of each shortened url, null if unknown or invalid")
+        @Test
+        public void batchGet() {
+            var shortenedUrls = restTemplate.postForEntity(buildUrl() + "/batch",
+                    List.of(new UrlRequestDto("http://localhost:8080/api/v1/url"), new UrlRequestDto("http://localhost:8080/api/v2/url")),
+                    BatchShortenedUrlResponseDto[].class).getBody();
+
+            var request = List.of(shortenedUrls[0].getShortenedUrl(), "https://urlshortened/1234567890", shortenedUrls[1].getShortenedUrl(), "wrong");
+            ResponseEntity<Map<String, String>> response = restTemplate.exchange(buildUrl() + "/resolve", HttpMethod.POST,
+                    new HttpEntity<>(request), new ParameterizedTypeReference<>() {
+                    });
+
+            assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(response.getBody()).containsExactly(
+                    entry(shortenedUrls[0].getShortenedUrl(), "http://localhost:8080/api/v1/url"),
+                    entry("https://urlshortened/1234567890", null),
+                    entry(shortenedUrls[1].getShortenedUrl(), "http://localhost:8080/api/v2/url"),
+                    entry("wrong", null));
+        }
+
+        @DisplayName("Batch get with an empty list should return 400")
+        @Test
+        public void batchGetWithEmptyList() {
+            ResponseEntity<String> response = restTemplate.postForEntity(buildUrl() + "/resolve", List.of(), String.class);
+
+            assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+            assertThat(response.getBody()).contains(BATCH_SHORTENED_URLS_SIZE);
+        }
+
+        @DisplayName("Batch get with ndjson should return one line for each shortened url")
+        @Test
+        public void batchGetWithNdjson() {
+            var shortenedUrl = restTemplate.postForEntity(buildUrl(), new UrlRequestDto("http://localhost:8080/api/v1/url"), ShortenedUrlResponseDto.class)
+                    .getBody().getShortenedUrl();
+            var headers = new HttpHeaders();
+            headers.setContentType(MediaType.parseMediaType(APPLICATION_NDJSON));
+            headers.setAccept(List.of(MediaType.parseMediaType(APPLICATION_NDJSON)));
+            var body = STR. """
+                    "\{ shortenedUrl }"
+                    "https://urlshortened/1234567890"
+                    """ ;
+
+            ResponseEntity<String> response = restTemplate.postForEntity(buildUrl() + "/resolve", new HttpEntity<>(body, headers), String.class);
+
+            assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(response.getBody().lines()).containsExactly(
+                    STR. "{\"shortenedUrl\":\"\{ shortenedUrl }\",\"url\":\"http://localhost:8080/api/v1/url\"}" ,
+                    "{\"shortenedUrl\":\"https://urlshortened/1234567890\",\"url\":null}");
+        }
+    }
+
+    @TestInstance(TestInstance.Lifecycle.PER_CLASS)
+    @Nested
+    @DisplayName("Metrics")
+    class Metrics {
+        @DisplayName("Prometheus endpoint should expose the shorten, resolve, collision, repository and cache meters")
+        @Test
+        public void prometheusShouldExposeMeters() {
+            var shortenedUrl = restTemplate.postForEntity(buildUrl(), new UrlRequestDto("http://localhost:8080/api/v1/url"), ShortenedUrlResponseDto.class)
+                    .getBody().getShortenedUrl();
+            restTemplate.getForEntity(buildUrl() + "?shortenedUrl=" + shortenedUrl, UrlResponseDto.class);
+
+            var response = restTemplate.getForEntity("http://localhost:" + port + "/api/actuator/prometheus", String.class);
+
+            assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(response.getBody())
+                    .contains("url_shortener_shorten_seconds_count{application=\"url-shortener\",outcome=\"created\",}")
+                    .contains("url_shortener_resolve_seconds_count{application=\"url-shortener\",outcome=\"found\",}")
+                    .contains("url_shortener_short_hash_attempts_bucket")
+                    // Depending on the url store
+                    .containsAnyOf("spring_data_repository_invocations_seconds_count", "url_shortener_store_urls")
+                    .contains("cache_gets_total{application=\"url-shortener\",cache=\"resolved-urls\",");
+        }
+    }
+
+    @TestInstance(TestInstance.Lifecycle.PER_CLASS)
+    @Nested
+    @DisplayName("Health")
+    class Health {
+        @DisplayName("Health should be up without a Redis server, the shared cache not using it")
+        @Test
+        public void healthShouldBeUpWithoutRedis() {
+            var response = restTemplate.getForEntity("http://localhost:" + port + "/api/actuator/health", String.class);
+
+            assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(response.getBody()).contains("UP");
+        }
+    }
+
+    @TestInstance(TestInstance.Lifecycle.PER_CLASS)
+    @Nested
+    @DisplayName("Existence filter")
+    @TestPropertySource(properties = {"url-shortener.existence-filter.enabled=true", "url-shortener.store.directory=target/url-shortener-store/existence-filter"})
+    class ExistenceFilter extends NestedServer {
+        @DisplayName("Unknown shortened urls should be answered by the filter, the created ones by the database")
+        @Test
+        public void unknownShortenedUrlShouldBeAnsweredByFilter() {
+            var shortenedUrl = shorten("https://www.url1.com/filter");
+
+            var known = nestedRestTemplate.getForEntity(url(redirectPath(shortenedUrl)), Void.class);
+            var unknown = nestedRestTemplate.getForEntity(url("/zzzzzzzzzz"), Void.class);
+            var prometheus = nestedRestTemplate.getForEntity(url("/actuator/prometheus"), String.class);
+
+            assertThat(known.getStatusCode()).isEqualTo(HttpStatus.FOUND);
+            assertThat(unknown.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+            assertThat(prometheus.getBody())
+                    .contains("url_shortener_existence_filter_memory_bytes{application=\"url-shortener\",filter=\"shortened_hash\",}")
+                    .containsPattern("url_shortener_existence_filter_negatives_total\\{application=\"url-shortener\",filter=\"shortened_hash\",} [1-9]");
+        }
+    }
+
+    @TestInstance(TestInstance.Lifecycle.PER_CLASS)
+    @Nested
+    @DisplayName("Short code index")
+    @TestPropertySource(properties = {"url-shortener.store.short-code-index=true", "url-shortener.store.directory=target/url-shortener-store/short-code-index"})
+    class ShortCodeIndex extends NestedServer {
+        @Autowired
+        private JdbcTemplate shortCodeIndexJdbcTemplate;
+        @Autowired
+        private OriginUrlCodec originUrlCodec;
+
+        @DisplayName("Shortened urls should be resolved through the index, which only knows the urls written by the store")
+        @Test
+        public void shortenedUrlsShouldBeResolvedThroughIndex() {
+            var shortenedUrl = shorten("https://www.url1.com/index");
+            // Written behind the back of the store, as by another instance
+            shortCodeIndexJdbcTemplate.update("insert into url (id, hash_key, origin_url_data, shortened_hash) values (1000000, X'00', ?, 'zzzzzzzzzz')",
+                    (Object) originUrlCodec.encode("https://www.url2.com"));
+
+            var known = nestedRestTemplate.getForEntity(url(redirectPath(shortenedUrl)), Void.class);
+            var unindexed = nestedRestTemplate.getForEntity(url("/zzzzzzzzzz"), Void.class);
+            var batch = nestedRestTemplate.exchange(url("/v1/url/resolve"), HttpMethod.POST,
+                    new HttpEntity<>(List.of(shortenedUrl, SHORTENED_URL_BASE_PATH + "0000000000")), new ParameterizedTypeReference<Map<String, String>>() {
+                    });
+            var prometheus = nestedRestTemplate.getForEntity(url("/actuator/prometheus"), String.class);
+
+            assertThat(known.getStatusCode()).isEqualTo(HttpStatus.FOUND);
+            assertThat(known.getHeaders().getLocation()).hasToString("https://www.url1.com/index");
+            assertThat(unindexed.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+            assertThat(batch.getBody()).containsEntry(shortenedUrl, "https://www.url1.com/index").containsEntry(SHORTENED_URL_BASE_PATH + "0000000000", null);
+            assertThat(prometheus.getBody()).contains("url_shortener_store_index_memory_bytes");
+        }
+    }
+
+    @TestInstance(TestInstance.Lifecycle.PER_CLASS)
+    @Nested
+    @DisplayName("Virtual threads")
+    @TestPropertySource(properties = {"url-shortener.virtual-threads.enabled=true", "url-shortener.store.directory=target/url-shortener-store/virtual-threads"})
+    class VirtualThreads extends NestedServer {
+        @Autowired
+        private ServletWebServerApplicationContext webServerContext;
+        @Autowired
+        private ResolvedUrlCache resolvedUrlCache;
+
+        @DisplayName("Requests should be handled by virtual threads")
+        @Test
+        public void requestsShouldBeHandledByVirtualThreads() throws Exception {
+            var executor = ((TomcatWebServer) webServerContext.getWebServer()).getTomcat().getConnector().getProtocolHandler().getExecutor();
+            var isVirtual = new CompletableFuture<Boolean>();
+
+            executor.execute(() -> isVirtual.complete(Thread.currentThread().isVirtual()));
+
+            assertThat(isVirtual.get(10, TimeUnit.SECONDS)).isTrue();
+        }
+
+        @DisplayName("Concurrent creations and redirects should not pin the virtual threads")
+        @Test
+        public void concurrentRequestsShouldNotPin() throws Exception {
+            var pinned = new CopyOnWriteArrayList<RecordedEvent>();
+            try (var recording = new RecordingStream();
+                 var clients = Executors.newFixedThreadPool(16)) {
+                recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+                recording.onEvent("jdk.VirtualThreadPinned", pinned::add);
+                recording.startAsync();
+
+                var requests = IntStream.range(0, 200).mapToObj(i -> clients.submit(() -> {
+                    var shortenedUrl = shorten(STR. "https://www.pinning.com/\{ i }" );
+                    resolvedUrlCache.invalidateAll();
+                    var redirect = nestedRestTemplate.getForEntity(url(redirectPath(shortenedUrl)), Void.class);
+                    assertThat(redirect.getStatusCode()).isEqualTo(HttpStatus.FOUND);
+                    return redirect;
+                })).toList();
+                for (var request : requests) {
+                    request.get(1, TimeUnit.MINUTES);
+                }
+                recording.stop();
+            }
+
+            assertThat(pinned).extracting(event -> event.getStackTrace().toString()).isEmpty();
+        }
+    }
 
+    @TestInstance(TestInstance.Lifecycle.PER_CLASS)
+    @Nested
+    @DisplayName("Redis shared cache")
+    @TestPropertySource(properties = {"url-shortener.shared-cache.type=redis", "url-shortener.store.directory=target/url-shortener-store/redis"})
+    class RedisSharedCache extends NestedServer {
+        @DisplayName("Health should include the Redis server of the shared cache, none being started by the tests")
+        @Test
+        public void healthShouldIncludeRedis() {
+            var health = nestedRestTemplate.getForEntity(url("/actuator/health"), String.class);
+
+            assertThat(health.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+            assertThat(health.getBody()).contains("DOWN");
+        }
+    }
+
+    @Nested
+    @DisplayName("Write behind")
+    @TestPropertySource(properties = {"url-shortener.write-behind.enabled=true", "url-shortener.write-behind.max-pending=2",
+            "url-shortener.write-behind.flush-interval=1h", "url-shortener.write-behind.directory=target/url-shortener-wal/write-behind",
+            "url-shortener.store.directory=target/url-shortener-store/write-behind"})
+    class WriteBehind extends NestedServer {
+        @Autowired
+        private ResolvedUrlCache resolvedUrlCache;
+        @Autowired
+        private WriteBehindUrlStore writeBehindUrlStore;
+        @Autowired
+        @Qualifier(UrlStore.BACKEND)
+        private UrlStore backendUrlStore;
+
+        @DisplayName("Created urls should be resolved before they are saved, and saved on flush")
+        @Test
+        public void createdUrlShouldBeResolvedBeforeSave() {
+            var shortenedUrl = shorten("https://www.url1.com/pending");
+            resolvedUrlCache.invalidateAll();
+
+            var response = nestedRestTemplate.getForEntity(url("/v1/url?shortenedUrl=" + shortenedUrl), UrlResponseDto.class);
+            var again = shorten("https://www.url1.com/pending");
+            var prometheus = nestedRestTemplate.getForEntity(url("/actuator/prometheus"), String.class);
+
+            assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(response.getBody().getUrl()).isEqualTo("https://www.url1.com/pending");
+            assertThat(again).isEqualTo(shortenedUrl);
+            assertThat(prometheus.getBody()).contains("url_shortener_write_behind_pending{application=\"url-shortener\",} 1.0");
+            assertThat(backendUrlStore.count()).isZero();
+            assertThat(writeBehindUrlStore.count()).isEqualTo(1);
+            writeBehindUrlStore.flush();
+            assertThat(backendUrlStore.count()).isEqualTo(1);
+        }
+
+        @DisplayName("Creations should be rejected with a 503 while the pending buffer is full")
+        @Test
+        public void fullBufferShouldRejectCreations() {
+            shorten("https://www.url1.com/full");
+            shorten("https://www.url2.com/full");
+
+            var rejected = nestedRestTemplate.postForEntity(url("/v1/url"), new UrlRequestDto("https://www.url3.com/full"), String.class);
+            writeBehindUrlStore.flush();
+            var accepted = nestedRestTemplate.postForEntity(url("/v1/url"), new UrlRequestDto("https://www.url3.com/full"), ShortenedUrlResponseDto.class);
+
+            assertThat(rejected.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+            assertThat(rejected.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+            assertThat(accepted.getStatusCode()).isEqualTo(HttpStatus.OK);
+        }
+    }
+
+    @Nested
+    @DisplayName("Analytics")
+    @TestPropertySource(properties = {"url-shortener.analytics.enabled=true", "url-shortener.analytics.flush-interval=100ms",
+            "url-shortener.store.directory=target/url-shortener-store/analytics"})
+    class Analytics extends NestedServer {
+        @Autowired
+        private ResolveAnalytics analytics;
+
+        @DisplayName("Resolutions should be counted per shortened url and the most resolved ones listed")
+        @Test
+        public void resolutionsShouldBeCounted() throws InterruptedException {
+            analytics.clear();
+            var hot = shorten("https://www.url1.com/hot");
+            var cold = shorten("https://www.url2.com/cold");
+            var unresolved = shorten("https://www.url3.com/unresolved");
+            for (int i = 0; i < 3; i++) {
+                nestedRestTemplate.getForEntity(url(redirectPath(hot)), Void.class);
+            }
+            nestedRestTemplate.getForEntity(url("/v1/url?shortenedUrl=" + cold), UrlResponseDto.class);
+
+            // Saved in the background
+            var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            List<Map<String, Object>> top;
+            do {
+                Thread.sleep(50);
+                top = nestedRestTemplate.exchange(url("/v1/stats/top?limit=5"), HttpMethod.GET, null,
+                        new ParameterizedTypeReference<List<Map<String, Object>>>() {
+                        }).getBody();
+            } while (top.size() < 2 && System.nanoTime() < deadline);
+            var hotStats = nestedRestTemplate.exchange(url("/v1/stats?shortenedUrl=" + hot), HttpMethod.GET, null,
+                    new ParameterizedTypeReference<Map<String, Object>>() {
+                    });
+            var unresolvedStats = nestedRestTemplate.exchange(url("/v1/stats?shortenedUrl=" + unresolved), HttpMethod.GET, null,
+                    new ParameterizedTypeReference<Map<String, Object>>() {
+                    });
+            var unknownStats = nestedRestTemplate.getForEntity(url("/v1/stats?shortenedUrl=" + SHORTENED_URL_BASE_PATH + "0000000000"), String.class);
+            var invalidLimit = nestedRestTemplate.getForEntity(url("/v1/stats/top?limit=0"), String.class);
+
+            assertThat(top).extracting(entry -> entry.get("shortenedUrl")).containsExactly(hot, cold);
+            assertThat(top.getFirst()).containsEntry("hits", 3).containsEntry("maxOverestimate", 0);
+            assertThat(hotStats.getBody()).containsEntry("hits", 3).containsKey("lastAccessAt");
+            assertThat(hotStats.getBody().get("lastAccessAt")).isNotNull();
+            assertThat(unresolvedStats.getBody()).containsEntry("hits", 0).containsEntry("lastAccessAt", null);
+            assertThat(unknownStats.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+            assertThat(invalidLimit.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    @Nested
+    @DisplayName("Expiration")
+    @TestPropertySource(properties = {"url-shortener.expiration.sweep-interval=100ms", "url-shortener.expiration.batch-size=1",
+            "url-shortener.store.directory=target/url-shortener-store/expiration"})
+    class Expiration extends NestedServer {
+        @Autowired
+        private UrlStore expirationUrlStore;
+
+        @DisplayName("An url created with a ttl should not be resolved once expired, then be deleted")
+        @Test
+        public void expiredUrlShouldBeDeleted() throws InterruptedException {
+            var expiring = nestedRestTemplate.postForEntity(url("/v1/url"),
+                    Map.of("url", "https://www.url1.com/expiring", "ttl", 3), ShortenedUrlResponseDto.class).getBody().getShortenedUrl();
+            var permanent = shorten("https://www.url2.com/permanent");
+            var invalidTtl = nestedRestTemplate.postForEntity(url("/v1/url"),
+                    Map.of("url", "https://www.url3.com/invalid", "ttl", 0), String.class);
+
+            assertThat(nestedRestTemplate.getForEntity(url("/v1/url?shortenedUrl=" + expiring), UrlResponseDto.class)
+                    .getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(invalidTtl.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+
+            // Deleted in the background once expired
+            var expiringHash = expiring.substring(SHORTENED_URL_BASE_PATH.length());
+            var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (expirationUrlStore.findByShortenedHash(expiringHash).isPresent() && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            var expired = nestedRestTemplate.getForEntity(url("/v1/url?shortenedUrl=" + expiring), String.class);
+
+            assertThat(expirationUrlStore.findByShortenedHash(expiringHash)).isEmpty();
+            assertThat(expired.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+            assertThat(nestedRestTemplate.getForEntity(url("/v1/url?shortenedUrl=" + permanent), UrlResponseDto.class)
+                    .getStatusCode()).isEqualTo(HttpStatus.OK);
+        }
+    }
+
+    @TestInstance(TestInstance.Lifecycle.PER_CLASS)
+    @Nested
+    @DisplayName("Admission control")
+    @TestPropertySource(properties = {"url-shortener.admission.enabled=true", "url-shortener.admission.api-key-header=X-Api-Key",
+            "url-shortener.admission.api-keys=client-1,client-2",
+            "url-shortener.admission.create.rate=0.1", "url-shortener.admission.create.burst=2",
+            "url-shortener.store.directory=target/url-shortener-store/admission"})
+    class Admission extends NestedServer {
+        private ResponseEntity<String> create(String apiKey, String originUrl) {
+            var headers = new HttpHeaders();
+            headers.set("X-Api-Key", apiKey);
+            return nestedRestTemplate.postForEntity(url("/v1/url"), new HttpEntity<>(new UrlRequestDto(originUrl), headers), String.class);
+        }
+
+        @DisplayName("Creations over the budget of a client should be rejected before validation, the other clients and the resolutions being admitted")
+        @Test
+        public void creationsOverBudgetShouldBeRejected() {
+            assertThat(create("client-1", "https://www.url1.com/admission").getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(create("client-1", "https://www.url2.com/admission").getStatusCode()).isEqualTo(HttpStatus.OK);
+            var rejected = create("client-1", "not an url");
+            var otherClient = create("client-2", "https://www.url3.com/admission");
+            var resolve = nestedRestTemplate.getForEntity(url("/zzzzzzzzzz"), Void.class);
+            var prometheus = nestedRestTemplate.getForEntity(url("/actuator/prometheus"), String.class);
+
+            assertThat(rejected.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+            assertThat(Long.parseLong(rejected.getHeaders().getFirst(HttpHeaders.RETRY_AFTER))).isBetween(1L, 10L);
+            assertThat(otherClient.getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(resolve.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+            assertThat(prometheus.getBody())
+                    // The other tests of the class may have been rejected too
+                    .containsPattern("url_shortener_admission_rejected_total\\{application=\"url-shortener\",operation=\"create\",reason=\"rate_limit\",} [1-9]")
+                    .contains("url_shortener_admission_limit");
+        }
+
+        @DisplayName("Creations with unknown api keys should share the budget of their ip address")
+        @Test
+        public void unknownApiKeysShouldShareAddressBudget() {
+            var responses = IntStream.range(0, 3)
+                    .mapToObj(i -> create("random-key-" + i, "https://www.url.com/admission/unknown-key/" + i))
+                    .toList();
+
+            assertThat(responses.subList(0, 2)).allSatisfy(response -> assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK));
+            assertThat(responses.get(2).getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.doutoutdou.urlshortener.admission;
+
+import com.doutoutdou.urlshortener.configuration.AdmissionProperties;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdaptiveConcurrencyLimitTest {
+    private static final long THRESHOLD = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(
+            new AdmissionProperties.Concurrency(true, 10, 5, 20, Duration.ofNanos(THRESHOLD), 0.5));
+
+    @DisplayName("Requests above the limit should be rejected until some are released")
+    @Test
+    public void requestsAboveLimitShouldBeRejected() {
+        assertThat(IntStream.range(0, 10).mapToObj(_ -> limit.tryAcquire())).containsOnly(true);
+        assertThat(limit.tryAcquire()).isFalse();
+        assertThat(limit.inFlight()).isEqualTo(10);
+
+        limit.release();
+
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isFalse();
+    }
+
+    @DisplayName("A slow request should decrease the limit once per threshold, down to the minimum")
+    @Test
+    public void slowRequestsShouldDecreaseLimit() {
+        limit.tryAcquire();
+        limit.tryAcquire();
+        limit.release(0, SLOW, false);
+        limit.release(0, SLOW + 1, false);
+        assertThat(limit.limit()).isEqualTo(5);
+
+        limit.tryAcquire();
+        limit.release(SLOW, SLOW + THRESHOLD + 1, true);
+        assertThat(limit.limit()).isEqualTo(5);
+        assertThat(limit.inFlight()).isZero();
+    }
+
+    @DisplayName("Fast requests should increase the limit while it is used, up to the maximum")
+    @Test
+    public void fastRequestsShouldIncreaseLimit() {
+        limit.tryAcquire();
+        limit.release(0, FAST, false);
+        assertThat(limit.limit()).isEqualTo(10);
+
+        for (int i = 0; i < 1000; i++) {
+            IntStream.range(0, (int) limit.limit()).forEach(_ -> limit.tryAcquire());
+            limit.release(0, FAST, false);
+            while (limit.inFlight() > 0) {
+                limit.release();
+            }
+        }
+        assertThat(limit.limit()).isEqualTo(20);
+    }
+}
@@ -0,0 +1,76 @@
+package com.doutoutdou.urlshortener.admission;
+
+import com.doutoutdou.urlshortener.configuration.AdmissionProperties;
+import com.github.benmanes.caffeine.cache.Ticker;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ClientRateLimiterTest {
+    private final AtomicLong time = new AtomicLong(1_000_000_000L);
+    private final Ticker ticker = time::get;
+
+    @DisplayName("A client should get its burst at once, then the rate")
+    @Test
+    public void clientShouldGetBurstThenRate() {
+        var limiter = new ClientRateLimiter(new AdmissionProperties.Budget(10, 3), 100, ticker);
+
+        assertThat(IntStream.range(0, 3).mapToLong(_ -> limiter.tryAcquire("client"))).containsOnly(0L);
+        assertThat(limiter.tryAcquire("client")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+
+        time.addAndGet(TimeUnit.MILLISECONDS.toNanos(60));
+        assertThat(limiter.tryAcquire("client")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(40));
+        time.addAndGet(TimeUnit.MILLISECONDS.toNanos(40));
+        assertThat(limiter.tryAcquire("client")).isZero();
+        assertThat(limiter.tryAcquire("client")).isPositive();
+    }
+
+    @DisplayName("Clients should have their own buckets")
+    @Test
+    public void clientsShouldBeIndependent() {
+        var limiter = new ClientRateLimiter(new AdmissionProperties.Budget(1, 1), 100, ticker);
+
+        assertThat(limiter.tryAcquire("client-1")).isZero();
+        assertThat(limiter.tryAcquire("client-1")).isPositive();
+        assertThat(limiter.tryAcquire("client-2")).isZero();
+    }
+
+    @DisplayName("Idle buckets should be forgotten once full again")
+    @Test
+    public void idleBucketsShouldBeForgotten() {
+        var limiter = new ClientRateLimiter(new AdmissionProperties.Budget(10, 5), 100, ticker);
+        IntStream.range(0, 50).forEach(i -> limiter.tryAcquire("client-" + i));
+        assertThat(limiter.clients()).isEqualTo(50);
+
+        time.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+        limiter.tryAcquire("client-50");
+
+        assertThat(limiter.clients()).isEqualTo(1);
+    }
+
+    @DisplayName("Concurrent requests of a client should never take more tokens than allowed")
+    @Test
+    public void concurrentRequestsShouldTakeBurstOnly() throws InterruptedException {
+        var limiter = new ClientRateLimiter(new AdmissionProperties.Budget(1, 100), 100, ticker);
+        var admitted = new AtomicInteger();
+
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            IntStream.range(0, 1000).forEach(_ -> executor.execute(() -> {
+                if (limiter.tryAcquire("client") == 0) {
+                    admitted.incrementAndGet();
+                }
+            }));
+            executor.shutdown();
+            assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        }
+
+        assertThat(admitted).hasValue(100);
+    }
+}
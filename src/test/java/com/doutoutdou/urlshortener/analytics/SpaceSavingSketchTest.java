@@ -0,0 +1,55 @@
+package com.doutoutdou.urlshortener.analytics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SpaceSavingSketchTest {
+
+    @DisplayName("Top should return the keys by descending count, exact while the sketch is not full")
+    @Test
+    public void topShouldBeExactBelowCapacity() {
+        var sketch = new SpaceSavingSketch(10);
+        sketch.offer("a", 3);
+        sketch.offer("b", 5);
+        sketch.offer("a", 4);
+        sketch.offer("c", 1);
+
+        assertThat(sketch.top(2)).containsExactly(
+                new SpaceSavingSketch.Entry("a", 7, 0),
+                new SpaceSavingSketch.Entry("b", 5, 0));
+        assertThat(sketch.top(10)).hasSize(3);
+    }
+
+    @DisplayName("A new key should replace the least counted one and inherit its count as error")
+    @Test
+    public void newKeyShouldReplaceMinimum() {
+        var sketch = new SpaceSavingSketch(2);
+        sketch.offer("a", 10);
+        sketch.offer("b", 2);
+        sketch.offer("c", 1);
+
+        assertThat(sketch.top(2)).containsExactly(
+                new SpaceSavingSketch.Entry("a", 10, 0),
+                new SpaceSavingSketch.Entry("c", 3, 2));
+    }
+
+    @DisplayName("The heavy hitters of a long tail stream should be found, with counts never below the actual ones")
+    @Test
+    public void heavyHittersShouldBeFound() {
+        var sketch = new SpaceSavingSketch(100);
+        var random = new SplittableRandom(42);
+        for (int i = 0; i < 100_000; i++) {
+            // 3 hot keys for 30% of the stream, the rest spread over 100 000 keys
+            var hot = random.nextInt(10);
+            sketch.offer(hot < 3 ? STR. "hot\{ hot }" : STR. "cold\{ random.nextInt(100_000) }" , 1);
+        }
+
+        var top = sketch.top(3);
+        assertThat(top).extracting(SpaceSavingSketch.Entry::key).containsExactlyInAnyOrder("hot0", "hot1", "hot2");
+        assertThat(top).allSatisfy(entry -> assertThat(entry.count()).isGreaterThan(9_000));
+    }
+}
@@ -0,0 +1,44 @@
+package com.doutoutdou.urlshortener.cache;
+
+import com.doutoutdou.urlshortener.utils.Base36;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class BloomFilterTest {
+
+    @DisplayName("Added values should always be found")
+    @Test
+    public void addedValuesShouldBeFound() {
+        var bloomFilter = new BloomFilter(10_000, 0.01);
+        LongStream.range(0, 10_000).forEach(i -> bloomFilter.put(Base36.encode(i)));
+
+        assertThat(LongStream.range(0, 10_000).allMatch(i -> bloomFilter.mightContain(Base36.encode(i)))).isTrue();
+    }
+
+    @DisplayName("False positive rate should be close to the configured one once the expected values are added")
+    @Test
+    public void falsePositiveRateShouldMatchConfiguration() {
+        var bloomFilter = new BloomFilter(10_000, 0.01);
+        LongStream.range(0, 10_000).forEach(i -> bloomFilter.put(Base36.encode(i)));
+
+        var falsePositives = LongStream.range(10_000, 110_000).filter(i -> bloomFilter.mightContain(Base36.encode(i))).count();
+
+        assertThat(falsePositives / 100_000.0).isCloseTo(0.01, within(0.005));
+        assertThat(bloomFilter.expectedFalsePositiveProbability()).isCloseTo(0.01, within(0.005));
+        assertThat(bloomFilter.memoryBytes()).isBetween(11_000L, 12_500L);
+    }
+
+    @DisplayName("Empty filter should not contain anything")
+    @Test
+    public void emptyFilterShouldNotContainAnything() {
+        var bloomFilter = new BloomFilter(100, 0.01);
+
+        assertThat(bloomFilter.mightContain("a6f883ddbe")).isFalse();
+        assertThat(bloomFilter.expectedFalsePositiveProbability()).isZero();
+    }
+}
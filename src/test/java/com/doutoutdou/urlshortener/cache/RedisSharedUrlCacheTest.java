@@ -0,0 +1,83 @@
+package com.doutoutdou.urlshortener.cache;
+
+import com.doutoutdou.urlshortener.configuration.SharedCacheProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class RedisSharedUrlCacheTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    private RedisSharedUrlCache sharedCache;
+
+    @BeforeEach
+    void createCache() {
+        sharedCache = new RedisSharedUrlCache(redisTemplate,
+                new SharedCacheProperties(SharedCacheProperties.Type.REDIS, "resolved:", Duration.ofHours(1)));
+    }
+
+    @DisplayName("Get should read the prefixed key")
+    @Test
+    public void getShouldReadPrefixedKey() {
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get("resolved:a6f883ddbe")).thenReturn("https://www.url1.com/test");
+
+        assertThat(sharedCache.get("a6f883ddbe")).contains("https://www.url1.com/test");
+    }
+
+    @DisplayName("GetAll should read all the keys at once and skip the missing ones")
+    @Test
+    public void getAllShouldSkipMissingKeys() {
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.multiGet(List.of("resolved:a6f883ddb1", "resolved:a6f883ddb2")))
+                .thenReturn(Arrays.asList(null, "https://www.url2.com/test"));
+
+        assertThat(sharedCache.getAll(List.of("a6f883ddb1", "a6f883ddb2")))
+                .containsExactly(Map.entry("a6f883ddb2", "https://www.url2.com/test"));
+    }
+
+    @DisplayName("An unavailable Redis server should be handled as a cache miss")
+    @Test
+    public void unavailableServerShouldBeACacheMiss() {
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get("resolved:a6f883ddbe")).thenThrow(new RedisConnectionFailureException("Connection refused"));
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenThrow(new RedisConnectionFailureException("Connection refused"));
+
+        assertThat(sharedCache.get("a6f883ddbe")).isEmpty();
+        sharedCache.put("a6f883ddbe", "https://www.url1.com/test");
+        verify(redisTemplate).executePipelined(any(RedisCallback.class));
+    }
+
+    @DisplayName("Empty batches should not call Redis")
+    @Test
+    public void emptyBatchesShouldNotCallRedis() {
+        assertThat(sharedCache.getAll(List.of())).isEmpty();
+        sharedCache.putAll(Map.of());
+
+        verifyNoInteractions(redisTemplate);
+    }
+}
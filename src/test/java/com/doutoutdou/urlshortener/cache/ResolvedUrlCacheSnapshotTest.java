@@ -0,0 +1,110 @@
+package com.doutoutdou.urlshortener.cache;
+
+import com.doutoutdou.urlshortener.configuration.CacheSnapshotProperties;
+import com.doutoutdou.urlshortener.configuration.UrlCacheProperties;
+import com.doutoutdou.urlshortener.utils.Base36;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResolvedUrlCacheSnapshotTest {
+    private static final int URLS = 100_000;
+
+    @TempDir
+    private Path directory;
+
+    private static ResolvedUrlCache newCache() {
+        return new ResolvedUrlCache(new UrlCacheProperties(URLS, Duration.ofMinutes(10), Duration.ofSeconds(30)),
+                new NoSharedUrlCache());
+    }
+
+    private ResolvedUrlCacheSnapshot snapshot(ResolvedUrlCache cache, Duration maxLoadTime) {
+        return new ResolvedUrlCacheSnapshot(new CacheSnapshotProperties(true, directory.resolve("cache.snapshot"),
+                Duration.ofHours(1), URLS, maxLoadTime), cache, new SimpleMeterRegistry());
+    }
+
+    private static String shortenedHash(int index) {
+        return Base36.encode(index);
+    }
+
+    private static String originUrl(int index) {
+        return STR. "https://www.url\{ index }.com/test?query=é" ;
+    }
+
+    @DisplayName("A restored snapshot should warm a new cache with the saved urls, quickly")
+    @Test
+    public void restoredSnapshotShouldWarmCache() {
+        var cache = newCache();
+        IntStream.range(0, URLS).forEach(index -> cache.put(shortenedHash(index), originUrl(index)));
+        assertThat(snapshot(cache, Duration.ofSeconds(5)).save()).isEqualTo(URLS);
+
+        var restarted = newCache();
+        var start = System.nanoTime();
+        var restored = snapshot(restarted, Duration.ofSeconds(5)).restore();
+        var timeToWarm = Duration.ofNanos(System.nanoTime() - start);
+
+        assertThat(restored).isEqualTo(URLS);
+        assertThat(timeToWarm).isLessThan(Duration.ofSeconds(5));
+        var shortenedHashes = IntStream.range(0, URLS).mapToObj(ResolvedUrlCacheSnapshotTest::shortenedHash).toList();
+        assertThat(restarted.getAllPresent(shortenedHashes)).hasSize(URLS)
+                .containsEntry(shortenedHash(42), Optional.of(originUrl(42)));
+    }
+
+    @DisplayName("The snapshot should be restored until the maximum load time only")
+    @Test
+    public void restoreShouldStopAtMaxLoadTime() {
+        var cache = newCache();
+        IntStream.range(0, 10).forEach(index -> cache.put(shortenedHash(index), originUrl(index)));
+        snapshot(cache, Duration.ofSeconds(5)).save();
+
+        assertThat(snapshot(newCache(), Duration.ZERO).restore()).isZero();
+    }
+
+    @DisplayName("Expired and unknown urls should not be restored")
+    @Test
+    public void expiredUrlsShouldNotBeRestored() throws InterruptedException {
+        var cache = newCache();
+        cache.put(shortenedHash(1), originUrl(1));
+        cache.restore(shortenedHash(2), originUrl(2), Duration.ofMillis(1));
+        cache.get(shortenedHash(3), _ -> Optional.empty());
+        snapshot(cache, Duration.ofSeconds(5)).save();
+        Thread.sleep(5);
+
+        var restarted = newCache();
+        assertThat(snapshot(restarted, Duration.ofSeconds(5)).restore()).isEqualTo(1);
+        assertThat(restarted.getAllPresent(List.of(shortenedHash(1), shortenedHash(2), shortenedHash(3))))
+                .containsOnlyKeys(shortenedHash(1));
+    }
+
+    @DisplayName("A corrupted url should not be restored")
+    @Test
+    public void corruptedUrlShouldNotBeRestored() throws IOException {
+        var cache = newCache();
+        cache.put(shortenedHash(1), originUrl(1));
+        snapshot(cache, Duration.ofSeconds(5)).save();
+
+        var file = directory.resolve("cache.snapshot");
+        var content = Files.readAllBytes(file);
+        // Last byte of the origin url, before the checksum
+        content[content.length - 5] ^= 1;
+        Files.write(file, content);
+        assertThat(snapshot(newCache(), Duration.ofSeconds(5)).restore()).isZero();
+    }
+
+    @DisplayName("A missing snapshot should not be restored")
+    @Test
+    public void missingSnapshotShouldBeIgnored() {
+        assertThat(snapshot(newCache(), Duration.ofSeconds(5)).restore()).isZero();
+    }
+}
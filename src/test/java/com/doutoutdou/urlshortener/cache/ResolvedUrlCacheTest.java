@@ -0,0 +1,195 @@
+package com.doutoutdou.urlshortener.cache;
+
+import com.doutoutdou.urlshortener.configuration.SharedCacheProperties;
+import com.doutoutdou.urlshortener.configuration.UrlCacheProperties;
+import com.github.benmanes.caffeine.cache.Ticker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ResolvedUrlCacheTest {
+
+    private final AtomicLong time = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final SharedUrlCache sharedCache = new InMemorySharedUrlCache(
+            new SharedCacheProperties(SharedCacheProperties.Type.IN_MEMORY, "", Duration.ofHours(1)));
+    private ResolvedUrlCache resolvedUrlCache;
+
+    @BeforeEach
+    void createCache() {
+        resolvedUrlCache = newInstance();
+    }
+
+    /**
+     * @return a new in-memory cache, as on another instance of the application, sharing the same shared cache
+     */
+    private ResolvedUrlCache newInstance() {
+        Ticker ticker = time::get;
+        return new ResolvedUrlCache(
+                new UrlCacheProperties(2, Duration.ofMinutes(10), Duration.ofSeconds(30)), sharedCache, ticker);
+    }
+
+    private Function<String, Optional<ResolvedUrl>> loader(Optional<String> value) {
+        return _ -> {
+            loads.incrementAndGet();
+            return value.map(ResolvedUrl::permanent);
+        };
+    }
+
+    @DisplayName("Get should only call the loader on a cache miss")
+    @Test
+    public void getShouldLoadOnce() {
+        var first = resolvedUrlCache.get("a6f883ddbe", loader(Optional.of("https://www.url1.com/test")));
+        var second = resolvedUrlCache.get("a6f883ddbe", loader(Optional.of("https://www.url1.com/test")));
+
+        assertThat(first).contains("https://www.url1.com/test");
+        assertThat(second).contains("https://www.url1.com/test");
+        assertThat(loads).hasValue(1);
+        assertThat(resolvedUrlCache.stats().hitCount()).isEqualTo(1);
+        assertThat(resolvedUrlCache.stats().missCount()).isEqualTo(1);
+    }
+
+    @DisplayName("Unknown shortened hash should be cached until the negative ttl is reached")
+    @Test
+    public void getShouldCacheUnknownShortenedHash() {
+        resolvedUrlCache.get("a6f883ddbe", loader(Optional.empty()));
+        time.addAndGet(Duration.ofSeconds(29).toNanos());
+        resolvedUrlCache.get("a6f883ddbe", loader(Optional.empty()));
+        assertThat(loads).hasValue(1);
+
+        time.addAndGet(Duration.ofSeconds(2).toNanos());
+        resolvedUrlCache.get("a6f883ddbe", loader(Optional.empty()));
+        assertThat(loads).hasValue(2);
+    }
+
+    @DisplayName("Put should replace an unknown shortened hash")
+    @Test
+    public void putShouldReplaceNegativeEntry() {
+        resolvedUrlCache.get("a6f883ddbe", loader(Optional.empty()));
+        resolvedUrlCache.put("a6f883ddbe", "https://www.url1.com/test");
+
+        assertThat(resolvedUrlCache.get("a6f883ddbe", loader(Optional.empty()))).contains("https://www.url1.com/test");
+        assertThat(loads).hasValue(1);
+    }
+
+    @DisplayName("Cache should evict entries above its maximum size")
+    @Test
+    public void cacheShouldEvictAboveMaximumSize() {
+        resolvedUrlCache.put("a6f883ddb1", "https://www.url1.com/test");
+        resolvedUrlCache.put("a6f883ddb2", "https://www.url2.com/test");
+        resolvedUrlCache.put("a6f883ddb3", "https://www.url3.com/test");
+        resolvedUrlCache.cleanUp();
+
+        assertThat(resolvedUrlCache.stats().evictionCount()).isEqualTo(1);
+    }
+
+    @DisplayName("Concurrent misses on the same shortened hash should call the loader once")
+    @Test
+    public void getShouldCoalesceConcurrentMisses() throws Exception {
+        var loading = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        Function<String, Optional<ResolvedUrl>> slowLoader = _ -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Optional.of(ResolvedUrl.permanent("https://www.url1.com/test"));
+        };
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var first = executor.submit(() -> resolvedUrlCache.get("a6f883ddbe", slowLoader));
+            assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+            List<Future<Optional<String>>> others = List.of(
+                    executor.submit(() -> resolvedUrlCache.get("a6f883ddbe", slowLoader)),
+                    executor.submit(() -> resolvedUrlCache.get("a6f883ddbe", slowLoader)));
+            release.countDown();
+
+            assertThat(first.get(5, TimeUnit.SECONDS)).contains("https://www.url1.com/test");
+            for (var other : others) {
+                assertThat(other.get(5, TimeUnit.SECONDS)).contains("https://www.url1.com/test");
+            }
+        }
+        assertThat(loads).hasValue(1);
+    }
+
+    @DisplayName("A failed load should be rethrown to the coalesced requests and not be cached")
+    @Test
+    public void getShouldNotCacheFailedLoad() {
+        Function<String, Optional<ResolvedUrl>> failingLoader = _ -> {
+            throw new IllegalStateException("Database unavailable");
+        };
+
+        assertThatThrownBy(() -> resolvedUrlCache.get("a6f883ddbe", failingLoader))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(resolvedUrlCache.get("a6f883ddbe", loader(Optional.of("https://www.url1.com/test"))))
+                .contains("https://www.url1.com/test");
+    }
+
+    @DisplayName("A url loaded by an instance should be read from the shared cache by the others")
+    @Test
+    public void getShouldReadSharedCache() {
+        resolvedUrlCache.get("a6f883ddbe", loader(Optional.of("https://www.url1.com/test")));
+
+        var otherInstance = newInstance();
+        assertThat(otherInstance.get("a6f883ddbe", loader(Optional.empty()))).contains("https://www.url1.com/test");
+        assertThat(otherInstance.getAllPresent(List.of("a6f883ddbe"))).containsEntry("a6f883ddbe", Optional.of("https://www.url1.com/test"));
+        assertThat(loads).hasValue(1);
+    }
+
+    @DisplayName("Unknown shortened hash should not be shared")
+    @Test
+    public void getShouldNotShareUnknownShortenedHash() {
+        resolvedUrlCache.get("a6f883ddbe", loader(Optional.empty()));
+
+        assertThat(sharedCache.get("a6f883ddbe")).isEmpty();
+    }
+
+    @DisplayName("Put should write through to the shared cache")
+    @Test
+    public void putShouldWriteThrough() {
+        resolvedUrlCache.put("a6f883ddb1", "https://www.url1.com/test");
+        resolvedUrlCache.putAll(Map.of("a6f883ddb2", "https://www.url2.com/test"));
+
+        assertThat(sharedCache.getAll(List.of("a6f883ddb1", "a6f883ddb2", "a6f883ddb3"))).containsOnly(
+                Map.entry("a6f883ddb1", "https://www.url1.com/test"),
+                Map.entry("a6f883ddb2", "https://www.url2.com/test"));
+        assertThat(newInstance().getAllPresent(List.of("a6f883ddb1", "a6f883ddb3"))).containsOnlyKeys("a6f883ddb1");
+    }
+
+    @DisplayName("An expiring url should be cached until its expiration only, and not be shared")
+    @Test
+    public void expiringUrlShouldNotOutliveItsExpiration() {
+        Function<String, Optional<ResolvedUrl>> expiringLoader = _ -> {
+            loads.incrementAndGet();
+            return Optional.of(new ResolvedUrl("https://www.url1.com/test", Instant.now().plusSeconds(60)));
+        };
+        resolvedUrlCache.get("a6f883ddb1", expiringLoader);
+        resolvedUrlCache.put("a6f883ddb2", "https://www.url2.com/test", Instant.now().plusSeconds(60));
+
+        assertThat(resolvedUrlCache.get("a6f883ddb1", expiringLoader)).contains("https://www.url1.com/test");
+        assertThat(loads).hasValue(1);
+        assertThat(sharedCache.getAll(List.of("a6f883ddb1", "a6f883ddb2"))).isEmpty();
+
+        time.addAndGet(Duration.ofSeconds(61).toNanos());
+        assertThat(resolvedUrlCache.getAllPresent(List.of("a6f883ddb1", "a6f883ddb2"))).isEmpty();
+    }
+}
@@ -0,0 +1,84 @@
+package com.doutoutdou.urlshortener.cache;
+
+import com.doutoutdou.urlshortener.configuration.ExistenceFilterProperties;
+import com.doutoutdou.urlshortener.configuration.UrlStoreProperties;
+import com.doutoutdou.urlshortener.store.JpaUrlStore;
+import com.doutoutdou.urlshortener.store.UrlStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UrlExistenceFilterTest {
+
+    private final DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:existence-filter;DB_CLOSE_DELAY=-1");
+    private final UrlStore urlStore = new JpaUrlStore(null, null, null, null, dataSource,
+            new UrlStoreProperties(UrlStoreProperties.Type.JPA, null, null, false, 0, null, false));
+
+    @BeforeEach
+    void createTable() {
+        var jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("drop table if exists url");
+        jdbcTemplate.execute("create table url (hash_key varbinary(32), shortened_hash char(10))");
+        jdbcTemplate.update("insert into url values (X'fa2908526bbc132d', 'fa2908526b')");
+        jdbcTemplate.update("insert into url values (null, 'c2321fafe4')");
+    }
+
+    @DisplayName("Disabled filter should never skip a lookup")
+    @Test
+    public void disabledFilterShouldMightContainEverything() {
+        var existenceFilter = new UrlExistenceFilter(new ExistenceFilterProperties(false, 1000, 0.01), urlStore);
+        existenceFilter.load();
+
+        assertThat(existenceFilter.mightContainShortenedHash("0123456789")).isTrue();
+        assertThat(existenceFilter.mightContainHash("0123456789abcdef")).isTrue();
+    }
+
+    @DisplayName("Filter should never skip a lookup until it is loaded")
+    @Test
+    public void filterShouldMightContainEverythingUntilLoaded() {
+        var existenceFilter = new UrlExistenceFilter(new ExistenceFilterProperties(true, 1000, 0.01), urlStore);
+
+        assertThat(existenceFilter.mightContainShortenedHash("0123456789")).isTrue();
+        assertThat(existenceFilter.mightContainHash("0123456789abcdef")).isTrue();
+    }
+
+    @DisplayName("Loaded filter should contain the urls of the database and the created ones only")
+    @Test
+    public void loadedFilterShouldContainKnownUrls() {
+        var existenceFilter = new UrlExistenceFilter(new ExistenceFilterProperties(true, 1000, 0.01), urlStore);
+        existenceFilter.load();
+        existenceFilter.put("c36ca1d22eed92fd", "c36ca1d22e");
+
+        assertThat(existenceFilter.mightContainShortenedHash("fa2908526b")).isTrue();
+        assertThat(existenceFilter.mightContainHash("fa2908526bbc132d")).isTrue();
+        assertThat(existenceFilter.mightContainShortenedHash("c36ca1d22e")).isTrue();
+        assertThat(existenceFilter.mightContainHash("c36ca1d22eed92fd")).isTrue();
+        assertThat(existenceFilter.mightContainShortenedHash("0123456789")).isFalse();
+        assertThat(existenceFilter.mightContainHash("0123456789abcdef")).isFalse();
+        // Without hash key until it is backfilled
+        assertThat(existenceFilter.mightContainShortenedHash("c2321fafe4")).isTrue();
+    }
+
+    @DisplayName("Filter should expose its memory, lookups and false positives")
+    @Test
+    public void filterShouldExposeMeters() {
+        var meterRegistry = new SimpleMeterRegistry();
+        var existenceFilter = new UrlExistenceFilter(new ExistenceFilterProperties(true, 1000, 0.01), urlStore);
+        existenceFilter.bindTo(meterRegistry);
+        existenceFilter.load();
+
+        existenceFilter.mightContainShortenedHash("0123456789");
+        existenceFilter.mightContainShortenedHash("fa2908526b");
+        existenceFilter.shortenedHashFalsePositives(1);
+
+        assertThat(meterRegistry.get("url.shortener.existence.filter.memory").tag("filter", "shortened_hash").gauge().value()).isPositive();
+        assertThat(meterRegistry.get("url.shortener.existence.filter.lookups").tag("filter", "shortened_hash").functionCounter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("url.shortener.existence.filter.negatives").tag("filter", "shortened_hash").functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("url.shortener.existence.filter.false.positives").tag("filter", "shortened_hash").functionCounter().count()).isEqualTo(1);
+    }
+}
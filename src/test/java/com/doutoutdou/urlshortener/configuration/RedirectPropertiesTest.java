@@ -0,0 +1,30 @@
+package com.doutoutdou.urlshortener.configuration;
+
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RedirectPropertiesTest {
+    private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    @DisplayName("Redirect statuses should be valid")
+    @ParameterizedTest
+    @ValueSource(ints = {301, 302, 307, 308})
+    public void redirectStatusShouldBeValid(int status) {
+        assertThat(validator.validate(new RedirectProperties(status))).isEmpty();
+    }
+
+    @DisplayName("Other statuses should be invalid")
+    @Test
+    public void otherStatusShouldBeInvalid() {
+        assertThat(validator.validate(new RedirectProperties(200)))
+                .singleElement()
+                .satisfies(violation -> assertThat(violation.getMessage()).contains("301, 302, 307 or 308"));
+        assertThat(validator.validate(new RedirectProperties(303))).hasSize(1);
+    }
+}
@@ -0,0 +1,82 @@
+package com.doutoutdou.urlshortener.repository;
+
+import com.doutoutdou.urlshortener.configuration.OriginUrlProperties;
+import com.doutoutdou.urlshortener.entity.Url;
+import com.doutoutdou.urlshortener.store.OriginUrlCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.util.unit.DataSize;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OriginUrlBackfillTest {
+    private static final int LEGACY_ROWS = 2 * OriginUrlBackfill.CHUNK_SIZE + 10;
+
+    private final DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:origin-url-backfill;DB_CLOSE_DELAY=-1");
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    private OriginUrlCodec codec;
+    private OriginUrlBackfill backfill;
+
+    private static String originUrl(int index) {
+        return STR. "https://www.url\{ index % 10 }.com/path?q=é\{ index }" ;
+    }
+
+    @BeforeEach
+    void createTables() {
+        jdbcTemplate.execute("drop table if exists url");
+        jdbcTemplate.execute("drop table if exists url_prefix");
+        jdbcTemplate.execute("create table url (id bigint primary key, origin_url varchar(10000), origin_url_data varbinary(8192))");
+        jdbcTemplate.execute("create table url_prefix (id int auto_increment primary key, prefix varchar(512) not null unique)");
+        jdbcTemplate.batchUpdate("insert into url (id, origin_url) values (?, ?)",
+                IntStream.range(0, LEGACY_ROWS).mapToObj(i -> new Object[]{i, URLEncoder.encode(originUrl(i), StandardCharsets.UTF_8)}).toList());
+        codec = new OriginUrlCodec(new OriginUrlProperties(100, 2, DataSize.ofBytes(256)), dataSource);
+        codec.afterSingletonsInstantiated();
+        backfill = new OriginUrlBackfill(jdbcTemplate, codec);
+    }
+
+    @DisplayName("Backfill should set the binary original url of all the urls and clear their text")
+    @Test
+    public void backfillShouldSetAllOriginUrls() {
+        backfill.afterSingletonsInstantiated();
+        assertThat(backfill.isPending()).isTrue();
+
+        backfill.backfill();
+
+        assertThat(backfill.isPending()).isFalse();
+        assertThat(jdbcTemplate.queryForObject("select count(*) from url where origin_url_data is null or origin_url is not null", Long.class)).isZero();
+        assertThat(codec.decode(jdbcTemplate.queryForObject("select origin_url_data from url where id = 1500", byte[].class)))
+                .isEqualTo(originUrl(1500));
+        assertThat(codec.prefixes()).isEqualTo(10);
+    }
+
+    @DisplayName("Urls read without original url should get it from their text until the backfill is over")
+    @Test
+    public void urlsShouldBeCompletedWhilePending() {
+        jdbcTemplate.update("update url set origin_url_data = ?, origin_url = null where id = 2", (Object) codec.encode(originUrl(2)));
+        backfill.afterSingletonsInstantiated();
+
+        assertThat(backfill.complete(Url.builder().id(42L).build()).getOriginUrl()).isEqualTo(originUrl(42));
+        assertThat(backfill.complete(List.of(Url.builder().id(1L).build(), Url.builder().id(2L).originUrl("kept").build())))
+                .extracting(Url::getOriginUrl).containsExactly(originUrl(1), "kept");
+        assertThat(backfill.findOriginUrls(List.of(1L, 2L, (long) LEGACY_ROWS)))
+                .containsOnlyKeys(1L, 2L).containsEntry(2L, originUrl(2));
+    }
+
+    @DisplayName("Backfill should not be pending when all the urls have a binary original url")
+    @Test
+    public void backfillShouldNotBePendingWithoutLegacyUrls() {
+        jdbcTemplate.update("delete from url");
+        backfill.afterSingletonsInstantiated();
+
+        assertThat(backfill.isPending()).isFalse();
+        assertThat(backfill.complete(Url.builder().id(42L).build()).getOriginUrl()).isNull();
+    }
+}
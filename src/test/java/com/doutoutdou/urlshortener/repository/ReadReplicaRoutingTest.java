@@ -0,0 +1,113 @@
+package com.doutoutdou.urlshortener.repository;
+
+import com.doutoutdou.urlshortener.configuration.ReadReplicaProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The primary database and its replicas are distinct in-memory H2 databases, each one telling its name
+ */
+public class ReadReplicaRoutingTest {
+    private static final int REPLICAS = 2;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<HikariDataSource> replicas = new ArrayList<>();
+    private ReadReplicaDataSource dataSource;
+
+    private static void createDatabase(JdbcTemplate jdbcTemplate, String name) {
+        jdbcTemplate.execute("drop table if exists origin");
+        jdbcTemplate.execute("create table origin (name varchar(20))");
+        jdbcTemplate.update("insert into origin values (?)", name);
+    }
+
+    private ReadReplicaRouting routing(boolean enabled, Duration readYourWritesWindow) {
+        var datasources = new ArrayList<ReadReplicaProperties.Replica>();
+        for (int i = 0; i < REPLICAS; i++) {
+            var name = ReadReplicaRouting.replica(i);
+            var url = STR. "jdbc:h2:mem:\{ name };DB_CLOSE_DELAY=-1" ;
+            createDatabase(new JdbcTemplate(new DriverManagerDataSource(url)), name);
+            datasources.add(new ReadReplicaProperties.Replica(url, "sa", "", 2));
+        }
+        var routing = new ReadReplicaRouting(new ReadReplicaProperties(enabled, datasources, readYourWritesWindow, 1000), meterRegistry);
+
+        var primary = new DriverManagerDataSource("jdbc:h2:mem:primary;DB_CLOSE_DELAY=-1");
+        createDatabase(new JdbcTemplate(primary), ReadReplicaRouting.PRIMARY);
+        for (var replica : datasources) {
+            var replicaDataSource = new HikariDataSource();
+            replicaDataSource.setJdbcUrl(replica.url());
+            replicaDataSource.setReadOnly(true);
+            replicas.add(replicaDataSource);
+        }
+        dataSource = new ReadReplicaDataSource(primary, replicas, routing);
+        return routing;
+    }
+
+    private String origin() {
+        return new JdbcTemplate(dataSource).queryForObject("select name from origin", String.class);
+    }
+
+    @AfterEach
+    void closeReplicas() {
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    @DisplayName("Lookups should go to the replicas in turn, the other queries to the primary")
+    @Test
+    public void lookupsShouldGoToReplicas() {
+        var routing = routing(true, Duration.ofMinutes(1));
+
+        assertThat(List.of(routing.read("0123456789", this::origin), routing.read("0123456789", this::origin)))
+                .containsExactlyInAnyOrder(ReadReplicaRouting.replica(0), ReadReplicaRouting.replica(1));
+        assertThat(routing.primary(this::origin)).isEqualTo(ReadReplicaRouting.PRIMARY);
+        assertThat(origin()).isEqualTo(ReadReplicaRouting.PRIMARY);
+    }
+
+    @DisplayName("Keys written recently should be read from the primary until the end of the window")
+    @Test
+    public void recentWritesShouldBeReadFromPrimary() throws InterruptedException {
+        var routing = routing(true, Duration.ofMillis(500));
+
+        routing.written("fa2908526bbc132d", "fa2908526b");
+
+        assertThat(routing.read("fa2908526b", this::origin)).isEqualTo(ReadReplicaRouting.PRIMARY);
+        assertThat(routing.read("fa2908526bbc132d", this::origin)).isEqualTo(ReadReplicaRouting.PRIMARY);
+        assertThat(routing.read("0123456789", this::origin)).startsWith("replica-");
+        Thread.sleep(600);
+        assertThat(routing.read("fa2908526b", this::origin)).startsWith("replica-");
+    }
+
+    @DisplayName("Disabled replicas should never be read")
+    @Test
+    public void disabledReplicasShouldNotBeRead() {
+        var routing = routing(false, Duration.ofMinutes(1));
+
+        assertThat(routing.read("0123456789", this::origin)).isEqualTo(ReadReplicaRouting.PRIMARY);
+    }
+
+    @DisplayName("Query latency should be measured per datasource")
+    @Test
+    public void latencyShouldBeMeasuredPerDatasource() {
+        var routing = routing(true, Duration.ofMinutes(1));
+
+        routing.read("0123456789", this::origin);
+        routing.read("0123456789", this::origin);
+        routing.primary(this::origin);
+
+        assertThat(meterRegistry.get(ReadReplicaRouting.QUERY).tag("datasource", ReadReplicaRouting.PRIMARY).timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(ReadReplicaRouting.QUERY).tag("datasource", ReadReplicaRouting.replica(0)).timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(ReadReplicaRouting.QUERY).tag("datasource", ReadReplicaRouting.replica(1)).timer().count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,97 @@
+package com.doutoutdou.urlshortener.repository;
+
+import com.doutoutdou.urlshortener.cache.UrlExistenceFilter;
+import com.doutoutdou.urlshortener.configuration.ExistenceFilterProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UrlHashKeyBackfillTest {
+    private static final int LEGACY_ROWS = 2 * UrlHashKeyBackfill.CHUNK_SIZE + 10;
+
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:hash-key-backfill;DB_CLOSE_DELAY=-1"));
+    private final UrlExistenceFilter existenceFilter = new UrlExistenceFilter(new ExistenceFilterProperties(true, 10_000, 0.01), null);
+    private final UrlHashKeyBackfill backfill = new UrlHashKeyBackfill(jdbcTemplate, existenceFilter);
+
+    private static String hash(int index) {
+        return "%064x".formatted(index);
+    }
+
+    private static String shortenedHash(int index) {
+        return "%010d".formatted(index);
+    }
+
+    @BeforeEach
+    void createTable() {
+        jdbcTemplate.execute("drop table if exists url");
+        jdbcTemplate.execute("create table url (id bigint primary key, hash varchar(200), hash_key varbinary(32) unique, shortened_hash char(10) unique)");
+        jdbcTemplate.batchUpdate("insert into url (id, hash, shortened_hash) values (?, ?, ?)",
+                IntStream.range(0, LEGACY_ROWS).mapToObj(i -> new Object[]{i, hash(i), shortenedHash(i)}).toList());
+    }
+
+    @DisplayName("Backfill should set the hash key of all the urls and add them to the existence filter")
+    @Test
+    public void backfillShouldSetAllHashKeys() {
+        backfill.afterSingletonsInstantiated();
+        assertThat(backfill.isPending()).isTrue();
+
+        backfill.backfill();
+
+        assertThat(backfill.isPending()).isFalse();
+        assertThat(jdbcTemplate.queryForObject("select count(*) from url where hash_key is null", Long.class)).isZero();
+        assertThat(jdbcTemplate.queryForObject("select hash_key from url where id = 1500", byte[].class))
+                .isEqualTo(HexFormat.of().parseHex(hash(1500)));
+        assertThat(existenceFilter.mightContainHash(hash(LEGACY_ROWS - 1))).isTrue();
+    }
+
+    @DisplayName("Urls without hash key should be found by hex hash until the backfill is over")
+    @Test
+    public void urlsShouldBeFoundByHexHashWhilePending() {
+        backfill.afterSingletonsInstantiated();
+
+        assertThat(backfill.findShortenedHash(hash(42))).contains(shortenedHash(42));
+        assertThat(backfill.findShortenedHashes(List.of(hash(1), hash(2), hash(LEGACY_ROWS))))
+                .containsOnlyKeys(hash(1), hash(2));
+
+        backfill.backfill();
+
+        assertThat(backfill.findShortenedHash(hash(42))).isEmpty();
+    }
+
+    @DisplayName("An url created again with a hash key should have its legacy duplicate deleted")
+    @Test
+    public void duplicateUrlShouldBeDeleted() {
+        jdbcTemplate.update("insert into url (id, hash_key, shortened_hash) values (?, ?, ?)",
+                LEGACY_ROWS, HexFormat.of().parseHex(hash(7)), shortenedHash(LEGACY_ROWS));
+        backfill.afterSingletonsInstantiated();
+
+        backfill.backfill();
+
+        assertThat(backfill.isPending()).isFalse();
+        assertThat(jdbcTemplate.queryForObject("select count(*) from url where hash_key is null", Long.class)).isZero();
+        assertThat(jdbcTemplate.queryForList("select shortened_hash from url where hash_key = ?", String.class, HexFormat.of().parseHex(hash(7))))
+                .containsExactly(shortenedHash(LEGACY_ROWS));
+        assertThat(jdbcTemplate.queryForObject("select count(*) from url", Long.class)).isEqualTo(LEGACY_ROWS);
+
+        backfill.afterSingletonsInstantiated();
+        assertThat(backfill.isPending()).isFalse();
+    }
+
+    @DisplayName("Backfill should not be pending when all the urls have a hash key")
+    @Test
+    public void backfillShouldNotBePendingWithoutLegacyUrls() {
+        jdbcTemplate.update("delete from url");
+        backfill.afterSingletonsInstantiated();
+
+        assertThat(backfill.isPending()).isFalse();
+        assertThat(backfill.findShortenedHash(hash(42))).isEmpty();
+    }
+}
@@ -1,22 +1,24 @@
 package com.doutoutdou.urlshortener.service;
 
+import com.doutoutdou.urlshortener.configuration.HashProperties;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.codec.digest.MurmurHash3;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.TestInstance;
-import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
-import org.mockito.InjectMocks;
-import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.stream.Stream;
 
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
-@ExtendWith(MockitoExtension.class)
 public class HashServiceTest {
 
-    @InjectMocks
-    private HashService hashService;
+    private final HashService hashService = new HashService(new HashProperties(HashProperties.Algorithm.SHA256));
+    private final HashService murmur3HashService = new HashService(new HashProperties(HashProperties.Algorithm.MURMUR3_128));
 
     @ParameterizedTest(name = "Create hash from {0} should return a hash with a size of 64")
     @MethodSource("urls")
@@ -25,6 +27,40 @@ public class HashServiceTest {
         Assertions.assertThat(hash.length()).isEqualTo(64);
     }
 
+    @ParameterizedTest(name = "Create hash from {0} should return its sha256 hash")
+    @MethodSource({"urls", "nonAsciiUrls"})
+    public void createHashShouldBeSha256(String input) {
+        Assertions.assertThat(hashService.createHash(input)).isEqualTo(DigestUtils.sha256Hex(input));
+        Assertions.assertThat(hashService.createHash(input)).isEqualTo(DigestUtils.sha256Hex(input));
+    }
+
+    @ParameterizedTest(name = "Create hash from {0} with murmur3 should return its 128 bits murmur3 hash")
+    @MethodSource({"urls", "nonAsciiUrls"})
+    public void createHashShouldBeMurmur3(String input) {
+        var hash = MurmurHash3.hash128x64(input.getBytes(StandardCharsets.UTF_8));
+        var expected = Hex.encodeHexString(ByteBuffer.allocate(16).putLong(hash[0]).putLong(hash[1]).array());
+
+        Assertions.assertThat(murmur3HashService.createHash(input)).isEqualTo(expected);
+    }
+
+    @ParameterizedTest(name = "Create a short hash from the digest of {0} should return the start of its hash")
+    @MethodSource("urls")
+    public void createShortHashFromDigest(String input) {
+        var hash = hashService.createHash(input);
+
+        Assertions.assertThat(hashService.createShortHash(hashService.digest(input), 0, 10)).isEqualTo(hash.substring(0, 10));
+        Assertions.assertThat(hashService.createShortHash(hashService.digest(input), 7, 11)).isEqualTo(hash.substring(7, 11));
+    }
+
+    public Stream<Arguments> nonAsciiUrls() {
+        return Stream.of(
+                Arguments.of("https://www.exemple.fr/générique/été"),
+                Arguments.of("https://例子.测试/路径"),
+                Arguments.of("https://www.url1.com/\uD83D\uDE00/emoji"),
+                Arguments.of("https://www.url1.com/\uD83D/unpaired")
+        );
+    }
+
     public Stream<Arguments> urls() {
         return Stream.of(
                 Arguments.of(
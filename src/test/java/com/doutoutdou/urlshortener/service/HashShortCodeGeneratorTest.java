@@ -0,0 +1,102 @@
+package com.doutoutdou.urlshortener.service;
+
+import com.doutoutdou.urlshortener.cache.UrlExistenceFilter;
+import com.doutoutdou.urlshortener.configuration.ExistenceFilterProperties;
+import com.doutoutdou.urlshortener.configuration.HashProperties;
+import com.doutoutdou.urlshortener.exception.NoShortenedUrlAvailableException;
+import com.doutoutdou.urlshortener.metrics.UrlShortenerMetrics;
+import com.doutoutdou.urlshortener.store.UrlStore;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class HashShortCodeGeneratorTest {
+
+    @Mock
+    private UrlStore urlStore;
+
+    @Mock
+    private HashService hashService;
+
+    @Spy
+    private UrlExistenceFilter existenceFilter = new UrlExistenceFilter(new ExistenceFilterProperties(false, 0, 0), null);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private UrlShortenerMetrics metrics = new UrlShortenerMetrics(meterRegistry);
+
+    @InjectMocks
+    private HashShortCodeGenerator hashShortCodeGenerator;
+
+    @DisplayName("generate should return the first 10 characters of the hash if not already used")
+    @Test
+    public void generateShouldReturnHashStart() {
+        var hash = "fa2908526bbc";
+        when(hashService.createShortHash(anyString(), anyInt(), anyInt()))
+                .thenAnswer(invocation -> new HashService(new HashProperties(HashProperties.Algorithm.SHA256)).createShortHash(hash, invocation.getArgument(1), invocation.getArgument(2)));
+        when(urlStore.findShortenedHashesIn(List.of("fa2908526b", "a2908526bb", "2908526bbc"))).thenReturn(List.of());
+
+        assertThat(hashShortCodeGenerator.generate(hash)).isEqualTo("fa2908526b");
+    }
+
+    @DisplayName("generateAll should return different short hashes, even for hashes with the same start")
+    @Test
+    public void generateAllShouldAvoidCollisionsInBatch() {
+        when(hashService.createShortHash(anyString(), anyInt(), anyInt()))
+                .thenAnswer(invocation -> new HashService(new HashProperties(HashProperties.Algorithm.SHA256)).createShortHash(invocation.<String>getArgument(0), invocation.getArgument(1), invocation.getArgument(2)));
+        when(urlStore.findShortenedHashesIn(List.of("fa2908526b", "fa2908526b", "0123456789"))).thenReturn(List.of("0123456789"));
+        when(urlStore.findShortenedHashesIn(List.of("fa2908526b", "a2908526bc"))).thenReturn(List.of());
+        when(urlStore.findShortenedHashesIn(List.of("0123456789", "123456789a"))).thenReturn(List.of("0123456789"));
+
+        var shortenedHashes = hashShortCodeGenerator.generateAll(List.of("fa2908526bb", "fa2908526bc", "0123456789a"));
+
+        assertThat(shortenedHashes).containsExactly("fa2908526b", "a2908526bc", "123456789a");
+        var attempts = meterRegistry.get(UrlShortenerMetrics.SHORT_HASH_ATTEMPTS).summary();
+        assertThat(attempts.count()).isEqualTo(3);
+        assertThat(attempts.max()).isEqualTo(2);
+    }
+
+    @DisplayName("computeShortenedHash should return the first short hash not already used")
+    @Test
+    public void computeShortenedHashWithUrlNotFound() {
+        when(urlStore.findShortenedHashesIn(List.of("bcd", "cde"))).thenReturn(List.of("bcd"));
+        when(hashService.createShortHash("abcde", 1, 4)).thenReturn("bcd");
+        when(hashService.createShortHash("abcde", 2, 5)).thenReturn("cde");
+
+        var shortenedHash = hashShortCodeGenerator.computeShortenedHash("abcde", 1, 4);
+        assertThat(shortenedHash).isEqualTo("cde");
+        assertThat(meterRegistry.get(UrlShortenerMetrics.SHORT_HASH_ATTEMPTS).summary().max()).isEqualTo(2);
+        assertThat(meterRegistry.get(UrlShortenerMetrics.SHORT_HASH).timer().count()).isEqualTo(1);
+
+        // all the sub hashes must be checked with a single query
+        verify(urlStore, times(1)).findShortenedHashesIn(anyList());
+        verify(urlStore, never()).findByShortenedHash(anyString());
+    }
+
+    @DisplayName("computeShortenedHash should throw an exception if no value available")
+    @Test
+    public void computeShortenedHashShouldThrowException() {
+        when(urlStore.findShortenedHashesIn(anyList())).thenReturn(List.of("bcd"));
+        when(hashService.createShortHash(anyString(), anyInt(), anyInt())).thenReturn("bcd");
+
+        assertThatThrownBy(() -> hashShortCodeGenerator.computeShortenedHash("abcd", 1, 4))
+                .isInstanceOf(NoShortenedUrlAvailableException.class)
+                .hasMessageContaining("No shortened url can be generated for this url");
+        assertThat(meterRegistry.get(UrlShortenerMetrics.SHORT_HASH_EXHAUSTED).counter().count()).isEqualTo(1);
+    }
+}
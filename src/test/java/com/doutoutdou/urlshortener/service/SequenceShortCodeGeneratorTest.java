@@ -0,0 +1,103 @@
+package com.doutoutdou.urlshortener.service;
+
+import com.doutoutdou.urlshortener.configuration.ShortCodeProperties;
+import com.doutoutdou.urlshortener.utils.Base36;
+import com.doutoutdou.urlshortener.utils.ShortenedHashes;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static com.doutoutdou.urlshortener.service.SequenceShortCodeGenerator.BLOCK_SIZE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.assertj.core.api.Assertions.assertThatNoException;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class SequenceShortCodeGeneratorTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private SequenceShortCodeGenerator generator(boolean scramble) {
+        // behaves like short_code_seq: start at 1 and increment by the block size
+        var sequence = new AtomicLong(1 - BLOCK_SIZE);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenAnswer(_ -> sequence.addAndGet(BLOCK_SIZE));
+        return new SequenceShortCodeGenerator(jdbcTemplate, new ShortCodeProperties(ShortCodeProperties.Generator.SEQUENCE, scramble, 42L));
+    }
+
+    @DisplayName("generate should encode the ids of the sequence in base 36")
+    @Test
+    public void generateShouldEncodeSequenceIds() {
+        var generator = generator(false);
+
+        assertThat(generator.generate("hash")).isEqualTo("0000000001");
+        assertThat(generator.generate("hash")).isEqualTo("0000000002");
+    }
+
+    @DisplayName("generate should only query the sequence once per block")
+    @Test
+    public void generateShouldReserveIdsByBlock() {
+        var generator = generator(true);
+
+        var shortCodes = new HashSet<String>();
+        IntStream.range(0, 2 * BLOCK_SIZE + 1).forEach(_ -> shortCodes.add(generator.generate("hash")));
+
+        assertThat(shortCodes).hasSize(2 * BLOCK_SIZE + 1);
+        assertThat(shortCodes).allMatch(ShortenedHashes::isValid);
+        verify(jdbcTemplate, times(3)).queryForObject(anyString(), eq(Long.class));
+    }
+
+    @DisplayName("generate should return unique short codes when called concurrently")
+    @Test
+    public void generateShouldBeThreadSafe() throws InterruptedException {
+        var generator = generator(true);
+        Set<String> shortCodes = ConcurrentHashMap.newKeySet();
+
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            IntStream.range(0, 10 * BLOCK_SIZE).forEach(_ -> executor.submit(() -> shortCodes.add(generator.generate("hash"))));
+        }
+
+        assertThat(shortCodes).hasSize(10 * BLOCK_SIZE);
+        verify(jdbcTemplate, times(10)).queryForObject(anyString(), eq(Long.class));
+    }
+
+    @DisplayName("scramble should be a permutation which can be encoded on a shortened hash")
+    @Test
+    public void scrambleShouldBeBijective() {
+        var generator = new SequenceShortCodeGenerator(jdbcTemplate, new ShortCodeProperties(ShortCodeProperties.Generator.SEQUENCE, true, 42L));
+        var scrambled = new HashSet<Long>();
+
+        for (long id = 0; id < 100_000; id++) {
+            var value = generator.scramble(id);
+            assertThat(value).isBetween(0L, SequenceShortCodeGenerator.MAX_ID - 1);
+            scrambled.add(value);
+        }
+        assertThat(scrambled).hasSize(100_000);
+        assertThat(generator.scramble(SequenceShortCodeGenerator.MAX_ID - 1)).isLessThan(Base36.MAX_VALUE);
+        // consecutive ids must not give consecutive short codes
+        assertThat(Math.abs(generator.scramble(2) - generator.scramble(1))).isGreaterThan(1);
+    }
+
+    @DisplayName("Scrambled short codes should not be generated without a configured key")
+    @Test
+    public void scrambleShouldNeedKey() {
+        assertThatIllegalStateException()
+                .isThrownBy(() -> new SequenceShortCodeGenerator(jdbcTemplate, new ShortCodeProperties(ShortCodeProperties.Generator.SEQUENCE, true, null)))
+                .withMessageContaining("url-shortener.short-code.scramble-key");
+        assertThatNoException()
+                .isThrownBy(() -> new SequenceShortCodeGenerator(jdbcTemplate, new ShortCodeProperties(ShortCodeProperties.Generator.SEQUENCE, false, null)));
+    }
+}
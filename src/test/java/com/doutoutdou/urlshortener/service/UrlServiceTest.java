@@ -1,12 +1,24 @@
 package com.doutoutdou.urlshortener.service;
 
+import com.doutoutdou.urlshortener.analytics.ResolveAnalytics;
+import com.doutoutdou.urlshortener.cache.InMemorySharedUrlCache;
+import com.doutoutdou.urlshortener.cache.NoSharedUrlCache;
+import com.doutoutdou.urlshortener.cache.ResolvedUrlCache;
+import com.doutoutdou.urlshortener.cache.UrlExistenceFilter;
+import com.doutoutdou.urlshortener.configuration.ExistenceFilterProperties;
+import com.doutoutdou.urlshortener.configuration.SharedCacheProperties;
+import com.doutoutdou.urlshortener.configuration.UrlCacheProperties;
 import com.doutoutdou.urlshortener.dto.ShortenedUrlRequestDto;
 import com.doutoutdou.urlshortener.dto.UrlRequestDto;
 import com.doutoutdou.urlshortener.entity.Url;
 import com.doutoutdou.urlshortener.exception.NoShortenedUrlAvailableException;
 import com.doutoutdou.urlshortener.exception.ShortenedUrlNotFoundException;
-import com.doutoutdou.urlshortener.repository.UrlRepository;
+import com.doutoutdou.urlshortener.metrics.UrlShortenerMetrics;
+import com.doutoutdou.urlshortener.repository.UrlHashKeyBackfill;
+import com.doutoutdou.urlshortener.store.UrlStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -14,12 +26,21 @@ import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
@@ -27,14 +48,43 @@ import static org.mockito.Mockito.*;
 public class UrlServiceTest {
 
     @Mock
-    private UrlRepository urlRepository;
+    private UrlStore urlStore;
 
     @Mock
     private HashService hashService;
 
+    @Mock
+    private ShortCodeGenerator shortCodeGenerator;
+
+    @Spy
+    private ResolvedUrlCache resolvedUrlCache = new ResolvedUrlCache(
+            new UrlCacheProperties(100, Duration.ofMinutes(10), Duration.ofSeconds(30)), new NoSharedUrlCache());
+
+    @Spy
+    private UrlExistenceFilter existenceFilter = new UrlExistenceFilter(new ExistenceFilterProperties(false, 0, 0), null);
+
+    @Mock
+    private UrlHashKeyBackfill hashKeyBackfill;
+
+    @Mock
+    private ResolveAnalytics analytics;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private UrlShortenerMetrics metrics = new UrlShortenerMetrics(meterRegistry);
+
     @InjectMocks
     private UrlService urlService;
 
+    @BeforeEach
+    void clearCache() {
+        // Find method tests share the same instance, so the cache and the mocks must be cleared
+        resolvedUrlCache.invalidateAll();
+        clearInvocations(urlStore, analytics);
+        reset(hashKeyBackfill);
+    }
+
     @TestInstance(TestInstance.Lifecycle.PER_CLASS)
     @Nested
     @DisplayName("Find method")
@@ -45,7 +95,7 @@ public class UrlServiceTest {
             var url = Url.builder().originUrl("originalUrl").build();
             var shortenedUrlDto = new ShortenedUrlRequestDto("https://urlshortened/a2321fafe4");
 
-            when(urlRepository.findByShortenedHash("a2321fafe4")).thenReturn(Optional.of(url));
+            when(urlStore.findByShortenedHash("a2321fafe4")).thenReturn(Optional.of(url));
 
             var urlResponseDto = urlService.findFromShortenedUrl(shortenedUrlDto);
 
@@ -57,7 +107,7 @@ public class UrlServiceTest {
         public void findFromShortenedUrlShouldThrowException() {
             var shortenedUrlDto = new ShortenedUrlRequestDto("https://urlshortened/a2321fafe4");
 
-            when(urlRepository.findByShortenedHash("a2321fafe4")).thenReturn(Optional.empty());
+            when(urlStore.findByShortenedHash("a2321fafe4")).thenReturn(Optional.empty());
 
             Assertions.assertThatThrownBy(() -> urlService.findFromShortenedUrl(shortenedUrlDto))
                     .isInstanceOf(ShortenedUrlNotFoundException.class)
@@ -65,6 +115,103 @@ public class UrlServiceTest {
 
         }
 
+        @Test
+        @DisplayName("Find from shortened url twice should only query the database once")
+        public void findFromShortenedUrlTwiceShouldUseCache() throws ShortenedUrlNotFoundException {
+            var url = Url.builder().originUrl("http://localhost/path").build();
+            var shortenedUrlDto = new ShortenedUrlRequestDto("https://urlshortened/a2321fafe4");
+
+            when(urlStore.findByShortenedHash("a2321fafe4")).thenReturn(Optional.of(url));
+
+            urlService.findFromShortenedUrl(shortenedUrlDto);
+            var urlResponseDto = urlService.findFromShortenedUrl(shortenedUrlDto);
+
+            assertThat(urlResponseDto.getUrl()).isEqualTo("http://localhost/path");
+            verify(urlStore, times(1)).findByShortenedHash("a2321fafe4");
+        }
+
+        @Test
+        @DisplayName("Resolve should only count the resolutions of known shortened urls")
+        public void resolveShouldCountKnownShortenedUrls() {
+            var url = Url.builder().originUrl("http://localhost/path").build();
+            when(urlStore.findByShortenedHash("a2321fafe4")).thenReturn(Optional.of(url));
+            when(urlStore.findByShortenedHash("b2321fafe4")).thenReturn(Optional.empty());
+
+            urlService.resolve("a2321fafe4");
+            urlService.resolve("a2321fafe4");
+            urlService.resolve("b2321fafe4");
+
+            verify(analytics, times(2)).resolved("a2321fafe4");
+            verify(analytics, never()).resolved("b2321fafe4");
+        }
+
+        @Test
+        @DisplayName("Resolve all should return the original urls, with null for unknown or invalid shortened urls")
+        public void resolveAllShouldReturnNullForMisses() {
+            var url = Url.builder().originUrl("http://localhost/path").shortenedHash("a2321fafe4").build();
+            resolvedUrlCache.put("b2321fafe4", "http://localhost/cached");
+
+            when(urlStore.findByShortenedHashIn(argThat(hashes -> hashes.size() == 2)))
+                    .thenReturn(List.of(url));
+
+            var originUrls = urlService.resolveAll(List.of(
+                    "https://urlshortened/a2321fafe4",
+                    "https://urlshortened/1234567890",
+                    "https://urlshortened/b2321fafe4",
+                    "https://urlshortened/wrong"));
+
+            assertThat(originUrls).containsExactly(
+                    entry("https://urlshortened/a2321fafe4", "http://localhost/path"),
+                    entry("https://urlshortened/1234567890", null),
+                    entry("https://urlshortened/b2321fafe4", "http://localhost/cached"),
+                    entry("https://urlshortened/wrong", null));
+            verify(urlStore, never()).findByShortenedHash(anyString());
+        }
+
+        @Test
+        @DisplayName("Find from shortened url unknown by the existence filter should not query the database")
+        public void findFromShortenedUrlUnknownByFilterShouldNotQueryDatabase() {
+            var shortenedUrlDto = new ShortenedUrlRequestDto("https://urlshortened/c2321fafe4");
+
+            doReturn(false).when(existenceFilter).mightContainShortenedHash("c2321fafe4");
+
+            assertThatThrownBy(() -> urlService.findFromShortenedUrl(shortenedUrlDto))
+                    .isInstanceOf(ShortenedUrlNotFoundException.class);
+            verify(urlStore, never()).findByShortenedHash(anyString());
+        }
+
+        @Test
+        @DisplayName("Resolve should be timed with the error outcome if the store fails")
+        public void resolveShouldTimeStoreFailure() {
+            var error = meterRegistry.get(UrlShortenerMetrics.RESOLVE).tag("outcome", "error").timer();
+            var errorCount = error.count();
+
+            when(urlStore.findByShortenedHash("d2321fafe4")).thenThrow(new IllegalStateException("Store unavailable"));
+
+            assertThatThrownBy(() -> urlService.resolve("d2321fafe4"))
+                    .isInstanceOf(IllegalStateException.class);
+            assertThat(error.count()).isEqualTo(errorCount + 1);
+            verify(analytics, never()).resolved("d2321fafe4");
+        }
+
+        @Test
+        @DisplayName("Find from unknown shortened url twice should only query the database once")
+        public void findFromUnknownShortenedUrlTwiceShouldUseCache() {
+            var shortenedUrlDto = new ShortenedUrlRequestDto("https://urlshortened/a2321fafe4");
+            var notFound = meterRegistry.get(UrlShortenerMetrics.RESOLVE).tag("outcome", "not_found").timer();
+            var notFoundCount = notFound.count();
+
+            when(urlStore.findByShortenedHash("a2321fafe4")).thenReturn(Optional.empty());
+
+            assertThatThrownBy(() -> urlService.findFromShortenedUrl(shortenedUrlDto))
+                    .isInstanceOf(ShortenedUrlNotFoundException.class);
+            assertThatThrownBy(() -> urlService.findFromShortenedUrl(shortenedUrlDto))
+                    .isInstanceOf(ShortenedUrlNotFoundException.class);
+
+            verify(urlStore, times(1)).findByShortenedHash("a2321fafe4");
+            assertThat(notFound.count()).isEqualTo(notFoundCount + 2);
+        }
+
     }
 
     @Nested
@@ -86,15 +233,16 @@ public class UrlServiceTest {
 
             when(hashService.createHash(originUrl)).thenReturn(hash);
 
-            when(urlRepository.findByHash(hash)).thenReturn(Optional.of(url));
+            when(urlStore.findByHash(hash)).thenReturn(Optional.of(url));
 
             var shortenedUrlResponseDto = urlService.buildShortenedUrl(new UrlRequestDto(originUrl));
 
             assertThat(shortenedUrlResponseDto.getShortenedUrl()).isEqualTo(shortenedUrl);
 
-            verify(urlRepository, times(1)).findByHash(hash);
-            verify(urlRepository, never()).save(any());
-            verify(urlRepository, never()).findByShortenedHash(anyString());
+            verify(urlStore, times(1)).findByHash(hash);
+            verify(urlStore, never()).save(any());
+            verify(urlStore, never()).findByShortenedHash(anyString());
+            verify(shortCodeGenerator, never()).generate(anyString());
         }
 
         @DisplayName("buildShortenedUrl should create and save in database if unknown")
@@ -107,42 +255,236 @@ public class UrlServiceTest {
                     .build();
 
             when(hashService.createHash(originUrl)).thenReturn(hash);
-            when(hashService.createShortHash(anyString(), anyInt(), anyInt())).thenReturn(shortHash);
+            when(shortCodeGenerator.generate(hash)).thenReturn(shortHash);
 
-            when(urlRepository.findByHash(hash)).thenReturn(Optional.empty());
-            when(urlRepository.findByShortenedHash("ab")).thenReturn(Optional.empty());
+            when(urlStore.findByHash(hash)).thenReturn(Optional.empty());
 
             // TODO : voir pk il ne capte pas avec l'url
-            when(urlRepository.save(any(Url.class))).thenReturn(url);
+            when(urlStore.save(any(Url.class))).thenReturn(url);
+
+            var shortenedUrlResponseDto = urlService.buildShortenedUrl(new UrlRequestDto(originUrl));
+
+            assertThat(shortenedUrlResponseDto.getShortenedUrl()).isEqualTo(shortenedUrl);
+            verify(resolvedUrlCache, times(1)).put(shortHash, originUrl);
+            verify(metrics, times(1)).shortened(any(), eq(true));
+        }
+
+        @DisplayName("A created url should be resolved from the shared cache by another instance, without the store")
+        @Test
+        public void createdUrlShouldBeResolvedFromSharedCache() {
+            var sharedCache = new InMemorySharedUrlCache(new SharedCacheProperties(SharedCacheProperties.Type.IN_MEMORY, "", Duration.ofHours(1)));
+            var cacheProperties = new UrlCacheProperties(100, Duration.ofMinutes(10), Duration.ofSeconds(30));
+            var instance = new UrlService(urlStore, hashService, shortCodeGenerator, new ResolvedUrlCache(cacheProperties, sharedCache),
+                    existenceFilter, hashKeyBackfill, metrics, analytics);
+            var otherInstance = new UrlService(urlStore, hashService, shortCodeGenerator, new ResolvedUrlCache(cacheProperties, sharedCache),
+                    existenceFilter, hashKeyBackfill, metrics, analytics);
+
+            when(hashService.createHash(originUrl)).thenReturn(hash);
+            when(shortCodeGenerator.generate(hash)).thenReturn(shortHash);
+            when(urlStore.findByHash(hash)).thenReturn(Optional.empty());
+            when(urlStore.save(any(Url.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+            assertThat(instance.buildShortenedUrl(new UrlRequestDto(originUrl)).getShortenedUrl()).isEqualTo(shortenedUrl);
+            assertThat(otherInstance.resolve(shortHash)).contains(originUrl);
+            verify(urlStore, never()).findByShortenedHash(anyString());
+        }
+
+        @DisplayName("buildShortenedUrl should not search the url if the existence filter doesn't know its hash")
+        @Test
+        public void buildShortenedUrlForUrlUnknownByFilter() {
+            var url = Url.builder()
+                    .originUrl(originUrl)
+                    .hash(hash)
+                    .shortenedHash(shortHash)
+                    .build();
+
+            when(hashService.createHash(originUrl)).thenReturn(hash);
+            when(shortCodeGenerator.generate(hash)).thenReturn(shortHash);
+            doReturn(false).when(existenceFilter).mightContainHash(hash);
+            when(urlStore.save(any(Url.class))).thenReturn(url);
+
+            var shortenedUrlResponseDto = urlService.buildShortenedUrl(new UrlRequestDto(originUrl));
+
+            assertThat(shortenedUrlResponseDto.getShortenedUrl()).isEqualTo(shortenedUrl);
+            verify(urlStore, never()).findByHash(anyString());
+            verify(existenceFilter, times(1)).put(hash, shortHash);
+        }
+
+        @DisplayName("buildShortenedUrls should only create the unknown urls, with a single insert")
+        @Test
+        public void buildShortenedUrlsForKnownAndUnknownUrls() {
+            var knownUrl = Url.builder()
+                    .originUrl(originUrl)
+                    .hash(hash)
+                    .shortenedHash(shortHash)
+                    .build();
+
+            when(hashService.createHash(originUrl)).thenReturn(hash);
+            when(hashService.createHash("https://www.myawesomeurl/new")).thenReturn("newhash");
+            when(urlStore.findByHashIn(List.of(hash, "newhash"))).thenReturn(List.of(knownUrl));
+            when(shortCodeGenerator.generateAll(List.of("newhash"))).thenReturn(List.of("cd"));
+
+            var shortenedUrls = urlService.buildShortenedUrls(List.of(originUrl, "https://www.myawesomeurl/new", originUrl));
+
+            assertThat(shortenedUrls).containsExactly(
+                    entry(originUrl, shortenedUrl),
+                    entry("https://www.myawesomeurl/new", "https://urlshortened/cd"));
+            verify(urlStore, times(1)).findByHashIn(anyList());
+            verify(urlStore, times(1)).saveAll(argThat(urls -> urls.size() == 1));
+            verify(urlStore, never()).save(any());
+        }
+
+        @DisplayName("buildShortenedUrl should fail if another url has the same non cryptographic hash")
+        @Test
+        public void buildShortenedUrlForHashCollision() {
+            var url = Url.builder()
+                    .originUrl("https://www.myawesomeurl/other")
+                    .hash(hash)
+                    .shortenedHash(shortHash)
+                    .build();
+
+            when(hashService.createHash(originUrl)).thenReturn(hash);
+            when(urlStore.findByHash(hash)).thenReturn(Optional.of(url));
+
+            assertThatThrownBy(() -> urlService.buildShortenedUrl(new UrlRequestDto(originUrl)))
+                    .isInstanceOf(NoShortenedUrlAvailableException.class);
+            verify(urlStore, never()).save(any());
+            verify(metrics, times(1)).shortenFailed(any());
+
+            when(hashService.isCryptographic()).thenReturn(true);
+            assertThat(urlService.buildShortenedUrl(new UrlRequestDto(originUrl)).getShortenedUrl()).isEqualTo(shortenedUrl);
+        }
+
+        @DisplayName("buildShortenedUrls should fail if another url has the same non cryptographic hash as an url of the chunk")
+        @Test
+        public void buildShortenedUrlsForHashCollision() {
+            var url = Url.builder()
+                    .originUrl("https://www.myawesomeurl/other")
+                    .hash(hash)
+                    .shortenedHash(shortHash)
+                    .build();
+
+            when(hashService.createHash(originUrl)).thenReturn(hash);
+            when(urlStore.findByHashIn(List.of(hash))).thenReturn(List.of(url));
+
+            assertThatThrownBy(() -> urlService.buildShortenedUrls(List.of(originUrl)))
+                    .isInstanceOf(NoShortenedUrlAvailableException.class);
+            verify(urlStore, never()).saveAll(anyList());
+        }
+
+        @DisplayName("buildShortenedUrl should search the url by hex hash while the hash keys are backfilled")
+        @Test
+        public void buildShortenedUrlForUrlWithoutHashKey() {
+            when(hashService.createHash(originUrl)).thenReturn(hash);
+            when(urlStore.findByHash(hash)).thenReturn(Optional.empty());
+            when(hashKeyBackfill.isPending()).thenReturn(true);
+            when(hashKeyBackfill.findShortenedHash(hash)).thenReturn(Optional.of(shortHash));
+
+            var shortenedUrlResponseDto = urlService.buildShortenedUrl(new UrlRequestDto(originUrl));
+
+            assertThat(shortenedUrlResponseDto.getShortenedUrl()).isEqualTo(shortenedUrl);
+            verify(urlStore, never()).save(any());
+            verify(existenceFilter, never()).mightContainHash(anyString());
+        }
+
+        @DisplayName("buildShortenedUrl should use the url created concurrently when the insert violates the unique constraint")
+        @Test
+        public void buildShortenedUrlForUrlCreatedConcurrently() {
+            var url = Url.builder()
+                    .originUrl(originUrl)
+                    .hash(hash)
+                    .shortenedHash(shortHash)
+                    .build();
+
+            when(hashService.createHash(originUrl)).thenReturn(hash);
+            when(shortCodeGenerator.generate(hash)).thenReturn(shortHash);
+            when(urlStore.findByHash(hash)).thenReturn(Optional.empty(), Optional.of(url));
+            when(urlStore.save(any(Url.class))).thenThrow(new DataIntegrityViolationException("uc_url_hash"));
 
             var shortenedUrlResponseDto = urlService.buildShortenedUrl(new UrlRequestDto(originUrl));
 
             assertThat(shortenedUrlResponseDto.getShortenedUrl()).isEqualTo(shortenedUrl);
+            verify(urlStore, times(2)).findByHash(hash);
+            verify(metrics, times(1)).shortened(any(), eq(false));
+        }
+
+        @DisplayName("buildShortenedUrl should generate another short code when it was taken concurrently by another url")
+        @Test
+        public void buildShortenedUrlForShortCodeTakenConcurrently() {
+            var otherShortHash = "cd";
+
+            when(hashService.createHash(originUrl)).thenReturn(hash);
+            when(shortCodeGenerator.generate(hash)).thenReturn(shortHash, otherShortHash);
+            when(urlStore.findByHash(hash)).thenReturn(Optional.empty());
+            when(urlStore.save(any(Url.class)))
+                    .thenThrow(new DataIntegrityViolationException("uc_url_shortened_hash"))
+                    .thenAnswer(invocation -> invocation.getArgument(0));
+
+            var shortenedUrlResponseDto = urlService.buildShortenedUrl(new UrlRequestDto(originUrl));
+
+            assertThat(shortenedUrlResponseDto.getShortenedUrl()).isEqualTo("https://urlshortened/" + otherShortHash);
+            verify(urlStore, times(2)).save(any(Url.class));
+            verify(metrics, times(1)).shortened(any(), eq(true));
         }
 
-        @DisplayName("computeShortenedHash should return a short hash")
+        @DisplayName("Concurrent buildShortenedUrl of the same url should insert it once")
         @Test
-        public void computeShortenedHashWithUrlNotFound() {
-            // mock returning a value and then noting
-            // this way we can test the recursive method
-            when(urlRepository.findByShortenedHash(anyString()))
-                    .thenReturn(Optional.of(new Url()))
-                    .thenReturn(Optional.empty());
-            when(hashService.createShortHash(anyString(), anyInt(), anyInt())).thenReturn("bcd").thenReturn("cde");
+        public void buildShortenedUrlConcurrentlyShouldInsertOnce() throws Exception {
+            var url = Url.builder()
+                    .originUrl(originUrl)
+                    .hash(hash)
+                    .shortenedHash(shortHash)
+                    .build();
+            var lookups = new CountDownLatch(2);
+            var release = new CountDownLatch(1);
 
-            var shortenedHash = urlService.computeShortenedHash("abcde", 1, 4);
-            assertThat(shortenedHash).isEqualTo("cde");
+            when(hashService.createHash(originUrl)).thenReturn(hash);
+            when(shortCodeGenerator.generate(hash)).thenReturn(shortHash);
+            when(urlStore.findByHash(hash)).thenAnswer(_ -> {
+                lookups.countDown();
+                return Optional.empty();
+            });
+            when(urlStore.save(any(Url.class))).thenAnswer(_ -> {
+                release.await();
+                return url;
+            });
+
+            try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                var first = executor.submit(() -> urlService.buildShortenedUrl(new UrlRequestDto(originUrl)));
+                verify(urlStore, timeout(5000)).save(any(Url.class));
+                var second = executor.submit(() -> urlService.buildShortenedUrl(new UrlRequestDto(originUrl)));
+                assertThat(lookups.await(5, TimeUnit.SECONDS)).isTrue();
+                // Let the second request register as a waiter of the first one
+                Thread.sleep(100);
+                release.countDown();
+
+                assertThat(first.get(5, TimeUnit.SECONDS).getShortenedUrl()).isEqualTo(shortenedUrl);
+                assertThat(second.get(5, TimeUnit.SECONDS).getShortenedUrl()).isEqualTo(shortenedUrl);
+            }
+            verify(urlStore, times(1)).save(any(Url.class));
+            verify(metrics, times(1)).shortened(any(), eq(true));
+            verify(metrics, times(1)).shortened(any(), eq(false));
         }
 
-        @DisplayName("computeShortenedHash should throw an exception if no value available")
+        @DisplayName("buildShortenedUrls should search the chunk again when the insert violates the unique constraint")
         @Test
-        public void computeShortenedHashShouldThrowException() {
-            when(urlRepository.findByShortenedHash(anyString())).thenReturn(Optional.of(new Url()));
-            when(hashService.createShortHash(anyString(), anyInt(), anyInt())).thenReturn("bcd");
+        public void buildShortenedUrlsForUrlsCreatedConcurrently() {
+            var createdUrl = Url.builder()
+                    .originUrl(originUrl)
+                    .hash(hash)
+                    .shortenedHash(shortHash)
+                    .build();
+
+            when(hashService.createHash(originUrl)).thenReturn(hash);
+            when(urlStore.findByHashIn(List.of(hash))).thenReturn(List.of(), List.of(createdUrl));
+            when(shortCodeGenerator.generateAll(List.of(hash))).thenReturn(List.of(shortHash));
+            doThrow(new DataIntegrityViolationException("uc_url_hash")).when(urlStore).saveAll(anyList());
+
+            var shortenedUrls = urlService.buildShortenedUrls(List.of(originUrl));
 
-            assertThatThrownBy(() -> urlService.computeShortenedHash("abcd", 1, 4))
-                    .isInstanceOf(NoShortenedUrlAvailableException.class)
-                    .hasMessageContaining("No shortened url can be generated for this url");
+            assertThat(shortenedUrls).containsExactly(entry(originUrl, shortenedUrl));
+            verify(urlStore, times(2)).findByHashIn(List.of(hash));
+            verify(urlStore, times(1)).saveAll(anyList());
         }
     }
 
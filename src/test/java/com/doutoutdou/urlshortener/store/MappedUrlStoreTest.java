@@ -0,0 +1,268 @@
+package com.doutoutdou.urlshortener.store;
+
+import com.doutoutdou.urlshortener.configuration.UrlStoreProperties;
+import com.doutoutdou.urlshortener.entity.Url;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MappedUrlStoreTest {
+    private static final long SEGMENT_SIZE = 4096;
+
+    @TempDir
+    private Path directory;
+    private final DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:mapped-url-store;DB_CLOSE_DELAY=-1");
+    private final OriginUrlCodec codec = OriginUrlCodecTest.codec(dataSource, 100, 2);
+    private MappedUrlStore store;
+
+    private static Url url(int index) {
+        return Url.builder()
+                .hash("%064x".formatted(index))
+                .shortenedHash("%010d".formatted(index))
+                .originUrl(STR. "https://www.url\{ index }.com/test" )
+                .build();
+    }
+
+    private MappedUrlStore open() {
+        return new MappedUrlStore(new UrlStoreProperties(UrlStoreProperties.Type.MAPPED, directory,
+                DataSize.ofBytes(SEGMENT_SIZE), false, 0.5, Duration.ofHours(1), false), codec, dataSource);
+    }
+
+    @BeforeEach
+    void openStore() {
+        store = open();
+    }
+
+    @AfterEach
+    void closeStore() throws InterruptedException {
+        store.destroy();
+    }
+
+    private MappedUrlStore reopen() throws InterruptedException {
+        store.destroy();
+        store = open();
+        return store;
+    }
+
+    @DisplayName("Saved urls should be found by hash and by shortened hash")
+    @Test
+    public void savedUrlShouldBeFound() {
+        store.save(url(1));
+        store.saveAll(List.of(url(2), url(3)));
+
+        var found = store.findByShortenedHash("0000000002").orElseThrow();
+        assertThat(found.getHash()).isEqualTo(url(2).getHash());
+        assertThat(found.getOriginUrl()).isEqualTo(url(2).getOriginUrl());
+        assertThat(store.findByHash(url(3).getHash())).map(Url::getShortenedHash).contains("0000000003");
+        assertThat(store.findByHash(url(4).getHash())).isEmpty();
+        assertThat(store.findShortenedHashesIn(List.of("0000000001", "0000000004", "INVALID"))).containsExactly("0000000001");
+        assertThat(store.findByHashIn(List.of(url(1).getHash(), url(4).getHash()))).hasSize(1);
+        assertThat(store.count()).isEqualTo(3);
+    }
+
+    @DisplayName("Hashes sharing their first 8 bytes should be told apart")
+    @Test
+    public void hashesWithSamePrefixShouldBeDistinct() {
+        var first = url(1);
+        var second = url(2);
+        second.setHash(first.getHash().substring(0, 16) + "f".repeat(48));
+        store.saveAll(List.of(first, second));
+
+        assertThat(store.findByHash(first.getHash())).map(Url::getShortenedHash).contains("0000000001");
+        assertThat(store.findByHash(second.getHash())).map(Url::getShortenedHash).contains("0000000002");
+    }
+
+    @DisplayName("A duplicate hash or shortened hash should reject the whole batch")
+    @Test
+    public void duplicateShouldRejectBatch() {
+        store.save(url(1));
+        var duplicateShortenedHash = url(3);
+        duplicateShortenedHash.setShortenedHash("0000000001");
+
+        assertThatThrownBy(() -> store.saveAll(List.of(url(2), url(1))))
+                .isInstanceOf(DataIntegrityViolationException.class);
+        assertThatThrownBy(() -> store.saveAll(List.of(url(2), duplicateShortenedHash)))
+                .isInstanceOf(DataIntegrityViolationException.class);
+        assertThatThrownBy(() -> store.saveAll(List.of(url(2), url(2))))
+                .isInstanceOf(DataIntegrityViolationException.class);
+        assertThat(store.findByShortenedHash("0000000002")).isEmpty();
+        assertThat(store.count()).isEqualTo(1);
+    }
+
+    @DisplayName("Urls and deletions should be replayed on reopening, across segments")
+    @Test
+    public void reopenShouldReplayLog() throws InterruptedException {
+        store.saveAll(IntStream.range(0, 200).mapToObj(MappedUrlStoreTest::url).toList());
+        assertThat(store.deleteByShortenedHashIn(List.of("0000000010", "0000000011", "0000000999"))).isEqualTo(2);
+
+        reopen();
+
+        assertThat(store.count()).isEqualTo(198);
+        assertThat(store.findByShortenedHash("0000000010")).isEmpty();
+        assertThat(store.findByHash(url(199).getHash())).map(Url::getOriginUrl).contains(url(199).getOriginUrl());
+        assertThat(directory.resolve("00000001-000002.log")).exists();
+    }
+
+    @DisplayName("A torn record should be erased on reopening, and the log written after it")
+    @Test
+    public void reopenShouldEraseTornRecord() throws IOException, InterruptedException {
+        store.save(url(1));
+        var torn = store.save(url(2)).getId();
+        store.destroy();
+        try (var channel = FileChannel.open(directory.resolve("00000001-000000.log"), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}), torn + 40);
+        }
+
+        store = open();
+        assertThat(store.count()).isEqualTo(1);
+        assertThat(store.findByShortenedHash("0000000002")).isEmpty();
+
+        store.save(url(3));
+        reopen();
+        assertThat(store.findShortenedHashesIn(List.of("0000000001", "0000000002", "0000000003")))
+                .containsExactly("0000000001", "0000000003");
+    }
+
+    @DisplayName("Compaction should only keep the live urls")
+    @Test
+    public void compactionShouldKeepLiveUrls() throws IOException, InterruptedException {
+        store.saveAll(IntStream.range(0, 200).mapToObj(MappedUrlStoreTest::url).toList());
+        store.deleteByShortenedHashIn(IntStream.range(0, 150).mapToObj("%010d"::formatted).toList());
+
+        store.compact();
+
+        assertThat(store.count()).isEqualTo(50);
+        try (var files = Files.list(directory)) {
+            assertThat(files.map(file -> file.getFileName().toString()).filter(name -> name.endsWith(".log")))
+                    .isNotEmpty()
+                    .allMatch(name -> name.startsWith("00000002-"));
+        }
+        var hashes = new HashMap<String, String>();
+        store.forEachHash(hashes::put);
+        assertThat(hashes).hasSize(50).containsEntry(url(199).getHash(), "0000000199");
+
+        store.save(url(1000));
+        reopen();
+        assertThat(store.count()).isEqualTo(51);
+        assertThat(store.findByHash(url(150).getHash())).map(Url::getShortenedHash).contains("0000000150");
+        assertThat(store.findByShortenedHash("0000000149")).isEmpty();
+    }
+
+    @DisplayName("Delete all should empty the store")
+    @Test
+    public void deleteAllShouldEmptyStore() throws InterruptedException {
+        store.saveAll(List.of(url(1), url(2)));
+
+        store.deleteAll();
+        reopen();
+
+        assertThat(store.count()).isZero();
+        assertThat(store.findByShortenedHash("0000000001")).isEmpty();
+    }
+
+    @DisplayName("A directory should only be used by a single store")
+    @Test
+    public void directoryShouldBeLocked() {
+        assertThatThrownBy(this::open).isInstanceOf(IllegalStateException.class);
+    }
+
+    @DisplayName("Expired urls should be found in expiration order after a reopen, and only deleted if still expired")
+    @Test
+    public void expiredUrlsShouldBeFound() throws InterruptedException {
+        var now = Instant.ofEpochMilli(1_760_774_400_000L);
+        var expiresLater = url(1);
+        expiresLater.setExpiresAt(now.minusSeconds(10));
+        var expiresFirst = url(2);
+        expiresFirst.setExpiresAt(now.minusSeconds(20));
+        var notExpired = url(3);
+        notExpired.setExpiresAt(now.plusSeconds(10));
+        store.saveAll(List.of(expiresLater, expiresFirst, notExpired, url(4)));
+
+        reopen();
+        var found = store.findByShortenedHash("0000000002").orElseThrow();
+        assertThat(found.getCreatedAt()).isEqualTo(expiresFirst.getCreatedAt().truncatedTo(ChronoUnit.MILLIS));
+        assertThat(found.getExpiresAt()).isEqualTo(expiresFirst.getExpiresAt());
+        assertThat(store.findByShortenedHash("0000000004").orElseThrow().getExpiresAt()).isNull();
+
+        var first = store.findExpired(now, null, 1);
+        assertThat(first).containsExactly(new UrlStore.ExpiredUrl(now.minusSeconds(20), "0000000002"));
+        assertThat(store.findExpired(now, first.getLast(), 10))
+                .containsExactly(new UrlStore.ExpiredUrl(now.minusSeconds(10), "0000000001"));
+
+        assertThat(store.deleteExpired(List.of("0000000001", "0000000003", "0000000004"), now)).isEqualTo(1);
+        reopen();
+        assertThat(store.findExpired(now, null, 10)).extracting(UrlStore.ExpiredUrl::shortenedHash).containsExactly("0000000002");
+        assertThat(store.count()).isEqualTo(3);
+    }
+
+    @DisplayName("The urls of the database should be imported on the first start of the log only")
+    @Test
+    public void databaseUrlsShouldBeImportedOnce() throws InterruptedException {
+        var jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("drop table if exists url");
+        jdbcTemplate.execute("create table url (id bigint primary key, hash varchar(200), hash_key varbinary(32), shortened_hash char(10), "
+                + "origin_url varchar(10000), origin_url_data varbinary(8192), created_at timestamp not null, expires_at timestamp)");
+        var expiresAt = Instant.ofEpochMilli(1_760_774_400_000L);
+        jdbcTemplate.update("insert into url (id, hash_key, shortened_hash, origin_url_data, created_at, expires_at) values (1, ?, ?, ?, ?, ?)",
+                HexFormat.of().parseHex(url(1).getHash()), url(1).getShortenedHash(), codec.encode(url(1).getOriginUrl()),
+                Timestamp.from(expiresAt.minusSeconds(60)), Timestamp.from(expiresAt));
+        // Created before the hash key and the binary original url, not backfilled yet
+        jdbcTemplate.update("insert into url (id, hash, shortened_hash, origin_url, created_at) values (2, ?, ?, ?, ?)",
+                url(2).getHash(), url(2).getShortenedHash(), URLEncoder.encode(url(2).getOriginUrl(), StandardCharsets.UTF_8),
+                Timestamp.from(expiresAt));
+
+        store.afterSingletonsInstantiated();
+
+        assertThat(store.count()).isEqualTo(2);
+        assertThat(store.findByHash(url(1).getHash()).orElseThrow().getExpiresAt()).isEqualTo(expiresAt);
+        assertThat(store.findByShortenedHash(url(2).getShortenedHash()).orElseThrow().getOriginUrl()).isEqualTo(url(2).getOriginUrl());
+
+        store.deleteByShortenedHashIn(List.of(url(1).getShortenedHash()));
+        reopen().afterSingletonsInstantiated();
+        assertThat(store.count()).isEqualTo(1);
+    }
+
+    @DisplayName("The urls of the database should not be imported into a log already written")
+    @Test
+    public void databaseUrlsShouldNotBeImportedIntoWrittenLog() throws InterruptedException {
+        var jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("drop table if exists url");
+        jdbcTemplate.execute("create table url (id bigint primary key, hash_key varbinary(32), shortened_hash char(10), "
+                + "origin_url_data varbinary(8192), created_at timestamp not null, expires_at timestamp)");
+        jdbcTemplate.update("insert into url (id, hash_key, shortened_hash, origin_url_data, created_at) values (1, ?, ?, ?, ?)",
+                HexFormat.of().parseHex(url(1).getHash()), url(1).getShortenedHash(), codec.encode(url(1).getOriginUrl()),
+                Timestamp.from(Instant.now()));
+        store.save(url(2));
+
+        reopen().afterSingletonsInstantiated();
+
+        assertThat(store.count()).isEqualTo(1);
+        assertThat(store.findByHash(url(1).getHash())).isEmpty();
+    }
+}
@@ -0,0 +1,87 @@
+package com.doutoutdou.urlshortener.store;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class OffHeapLongIndexTest {
+
+    @DisplayName("Get should return the value put, or no value for an unknown key")
+    @Test
+    public void getShouldReturnPutValue() {
+        var index = new OffHeapLongIndex(0);
+        index.put(42, 0);
+        index.put(-7, 12);
+
+        assertThat(index.get(42)).isEqualTo(0);
+        assertThat(index.get(-7)).isEqualTo(12);
+        assertThat(index.get(43)).isEqualTo(OffHeapLongIndex.NO_VALUE);
+        assertThat(index.size()).isEqualTo(2);
+    }
+
+    @DisplayName("Find should return the value of a key accepted by the predicate")
+    @Test
+    public void findShouldCheckEachValueOfKey() {
+        var index = new OffHeapLongIndex(0);
+        index.put(42, 10);
+        index.put(42, 20);
+
+        assertThat(index.find(42, value -> value == 20)).isEqualTo(20);
+        assertThat(index.find(42, value -> value == 30)).isEqualTo(OffHeapLongIndex.NO_VALUE);
+    }
+
+    @DisplayName("Put if absent should not add a value the key is already mapped to")
+    @Test
+    public void putIfAbsentShouldSkipPresentValue() {
+        var index = new OffHeapLongIndex(0);
+        index.put(42, 10);
+
+        assertThat(index.putIfAbsent(42, 10)).isFalse();
+        assertThat(index.putIfAbsent(42, 20)).isTrue();
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.remove(42, 10)).isTrue();
+        assertThat(index.find(42, value -> value == 10)).isEqualTo(OffHeapLongIndex.NO_VALUE);
+    }
+
+    @DisplayName("Remove should only remove the value given, the other values of the key being still found")
+    @Test
+    public void removeShouldKeepOtherValues() {
+        var index = new OffHeapLongIndex(0);
+        index.put(42, 10);
+        index.put(42, 20);
+
+        assertThat(index.remove(42, 10)).isTrue();
+        assertThat(index.remove(42, 10)).isFalse();
+        assertThat(index.get(42)).isEqualTo(20);
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    @DisplayName("Index should grow above its load factor and keep all the entries")
+    @Test
+    public void indexShouldResize() {
+        var index = new OffHeapLongIndex(0);
+        var initialMemory = index.memoryBytes();
+        for (long key = 0; key < 100_000; key++) {
+            index.put(key, key * 2);
+        }
+        for (long key = 0; key < 100_000; key += 2) {
+            index.remove(key, key * 2);
+        }
+
+        assertThat(index.memoryBytes()).isGreaterThan(initialMemory);
+        assertThat(index.size()).isEqualTo(50_000);
+        for (long key = 0; key < 100_000; key++) {
+            assertThat(index.get(key)).isEqualTo(key % 2 == 0 ? OffHeapLongIndex.NO_VALUE : key * 2);
+        }
+    }
+
+    @DisplayName("Put should reject a negative value")
+    @Test
+    public void putShouldRejectNegativeValue() {
+        var index = new OffHeapLongIndex(0);
+
+        assertThatThrownBy(() -> index.put(42, -1)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,154 @@
+package com.doutoutdou.urlshortener.store;
+
+import com.doutoutdou.urlshortener.configuration.OriginUrlProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class OriginUrlCodecTest {
+    private final DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:origin-url-codec;DB_CLOSE_DELAY=-1");
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+    /**
+     * @return a codec interning its prefixes in the url_prefix table of the database, created if needed
+     */
+    static OriginUrlCodec codec(DataSource dataSource, int maxPrefixes, int prefixMinCount) {
+        new JdbcTemplate(dataSource).execute("create table if not exists url_prefix (id int auto_increment primary key, prefix varchar(512) not null unique)");
+        var codec = new OriginUrlCodec(new OriginUrlProperties(maxPrefixes, prefixMinCount, DataSize.ofBytes(256)), dataSource);
+        codec.afterSingletonsInstantiated();
+        return codec;
+    }
+
+    private OriginUrlCodec codec(int maxPrefixes, int prefixMinCount) {
+        return codec(dataSource, maxPrefixes, prefixMinCount);
+    }
+
+    @BeforeEach
+    void dropTable() {
+        jdbcTemplate.execute("drop table if exists url_prefix");
+    }
+
+    @DisplayName("Urls should be decoded as encoded, with or without prefix")
+    @Test
+    public void urlsShouldRoundTrip() {
+        var codec = codec(1000, 1);
+
+        for (var originUrl : new String[]{"https://www.url.com/path?q=é&x=€", "https://www.url.com", "https://www.url.com?q=1",
+                "mailto:someone@url.com", "", "https://www.url.com/" + "ü".repeat(300)}) {
+            assertThat(codec.decode(codec.encode(originUrl))).isEqualTo(originUrl);
+        }
+        assertThat(codec.prefixes()).isEqualTo(2);
+    }
+
+    @DisplayName("The prefix of an url should be stored as its id")
+    @Test
+    public void prefixShouldBeStoredAsId() {
+        var codec = codec(1000, 1);
+
+        var encoded = codec.encode("https://www.url.com/test");
+
+        assertThat(encoded).hasSize(1 + 1 + "test".length());
+        assertThat(jdbcTemplate.queryForList("select prefix from url_prefix", String.class)).containsExactly("https://www.url.com/");
+    }
+
+    @DisplayName("A prefix should only be interned once used by enough urls")
+    @Test
+    public void prefixShouldBeInternedOnceFrequent() {
+        var codec = codec(1000, 3);
+
+        var first = codec.encode("https://www.url.com/1");
+        codec.encode("https://www.url.com/2");
+        var third = codec.encode("https://www.url.com/3");
+
+        assertThat(first).hasSize(1 + "https://www.url.com/1".length());
+        assertThat(third).hasSize(1 + 1 + 1);
+        assertThat(codec.decode(first)).isEqualTo("https://www.url.com/1");
+        assertThat(codec.prefixes()).isEqualTo(1);
+    }
+
+    @DisplayName("Encoding with the interned prefixes should neither count nor intern the prefixes")
+    @Test
+    public void encodeInternedShouldNotInternPrefixes() {
+        var codec = codec(1000, 2);
+
+        IntStream.range(0, 3).forEach(_ -> codec.encodeInterned("https://www.url.com/1"));
+        assertThat(codec.encodeInterned("https://www.url.com/1")).hasSize(1 + "https://www.url.com/1".length());
+        assertThat(codec.prefixes()).isZero();
+
+        codec.internPrefix("https://www.url.com/1");
+        codec.internPrefix("https://www.url.com/2");
+
+        assertThat(codec.prefixes()).isEqualTo(1);
+        assertThat(codec.encodeInterned("https://www.url.com/1")).isEqualTo(codec.encode("https://www.url.com/1")).hasSize(1 + 1 + 1);
+    }
+
+    @DisplayName("No more prefix should be interned once the maximum is reached")
+    @Test
+    public void prefixesShouldBeBounded() {
+        var codec = codec(10, 1);
+
+        IntStream.range(0, 20).forEach(i -> codec.encode(STR. "https://www.url\{ i }.com/test" ));
+
+        assertThat(codec.prefixes()).isEqualTo(10);
+        assertThat(codec.decode(codec.encode("https://www.url15.com/test"))).isEqualTo("https://www.url15.com/test");
+    }
+
+    @DisplayName("Prefixes interned by another instance should be shared, and read on their first decoding")
+    @Test
+    public void prefixesShouldBeShared() {
+        var codec = codec(1000, 1);
+        var other = codec(1000, 1);
+
+        var encoded = other.encode("https://www.url.com/test");
+        assertThat(codec.decode(encoded)).isEqualTo("https://www.url.com/test");
+        assertThat(codec.encode("https://www.url.com/test")).isEqualTo(encoded);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from url_prefix", Long.class)).isEqualTo(1);
+    }
+
+    @DisplayName("Long urls should be deflated, smaller than their text")
+    @Test
+    public void longUrlsShouldBeDeflated() {
+        var codec = codec(1000, 1);
+        var originUrl = "https://www.url.com/articles/2026/10/18/some-article.html?utm_source=newsletter&utm_medium=email"
+                + "&utm_campaign=autumn-sale&utm_content=header-link&utm_term=shoes&fbclid=" + "a1b2c3d4".repeat(8)
+                + "&ref=homepage&lang=en&page=2&sort=price&session=" + "0123456789abcdef".repeat(4);
+
+        var encoded = codec.encode(originUrl);
+
+        assertThat(encoded.length).isLessThan(originUrl.length() / 2);
+        assertThat(codec.decode(encoded)).isEqualTo(originUrl);
+    }
+
+    @DisplayName("Corrupted or unknown encoded urls should be rejected")
+    @Test
+    public void corruptedUrlsShouldBeRejected() {
+        var codec = codec(1000, 1);
+        var deflated = codec.encode("https://www.url.com/" + "path/".repeat(100));
+
+        assertThatThrownBy(() -> codec.decode(Arrays.copyOf(deflated, deflated.length / 2))).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> codec.decode(new byte[]{4})).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> codec.decode(new byte[]{1, 100})).isInstanceOf(IllegalStateException.class);
+        assertThat(codec.decode("\0https://www.url.com".getBytes(StandardCharsets.UTF_8))).isEqualTo("https://www.url.com");
+    }
+
+    @DisplayName("The prefix should be the scheme and host, up to the first slash of the path")
+    @Test
+    public void prefixLengthShouldCoverSchemeAndHost() {
+        assertThat(OriginUrlCodec.prefixLength("https://www.url.com/path/file")).isEqualTo("https://www.url.com/".length());
+        assertThat(OriginUrlCodec.prefixLength("https://www.url.com?q=1")).isEqualTo("https://www.url.com".length());
+        assertThat(OriginUrlCodec.prefixLength("https://www.url.com#top")).isEqualTo("https://www.url.com".length());
+        assertThat(OriginUrlCodec.prefixLength("https://www.url.com")).isEqualTo("https://www.url.com".length());
+        assertThat(OriginUrlCodec.prefixLength("mailto:someone@url.com")).isZero();
+    }
+}
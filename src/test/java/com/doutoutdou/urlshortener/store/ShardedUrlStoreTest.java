@@ -0,0 +1,192 @@
+package com.doutoutdou.urlshortener.store;
+
+import com.doutoutdou.urlshortener.configuration.ShardingProperties;
+import com.doutoutdou.urlshortener.entity.Url;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.autoconfigure.liquibase.LiquibaseProperties;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ShardedUrlStoreTest {
+    private static final int BUCKETS = 64;
+    private static final List<String> SHARDS = List.of("shard-1", "shard-2", "shard-3");
+
+    @TempDir
+    private Path directory;
+    private DriverManagerDataSource catalog;
+    private ShardedUrlStore store;
+
+    private static Url url(int index) {
+        return Url.builder()
+                .hash("%064x".formatted(index))
+                .shortenedHash("%010d".formatted(index))
+                .originUrl(STR. "https://www.url\{ index }.com/test" )
+                .build();
+    }
+
+    private static List<Url> urls(int count) {
+        return IntStream.range(0, count).mapToObj(ShardedUrlStoreTest::url).toList();
+    }
+
+    private String shardUrl(String name) {
+        return STR. "jdbc:h2:file:\{ directory.resolve(name).toAbsolutePath() }" ;
+    }
+
+    private ShardedUrlStore open() {
+        var liquibaseProperties = new LiquibaseProperties();
+        liquibaseProperties.setChangeLog("classpath:db/changelog/db.changelog-master.xml");
+        var shards = SHARDS.stream().map(name -> new ShardingProperties.Shard(name, shardUrl(name), "sa", "", 2)).toList();
+        var opened = new ShardedUrlStore(new ShardingProperties(BUCKETS, shards, Duration.ofMillis(50), 10), catalog,
+                liquibaseProperties, OriginUrlCodecTest.codec(catalog, 100, 1), new SimpleMeterRegistry());
+        opened.afterSingletonsInstantiated();
+        return opened;
+    }
+
+    private long rows(String shard, String table) {
+        return new JdbcTemplate(new DriverManagerDataSource(shardUrl(shard), "sa", ""))
+                .queryForObject(STR. "select count(*) from \{ table }" , Long.class);
+    }
+
+    @BeforeEach
+    void openStore() {
+        catalog = new DriverManagerDataSource(shardUrl("catalog"), "sa", "");
+        new JdbcTemplate(catalog).execute("create table url_shard_range (first_bucket int primary key, last_bucket int not null,"
+                + " shard varchar(50) not null, target_shard varchar(50))");
+        store = open();
+    }
+
+    @AfterEach
+    void closeStore() throws InterruptedException {
+        store.destroy();
+    }
+
+    @DisplayName("The shard map should be created with the buckets spread evenly, then read by the other instances")
+    @Test
+    public void shardMapShouldBeCreatedOnce() throws InterruptedException {
+        assertThat(store.shardMap()).isEqualTo(ShardMap.even(BUCKETS, SHARDS));
+        store.destroy();
+
+        store = open();
+        assertThat(store.readShardMap()).contains(ShardMap.even(BUCKETS, SHARDS));
+    }
+
+    @DisplayName("Saved urls should be spread on the shards and found by shortened hash and by hash")
+    @Test
+    public void savedUrlsShouldBeSpreadOnShards() {
+        urls(100).forEach(store::save);
+
+        SHARDS.forEach(shard -> assertThat(rows(shard, "url")).isPositive());
+        assertThat(SHARDS.stream().mapToLong(shard -> rows(shard, "url_hash_key")).sum()).isEqualTo(100);
+        assertThat(store.count()).isEqualTo(100);
+        assertThat(store.findByShortenedHash(url(42).getShortenedHash())).get()
+                .extracting(Url::getOriginUrl).isEqualTo(url(42).getOriginUrl());
+        assertThat(store.findByHash(url(42).getHash())).get()
+                .extracting(Url::getShortenedHash).isEqualTo(url(42).getShortenedHash());
+        assertThat(store.findByHash(url(100).getHash())).isEmpty();
+    }
+
+    @DisplayName("Batches should be saved and looked up on all the shards")
+    @Test
+    public void batchesShouldFanOut() {
+        store.saveAll(urls(100));
+
+        var hashes = IntStream.range(50, 150).mapToObj(index -> url(index).getHash()).toList();
+        assertThat(store.findByHashIn(hashes)).extracting(Url::getHash)
+                .containsExactlyInAnyOrderElementsOf(hashes.subList(0, 50));
+        var shortenedHashes = IntStream.range(50, 150).mapToObj(index -> url(index).getShortenedHash()).toList();
+        assertThat(store.findByShortenedHashIn(shortenedHashes)).hasSize(50);
+        assertThat(store.findShortenedHashesIn(shortenedHashes)).containsExactlyInAnyOrderElementsOf(shortenedHashes.subList(0, 50));
+    }
+
+    @DisplayName("A batch with a stored hash should fail, and nothing of it should be saved on any shard")
+    @Test
+    public void batchWithStoredHashShouldFail() {
+        store.save(url(7));
+        var duplicate = url(1000);
+        duplicate.setHash(url(7).getHash());
+        var batch = new ArrayList<>(urls(50).subList(10, 50));
+        batch.add(duplicate);
+
+        assertThatThrownBy(() -> store.saveAll(batch)).isInstanceOf(DataIntegrityViolationException.class);
+        assertThatThrownBy(() -> store.save(duplicate)).isInstanceOf(DataIntegrityViolationException.class);
+        assertThat(store.count()).isEqualTo(1);
+        assertThat(SHARDS.stream().mapToLong(shard -> rows(shard, "url_hash_key")).sum()).isEqualTo(1);
+        assertThat(store.findByHash(url(7).getHash())).get().extracting(Url::getShortenedHash).isEqualTo(url(7).getShortenedHash());
+    }
+
+    @DisplayName("Deleted urls should be deleted with their hash, which may then be saved again")
+    @Test
+    public void deletedUrlsShouldReleaseTheirHash() {
+        store.saveAll(urls(20));
+        var expired = url(20);
+        expired.setExpiresAt(Instant.now().minusSeconds(1));
+        store.save(expired);
+
+        assertThat(store.deleteByShortenedHashIn(List.of(url(3).getShortenedHash(), url(4).getShortenedHash()))).isEqualTo(2);
+        assertThat(store.findExpired(Instant.now(), null, 10)).extracting(UrlStore.ExpiredUrl::shortenedHash)
+                .containsExactly(expired.getShortenedHash());
+        assertThat(store.deleteExpired(List.of(expired.getShortenedHash(), url(5).getShortenedHash()), Instant.now())).isEqualTo(1);
+
+        assertThat(store.count()).isEqualTo(18);
+        assertThat(SHARDS.stream().mapToLong(shard -> rows(shard, "url_hash_key")).sum()).isEqualTo(18);
+        store.save(url(3));
+        assertThat(store.findByHash(url(3).getHash())).isPresent();
+    }
+
+    @DisplayName("During a move, the urls should be read from the source and the target, and the new ones written to the target")
+    @Test
+    public void movedRangeShouldStayReadable() {
+        store.saveAll(urls(100));
+        var marked = ShardRebalancer.mark(store.shardMap(), 0, BUCKETS - 1, "shard-3");
+        store.writeShardMap(marked);
+        store.refreshShardMap();
+
+        store.saveAll(urls(110).subList(100, 110));
+        assertThat(store.findByHashIn(urls(110).stream().map(Url::getHash).toList())).hasSize(110);
+        assertThat(store.findByShortenedHash(url(42).getShortenedHash())).isPresent();
+        assertThat(store.findByHash(url(105).getHash())).isPresent();
+        assertThatThrownBy(() -> store.save(url(42))).isInstanceOf(DataIntegrityViolationException.class);
+        var shard1 = rows("shard-1", "url");
+        store.save(url(110));
+        assertThat(rows("shard-1", "url")).isEqualTo(shard1);
+    }
+
+    @DisplayName("A moved range should be copied to its target shard and assigned to it")
+    @Test
+    public void rangeShouldBeMoved() throws InterruptedException {
+        store.saveAll(urls(300));
+        var rebalancer = new ShardRebalancer(store, new ShardingProperties(BUCKETS, List.of(), Duration.ofMillis(50), 10));
+
+        var firstRange = store.shardMap().ranges().getFirst();
+        rebalancer.moveNow(firstRange.firstBucket(), firstRange.lastBucket(), "shard-2");
+
+        assertThat(rows("shard-1", "url")).isZero();
+        assertThat(rows("shard-1", "url_hash_key")).isZero();
+        assertThat(store.shardMap().ranges()).hasSize(2)
+                .first().isEqualTo(new ShardMap.Range(0, store.shardMap().ranges().get(1).firstBucket() - 1, "shard-2", null));
+        assertThat(store.count()).isEqualTo(300);
+        assertThat(store.findByHashIn(urls(300).stream().map(Url::getHash).toList())).hasSize(300);
+
+        rebalancer.moveNow(10, 20, "shard-1");
+        assertThat(store.shardMap().ranges()).extracting(ShardMap.Range::shard)
+                .containsExactly("shard-2", "shard-1", "shard-2", "shard-3");
+        assertThat(rows("shard-1", "url")).isPositive();
+        assertThat(store.findByShortenedHashIn(urls(300).stream().map(Url::getShortenedHash).toList())).hasSize(300);
+    }
+}
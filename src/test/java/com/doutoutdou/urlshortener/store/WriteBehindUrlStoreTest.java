@@ -0,0 +1,195 @@
+package com.doutoutdou.urlshortener.store;
+
+import com.doutoutdou.urlshortener.configuration.UrlStoreProperties;
+import com.doutoutdou.urlshortener.configuration.WriteBehindProperties;
+import com.doutoutdou.urlshortener.entity.Url;
+import com.doutoutdou.urlshortener.exception.WriteBehindBufferFullException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+public class WriteBehindUrlStoreTest {
+
+    @TempDir
+    private Path storeDirectory;
+    @TempDir
+    private Path logDirectory;
+    private MappedUrlStore backend;
+    private WriteBehindUrlStore store;
+
+    private static Url url(int index) {
+        return Url.builder()
+                .hash("%064x".formatted(index))
+                .shortenedHash("%010d".formatted(index))
+                .originUrl(STR. "https://www.url\{ index }.com/test" )
+                .build();
+    }
+
+    // Flushed by the tests only
+    private WriteBehindUrlStore open(UrlStore backend, int maxPending) {
+        return new WriteBehindUrlStore(backend, new WriteBehindProperties(true, logDirectory, maxPending, 100,
+                Duration.ofHours(1), false), new SimpleMeterRegistry());
+    }
+
+    @BeforeEach
+    void openStore() {
+        var dataSource = new DriverManagerDataSource("jdbc:h2:mem:write-behind-url-store;DB_CLOSE_DELAY=-1");
+        backend = new MappedUrlStore(new UrlStoreProperties(UrlStoreProperties.Type.MAPPED, storeDirectory,
+                DataSize.ofKilobytes(64), false, 0.5, Duration.ofHours(1), false),
+                OriginUrlCodecTest.codec(dataSource, 100, 2), dataSource);
+        store = open(backend, 10);
+    }
+
+    @AfterEach
+    void closeStore() throws InterruptedException, IOException {
+        store.destroy();
+        backend.destroy();
+    }
+
+    @DisplayName("Pending urls should be found before they are saved, then from the backend")
+    @Test
+    public void pendingUrlShouldBeFound() {
+        backend.save(url(1));
+        store.saveAll(List.of(url(2), url(3)));
+
+        assertThat(backend.count()).isEqualTo(1);
+        assertThat(store.findByShortenedHash("0000000002")).map(Url::getHash).contains(url(2).getHash());
+        assertThat(store.findByHash(url(1).getHash())).map(Url::getShortenedHash).contains("0000000001");
+        assertThat(store.findByShortenedHashIn(List.of("0000000001", "0000000003", "0000000004"))).hasSize(2);
+        assertThat(store.findShortenedHashesIn(List.of("0000000001", "0000000002", "0000000004")))
+                .containsExactlyInAnyOrder("0000000001", "0000000002");
+
+        store.flush();
+
+        assertThat(backend.count()).isEqualTo(3);
+        assertThat(store.findByHash(url(3).getHash())).map(Url::getOriginUrl).contains(url(3).getOriginUrl());
+    }
+
+    @DisplayName("A duplicate of a pending url should be rejected")
+    @Test
+    public void duplicatePendingUrlShouldBeRejected() {
+        store.save(url(1));
+
+        assertThatThrownBy(() -> store.save(url(1))).isInstanceOf(DataIntegrityViolationException.class);
+        assertThatThrownBy(() -> store.saveAll(List.of(url(2), url(2)))).isInstanceOf(DataIntegrityViolationException.class);
+        assertThat(store.findByShortenedHash("0000000002")).isEmpty();
+    }
+
+    @DisplayName("Creations should be rejected while the pending buffer is full")
+    @Test
+    public void fullBufferShouldRejectCreations() {
+        store.saveAll(List.of(url(1), url(2), url(3), url(4), url(5), url(6), url(7), url(8)));
+
+        assertThatThrownBy(() -> store.saveAll(List.of(url(9), url(10), url(11))))
+                .isInstanceOf(WriteBehindBufferFullException.class);
+        store.saveAll(List.of(url(9), url(10)));
+
+        store.flush();
+        store.save(url(11));
+        assertThat(store.count()).isEqualTo(11);
+    }
+
+    @DisplayName("Pending urls should be saved after a crash, a torn line being ignored")
+    @Test
+    public void logShouldBeReplayed() throws IOException {
+        store.saveAll(List.of(url(1), url(2)));
+        store.save(url(3));
+        try (var files = Files.list(logDirectory)) {
+            Files.writeString(files.findFirst().orElseThrow(), "0000000004\tto", StandardOpenOption.APPEND);
+        }
+
+        // The crashed store is never flushed
+        var recovered = open(backend, 10);
+        recovered.flush();
+
+        assertThat(backend.count()).isEqualTo(3);
+        assertThat(backend.findByShortenedHash("0000000003")).map(Url::getOriginUrl).contains(url(3).getOriginUrl());
+        try (var files = Files.list(logDirectory)) {
+            assertThat(files).hasSize(1);
+        }
+        store = recovered;
+    }
+
+    @DisplayName("Deleted pending urls should neither be saved nor replayed")
+    @Test
+    public void deletedPendingUrlShouldNotBeSaved() {
+        backend.save(url(1));
+        var expiring = url(3);
+        expiring.setExpiresAt(Instant.now().minusSeconds(1));
+        store.saveAll(List.of(url(2), expiring, url(4)));
+
+        assertThat(store.count()).isEqualTo(4);
+        assertThat(store.deleteByShortenedHashIn(List.of("0000000001", "0000000002"))).isEqualTo(2);
+        assertThat(store.deleteExpired(List.of("0000000003", "0000000004"), Instant.now())).isEqualTo(1);
+        assertThat(backend.count()).isZero();
+        assertThat(store.count()).isEqualTo(1);
+        assertThat(store.findByShortenedHash("0000000002")).isEmpty();
+        assertThat(store.findByHash(url(3).getHash())).isEmpty();
+
+        // The crashed store is never flushed
+        var recovered = open(backend, 10);
+        recovered.flush();
+
+        assertThat(backend.count()).isEqualTo(1);
+        assertThat(backend.findByShortenedHash("0000000004")).isPresent();
+        store = recovered;
+    }
+
+    @DisplayName("A failed save should be retried, the urls being pending until then")
+    @Test
+    public void failedSaveShouldBeRetried() throws IOException, InterruptedException {
+        var failingBackend = mock(UrlStore.class, delegatesTo(backend));
+        doThrow(new DataAccessResourceFailureException("Database down"))
+                .doAnswer(delegatesTo(backend))
+                .when(failingBackend).saveAll(anyList());
+        store.destroy();
+        store = open(failingBackend, 10);
+        store.saveAll(List.of(url(1), url(2)));
+
+        assertThatThrownBy(store::flush).isInstanceOf(DataAccessResourceFailureException.class);
+        assertThat(store.findByShortenedHash("0000000001")).isPresent();
+
+        store.flush();
+        assertThat(backend.count()).isEqualTo(2);
+        try (var files = Files.list(logDirectory)) {
+            assertThat(files).hasSize(1);
+        }
+    }
+
+    @DisplayName("A pending url saved meanwhile by another instance should be dropped")
+    @Test
+    public void urlSavedByAnotherInstanceShouldBeDropped() {
+        store.saveAll(List.of(url(1), url(2)));
+        var conflicting = url(3);
+        conflicting.setShortenedHash("0000000001");
+        backend.save(conflicting);
+
+        store.flush();
+
+        assertThat(backend.count()).isEqualTo(2);
+        assertThat(store.findByShortenedHash("0000000001")).map(Url::getHash).contains(url(3).getHash());
+        assertThat(store.findByShortenedHash("0000000002")).isPresent();
+    }
+}